@@ -24,11 +24,19 @@
 
 package com.pcoetsee.settingservice;
 
+import com.pcoetsee.settingservice.security.BCryptStrengthCalibrator;
+import com.pcoetsee.settingservice.security.CalibratedBCryptPasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 
 import javax.annotation.PostConstruct;
@@ -37,6 +45,7 @@ import java.util.Calendar;
 import java.util.TimeZone;
 
 @SpringBootApplication()
+@EnableScheduling
 public class SettingServiceApplication {
     private static final Logger LOGGER = LoggerFactory.getLogger(SettingServiceApplication.class);
 
@@ -55,8 +64,30 @@ public class SettingServiceApplication {
         );
     }
 
+    /**
+     * Creates the password encoder. Unless a strength is configured, the strength is calibrated at startup to the
+     * highest strength that fits within the latency budget on this hardware.
+     * <p>
+     * Nodes with different hardware may calibrate to different strengths, and would then keep rehashing each other's
+     * hashes, so deployments with mixed hardware should configure a fixed strength.
+     * <p>
+     * Slices of the application that leave out metrics, such as repository tests, get the timers in a registry of
+     * their own.
+     */
     @Bean
-    public BCryptPasswordEncoder bCryptPasswordEncoder() {
-        return new BCryptPasswordEncoder();
+    public BCryptPasswordEncoder bCryptPasswordEncoder(
+            @Value("${settings.security.bcrypt.strength:0}") int strength,
+            @Value("${settings.security.bcrypt.latency-budget-ms:250}") long latencyBudgetMillis,
+            @Value("${settings.security.bcrypt.min-strength:10}") int minStrength,
+            @Value("${settings.security.bcrypt.max-strength:16}") int maxStrength,
+            @Autowired ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        if (strength <= 0) {
+            strength = new BCryptStrengthCalibrator(minStrength, maxStrength).calibrate(latencyBudgetMillis);
+        }
+
+        LOGGER.info("[SSAPI]: Using BCrypt strength [{}].", strength);
+
+        return new CalibratedBCryptPasswordEncoder(strength, meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.analytics;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for counting reads per service and setting, bound from the `settings.analytics` properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "settings.analytics")
+public class AnalyticsProperties {
+
+    /**
+     * Whether reads are counted at all.
+     */
+    private boolean enabled = true;
+
+    /**
+     * The length, in seconds, of each bucket reads are counted in. Windows are made up of whole buckets.
+     */
+    private int bucketSeconds = 60;
+
+    /**
+     * The number of buckets kept, which limits the longest window that can be looked at.
+     */
+    private int buckets = 30;
+
+    /**
+     * The number of counters per row of each sketch. Estimates are off by at most `e / width` of all reads in a bucket,
+     * nearly always.
+     */
+    private int sketchWidth = 2048;
+
+    /**
+     * The number of rows of each sketch. Every extra row makes a larger error less likely.
+     */
+    private int sketchDepth = 4;
+
+    /**
+     * The number of most read services and settings kept per bucket.
+     */
+    private int topK = 100;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getBucketSeconds() {
+        return bucketSeconds;
+    }
+
+    public void setBucketSeconds(int bucketSeconds) {
+        this.bucketSeconds = bucketSeconds;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public void setBuckets(int buckets) {
+        this.buckets = buckets;
+    }
+
+    public int getSketchWidth() {
+        return sketchWidth;
+    }
+
+    public void setSketchWidth(int sketchWidth) {
+        this.sketchWidth = sketchWidth;
+    }
+
+    public int getSketchDepth() {
+        return sketchDepth;
+    }
+
+    public void setSketchDepth(int sketchDepth) {
+        this.sketchDepth = sketchDepth;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+}
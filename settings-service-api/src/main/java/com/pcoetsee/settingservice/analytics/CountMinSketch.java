@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.analytics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A count-min sketch: counts events per key in a fixed amount of memory, however many keys there are.
+ * <p>
+ * Every key maps to one counter in each of the rows, and the estimate for a key is the smallest of its counters. Keys
+ * that share a counter inflate each other's estimates, so an estimate is never less than the actual count, and with
+ * `width` counters per row it exceeds it by more than `e / width` of all events in fewer than `e^-depth` of the
+ * lookups. Counters are updated without locks, so it can be shared by all request threads.
+ */
+public class CountMinSketch {
+
+    private static final long[] SEEDS = {
+            0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+            0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x85EBCA77C2B2AE63L
+    };
+
+    private final int depth;
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    /**
+     * @param width the number of counters per row, rounded up to a power of two, at least 1
+     * @param depth the number of rows, between 1 and 8
+     */
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1 || depth > SEEDS.length) {
+            throw new IllegalArgumentException("Sketch width must be at least 1 and depth between 1 and " + SEEDS.length);
+        }
+
+        int roundedWidth = Integer.highestOneBit(width) == width ? width : Integer.highestOneBit(width) << 1;
+
+        this.depth = depth;
+        this.mask = roundedWidth - 1;
+        this.counters = new AtomicLongArray(roundedWidth * depth);
+    }
+
+    /**
+     * Counts one event for a key.
+     *
+     * @param hash the hash of the key
+     * @return the estimated count of the key, including this event, at least 1
+     */
+    public long add(int hash) {
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.counters.incrementAndGet(this.index(row, hash)));
+        }
+
+        return estimate;
+    }
+
+    /**
+     * @param hash the hash of the key
+     * @return the estimated count of the key, 0 only if it was never counted
+     */
+    public long estimate(int hash) {
+        long estimate = Long.MAX_VALUE;
+
+        for (int row = 0; row < this.depth; row++) {
+            estimate = Math.min(estimate, this.counters.get(this.index(row, hash)));
+        }
+
+        return estimate;
+    }
+
+    /**
+     * Resets every counter. Events counted while clearing may survive it.
+     */
+    public void clear() {
+        for (int i = 0; i < this.counters.length(); i++) {
+            this.counters.set(i, 0);
+        }
+    }
+
+    public int getWidth() {
+        return this.mask + 1;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    private int index(int row, int hash) {
+        long mixed = (hash + 0x632BE59BD9B4E019L) * SEEDS[row];
+
+        mixed ^= mixed >>> 33;
+        mixed *= 0xFF51AFD7ED558CCDL;
+        mixed ^= mixed >>> 33;
+
+        return row * (this.mask + 1) + ((int) mixed & this.mask);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the keys with the highest estimated counts, up to a fixed number of them.
+ * <p>
+ * The counting itself is left to a {@link CountMinSketch}; keys are offered with their current estimate, and a key only
+ * makes it in by beating the lowest estimate held. That threshold can be read without locking, so the many keys that
+ * cannot make it in cost nothing.
+ */
+public class HeavyHitters {
+
+    private final int capacity;
+    private final Map<HotKey, Long> estimates;
+    private volatile long threshold;
+
+    /**
+     * @param capacity the number of keys kept, at least 1
+     */
+    public HeavyHitters(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Heavy hitters capacity must be at least 1");
+        }
+
+        this.capacity = capacity;
+        this.estimates = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * @param estimate the current estimate of a key
+     * @return true if a key with the estimate could be kept, or have its estimate raised
+     */
+    public boolean qualifies(long estimate) {
+        return estimate > this.threshold;
+    }
+
+    /**
+     * Keeps a key if it is held already or beats the lowest estimate held, dropping the key with the lowest estimate to
+     * make room.
+     *
+     * @param key      the key, not null
+     * @param estimate the current estimate of the key
+     */
+    public synchronized void offer(HotKey key, long estimate) {
+        Long previous = this.estimates.get(key);
+
+        if (previous != null) {
+            if (estimate > previous) {
+                this.estimates.put(key, estimate);
+                this.updateThreshold();
+            }
+
+            return;
+        }
+
+        if (this.estimates.size() >= this.capacity) {
+            if (estimate <= this.threshold) {
+                return;
+            }
+
+            HotKey lowest = null;
+
+            for (Map.Entry<HotKey, Long> entry : this.estimates.entrySet()) {
+                if (lowest == null || entry.getValue() < this.estimates.get(lowest)) {
+                    lowest = entry.getKey();
+                }
+            }
+
+            this.estimates.remove(lowest);
+        }
+
+        this.estimates.put(key, estimate);
+        this.updateThreshold();
+    }
+
+    /**
+     * @return the keys held, in no particular order, not null
+     */
+    public synchronized List<HotKey> getKeys() {
+        return new ArrayList<>(this.estimates.keySet());
+    }
+
+    public synchronized void clear() {
+        this.estimates.clear();
+        this.threshold = 0;
+    }
+
+    /**
+     * While there is room every key qualifies, after that a key has to beat the lowest estimate held.
+     */
+    private void updateThreshold() {
+        if (this.estimates.size() < this.capacity) {
+            this.threshold = 0;
+            return;
+        }
+
+        long lowest = Long.MAX_VALUE;
+
+        for (long estimate : this.estimates.values()) {
+            lowest = Math.min(lowest, estimate);
+        }
+
+        this.threshold = lowest;
+    }
+}
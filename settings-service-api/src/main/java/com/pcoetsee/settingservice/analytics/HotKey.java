@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.analytics;
+
+/**
+ * A service, or a setting of a service, whose reads are counted.
+ */
+public final class HotKey {
+
+    private final String serviceName;
+    private final String settingName;
+    private final int hash;
+
+    /**
+     * @param serviceName the name of the service, not null
+     * @param settingName the name of the setting, null for the service as a whole
+     */
+    public HotKey(String serviceName, String settingName) {
+        this.serviceName = serviceName;
+        this.settingName = settingName;
+        this.hash = HotKey.hash(serviceName, settingName);
+    }
+
+    /**
+     * Hashes a key without creating it, so reads can be counted without allocating.
+     *
+     * @param serviceName the name of the service, not null
+     * @param settingName the name of the setting, may be null
+     * @return the same value as {@link #hashCode()} of the matching key
+     */
+    public static int hash(String serviceName, String settingName) {
+        return 31 * serviceName.hashCode() + (settingName == null ? 0 : settingName.hashCode() + 1);
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getSettingName() {
+        return settingName;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HotKey)) return false;
+
+        HotKey that = (HotKey) o;
+
+        if (hash != that.hash) return false;
+        if (!serviceName.equals(that.serviceName)) return false;
+        return settingName != null ? settingName.equals(that.settingName) : that.settingName == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKey{" +
+                "serviceName='" + serviceName + '\'' +
+                ", settingName='" + settingName + '\'' +
+                '}';
+    }
+}
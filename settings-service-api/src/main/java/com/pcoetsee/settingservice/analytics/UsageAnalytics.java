@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.analytics;
+
+import com.pcoetsee.settingservice.dto.HotKeyDTO;
+import com.pcoetsee.settingservice.dto.HotKeysDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts reads per service and per setting, to find the keys causing the most load.
+ * <p>
+ * Reads are counted in a ring of time buckets. Each bucket counts every key in a {@link CountMinSketch} and remembers
+ * its most read keys in {@link HeavyHitters}, so memory stays fixed however many keys are read. Counting a read takes a
+ * few atomic increments and allocates nothing, unless the key is among the most read ones. A window is looked at by
+ * adding up the estimates of the most read keys of each of its buckets.
+ */
+@Component
+public class UsageAnalytics {
+
+    /**
+     * Keys already among the most read ones only have their estimate raised once every this many reads, so the hottest
+     * keys do not contend for the lock of the heavy hitters.
+     */
+    private static final long OFFER_INTERVAL = 16;
+
+    private final boolean enabled;
+    private final long bucketMillis;
+    private final Bucket[] buckets;
+
+    public UsageAnalytics(@Autowired AnalyticsProperties analyticsProperties) {
+        if (analyticsProperties.getBucketSeconds() < 1 || analyticsProperties.getBuckets() < 1) {
+            throw new IllegalArgumentException("Analytics need at least one bucket of at least one second");
+        }
+
+        this.enabled = analyticsProperties.isEnabled();
+        this.bucketMillis = analyticsProperties.getBucketSeconds() * 1000L;
+        this.buckets = new Bucket[this.enabled ? analyticsProperties.getBuckets() : 0];
+
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new Bucket(analyticsProperties);
+        }
+    }
+
+    /**
+     * Counts a read of a setting, or of all settings of a service when no setting name is supplied.
+     *
+     * @param serviceName the name of the service read, null is ignored
+     * @param settingName the name of the setting read, null when all settings of the service were read
+     */
+    public void recordRead(String serviceName, String settingName) {
+        this.recordRead(serviceName, settingName, System.currentTimeMillis());
+    }
+
+    void recordRead(String serviceName, String settingName, long nowMillis) {
+        if (!this.enabled || serviceName == null) {
+            return;
+        }
+
+        Bucket bucket = this.current(nowMillis / this.bucketMillis);
+
+        bucket.total.increment();
+        UsageAnalytics.count(bucket.settings, bucket.hotSettings, serviceName, settingName);
+        UsageAnalytics.count(bucket.services, bucket.hotServices, serviceName, null);
+    }
+
+    /**
+     * Fetches the most read settings and services over a window ending now.
+     *
+     * @param windowSeconds the length of the window, rounded up to whole buckets and limited to the buckets kept
+     * @param limit         the most settings and services returned, each
+     * @return the most read keys in the window, most read first, not null
+     */
+    public HotKeysDTO getHotKeys(long windowSeconds, int limit) {
+        return this.getHotKeys(windowSeconds, limit, System.currentTimeMillis());
+    }
+
+    HotKeysDTO getHotKeys(long windowSeconds, int limit, long nowMillis) {
+        long bucketSeconds = this.bucketMillis / 1000;
+        int bucketCount = (int) Math.max(1, Math.min(this.buckets.length, (windowSeconds + bucketSeconds - 1) / bucketSeconds));
+        long epoch = nowMillis / this.bucketMillis;
+        List<Bucket> window = new ArrayList<>(bucketCount);
+        long total = 0;
+
+        for (int i = 0; i < bucketCount && this.enabled; i++) {
+            Bucket bucket = this.buckets[UsageAnalytics.slot(epoch - i, this.buckets.length)];
+
+            if (bucket.epoch == epoch - i) {
+                window.add(bucket);
+                total += bucket.total.sum();
+            }
+        }
+
+        HotKeysDTO hotKeysDTO = new HotKeysDTO();
+
+        hotKeysDTO.setWindowSeconds(bucketCount * bucketSeconds);
+        hotKeysDTO.setTotalReads(total);
+        hotKeysDTO.setSettings(UsageAnalytics.top(window, true, limit));
+        hotKeysDTO.setServices(UsageAnalytics.top(window, false, limit));
+
+        return hotKeysDTO;
+    }
+
+    private static void count(CountMinSketch sketch, HeavyHitters heavyHitters, String serviceName, String settingName) {
+        long estimate = sketch.add(HotKey.hash(serviceName, settingName));
+
+        if (heavyHitters.qualifies(estimate) && (estimate < OFFER_INTERVAL || estimate % OFFER_INTERVAL == 0)) {
+            heavyHitters.offer(new HotKey(serviceName, settingName), estimate);
+        }
+    }
+
+    /**
+     * Ranks the keys that were among the most read ones in any bucket of the window by their estimate over the whole
+     * window.
+     */
+    private static List<HotKeyDTO> top(List<Bucket> window, boolean settings, int limit) {
+        Set<HotKey> candidates = new HashSet<>();
+
+        for (Bucket bucket : window) {
+            candidates.addAll((settings ? bucket.hotSettings : bucket.hotServices).getKeys());
+        }
+
+        List<HotKeyDTO> hotKeys = new ArrayList<>(candidates.size());
+
+        for (HotKey candidate : candidates) {
+            long reads = 0;
+
+            for (Bucket bucket : window) {
+                reads += (settings ? bucket.settings : bucket.services).estimate(candidate.hashCode());
+            }
+
+            hotKeys.add(new HotKeyDTO(candidate.getServiceName(), candidate.getSettingName(), reads));
+        }
+
+        hotKeys.sort(Comparator.comparingLong(HotKeyDTO::getReads).reversed());
+
+        return hotKeys.size() > limit ? new ArrayList<>(hotKeys.subList(0, Math.max(0, limit))) : hotKeys;
+    }
+
+    /**
+     * @return the bucket for the supplied epoch, cleared first if it still holds the counts of an earlier one
+     */
+    private Bucket current(long epoch) {
+        Bucket bucket = this.buckets[UsageAnalytics.slot(epoch, this.buckets.length)];
+
+        if (bucket.epoch != epoch) {
+            synchronized (bucket) {
+                if (bucket.epoch < epoch) {
+                    bucket.settings.clear();
+                    bucket.services.clear();
+                    bucket.hotSettings.clear();
+                    bucket.hotServices.clear();
+                    bucket.total.reset();
+                    bucket.epoch = epoch;
+                }
+            }
+        }
+
+        return bucket;
+    }
+
+    private static int slot(long epoch, int buckets) {
+        return (int) Math.floorMod(epoch, (long) buckets);
+    }
+
+    /**
+     * The reads counted during one stretch of `bucketSeconds`.
+     */
+    private static final class Bucket {
+
+        private final CountMinSketch settings;
+        private final CountMinSketch services;
+        private final HeavyHitters hotSettings;
+        private final HeavyHitters hotServices;
+        private final LongAdder total = new LongAdder();
+        private volatile long epoch = -1;
+
+        private Bucket(AnalyticsProperties analyticsProperties) {
+            this.settings = new CountMinSketch(analyticsProperties.getSketchWidth(), analyticsProperties.getSketchDepth());
+            this.services = new CountMinSketch(Math.max(1, analyticsProperties.getSketchWidth() / 4), analyticsProperties.getSketchDepth());
+            this.hotSettings = new HeavyHitters(analyticsProperties.getTopK());
+            this.hotServices = new HeavyHitters(analyticsProperties.getTopK());
+        }
+    }
+}
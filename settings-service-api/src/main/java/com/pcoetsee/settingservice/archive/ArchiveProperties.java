@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.archive;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for moving unused settings to the archive, bound from the `settings.archive` properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "settings.archive")
+public class ArchiveProperties {
+
+    /**
+     * Whether unused settings are moved to the archive. Reads served by followers are not recorded, so only enable it
+     * when every read reaches a primary or standalone node.
+     */
+    private boolean enabled;
+
+    /**
+     * Whether reads are recorded in the `date_last_used` column. Recording is independent of archiving, so the dates
+     * can be collected for a while before settings are archived based on them.
+     */
+    private boolean trackUsage = true;
+
+    /**
+     * The number of days a setting must have gone unread before it is archived.
+     */
+    private int staleDays = 180;
+
+    /**
+     * The number of settings looked at, and moved, per transaction.
+     */
+    private int batchSize = 100;
+
+    /**
+     * How long, in milliseconds, to pause between batches, so archiving never competes with live traffic for long.
+     */
+    private long pauseMs = 200;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isTrackUsage() {
+        return trackUsage;
+    }
+
+    public void setTrackUsage(boolean trackUsage) {
+        this.trackUsage = trackUsage;
+    }
+
+    public int getStaleDays() {
+        return staleDays;
+    }
+
+    public void setStaleDays(int staleDays) {
+        this.staleDays = staleDays;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getPauseMs() {
+        return pauseMs;
+    }
+
+    public void setPauseMs(long pauseMs) {
+        this.pauseMs = pauseMs;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.archive;
+
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.ServiceMigratingException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the date settings are read on in the `date_last_used` column, which decides when they are archived.
+ * <p>
+ * Writing the date on every read would turn every read into a write, so reads are only remembered in memory, once per
+ * setting per day, and written in batches by a scheduled flush. A row is only updated when its date is older than the
+ * date being written, so a setting read every day costs one update a day. Reads of all settings of a service at once
+ * update every setting of the service.
+ * <p>
+ * Followers can not write, so nothing is recorded for the reads they serve.
+ */
+@Component
+public class SettingUsageTracker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SettingUsageTracker.class);
+
+    private static final String TOUCH_SETTING_SQL =
+            "UPDATE `settings` SET `date_last_used` = ? WHERE `service_id` = ? AND `name` = ? AND (`date_last_used` IS NULL OR `date_last_used` < ?)";
+
+    private static final String TOUCH_SERVICE_SQL =
+            "UPDATE `settings` SET `date_last_used` = ? WHERE `service_id` = ? AND (`date_last_used` IS NULL OR `date_last_used` < ?)";
+
+    /**
+     * Remembers a read of all settings of a service. Setting names are never blank, so it can not clash with one.
+     */
+    private static final String ALL_SETTINGS = "";
+
+    private final boolean enabled;
+    private final ShardDirectory shardDirectory;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * The settings read today, by service ID, so each is only queued once a day.
+     */
+    private final ConcurrentMap<Long, Set<String>> seen = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Touch> pending = new ConcurrentLinkedQueue<>();
+    private volatile LocalDate today;
+    private volatile long todayEndsMillis;
+
+    public SettingUsageTracker(
+            @Autowired ArchiveProperties archiveProperties,
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired(required = false) ReplicaStore replicaStore
+    ) {
+        this.enabled = archiveProperties.isTrackUsage() && replicaStore == null;
+        this.shardDirectory = shardDirectory;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.startDay(System.currentTimeMillis());
+    }
+
+    /**
+     * Remembers that a setting was read today.
+     *
+     * @param serviceId the ID of the service the setting belongs to, null is ignored
+     * @param name      the name of the setting, null when all settings of the service were read
+     */
+    public void touch(Long serviceId, String name) {
+        if (!this.enabled || serviceId == null) {
+            return;
+        }
+
+        if (System.currentTimeMillis() >= this.todayEndsMillis) {
+            this.startDay(System.currentTimeMillis());
+        }
+
+        String key = name == null ? ALL_SETTINGS : name;
+        Set<String> names = this.seen.get(serviceId);
+
+        if (names == null) {
+            names = this.seen.computeIfAbsent(serviceId, id -> ConcurrentHashMap.newKeySet());
+        }
+
+        if (names.add(key)) {
+            this.pending.add(new Touch(serviceId, name, this.today));
+        }
+    }
+
+    /**
+     * Writes the dates of the settings read since the last flush. Whatever can not be written now, because the database
+     * is busy or the service is being moved to another shard, is kept for the next flush.
+     */
+    @Scheduled(fixedDelayString = "${settings.archive.touch-flush-interval-ms:30000}", initialDelayString = "${settings.archive.touch-flush-interval-ms:30000}")
+    public void flush() {
+        List<Touch> touches = new ArrayList<>();
+
+        for (Touch touch = this.pending.poll(); touch != null; touch = this.pending.poll()) {
+            touches.add(touch);
+        }
+
+        if (touches.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<Touch>> byShard = new LinkedHashMap<>();
+        List<Touch> retry = new ArrayList<>();
+
+        for (Touch touch : touches) {
+            try {
+                byShard.computeIfAbsent(this.shardDirectory.resolveForWrite(touch.serviceId), shard -> new ArrayList<>()).add(touch);
+            } catch (ServiceMigratingException e) {
+                retry.add(touch);
+            }
+        }
+
+        for (Map.Entry<String, List<Touch>> entry : byShard.entrySet()) {
+            try {
+                this.adaptiveConcurrencyLimiter.execute(
+                        Priority.BULK_READ,
+                        () -> ShardContext.callOn(entry.getKey(), () -> this.write(entry.getValue()))
+                );
+            } catch (LimitExceededException e) {
+                retry.addAll(entry.getValue());
+            } catch (RuntimeException e) {
+                LOGGER.error("[SSAPI]: Could not record the date [{}] settings were last used on shard [{}].", entry.getValue().size(), entry.getKey(), e);
+            }
+        }
+
+        this.pending.addAll(retry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.flush();
+    }
+
+    private int[][] write(List<Touch> touches) {
+        List<Object[]> settings = new ArrayList<>();
+        List<Object[]> services = new ArrayList<>();
+
+        for (Touch touch : touches) {
+            Date date = Date.valueOf(touch.day);
+
+            if (touch.name == null) {
+                services.add(new Object[]{date, touch.serviceId, date});
+            } else {
+                settings.add(new Object[]{date, touch.serviceId, touch.name, date});
+            }
+        }
+
+        return new int[][]{
+                settings.isEmpty() ? new int[0] : this.jdbcTemplate.batchUpdate(TOUCH_SETTING_SQL, settings),
+                services.isEmpty() ? new int[0] : this.jdbcTemplate.batchUpdate(TOUCH_SERVICE_SQL, services)
+        };
+    }
+
+    /**
+     * Forgets the settings read on earlier days, so they are queued again when read today.
+     */
+    private synchronized void startDay(long nowMillis) {
+        if (this.todayEndsMillis > nowMillis) {
+            return;
+        }
+
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate day = LocalDate.now(zone);
+
+        this.seen.clear();
+        this.today = day;
+        this.todayEndsMillis = day.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static final class Touch {
+
+        private final Long serviceId;
+        private final String name;
+        private final LocalDate day;
+
+        private Touch(Long serviceId, String name, LocalDate day) {
+            this.serviceId = serviceId;
+            this.name = name;
+            this.day = day;
+        }
+    }
+}
@@ -0,0 +1,301 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.archive;
+
+import com.pcoetsee.settingservice.dto.ArchivedSettingDTO;
+import com.pcoetsee.settingservice.persistence.dao.SettingDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Moves settings between the `settings` table and the `settings_archive` table of the shard currently selected.
+ * <p>
+ * Stale settings are found by walking the `date_last_used` index in chunks, continuing after the last setting seen
+ * instead of skipping over an offset, so every chunk costs the same no matter how far the walk has come. Methods that
+ * move settings must run inside a transaction.
+ */
+@Component
+public class SettingsArchive {
+
+    private static final String SELECT_UNDATED_SQL =
+            "SELECT `id` FROM `settings` WHERE `date_last_used` IS NULL AND `id` > ? ORDER BY `id` LIMIT ?";
+
+    private static final String UPDATE_UNDATED_SQL =
+            "UPDATE `settings` SET `date_last_used` = :day WHERE `id` IN (:ids) AND `date_last_used` IS NULL";
+
+    private static final String SELECT_STALE_SQL =
+            "SELECT `id`, `service_id`, `date_last_used` FROM `settings` WHERE `date_last_used` < ? "
+                    + "AND (`date_last_used` > ? OR (`date_last_used` = ? AND `id` > ?)) ORDER BY `date_last_used`, `id` LIMIT ?";
+
+    private static final String LOCK_STALE_SQL =
+            "SELECT `id`, `service_id`, `name` FROM `settings` WHERE `id` IN (:ids) AND `date_last_used` < :cutoff FOR UPDATE";
+
+    private static final String DELETE_ARCHIVED_SQL = "DELETE FROM `settings_archive` WHERE `service_id` = ? AND `name` = ?";
+
+    private static final String ARCHIVE_SQL =
+            "INSERT INTO `settings_archive` (`service_id`, `name`, `value`, `date_last_used`, `secret`, `key_version`, `version`, "
+                    + "`blob_size`, `blob_sha256`, `date_archived`) "
+                    + "SELECT `service_id`, `name`, `value`, `date_last_used`, `secret`, `key_version`, `version`, `blob_size`, `blob_sha256`, :today "
+                    + "FROM `settings` WHERE `id` IN (:ids)";
+
+    private static final String DELETE_SETTINGS_SQL = "DELETE FROM `settings` WHERE `id` IN (:ids)";
+
+    private static final String SELECT_ARCHIVED_SQL =
+            "SELECT `name`, `date_last_used`, `secret`, `version`, `date_archived` FROM `settings_archive` WHERE `service_id` = ? ORDER BY `name`";
+
+    private static final String LOCK_ARCHIVED_SQL =
+            "SELECT `id`, `value`, `secret`, `key_version`, `version`, `blob_size`, `blob_sha256` FROM `settings_archive` "
+                    + "WHERE `service_id` = ? AND `name` = ? FOR UPDATE";
+
+    private static final String SELECT_LIVE_SQL = "SELECT COUNT(*) FROM `settings` WHERE `service_id` = ? AND `name` = ?";
+
+    private static final String RESTORE_SQL =
+            "INSERT INTO `settings` (`service_id`, `name`, `value`, `date_last_used`, `secret`, `key_version`, `version`, `blob_size`, `blob_sha256`) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String DELETE_RESTORED_SQL = "DELETE FROM `settings_archive` WHERE `id` = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public SettingsArchive(@Autowired JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    }
+
+    /**
+     * Finds settings that have never been read since reads started being recorded.
+     *
+     * @param afterId only settings with a greater ID are returned
+     * @param limit   the maximum number of IDs returned
+     * @return the IDs of the settings in ascending order, not null
+     */
+    public List<Long> findUndated(long afterId, int limit) {
+        return this.jdbcTemplate.queryForList(SELECT_UNDATED_SQL, Long.class, afterId, limit);
+    }
+
+    /**
+     * Dates settings that have never been read as if they were read on the supplied day, so they are only archived
+     * once they go unread for the full period from then on.
+     *
+     * @return the number of settings dated
+     */
+    public int markUndatedUsed(List<Long> ids, LocalDate day) {
+        return this.namedParameterJdbcTemplate.update(
+                UPDATE_UNDATED_SQL,
+                new MapSqlParameterSource().addValue("day", Date.valueOf(day)).addValue("ids", ids)
+        );
+    }
+
+    /**
+     * Finds the next chunk of settings last read before the cutoff, in order of the date they were last read.
+     *
+     * @param cutoff the day settings must have been last read before, not null
+     * @param after  the last setting of the previous chunk, null starts at the beginning
+     * @param limit  the maximum number of settings returned
+     * @return the stale settings, not null
+     */
+    public List<StaleSetting> findStale(LocalDate cutoff, StaleSetting after, int limit) {
+        Date afterDate = after == null ? new Date(0) : after.dateLastUsed;
+        long afterId = after == null ? 0 : after.id;
+
+        return this.jdbcTemplate.query(
+                SELECT_STALE_SQL,
+                (resultSet, i) -> new StaleSetting(resultSet.getLong(1), resultSet.getLong(2), resultSet.getDate(3)),
+                Date.valueOf(cutoff), afterDate, afterDate, afterId, limit
+        );
+    }
+
+    /**
+     * Moves the supplied settings to the archive, unless they were read since they were found to be stale. An archived
+     * setting with the same name is replaced. The revisions of the services must already be locked, so settings are
+     * locked in the same order writers lock them.
+     *
+     * @param ids    the IDs of the settings to move, not empty
+     * @param cutoff the day settings must still have been last read before, not null
+     * @param today  the day recorded as the date the settings were archived, not null
+     * @return the names of the moved settings by service ID, not null
+     */
+    public Map<Long, Set<String>> archive(List<Long> ids, LocalDate cutoff, LocalDate today) {
+        Map<Long, Set<String>> archived = new LinkedHashMap<>();
+        List<Long> locked = new ArrayList<>(ids.size());
+        List<Object[]> names = new ArrayList<>(ids.size());
+
+        this.namedParameterJdbcTemplate.query(
+                LOCK_STALE_SQL,
+                new MapSqlParameterSource().addValue("ids", ids).addValue("cutoff", Date.valueOf(cutoff)),
+                resultSet -> {
+                    locked.add(resultSet.getLong(1));
+                    names.add(new Object[]{resultSet.getLong(2), resultSet.getString(3)});
+                    archived.computeIfAbsent(resultSet.getLong(2), id -> new LinkedHashSet<>()).add(resultSet.getString(3));
+                }
+        );
+
+        if (locked.isEmpty()) {
+            return archived;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("ids", locked)
+                .addValue("today", Date.valueOf(today));
+
+        this.jdbcTemplate.batchUpdate(DELETE_ARCHIVED_SQL, names);
+        this.namedParameterJdbcTemplate.update(ARCHIVE_SQL, parameters);
+        this.namedParameterJdbcTemplate.update(DELETE_SETTINGS_SQL, parameters);
+
+        return archived;
+    }
+
+    /**
+     * @param serviceId the ID of the service, not null
+     * @return the archived settings of the service ordered by name, without their values, not null
+     */
+    public List<ArchivedSettingDTO> findArchived(Long serviceId) {
+        ZoneId zone = ZoneId.systemDefault();
+
+        return this.jdbcTemplate.query(SELECT_ARCHIVED_SQL, (resultSet, i) -> {
+            ArchivedSettingDTO archivedSettingDTO = new ArchivedSettingDTO();
+
+            archivedSettingDTO.setName(resultSet.getString(1));
+            archivedSettingDTO.setDateLastUsed(SettingsArchive.toZonedDateTime(resultSet.getDate(2), zone));
+            archivedSettingDTO.setSecret(resultSet.getBoolean(3));
+            archivedSettingDTO.setVersion(resultSet.getLong(4));
+            archivedSettingDTO.setDateArchived(SettingsArchive.toZonedDateTime(resultSet.getDate(5), zone));
+
+            return archivedSettingDTO;
+        }, serviceId);
+    }
+
+    /**
+     * Moves an archived setting back to the `settings` table, dated as read on the supplied day, with its version
+     * incremented so writers holding the archived version notice the change. Secret values keep the key they were
+     * encrypted with; the rotation job re-encrypts them if that key is no longer active. The revision of the service
+     * must already be locked, so the setting is locked in the same order writers lock it.
+     *
+     * @param serviceId the ID of the service the setting belongs to, not null
+     * @param name      the name of the setting, not null
+     * @param today     the day recorded as the date the setting was last used, not null
+     * @return the restored setting, not attached to a persistence context, or null when no such setting is archived
+     * @throws IllegalArgumentException when a setting with the same name exists
+     */
+    public SettingDAO restore(Long serviceId, String name, LocalDate today) throws IllegalArgumentException {
+        List<SettingDAO> archived = this.jdbcTemplate.query(LOCK_ARCHIVED_SQL, (resultSet, i) -> SettingsArchive.readArchived(resultSet), serviceId, name);
+
+        if (archived.isEmpty()) {
+            return null;
+        }
+
+        Long live = this.jdbcTemplate.queryForObject(SELECT_LIVE_SQL, Long.class, serviceId, name);
+
+        if (live != null && live > 0) {
+            throw new IllegalArgumentException("A setting named [" + name + "] exists, delete it before restoring the archived one.");
+        }
+
+        SettingDAO settingDAO = archived.get(0);
+
+        settingDAO.setName(name);
+        settingDAO.setVersion(settingDAO.getVersion() + 1);
+        settingDAO.setDateLastUsed(today.atStartOfDay(ZoneId.systemDefault()));
+
+        this.jdbcTemplate.update(
+                RESTORE_SQL,
+                serviceId,
+                name,
+                settingDAO.getValue(),
+                Date.valueOf(today),
+                settingDAO.isSecret(),
+                settingDAO.getKeyVersion(),
+                settingDAO.getVersion(),
+                settingDAO.getBlobSize(),
+                settingDAO.getBlobSha256()
+        );
+        this.jdbcTemplate.update(DELETE_RESTORED_SQL, settingDAO.getId());
+        settingDAO.setId(null);
+
+        return settingDAO;
+    }
+
+    private static SettingDAO readArchived(ResultSet resultSet) throws SQLException {
+        SettingDAO settingDAO = new SettingDAO();
+        int keyVersion = resultSet.getInt(4);
+
+        settingDAO.setKeyVersion(resultSet.wasNull() ? null : keyVersion);
+
+        long blobSize = resultSet.getLong(6);
+
+        settingDAO.setBlobSize(resultSet.wasNull() ? null : blobSize);
+        settingDAO.setId(resultSet.getLong(1));
+        settingDAO.setValue(resultSet.getString(2));
+        settingDAO.setSecret(resultSet.getBoolean(3));
+        settingDAO.setVersion(resultSet.getLong(5));
+        settingDAO.setBlobSha256(resultSet.getString(7));
+
+        return settingDAO;
+    }
+
+    private static ZonedDateTime toZonedDateTime(Date date, ZoneId zone) {
+        return date == null ? null : date.toLocalDate().atStartOfDay(zone);
+    }
+
+    /**
+     * A setting found to be stale, identified by its ID and the position it was found at in the scan.
+     */
+    public static final class StaleSetting {
+
+        private final long id;
+        private final long serviceId;
+        private final Date dateLastUsed;
+
+        StaleSetting(long id, long serviceId, Date dateLastUsed) {
+            this.id = id;
+            this.serviceId = serviceId;
+            this.dateLastUsed = dateLastUsed;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public long getServiceId() {
+            return serviceId;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.archive;
+
+import com.pcoetsee.settingservice.audit.AuditAction;
+import com.pcoetsee.settingservice.audit.AuditTrail;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.ServiceMigratingException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+import com.pcoetsee.settingservice.revision.ServiceRevisionStore;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This job moves settings that have not been read for {@link ArchiveProperties#getStaleDays()} days to the archive,
+ * where they can be listed and restored.
+ * <p>
+ * Settings that have never been read since reads started being recorded are first dated today, so turning archiving on
+ * does not archive every setting at once. Every shard is then walked along the `date_last_used` index in small chunks,
+ * each moved in its own transaction, with a pause in between. The work goes through the concurrency limiter at the
+ * lowest priority, so it backs off as soon as live traffic needs the database. A setting read after it was found to be
+ * stale is left alone.
+ * <p>
+ * Settings are only archived on the shard their service is currently written to, so nothing is archived for services
+ * being moved between shards, or left behind on a shard a service moved away from.
+ */
+@Component
+public class SettingsArchiveJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SettingsArchiveJob.class);
+
+    private final SettingsArchive settingsArchive;
+    private final ArchiveProperties archiveProperties;
+    private final ServiceRepository serviceRepository;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final ShardDirectory shardDirectory;
+    private final ServiceRevisionStore serviceRevisionStore;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final AuditTrail auditTrail;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean follower;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SettingsArchiveJob(
+            @Autowired SettingsArchive settingsArchive,
+            @Autowired ArchiveProperties archiveProperties,
+            @Autowired ServiceRepository serviceRepository,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired ServiceRevisionStore serviceRevisionStore,
+            @Autowired ApplicationEventPublisher applicationEventPublisher,
+            @Autowired AuditTrail auditTrail,
+            @Autowired PlatformTransactionManager transactionManager,
+            @Autowired(required = false) ReplicaStore replicaStore
+    ) {
+        this.settingsArchive = settingsArchive;
+        this.archiveProperties = archiveProperties;
+        this.serviceRepository = serviceRepository;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.shardDirectory = shardDirectory;
+        this.serviceRevisionStore = serviceRevisionStore;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.auditTrail = auditTrail;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.follower = replicaStore != null;
+    }
+
+    /**
+     * Moves all settings that have gone unread for too long to the archive.
+     */
+    @Scheduled(fixedDelayString = "${settings.archive.interval-ms:3600000}", initialDelayString = "${settings.archive.interval-ms:3600000}")
+    public void archive() {
+        if (!this.archiveProperties.isEnabled() || this.follower || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+        int archived = 0;
+
+        try {
+            for (String shard : this.shardDirectory.getShardNames()) {
+                this.dateUndated(shard, today);
+                archived += this.archiveShard(shard, today.minusDays(this.archiveProperties.getStaleDays()), today);
+            }
+        } catch (LimitExceededException e) {
+            LOGGER.info("[SSAPI]: Database is busy, pausing archiving of unused settings until the next run.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.running.set(false);
+        }
+
+        if (archived > 0) {
+            LOGGER.info("[SSAPI]: Archived [{}] settings unused for [{}] days.", archived, this.archiveProperties.getStaleDays());
+        }
+    }
+
+    private void dateUndated(String shard, LocalDate today) throws InterruptedException {
+        long afterId = 0;
+
+        while (true) {
+            long chunkAfterId = afterId;
+            List<Long> ids = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> this.settingsArchive.findUndated(chunkAfterId, this.archiveProperties.getBatchSize()))
+            );
+
+            if (ids.isEmpty()) {
+                return;
+            }
+
+            this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> this.settingsArchive.markUndatedUsed(ids, today))
+            );
+
+            afterId = ids.get(ids.size() - 1);
+
+            Thread.sleep(this.archiveProperties.getPauseMs());
+        }
+    }
+
+    private int archiveShard(String shard, LocalDate cutoff, LocalDate today) throws InterruptedException {
+        SettingsArchive.StaleSetting after = null;
+        Map<Long, Boolean> owned = new LinkedHashMap<>();
+        Map<Long, String> serviceNames = new LinkedHashMap<>();
+        int archived = 0;
+
+        while (true) {
+            SettingsArchive.StaleSetting chunkAfter = after;
+            List<SettingsArchive.StaleSetting> chunk = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> this.settingsArchive.findStale(cutoff, chunkAfter, this.archiveProperties.getBatchSize()))
+            );
+
+            if (chunk.isEmpty()) {
+                return archived;
+            }
+
+            List<Long> ids = new ArrayList<>(chunk.size());
+            Set<Long> serviceIds = new TreeSet<>();
+
+            for (SettingsArchive.StaleSetting staleSetting : chunk) {
+                if (owned.computeIfAbsent(staleSetting.getServiceId(), serviceId -> this.isWrittenTo(shard, serviceId))) {
+                    serviceNames.computeIfAbsent(staleSetting.getServiceId(), this::serviceName);
+                    serviceIds.add(staleSetting.getServiceId());
+                    ids.add(staleSetting.getId());
+                }
+            }
+
+            if (!ids.isEmpty()) {
+                List<SettingsChangedEvent> events = this.adaptiveConcurrencyLimiter.execute(
+                        Priority.BULK_READ,
+                        () -> ShardContext.callOn(shard, () -> this.transactionTemplate.execute(status -> this.archiveChunk(ids, serviceIds, cutoff, today, serviceNames)))
+                );
+
+                for (SettingsChangedEvent event : events == null ? Collections.<SettingsChangedEvent>emptyList() : events) {
+                    archived += event.getSettingNames().size();
+                    this.applicationEventPublisher.publishEvent(event);
+
+                    for (String name : event.getSettingNames()) {
+                        this.auditTrail.record(AuditAction.ARCHIVE, AuditTrail.SETTING, event.getServiceName(), name, "revision=" + event.getRevision());
+                    }
+                }
+            }
+
+            after = chunk.get(chunk.size() - 1);
+
+            Thread.sleep(this.archiveProperties.getPauseMs());
+        }
+    }
+
+    /**
+     * Archives a chunk of settings, on the shard currently selected and inside a transaction.
+     * <p>
+     * Writers lock the revision of a service before its settings, so the revisions of all services in the chunk are
+     * locked first, in ascending ID order, before any setting is locked. A service none of whose settings turn out to
+     * still be stale has its revision moved on without a change, which only costs its clients a fetch.
+     *
+     * @param serviceIds the IDs of the services the settings belong to, in ascending order, not empty
+     * @return an event per service with the names of the settings that were archived, to be published once the
+     * transaction has been committed, not null
+     */
+    private List<SettingsChangedEvent> archiveChunk(List<Long> ids, Set<Long> serviceIds, LocalDate cutoff, LocalDate today, Map<Long, String> serviceNames) {
+        Map<Long, Long> revisions = new LinkedHashMap<>();
+
+        for (Long serviceId : serviceIds) {
+            revisions.put(serviceId, this.serviceRevisionStore.increment(serviceId));
+        }
+
+        Map<Long, Set<String>> archived = this.settingsArchive.archive(ids, cutoff, today);
+        List<SettingsChangedEvent> events = new ArrayList<>(archived.size());
+
+        for (Map.Entry<Long, Set<String>> entry : archived.entrySet()) {
+            events.add(new SettingsChangedEvent(
+                    entry.getKey(),
+                    serviceNames.get(entry.getKey()),
+                    revisions.get(entry.getKey()),
+                    entry.getValue()
+            ));
+        }
+
+        return events;
+    }
+
+    private boolean isWrittenTo(String shard, Long serviceId) {
+        try {
+            return shard.equals(this.shardDirectory.resolveForWrite(serviceId));
+        } catch (ServiceMigratingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Services live on the primary database, so names are read before the transaction on the shard takes a connection.
+     */
+    private String serviceName(Long serviceId) {
+        return ShardContext.callOn(null, () -> this.serviceRepository.findById(serviceId).map(ServiceDAO::getName).orElse(null));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.audit;
+
+/**
+ * A single entry in the audit trail.
+ * <p>
+ * Records are mutable so the slots of the {@link AuditRingBuffer} can be allocated once and reused, instead of creating
+ * a new object for every write.
+ */
+public class AuditRecord {
+
+    /**
+     * The time of the change, in milliseconds since the epoch.
+     */
+    private long time;
+
+    /**
+     * The name of the service that made the change, null if the request was not authenticated.
+     */
+    private String actor;
+
+    private AuditAction action;
+
+    /**
+     * The kind of record that changed, for example "service" or "setting".
+     */
+    private String entityType;
+
+    /**
+     * The name of the service that owns the record that changed.
+     */
+    private String serviceName;
+
+    /**
+     * The name of the record that changed, null if the record is the service itself.
+     */
+    private String entityName;
+
+    /**
+     * A description of the change, may be null.
+     */
+    private String detail;
+
+    public void set(long time, String actor, AuditAction action, String entityType, String serviceName, String entityName, String detail) {
+        this.time = time;
+        this.actor = actor;
+        this.action = action;
+        this.entityType = entityType;
+        this.serviceName = serviceName;
+        this.entityName = entityName;
+        this.detail = detail;
+    }
+
+    public void copyFrom(AuditRecord other) {
+        this.set(other.time, other.actor, other.action, other.entityType, other.serviceName, other.entityName, other.detail);
+    }
+
+    /**
+     * Drops the references held by this record, so a slot that has been written does not keep strings alive.
+     */
+    public void clear() {
+        this.set(0, null, null, null, null, null, null);
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getActor() {
+        return actor;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public String getEntityType() {
+        return entityType;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public String toString() {
+        return "AuditRecord{" +
+                "time=" + time +
+                ", actor='" + actor + '\'' +
+                ", action=" + action +
+                ", entityType='" + entityType + '\'' +
+                ", serviceName='" + serviceName + '\'' +
+                ", entityName='" + entityName + '\'' +
+                ", detail='" + detail + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.audit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded buffer of audit records, handing them from request threads to the background writer.
+ * <p>
+ * All slots are allocated up front and reused, so recording a change does not allocate. Records are copied into a slot
+ * when they are offered and copied out again when they are drained, which lets the writer hold the lock only for the
+ * copy and not while it talks to the database.
+ */
+public class AuditRingBuffer {
+
+    private final AuditRecord[] slots;
+    private final OverflowPolicy overflowPolicy;
+    private final long blockTimeoutNanos;
+    private final int batchSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+
+    /**
+     * The index of the oldest record, the next to be drained. Only accessed while holding the lock.
+     */
+    private int head;
+
+    /**
+     * Set when the writer should drain without waiting for a full batch. Only accessed while holding the lock.
+     */
+    private boolean flushRequested;
+
+    /**
+     * The number of records waiting. Only modified while holding the lock, but read without it.
+     */
+    private volatile int size;
+
+    /**
+     * @param capacity       the number of records the buffer can hold, must be at least 1
+     * @param batchSize      the number of waiting records at which the writer is woken up, must be at least 1
+     * @param overflowPolicy what to do with a new record when the buffer is full, not null
+     * @param blockTimeoutMs how long a caller waits for room when the policy is {@link OverflowPolicy#BLOCK}
+     */
+    public AuditRingBuffer(int capacity, int batchSize, OverflowPolicy overflowPolicy, long blockTimeoutMs) {
+        if (capacity < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("Audit buffer capacity and batch size must be at least 1");
+        }
+
+        this.slots = new AuditRecord[capacity];
+        this.batchSize = Math.min(batchSize, capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+
+        for (int i = 0; i < capacity; i++) {
+            this.slots[i] = new AuditRecord();
+        }
+    }
+
+    /**
+     * Adds a record to the buffer, applying the overflow policy if it is full.
+     *
+     * @return true if the record was added without dropping any record, false if a record was dropped
+     */
+    public boolean offer(long time, String actor, AuditAction action, String entityType, String serviceName, String entityName, String detail) {
+        boolean dropped = false;
+
+        this.lock.lock();
+
+        try {
+            if (this.size == this.slots.length) {
+                switch (this.overflowPolicy) {
+                    case DROP_OLDEST:
+                        this.slots[this.head].clear();
+                        this.head = (this.head + 1) % this.slots.length;
+                        this.size--;
+                        dropped = true;
+                        break;
+                    case BLOCK:
+                        if (!this.awaitRoom()) {
+                            return false;
+                        }
+                        break;
+                    default:
+                        return false;
+                }
+            }
+
+            this.slots[(this.head + this.size) % this.slots.length].set(time, actor, action, entityType, serviceName, entityName, detail);
+            this.size++;
+
+            if (this.size == this.batchSize) {
+                this.batchReady.signal();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+
+        return !dropped;
+    }
+
+    /**
+     * Waits until a full batch is waiting or the timeout passes, then moves up to {@code batch.length} of the oldest
+     * records into the supplied array.
+     *
+     * @param batch         the records to copy into, not null
+     * @param timeoutMillis how long to wait for a full batch
+     * @return the number of records copied into the start of the array, 0 if none are waiting
+     * @throws InterruptedException when the thread is interrupted while waiting
+     */
+    public int drainTo(AuditRecord[] batch, long timeoutMillis) throws InterruptedException {
+        this.lock.lockInterruptibly();
+
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+            while (this.size < this.batchSize && nanos > 0 && !this.flushRequested) {
+                nanos = this.batchReady.awaitNanos(nanos);
+            }
+
+            this.flushRequested = false;
+
+            int count = Math.min(this.size, batch.length);
+
+            for (int i = 0; i < count; i++) {
+                AuditRecord slot = this.slots[this.head];
+
+                batch[i].copyFrom(slot);
+                slot.clear();
+                this.head = (this.head + 1) % this.slots.length;
+            }
+
+            this.size -= count;
+
+            if (count > 0) {
+                this.notFull.signalAll();
+            }
+
+            return count;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up the writer if it is waiting for a full batch, so it drains whatever is waiting straight away.
+     */
+    public void wakeUp() {
+        this.lock.lock();
+
+        try {
+            this.flushRequested = true;
+            this.batchReady.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public int capacity() {
+        return this.slots.length;
+    }
+
+    /**
+     * Waits for a slot to become free. Must be called while holding the lock.
+     *
+     * @return true if there is room, false if the timeout passed or the thread was interrupted
+     */
+    private boolean awaitRoom() {
+        long nanos = this.blockTimeoutNanos;
+
+        try {
+            while (this.size == this.slots.length) {
+                if (nanos <= 0) {
+                    return false;
+                }
+
+                nanos = this.notFull.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.audit;
+
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Records who changed which service or setting, and when, in the `audit_log` table.
+ * <p>
+ * Writing the record in the transaction of the change would add a second write to every request, so changes are only
+ * handed to a {@link AuditRingBuffer} once they have been committed. A single background thread writes them to the
+ * primary database in batches. When the database can not keep up and the buffer fills, the configured
+ * {@link OverflowPolicy} decides which records are lost; every lost record is counted.
+ */
+@Component
+public class AuditTrail {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditTrail.class);
+
+    /**
+     * The entity type of records describing a change to a service.
+     */
+    public static final String SERVICE = "service";
+
+    /**
+     * The entity type of records describing a change to a setting.
+     */
+    public static final String SETTING = "setting";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO `audit_log` (`time`, `actor`, `action`, `entity_type`, `service_name`, `entity_name`, `detail`) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    /**
+     * The size of the `detail` column, longer descriptions are cut off.
+     */
+    private static final int MAX_DETAIL_LENGTH = 1024;
+
+    private final AuditProperties auditProperties;
+    private final JdbcTemplate jdbcTemplate;
+    private final AuditRingBuffer buffer;
+
+    /**
+     * The records being written, only used by the writer thread.
+     */
+    private final AuditRecord[] batch;
+
+    private final Counter accepted;
+    private final Counter dropped;
+    private final Counter written;
+    private final Counter failed;
+    private final Timer writeTimer;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditTrail(
+            @Autowired AuditProperties auditProperties,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        this.auditProperties = auditProperties;
+        this.jdbcTemplate = jdbcTemplate;
+        this.buffer = new AuditRingBuffer(
+                auditProperties.getCapacity(),
+                auditProperties.getBatchSize(),
+                auditProperties.getOverflowPolicy(),
+                auditProperties.getBlockTimeoutMs()
+        );
+        this.batch = new AuditRecord[auditProperties.getBatchSize()];
+
+        for (int i = 0; i < this.batch.length; i++) {
+            this.batch[i] = new AuditRecord();
+        }
+
+        Gauge.builder("settings.audit.buffer.size", this.buffer, AuditRingBuffer::size)
+                .description("The number of audit records waiting to be written")
+                .register(meterRegistry);
+        this.accepted = this.recordCounter(meterRegistry, "accepted");
+        this.dropped = this.recordCounter(meterRegistry, "dropped");
+        this.written = this.recordCounter(meterRegistry, "written");
+        this.failed = this.recordCounter(meterRegistry, "failed");
+        this.writeTimer = Timer.builder("settings.audit.write")
+                .description("The time taken to write a batch of audit records")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!this.auditProperties.isEnabled()) {
+            LOGGER.info("[SSAPI]: Audit trail disabled.");
+            return;
+        }
+
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Stops the writer once every waiting record has been written, or the shutdown timeout has passed.
+     */
+    @PreDestroy
+    public void stop() {
+        if (this.writer == null) {
+            return;
+        }
+
+        this.running = false;
+        this.buffer.wakeUp();
+
+        try {
+            this.writer.join(this.auditProperties.getShutdownTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.buffer.size() > 0) {
+            LOGGER.warn("[SSAPI]: Audit trail stopped with [{}] records not written.", this.buffer.size());
+        }
+    }
+
+    /**
+     * Records a change. Must only be called once the change has been committed. Never throws; a record that can not be
+     * buffered is counted as dropped.
+     *
+     * @param action      what was done, not null
+     * @param entityType  the kind of record that changed, not null
+     * @param serviceName the name of the service owning the record, not null
+     * @param entityName  the name of the record that changed, null if the record is the service itself
+     * @param detail      a description of the change, may be null, must never contain secrets
+     */
+    public void record(AuditAction action, String entityType, String serviceName, String entityName, String detail) {
+        if (!this.auditProperties.isEnabled()) {
+            return;
+        }
+
+        this.accepted.increment();
+
+        if (!this.buffer.offer(
+                System.currentTimeMillis(),
+                AuthenticatedService.getName(),
+                action,
+                entityType,
+                serviceName,
+                entityName,
+                StringUtils.truncate(detail, MAX_DETAIL_LENGTH)
+        )) {
+            this.dropped.increment();
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (this.running || this.buffer.size() > 0) {
+                int count = this.buffer.drainTo(this.batch, this.auditProperties.getFlushIntervalMs());
+
+                if (count > 0) {
+                    this.write(count);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(int count) {
+        try {
+            this.writeTimer.record(() -> this.jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement preparedStatement, int i) throws SQLException {
+                    AuditRecord record = AuditTrail.this.batch[i];
+
+                    preparedStatement.setLong(1, record.getTime());
+                    preparedStatement.setString(2, record.getActor());
+                    preparedStatement.setString(3, record.getAction().name());
+                    preparedStatement.setString(4, record.getEntityType());
+                    preparedStatement.setString(5, record.getServiceName());
+                    preparedStatement.setString(6, record.getEntityName());
+                    preparedStatement.setString(7, record.getDetail());
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return count;
+                }
+            }));
+            this.written.increment(count);
+        } catch (RuntimeException e) {
+            this.failed.increment(count);
+            LOGGER.error("[SSAPI]: Could not write [{}] audit records, they are lost.", count, e);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                this.batch[i].clear();
+            }
+        }
+    }
+
+    private Counter recordCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("settings.audit.records")
+                .description("The number of audit records, by what happened to them")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
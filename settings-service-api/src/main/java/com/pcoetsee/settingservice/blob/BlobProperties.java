@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.blob;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for storing large values, bound from the `settings.blobs` properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "settings.blobs")
+public class BlobProperties {
+
+    /**
+     * The largest value, in bytes before compression, that can be stored.
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * The size in bytes of the compressed chunks a value is stored in. Each chunk is written and read by its own
+     * statement, so this is also the most of a value held in memory at once.
+     */
+    private int chunkBytes = 256 * 1024;
+
+    /**
+     * How long, in milliseconds, chunks no setting refers to are kept before they are removed. Covers uploads still
+     * in progress and downloads of a value that has just been replaced.
+     */
+    private long sweepGraceMs = 3600000;
+
+    /**
+     * The number of unused values removed per query when sweeping.
+     */
+    private int sweepBatchSize = 100;
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    public void setChunkBytes(int chunkBytes) {
+        this.chunkBytes = chunkBytes;
+    }
+
+    public long getSweepGraceMs() {
+        return sweepGraceMs;
+    }
+
+    public void setSweepGraceMs(long sweepGraceMs) {
+        this.sweepGraceMs = sweepGraceMs;
+    }
+
+    public int getSweepBatchSize() {
+        return sweepBatchSize;
+    }
+
+    public void setSweepBatchSize(int sweepBatchSize) {
+        this.sweepBatchSize = sweepBatchSize;
+    }
+}
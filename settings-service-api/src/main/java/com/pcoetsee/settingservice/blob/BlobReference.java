@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.blob;
+
+/**
+ * Where a large value of a setting is stored, read from the setting before the value itself is streamed.
+ */
+public final class BlobReference {
+
+    private final Long serviceId;
+    private final String shard;
+    private final long size;
+    private final String sha256;
+
+    public BlobReference(Long serviceId, String shard, long size, String sha256) {
+        this.serviceId = serviceId;
+        this.shard = shard;
+        this.size = size;
+        this.sha256 = sha256;
+    }
+
+    /**
+     * @return the ID of the service the setting belongs to, not null
+     */
+    public Long getServiceId() {
+        return serviceId;
+    }
+
+    /**
+     * @return the shard the value is read from, not null
+     */
+    public String getShard() {
+        return shard;
+    }
+
+    /**
+     * @return the size of the value in bytes, before compression
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the SHA-256 of the value, in lower case hex, not null
+     */
+    public String getSha256() {
+        return sha256;
+    }
+
+    /**
+     * @return the entity tag of the value, which only changes when the value does
+     */
+    public String getETag() {
+        return "\"" + sha256 + "\"";
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.blob;
+
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.ValueTooLargeException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stores values too large for the `settings` table in the `setting_blobs` table of the shard the service lives on.
+ * <p>
+ * A value is gzip compressed and split into chunks of {@link BlobProperties#getChunkBytes()} bytes while it is read
+ * from the client, and read back one chunk per query while it is written to the client, so no more than a chunk of it
+ * is ever held in memory and no connection is held while the client is slow. Chunks are addressed by the service and
+ * the SHA-256 of the uncompressed value, so the setting only records the size and the hash, and settings of a service
+ * holding the same value share its chunks.
+ * <p>
+ * An upload is written under a temporary key first, outside of any transaction, and only given its hash when it is
+ * attached to a setting in the transaction that stores the setting. Chunks no setting refers to any more, including
+ * those of uploads that never finished, are removed by a sweep once {@link BlobProperties#getSweepGraceMs()} has
+ * passed.
+ */
+@Component
+public class SettingBlobStore {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SettingBlobStore.class);
+
+    private static final String STAGING_PREFIX = "upload-";
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String INSERT_CHUNK_SQL =
+            "INSERT INTO `setting_blobs` (`service_id`, `sha256`, `seq`, `data`, `creation_time`) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SELECT_CHUNK_SQL =
+            "SELECT `data` FROM `setting_blobs` WHERE `service_id` = ? AND `sha256` = ? AND `seq` = ?";
+
+    private static final String TOUCH_SQL =
+            "UPDATE `setting_blobs` SET `creation_time` = ? WHERE `service_id` = ? AND `sha256` = ?";
+
+    private static final String RENAME_SQL =
+            "UPDATE `setting_blobs` SET `sha256` = ?, `creation_time` = ? WHERE `service_id` = ? AND `sha256` = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM `setting_blobs` WHERE `service_id` = ? AND `sha256` = ?";
+
+    /**
+     * No table aliases, since MySQL before 8.0.16 does not allow one on the table a DELETE removes rows from.
+     */
+    private static final String UNREFERENCED =
+            "`setting_blobs`.`creation_time` < ? " +
+                    "AND NOT EXISTS (SELECT 1 FROM `settings` WHERE `settings`.`service_id` = `setting_blobs`.`service_id` " +
+                    "AND `settings`.`blob_sha256` = `setting_blobs`.`sha256`) " +
+                    "AND NOT EXISTS (SELECT 1 FROM `settings_archive` WHERE `settings_archive`.`service_id` = `setting_blobs`.`service_id` " +
+                    "AND `settings_archive`.`blob_sha256` = `setting_blobs`.`sha256`)";
+
+    private static final String SELECT_UNREFERENCED_SQL =
+            "SELECT `service_id`, `sha256` FROM `setting_blobs` WHERE `seq` = 0 AND " + UNREFERENCED + " LIMIT ?";
+
+    /**
+     * The conditions are checked again when deleting, so a value attached to a setting since it was found is kept.
+     */
+    private static final String DELETE_UNREFERENCED_SQL =
+            "DELETE FROM `setting_blobs` WHERE `service_id` = ? AND `sha256` = ? AND " + UNREFERENCED;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final ShardDirectory shardDirectory;
+    private final BlobProperties blobProperties;
+    private final boolean follower;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SettingBlobStore(
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired BlobProperties blobProperties,
+            @Autowired(required = false) ReplicaStore replicaStore
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.shardDirectory = shardDirectory;
+        this.blobProperties = blobProperties;
+        this.follower = replicaStore != null;
+    }
+
+    /**
+     * Reads a value to its end and writes it, compressed, to the supplied shard under a temporary key. Every chunk is
+     * written in its own statement. If anything fails, the chunks written so far are removed again.
+     *
+     * @param serviceId the ID of the service the value belongs to, not null
+     * @param shard     the shard the service is written to, not null
+     * @param content   the value, not closed, not null
+     * @return the staged value, to be attached to a setting with {@link #commit(Long, StagedBlob)}, not null
+     * @throws IOException             when the value can not be read
+     * @throws ValueTooLargeException  when the value is larger than {@link BlobProperties#getMaxBytes()}
+     * @throws LimitExceededException  when the database is too busy to store the value
+     */
+    public StagedBlob stage(Long serviceId, String shard, InputStream content) throws IOException, ValueTooLargeException, LimitExceededException {
+        String key = STAGING_PREFIX + UUID.randomUUID();
+        MessageDigest digest = SettingBlobStore.sha256();
+        ChunkOutputStream chunks = new ChunkOutputStream(serviceId, shard, key);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long size = 0;
+
+        try {
+            try (GZIPOutputStream gzip = new GZIPOutputStream(chunks, BUFFER_SIZE)) {
+                for (int read = content.read(buffer); read != -1; read = content.read(buffer)) {
+                    size += read;
+
+                    if (size > this.blobProperties.getMaxBytes()) {
+                        throw new ValueTooLargeException(this.blobProperties.getMaxBytes());
+                    }
+
+                    digest.update(buffer, 0, read);
+                    gzip.write(buffer, 0, read);
+                }
+
+                gzip.finish();
+            }
+
+            chunks.writeChunk();
+        } catch (IOException | RuntimeException e) {
+            this.discard(serviceId, shard, key);
+            throw e;
+        }
+
+        return new StagedBlob(key, size, SettingBlobStore.toHex(digest.digest()), chunks.seq);
+    }
+
+    /**
+     * Gives a staged value its hash, so settings can refer to it. When the service already holds the same value, the
+     * staged copy is dropped and the existing one kept. Must be called inside the transaction that stores the setting,
+     * on the shard the value was staged on.
+     *
+     * @param serviceId the ID of the service the value belongs to, not null
+     * @param stagedBlob the staged value, not null
+     * @throws IllegalStateException when the staged value was swept before it was attached
+     */
+    public void commit(Long serviceId, StagedBlob stagedBlob) throws IllegalStateException {
+        long now = System.currentTimeMillis();
+
+        // Touching the existing chunks locks them and moves them out of reach of a sweep running at the same time.
+        if (this.jdbcTemplate.update(TOUCH_SQL, now, serviceId, stagedBlob.getSha256()) > 0) {
+            this.jdbcTemplate.update(DELETE_SQL, serviceId, stagedBlob.getKey());
+            return;
+        }
+
+        if (this.jdbcTemplate.update(RENAME_SQL, stagedBlob.getSha256(), now, serviceId, stagedBlob.getKey()) != stagedBlob.getChunks()) {
+            throw new IllegalStateException("The upload of value " + stagedBlob.getSha256() + " expired before it was stored");
+        }
+    }
+
+    /**
+     * Removes a staged value that will not be attached to a setting. Failures are logged; the sweep removes it later.
+     *
+     * @param serviceId the ID of the service the value belongs to, not null
+     * @param shard     the shard the value was staged on, not null
+     * @param stagedBlob the staged value, not null
+     */
+    public void discard(Long serviceId, String shard, StagedBlob stagedBlob) {
+        this.discard(serviceId, shard, stagedBlob.getKey());
+    }
+
+    /**
+     * Writes a stored value to the supplied stream, reading one chunk per query.
+     *
+     * @param blobReference where the value is stored, not null
+     * @param compressed    true to write the value gzip compressed, as it is stored, false to decompress it
+     * @param out           the stream to write to, not closed, not null
+     * @throws IOException            when writing fails, or the value is no longer stored in full
+     * @throws LimitExceededException when the database is too busy to read the value
+     */
+    public void copyTo(BlobReference blobReference, boolean compressed, OutputStream out) throws IOException, LimitExceededException {
+        InputStream chunks = new ChunkInputStream(blobReference.getServiceId(), blobReference.getShard(), blobReference.getSha256());
+
+        if (compressed) {
+            SettingBlobStore.copy(chunks, out);
+            return;
+        }
+
+        try (GZIPInputStream gzip = new GZIPInputStream(chunks, BUFFER_SIZE)) {
+            SettingBlobStore.copy(gzip, out);
+        }
+    }
+
+    /**
+     * Removes the chunks of values no setting or archived setting refers to, once they are older than the grace
+     * period.
+     */
+    @Scheduled(fixedDelayString = "${settings.blobs.sweep-interval-ms:3600000}", initialDelayString = "${settings.blobs.sweep-interval-ms:3600000}")
+    public void sweep() {
+        if (this.follower || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - this.blobProperties.getSweepGraceMs();
+        int removed = 0;
+
+        try {
+            for (String shard : this.shardDirectory.getShardNames()) {
+                removed += this.sweepShard(shard, cutoff);
+            }
+        } catch (LimitExceededException e) {
+            LOGGER.info("[SSAPI]: Database is busy, pausing removal of unused large values until the next run.");
+        } finally {
+            this.running.set(false);
+        }
+
+        if (removed > 0) {
+            LOGGER.info("[SSAPI]: Removed [{}] large values no setting refers to.", removed);
+        }
+    }
+
+    private int sweepShard(String shard, long cutoff) {
+        int removed = 0;
+
+        while (true) {
+            List<Object[]> unreferenced = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> this.jdbcTemplate.query(
+                            SELECT_UNREFERENCED_SQL,
+                            (resultSet, i) -> new Object[]{resultSet.getLong(1), resultSet.getString(2)},
+                            cutoff, this.blobProperties.getSweepBatchSize()
+                    ))
+            );
+            int removedBefore = removed;
+
+            for (Object[] blob : unreferenced) {
+                int deleted = this.adaptiveConcurrencyLimiter.execute(
+                        Priority.BULK_READ,
+                        () -> ShardContext.callOn(shard, () -> this.jdbcTemplate.update(DELETE_UNREFERENCED_SQL, blob[0], blob[1], cutoff))
+                );
+
+                removed += deleted > 0 ? 1 : 0;
+            }
+
+            if (unreferenced.size() < this.blobProperties.getSweepBatchSize() || removed == removedBefore) {
+                return removed;
+            }
+        }
+    }
+
+    private void discard(Long serviceId, String shard, String key) {
+        try {
+            ShardContext.runOn(shard, () -> this.jdbcTemplate.update(DELETE_SQL, serviceId, key));
+        } catch (RuntimeException e) {
+            LOGGER.warn("[SSAPI]: Could not remove upload [{}] of service [{}], it is removed by the next sweep.", key, serviceId, e);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+
+        return hex.toString();
+    }
+
+    /**
+     * Collects compressed bytes and inserts them as a chunk whenever a chunk is full.
+     */
+    private final class ChunkOutputStream extends OutputStream {
+
+        private final Long serviceId;
+        private final String shard;
+        private final String key;
+        private final byte[] chunk = new byte[SettingBlobStore.this.blobProperties.getChunkBytes()];
+        private int length;
+        private int seq;
+
+        private ChunkOutputStream(Long serviceId, String shard, String key) {
+            this.serviceId = serviceId;
+            this.shard = shard;
+            this.key = key;
+        }
+
+        @Override
+        public void write(int b) {
+            this.write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) {
+            while (count > 0) {
+                int copied = Math.min(count, this.chunk.length - this.length);
+
+                System.arraycopy(bytes, offset, this.chunk, this.length, copied);
+                this.length += copied;
+                offset += copied;
+                count -= copied;
+
+                if (this.length == this.chunk.length) {
+                    this.writeChunk();
+                }
+            }
+        }
+
+        /**
+         * Inserts the bytes collected so far as the next chunk, if there are any.
+         */
+        private void writeChunk() {
+            if (this.length == 0) {
+                return;
+            }
+
+            byte[] data = this.length == this.chunk.length ? this.chunk : Arrays.copyOf(this.chunk, this.length);
+            int chunkSeq = this.seq;
+
+            SettingBlobStore.this.adaptiveConcurrencyLimiter.run(
+                    Priority.ADMIN_WRITE,
+                    () -> ShardContext.runOn(this.shard, () -> SettingBlobStore.this.jdbcTemplate.update(
+                            INSERT_CHUNK_SQL, this.serviceId, this.key, chunkSeq, data, System.currentTimeMillis()
+                    ))
+            );
+
+            this.seq++;
+            this.length = 0;
+        }
+    }
+
+    /**
+     * Reads the chunks of a value one at a time, fetching the next only once the previous one has been consumed.
+     */
+    private final class ChunkInputStream extends InputStream {
+
+        private final Long serviceId;
+        private final String shard;
+        private final String sha256;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private int seq;
+        private boolean ended;
+
+        private ChunkInputStream(Long serviceId, String shard, String sha256) {
+            this.serviceId = serviceId;
+            this.shard = shard;
+            this.sha256 = sha256;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+
+            return this.read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+
+            while (this.position == this.chunk.length) {
+                if (this.ended || !this.nextChunk()) {
+                    this.ended = true;
+                    return -1;
+                }
+            }
+
+            int read = Math.min(count, this.chunk.length - this.position);
+
+            System.arraycopy(this.chunk, this.position, bytes, offset, read);
+            this.position += read;
+
+            return read;
+        }
+
+        private boolean nextChunk() throws IOException {
+            int chunkSeq = this.seq;
+            List<byte[]> data = SettingBlobStore.this.adaptiveConcurrencyLimiter.execute(
+                    Priority.READ,
+                    () -> ShardContext.callOn(this.shard, () -> SettingBlobStore.this.jdbcTemplate.query(
+                            SELECT_CHUNK_SQL, (resultSet, i) -> resultSet.getBytes(1), this.serviceId, this.sha256, chunkSeq
+                    ))
+            );
+
+            if (data.isEmpty()) {
+                if (chunkSeq == 0) {
+                    throw new IOException("Value " + this.sha256 + " of service " + this.serviceId + " is no longer stored");
+                }
+
+                return false;
+            }
+
+            this.chunk = data.get(0);
+            this.position = 0;
+            this.seq++;
+
+            return true;
+        }
+    }
+}
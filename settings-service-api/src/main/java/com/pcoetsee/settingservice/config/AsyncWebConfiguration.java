@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.Callable;
+
+/**
+ * Configures how Spring MVC runs the work controllers hand off to a {@link com.pcoetsee.settingservice.limiter.Bulkhead}.
+ * <p>
+ * The security context is carried over to the executor threads by Spring Security itself. The request attributes are
+ * carried over here, so code running on those threads can still set response headers.
+ */
+@Configuration
+public class AsyncWebConfiguration implements WebMvcConfigurer {
+
+    private final ThreadPoolTaskExecutor adminExecutor;
+    private final long timeoutMillis;
+
+    public AsyncWebConfiguration(
+            @Autowired @Qualifier("adminExecutor") ThreadPoolTaskExecutor adminExecutor,
+            @Value("${settings.executors.admin.timeout-ms:60000}") long timeoutMillis
+    ) {
+        this.adminExecutor = adminExecutor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        // Only used for async work that did not name an executor of its own.
+        configurer.setTaskExecutor(this.adminExecutor);
+        configurer.setDefaultTimeout(this.timeoutMillis);
+        configurer.registerCallableInterceptors(new RequestAttributesInterceptor());
+    }
+
+    /**
+     * Exposes the request and response of the request being handled to the thread the work runs on.
+     */
+    private static class RequestAttributesInterceptor implements CallableProcessingInterceptor {
+
+        @Override
+        public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+            HttpServletRequest servletRequest = request.getNativeRequest(HttpServletRequest.class);
+            HttpServletResponse servletResponse = request.getNativeResponse(HttpServletResponse.class);
+
+            if (servletRequest != null) {
+                RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(servletRequest, servletResponse));
+            }
+        }
+
+        @Override
+        public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+            RequestContextHolder.resetRequestAttributes();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.config;
+
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Configures the executors used for work that should not run on request threads.
+ * <p>
+ * Setting reads, admin work, downloads of large values and password hashing each get a bounded executor of their own,
+ * wrapped in a {@link Bulkhead}, so a burst of one class of work can not starve the others of threads.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+    /**
+     * The executor used for hashing passwords in bulk. It is bounded, and rejects work when it is full instead of
+     * running it on the caller's thread, so a large batch can never tie up request threads with BCrypt.
+     */
+    @Bean(name = "passwordHashingExecutor")
+    public ThreadPoolTaskExecutor passwordHashingExecutor(
+            @Value("${settings.executors.hashing.threads:0}") int threads,
+            @Value("${settings.executors.hashing.queue-capacity:1000}") int queueCapacity
+    ) {
+        return ExecutorConfiguration.boundedExecutor("password-hashing-", threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), queueCapacity);
+    }
+
+    /**
+     * The executor setting reads run on, which are latency critical and should never wait behind admin work.
+     */
+    @Bean(name = "readExecutor")
+    public ThreadPoolTaskExecutor readExecutor(
+            @Value("${settings.executors.reads.threads:64}") int threads,
+            @Value("${settings.executors.reads.queue-capacity:256}") int queueCapacity
+    ) {
+        return ExecutorConfiguration.boundedExecutor("settings-read-", threads, queueCapacity);
+    }
+
+    /**
+     * The executor changes to settings and services, and other admin work such as listings and shard moves, run on.
+     */
+    @Bean(name = "adminExecutor")
+    public ThreadPoolTaskExecutor adminExecutor(
+            @Value("${settings.executors.admin.threads:16}") int threads,
+            @Value("${settings.executors.admin.queue-capacity:64}") int queueCapacity
+    ) {
+        return ExecutorConfiguration.boundedExecutor("settings-admin-", threads, queueCapacity);
+    }
+
+    /**
+     * The executor large values are streamed to clients on. A download holds its thread for as long as the client
+     * takes to read the value, so downloads get threads of their own instead of holding up reads or admin work.
+     */
+    @Bean(name = "blobExecutor")
+    public ThreadPoolTaskExecutor blobExecutor(
+            @Value("${settings.executors.blobs.threads:16}") int threads,
+            @Value("${settings.executors.blobs.queue-capacity:32}") int queueCapacity
+    ) {
+        return ExecutorConfiguration.boundedExecutor("settings-blob-", threads, queueCapacity);
+    }
+
+    @Bean(name = "hashingBulkhead")
+    public Bulkhead hashingBulkhead(
+            @Autowired @Qualifier("passwordHashingExecutor") ThreadPoolTaskExecutor passwordHashingExecutor,
+            @Value("${settings.executors.hashing.timeout-ms:10000}") long timeoutMillis,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        return new Bulkhead("hashing", passwordHashingExecutor, timeoutMillis, meterRegistry);
+    }
+
+    @Bean(name = "readBulkhead")
+    public Bulkhead readBulkhead(
+            @Autowired @Qualifier("readExecutor") ThreadPoolTaskExecutor readExecutor,
+            @Value("${settings.executors.reads.timeout-ms:5000}") long timeoutMillis,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        return new Bulkhead("read", readExecutor, timeoutMillis, meterRegistry);
+    }
+
+    @Bean(name = "adminBulkhead")
+    public Bulkhead adminBulkhead(
+            @Autowired @Qualifier("adminExecutor") ThreadPoolTaskExecutor adminExecutor,
+            @Value("${settings.executors.admin.timeout-ms:60000}") long timeoutMillis,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        return new Bulkhead("admin", adminExecutor, timeoutMillis, meterRegistry);
+    }
+
+    @Bean(name = "blobBulkhead")
+    public Bulkhead blobBulkhead(
+            @Autowired @Qualifier("blobExecutor") ThreadPoolTaskExecutor blobExecutor,
+            @Value("${settings.executors.blobs.timeout-ms:300000}") long timeoutMillis,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        return new Bulkhead("blob", blobExecutor, timeoutMillis, meterRegistry);
+    }
+
+    /**
+     * Creates an executor with a fixed number of threads and a bounded queue, that rejects work when the queue is full
+     * instead of running it on the caller's thread.
+     */
+    private static ThreadPoolTaskExecutor boundedExecutor(String threadNamePrefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.initialize();
+
+        return executor;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.config;
+
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.net.URI;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Configures the Hibernate second-level cache, backed by Ehcache in this JVM, and turns on the Hibernate statistics so
+ * the hit ratios of the cache show up in the `hibernate.*` metrics.
+ * <p>
+ * Hibernate keeps the cache up to date with every change it makes itself. The cache is local to each node though, so a
+ * change made through another node is only seen here once the entry expires. Entries therefore live for a short time,
+ * set with `settings.hibernate-cache.time-to-live-seconds`. Logins never use the cache, so a changed password or role
+ * applies on every node straight away.
+ */
+@Configuration
+public class HibernateCacheConfiguration {
+
+    /**
+     * Each cache manager gets a URI of its own, so application contexts sharing a JVM, as tests do, never close each
+     * other's caches.
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${settings.hibernate-cache.max-entries:10000}") long maxEntries,
+            @Value("${settings.hibernate-cache.time-to-live-seconds:60}") long timeToLiveSeconds
+    ) {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+        CacheConfiguration<Object, Object> cacheConfiguration = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(maxEntries))
+                .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofSeconds(timeToLiveSeconds)))
+                .build();
+
+        return provider.getCacheManager(
+                URI.create("urn:settings-service:hibernate:" + UUID.randomUUID()),
+                ConfigurationBuilder.newConfigurationBuilder()
+                        .withCache(ServiceDAO.CACHE_REGION, cacheConfiguration)
+                        .withCache(ServiceDAO.NATURAL_ID_CACHE_REGION, cacheConfiguration)
+                        .build()
+        );
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(@Autowired CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+            properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+            properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+        };
+    }
+}
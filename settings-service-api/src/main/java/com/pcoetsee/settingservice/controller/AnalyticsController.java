@@ -0,0 +1,65 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.analytics.UsageAnalytics;
+import com.pcoetsee.settingservice.dto.HotKeysDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * This controller shows which services and settings are read the most. Only services with the full role may use it.
+ */
+@RestController
+@RequestMapping("/admin/hot-keys")
+public class AnalyticsController {
+
+    private final UsageAnalytics usageAnalytics;
+
+    public AnalyticsController(@Autowired UsageAnalytics usageAnalytics) {
+        this.usageAnalytics = usageAnalytics;
+    }
+
+    /**
+     * Lists the most read settings and services over the last `windowSeconds` seconds.
+     */
+    @GetMapping
+    public HotKeysDTO getHotKeys(
+            @RequestParam(defaultValue = "300") long windowSeconds,
+            @RequestParam(defaultValue = "20") int limit
+    ) throws IllegalAccessException {
+        if (!AuthenticatedService.hasRole(Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+
+        return this.usageAnalytics.getHotKeys(windowSeconds, limit);
+    }
+}
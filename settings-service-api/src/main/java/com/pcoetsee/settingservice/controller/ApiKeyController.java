@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.dto.ApiKeyDTO;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.service.ApiKeyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.List;
+
+/**
+ * This controller exposes the management of API keys for services. Requests run on the admin bulkhead.
+ */
+@RestController
+@RequestMapping("/services/{serviceName}/api-keys")
+public class ApiKeyController {
+
+    private final ApiKeyService apiKeyService;
+    private final Bulkhead adminBulkhead;
+
+    public ApiKeyController(
+            @Autowired ApiKeyService apiKeyService,
+            @Autowired @Qualifier("adminBulkhead") Bulkhead adminBulkhead
+    ) {
+        this.apiKeyService = apiKeyService;
+        this.adminBulkhead = adminBulkhead;
+    }
+
+    @GetMapping
+    public WebAsyncTask<List<ApiKeyDTO>> getApiKeys(@PathVariable String serviceName) {
+        return this.adminBulkhead.submit(() -> this.apiKeyService.getApiKeys(serviceName));
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public WebAsyncTask<ApiKeyDTO> createApiKey(@PathVariable String serviceName) {
+        return this.adminBulkhead.submit(() -> this.apiKeyService.createApiKey(serviceName));
+    }
+
+    @PostMapping("/rotate")
+    @ResponseStatus(HttpStatus.CREATED)
+    public WebAsyncTask<ApiKeyDTO> rotateApiKeys(
+            @PathVariable String serviceName,
+            @RequestParam(defaultValue = "3600") long graceSeconds
+    ) {
+        return this.adminBulkhead.submit(() -> this.apiKeyService.rotateApiKeys(serviceName, graceSeconds));
+    }
+
+    @DeleteMapping("/{keyId}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public WebAsyncTask<Void> expireApiKey(
+            @PathVariable String serviceName,
+            @PathVariable String keyId,
+            @RequestParam(defaultValue = "0") long graceSeconds
+    ) {
+        return this.adminBulkhead.submit(() -> {
+            this.apiKeyService.expireApiKey(serviceName, keyId, graceSeconds);
+
+            return null;
+        });
+    }
+}
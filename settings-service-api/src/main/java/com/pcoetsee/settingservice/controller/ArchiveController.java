@@ -0,0 +1,71 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.dto.ArchivedSettingDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.List;
+
+/**
+ * This controller exposes the settings of services that were archived because they went unused, and restores them.
+ */
+@RestController
+@RequestMapping("/services/{serviceName}/archived-settings")
+public class ArchiveController {
+
+    private final SettingsService settingsService;
+    private final Bulkhead adminBulkhead;
+
+    public ArchiveController(
+            @Autowired SettingsService settingsService,
+            @Autowired @Qualifier("adminBulkhead") Bulkhead adminBulkhead
+    ) {
+        this.settingsService = settingsService;
+        this.adminBulkhead = adminBulkhead;
+    }
+
+    @GetMapping
+    public WebAsyncTask<List<ArchivedSettingDTO>> getArchivedSettings(@PathVariable String serviceName) {
+        return this.adminBulkhead.submit(() -> this.settingsService.getArchivedSettings(serviceName));
+    }
+
+    /**
+     * Moves an archived setting back to the live settings of the service.
+     */
+    @PostMapping("/{name}/restore")
+    public WebAsyncTask<SettingDTO> restoreSetting(
+            @PathVariable String serviceName,
+            @PathVariable String name
+    ) {
+        return this.adminBulkhead.submit(() -> this.settingsService.restoreSetting(serviceName, name));
+    }
+}
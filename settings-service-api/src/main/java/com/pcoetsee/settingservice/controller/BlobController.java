@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.blob.BlobReference;
+import com.pcoetsee.settingservice.blob.SettingBlobStore;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.NoResultsException;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * This controller stores and serves values too large for a setting's value, as raw bytes.
+ * <p>
+ * Uploads are read straight from the request on the admin bulkhead. Downloads run on a bulkhead of their own, which
+ * looks the value up and then writes it to the response a chunk at a time, as stored, gzip-compressed when the client
+ * accepts it. A download holds its thread until the client has read the whole value, so slow clients only use up
+ * download threads. The entity tag is the hash of the value, so a client that already holds the value is answered with
+ * 304 Not Modified.
+ */
+@RestController
+@RequestMapping("/services/{serviceName}/settings/{name}/blob")
+public class BlobController {
+
+    private final SettingsService settingsService;
+    private final SettingBlobStore settingBlobStore;
+    private final Bulkhead blobBulkhead;
+    private final Bulkhead adminBulkhead;
+
+    public BlobController(
+            @Autowired SettingsService settingsService,
+            @Autowired SettingBlobStore settingBlobStore,
+            @Autowired @Qualifier("blobBulkhead") Bulkhead blobBulkhead,
+            @Autowired @Qualifier("adminBulkhead") Bulkhead adminBulkhead
+    ) {
+        this.settingsService = settingsService;
+        this.settingBlobStore = settingBlobStore;
+        this.blobBulkhead = blobBulkhead;
+        this.adminBulkhead = adminBulkhead;
+    }
+
+    /**
+     * The value is written to the response by the download itself, so nothing is left for Spring MVC to write once the
+     * task completes.
+     */
+    @GetMapping
+    public WebAsyncTask<Void> getBlob(
+            @PathVariable String serviceName,
+            @PathVariable String name,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            HttpServletResponse response
+    ) {
+        return this.blobBulkhead.submit(() -> {
+            this.writeBlob(serviceName, name, ifNoneMatch, acceptEncoding, response);
+            return null;
+        });
+    }
+
+    @PutMapping(consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public WebAsyncTask<SettingDTO> saveBlob(
+            @PathVariable String serviceName,
+            @PathVariable String name,
+            HttpServletRequest request
+    ) {
+        return this.adminBulkhead.submit(() -> this.settingsService.saveBlobSetting(serviceName, name, request.getInputStream()));
+    }
+
+    /**
+     * Looks the value up and writes it to the response, on the thread of the download bulkhead.
+     */
+    private void writeBlob(String serviceName, String name, String ifNoneMatch, String acceptEncoding, HttpServletResponse response)
+            throws IllegalAccessException, NoResultsException, IOException {
+        BlobReference blobReference = this.settingsService.getBlobSetting(serviceName, name);
+
+        response.setHeader(HttpHeaders.ETAG, blobReference.getETag());
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+
+        if (SnapshotController.matches(ifNoneMatch, blobReference.getETag())) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+
+        boolean compressed = SnapshotController.acceptsGzip(acceptEncoding);
+
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_OCTET_STREAM_VALUE);
+
+        if (compressed) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+        } else {
+            response.setContentLengthLong(blobReference.getSize());
+        }
+
+        this.settingBlobStore.copyTo(blobReference, compressed, response.getOutputStream());
+        response.flushBuffer();
+    }
+}
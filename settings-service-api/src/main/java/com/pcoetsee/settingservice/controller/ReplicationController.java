@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.dto.ReplicationBatchDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+import com.pcoetsee.settingservice.dto.ReplicationStatusDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.ReplicationUnavailableException;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.replication.ReplicationFollower;
+import com.pcoetsee.settingservice.replication.ReplicationPrimary;
+import com.pcoetsee.settingservice.replication.ReplicationProperties;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * This controller serves the snapshot and change stream of a primary node to its followers, and reports the progress
+ * of a follower. Only services with the full role may use it.
+ */
+@RestController
+@RequestMapping("/replication")
+public class ReplicationController {
+
+    private final ReplicationPrimary replicationPrimary;
+    private final ReplicationFollower replicationFollower;
+    private final long maxWaitMillis;
+
+    public ReplicationController(
+            @Autowired(required = false) ReplicationPrimary replicationPrimary,
+            @Autowired(required = false) ReplicationFollower replicationFollower,
+            @Autowired ReplicationProperties replicationProperties
+    ) {
+        this.replicationPrimary = replicationPrimary;
+        this.replicationFollower = replicationFollower;
+        this.maxWaitMillis = replicationProperties.getPollTimeoutMs();
+    }
+
+    @GetMapping("/snapshot")
+    public ReplicationSnapshotDTO getSnapshot() throws IllegalAccessException {
+        return this.primary().getSnapshot();
+    }
+
+    /**
+     * Holds the request open for up to `waitMs` milliseconds while there are no changes after the supplied one.
+     */
+    @GetMapping("/changes")
+    public ReplicationBatchDTO getChanges(
+            @RequestParam(name = "stream", required = false) String streamId,
+            @RequestParam long after,
+            @RequestParam(defaultValue = "1000") int limit,
+            @RequestParam(defaultValue = "0") long waitMs
+    ) throws IllegalAccessException, InterruptedException {
+        return this.primary().getChanges(streamId, after, limit, Math.max(0, Math.min(waitMs, this.maxWaitMillis)));
+    }
+
+    @GetMapping("/status")
+    public ReplicationStatusDTO getStatus() throws IllegalAccessException {
+        return this.follower().getStatus();
+    }
+
+    /**
+     * Makes a follower load a new snapshot from its primary node.
+     */
+    @PostMapping("/resync")
+    public ReplicationStatusDTO resync() throws IllegalAccessException {
+        ReplicationFollower follower = this.follower();
+        follower.requestResync();
+
+        return follower.getStatus();
+    }
+
+    private ReplicationPrimary primary() throws IllegalAccessException {
+        if (!AuthenticatedService.hasRole(Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+
+        if (this.replicationPrimary == null) {
+            throw new ReplicationUnavailableException("This node is not a replication primary.");
+        }
+
+        return this.replicationPrimary;
+    }
+
+    private ReplicationFollower follower() throws IllegalAccessException {
+        if (!AuthenticatedService.hasRole(Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+
+        if (this.replicationFollower == null) {
+            throw new ReplicationUnavailableException("This node is not a replication follower.");
+        }
+
+        return this.replicationFollower;
+    }
+}
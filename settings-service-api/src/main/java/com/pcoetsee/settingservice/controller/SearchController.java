@@ -0,0 +1,75 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.dto.SettingSearchResultDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.search.SettingsSearchIndex;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.List;
+
+/**
+ * This controller lets operators find settings across all services. Only services with the full role may use it.
+ */
+@RestController
+@RequestMapping("/admin/search")
+public class SearchController {
+
+    private final SettingsSearchIndex settingsSearchIndex;
+    private final Bulkhead adminBulkhead;
+
+    public SearchController(
+            @Autowired SettingsSearchIndex settingsSearchIndex,
+            @Autowired @Qualifier("adminBulkhead") Bulkhead adminBulkhead
+    ) {
+        this.settingsSearchIndex = settingsSearchIndex;
+        this.adminBulkhead = adminBulkhead;
+    }
+
+    /**
+     * Finds the settings whose name or value contains every word of the query.
+     */
+    @GetMapping
+    public WebAsyncTask<List<SettingSearchResultDTO>> search(
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "100") int limit
+    ) throws IllegalAccessException {
+        if (!AuthenticatedService.hasRole(Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+
+        return this.adminBulkhead.submit(() -> this.settingsSearchIndex.search(query, limit));
+    }
+}
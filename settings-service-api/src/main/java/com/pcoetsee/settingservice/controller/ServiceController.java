@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.dto.ServiceCreationResultDTO;
+import com.pcoetsee.settingservice.dto.ServiceDTO;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.service.ServiceProvisioningService;
+import com.pcoetsee.settingservice.service.ServicesService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.List;
+
+/**
+ * This controller exposes the management of services. Requests run on the admin bulkhead.
+ */
+@RestController
+@RequestMapping("/services")
+public class ServiceController {
+
+    private final ServiceProvisioningService serviceProvisioningService;
+    private final ServicesService servicesService;
+    private final Bulkhead adminBulkhead;
+
+    public ServiceController(
+            @Autowired ServiceProvisioningService serviceProvisioningService,
+            @Autowired ServicesService servicesService,
+            @Autowired @Qualifier("adminBulkhead") Bulkhead adminBulkhead
+    ) {
+        this.serviceProvisioningService = serviceProvisioningService;
+        this.servicesService = servicesService;
+        this.adminBulkhead = adminBulkhead;
+    }
+
+    /**
+     * Updates a service. A service updating itself confirms its current password in the `X-Current-Password` header.
+     * Sending the version last read makes the update fail with 409 if the service has changed since.
+     */
+    @PutMapping("/{serviceName}")
+    public WebAsyncTask<ServiceDTO> updateService(
+            @PathVariable String serviceName,
+            @RequestHeader(name = "X-Current-Password", required = false) String currentPassword,
+            @RequestBody ServiceDTO serviceDTO
+    ) {
+        serviceDTO.setName(serviceName);
+
+        return this.adminBulkhead.submit(() -> this.servicesService.updateService(currentPassword, serviceDTO));
+    }
+
+    @PostMapping("/batch")
+    public WebAsyncTask<List<ServiceCreationResultDTO>> createServices(@RequestBody List<ServiceDTO> serviceDTOs) {
+        return this.adminBulkhead.submit(() -> this.serviceProvisioningService.createServices(serviceDTOs));
+    }
+}
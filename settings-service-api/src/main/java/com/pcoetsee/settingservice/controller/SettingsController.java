@@ -0,0 +1,113 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetResultDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.dto.SettingUpsertResultDTO;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.List;
+
+/**
+ * This controller exposes the settings of services.
+ * <p>
+ * Reads run on the read bulkhead and changes on the admin bulkhead, so a burst of changes can not slow down reads.
+ */
+@RestController
+@RequestMapping("/services/{serviceName}/settings")
+public class SettingsController {
+
+    private final SettingsService settingsService;
+    private final Bulkhead readBulkhead;
+    private final Bulkhead adminBulkhead;
+
+    public SettingsController(
+            @Autowired SettingsService settingsService,
+            @Autowired @Qualifier("readBulkhead") Bulkhead readBulkhead,
+            @Autowired @Qualifier("adminBulkhead") Bulkhead adminBulkhead
+    ) {
+        this.settingsService = settingsService;
+        this.readBulkhead = readBulkhead;
+        this.adminBulkhead = adminBulkhead;
+    }
+
+    @GetMapping
+    public WebAsyncTask<Page<SettingDTO>> getAllSettings(
+            @PathVariable String serviceName,
+            Pageable pageable
+    ) {
+        return this.readBulkhead.submit(() -> this.settingsService.getAllSettings(serviceName, pageable));
+    }
+
+    @GetMapping("/{name}")
+    public WebAsyncTask<SettingDTO> getSetting(
+            @PathVariable String serviceName,
+            @PathVariable String name
+    ) {
+        return this.readBulkhead.submit(() -> this.settingsService.getSetting(serviceName, name));
+    }
+
+    @PutMapping("/{name}")
+    public WebAsyncTask<SettingDTO> saveSetting(
+            @PathVariable String serviceName,
+            @PathVariable String name,
+            @RequestBody SettingDTO settingDTO
+    ) {
+        settingDTO.setName(name);
+
+        return this.adminBulkhead.submit(() -> this.settingsService.saveSetting(serviceName, settingDTO));
+    }
+
+    /**
+     * Creates or updates all supplied settings in one transaction.
+     */
+    @PutMapping
+    public WebAsyncTask<SettingUpsertResultDTO> upsertSettings(
+            @PathVariable String serviceName,
+            @RequestBody List<SettingDTO> settingDTOs
+    ) {
+        return this.adminBulkhead.submit(() -> this.settingsService.upsertSettings(serviceName, settingDTOs));
+    }
+
+    /**
+     * Applies all supplied changes in one transaction, as a single new revision.
+     */
+    @PostMapping("/change-sets")
+    public WebAsyncTask<SettingChangeSetResultDTO> applyChangeSet(
+            @PathVariable String serviceName,
+            @RequestBody SettingChangeSetDTO settingChangeSetDTO
+    ) {
+        return this.adminBulkhead.submit(() -> this.settingsService.applyChangeSet(serviceName, settingChangeSetDTO));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.NoResultsException;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.service.SettingsService;
+import com.pcoetsee.settingservice.snapshot.EncodedSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.Collections;
+
+/**
+ * This controller serves all settings of a service in one response, as a JSON array.
+ * <p>
+ * The body is encoded once per revision of the settings and written to the response as is, gzip-compressed when the
+ * client accepts it. The entity tag changes with the revision, so a client that already holds the current settings is
+ * answered with 304 Not Modified.
+ */
+@RestController
+@RequestMapping("/services/{serviceName}/snapshot")
+public class SnapshotController {
+
+    private static final String GZIP = "gzip";
+
+    private final SettingsService settingsService;
+    private final Bulkhead readBulkhead;
+
+    public SnapshotController(
+            @Autowired SettingsService settingsService,
+            @Autowired @Qualifier("readBulkhead") Bulkhead readBulkhead
+    ) {
+        this.settingsService = settingsService;
+        this.readBulkhead = readBulkhead;
+    }
+
+    @GetMapping
+    public WebAsyncTask<ResponseEntity<byte[]>> getSnapshot(
+            @PathVariable String serviceName,
+            @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        return this.readBulkhead.submit(() -> this.snapshot(serviceName, ifNoneMatch, acceptEncoding));
+    }
+
+    private ResponseEntity<byte[]> snapshot(String serviceName, String ifNoneMatch, String acceptEncoding) throws IllegalAccessException, NoResultsException {
+        EncodedSnapshot snapshot = this.settingsService.getSettingsSnapshot(serviceName);
+        HttpHeaders headers = new HttpHeaders();
+
+        headers.setETag(snapshot.getETag());
+        headers.setVary(Collections.singletonList(HttpHeaders.ACCEPT_ENCODING));
+
+        if (SnapshotController.matches(ifNoneMatch, snapshot.getETag())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        byte[] body = snapshot.getJson();
+
+        if (snapshot.getGzip() != null && SnapshotController.acceptsGzip(acceptEncoding)) {
+            body = snapshot.getGzip();
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setContentLength(body.length);
+
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * @return true if the If-None-Match header lists the supplied entity tag, or is a wildcard
+     */
+    static boolean matches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String trimmed = candidate.trim();
+
+            if (trimmed.equals("*") || trimmed.equals(eTag) || trimmed.equals("W/" + eTag)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the Accept-Encoding header lists gzip without refusing it with a zero quality
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.trim().split(";");
+
+            if (parts[0].trim().equalsIgnoreCase(GZIP)) {
+                for (int i = 1; i < parts.length; i++) {
+                    String parameter = parts[i].trim().replace(" ", "");
+
+                    if (parameter.startsWith("q=") && parameter.matches("q=0(\\.0*)?")) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
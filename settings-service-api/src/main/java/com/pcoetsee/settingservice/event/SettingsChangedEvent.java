@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.event;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Published once after a write to the settings of a service has been committed, however many settings the write
+ * touched. Listeners use it to drop cached copies of the settings of the service.
+ */
+public class SettingsChangedEvent {
+
+    private final Long serviceId;
+    private final String serviceName;
+    private final long revision;
+    private final Set<String> settingNames;
+
+    /**
+     * @param serviceId    the ID of the service whose settings changed, not null
+     * @param serviceName  the name of the service whose settings changed, not null
+     * @param revision     the revision of the settings of the service after the change
+     * @param settingNames the names of the settings that were created, updated or deleted, not null
+     */
+    public SettingsChangedEvent(Long serviceId, String serviceName, long revision, Set<String> settingNames) {
+        this.serviceId = serviceId;
+        this.serviceName = serviceName;
+        this.revision = revision;
+        this.settingNames = Collections.unmodifiableSet(new LinkedHashSet<>(settingNames));
+    }
+
+    public Long getServiceId() {
+        return serviceId;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public Set<String> getSettingNames() {
+        return settingNames;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingsChangedEvent{" +
+                "serviceId=" + serviceId +
+                ", serviceName='" + serviceName + '\'' +
+                ", revision=" + revision +
+                ", settingNames=" + settingNames +
+                '}';
+    }
+}
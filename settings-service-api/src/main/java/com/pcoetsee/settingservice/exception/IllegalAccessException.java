@@ -24,9 +24,13 @@
 
 package com.pcoetsee.settingservice.exception;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
 /**
  * Exception that will be thrown when an authenticated service attempts to do something that they are not allowed to do.
  */
+@ResponseStatus(HttpStatus.FORBIDDEN)
 public class IllegalAccessException extends Exception {
 
     public IllegalAccessException() {
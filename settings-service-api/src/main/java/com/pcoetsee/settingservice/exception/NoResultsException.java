@@ -24,9 +24,13 @@
 
 package com.pcoetsee.settingservice.exception;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
 /**
  * Exception thrown when no results are found.
  */
+@ResponseStatus(HttpStatus.NOT_FOUND)
 public class NoResultsException extends Exception {
     public NoResultsException() {
         super("Search returned no results");
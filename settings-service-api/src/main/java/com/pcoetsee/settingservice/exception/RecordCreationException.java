@@ -24,9 +24,13 @@
 
 package com.pcoetsee.settingservice.exception;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
 /**
  * Exception to throw when creating a new record in the database fails.
  */
+@ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
 public class RecordCreationException extends Exception {
     /**
      * Serial version UID for the class.
@@ -24,9 +24,13 @@
 
 package com.pcoetsee.settingservice.exception;
 
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
 /**
  * Exception that will be thrown when no matching service is found in the database.
  */
+@ResponseStatus(HttpStatus.NOT_FOUND)
 public class ServiceDoesNotExistException extends Exception {
     /**
      * Serial Version UID for the class.
@@ -0,0 +1,234 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import com.pcoetsee.settingservice.exception.CircuitOpenException;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * This component limits the number of calls that may be in flight against the database at the same time.
+ * <p>
+ * The limit is adjusted using additive increase / multiplicative decrease (AIMD). Every call that completes within the
+ * latency threshold while the limiter is busy grows the limit by roughly one per round trip, and every call that is
+ * slow, or fails because the database timed out, shrinks it by the backoff ratio. Calls that arrive when the limit for
+ * their {@link Priority} has been reached are rejected immediately with a {@link LimitExceededException}, instead of
+ * queueing up on a database that is already struggling.
+ * <p>
+ * Calls pass the {@link DatabaseCircuitBreaker} before they take a slot, so while the database is unavailable they are
+ * rejected with a {@link CircuitOpenException} without waiting for it to time out.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final DatabaseCircuitBreaker databaseCircuitBreaker;
+
+    /**
+     * The number of calls currently executing.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Counts the calls that were rejected, per priority.
+     */
+    private final Map<Priority, Counter> rejectedCounters = new EnumMap<>(Priority.class);
+
+    /**
+     * The current limit. Only modified while holding the lock on this object, but read without it.
+     */
+    private volatile double limit;
+
+    public AdaptiveConcurrencyLimiter(
+            @Value("${settings.limiter.initial-limit:20}") int initialLimit,
+            @Value("${settings.limiter.min-limit:4}") int minLimit,
+            @Value("${settings.limiter.max-limit:200}") int maxLimit,
+            @Value("${settings.limiter.backoff-ratio:0.9}") double backoffRatio,
+            @Value("${settings.limiter.latency-threshold-ms:250}") long latencyThresholdMillis,
+            @Autowired DatabaseCircuitBreaker databaseCircuitBreaker,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Limiter bounds must satisfy 1 <= min-limit <= max-limit");
+        }
+
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("Limiter backoff-ratio must be between 0 and 1");
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+        this.limit = Math.min(maxLimit, Math.max(minLimit, initialLimit));
+        this.databaseCircuitBreaker = databaseCircuitBreaker;
+
+        Gauge.builder("settings.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("The current adaptive concurrency limit for database calls")
+                .register(meterRegistry);
+        Gauge.builder("settings.limiter.in.flight", this.inFlight, AtomicInteger::get)
+                .description("The number of database calls currently in flight")
+                .register(meterRegistry);
+
+        for (Priority priority : Priority.values()) {
+            this.rejectedCounters.put(priority, Counter.builder("settings.limiter.rejected")
+                    .description("The number of calls rejected by the concurrency limiter")
+                    .tag("priority", priority.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * Executes the supplied call if the limit for the given priority allows it.
+     *
+     * @param priority the priority of the work being done, not null
+     * @param call     the database call to execute, not null
+     * @param <T>      the type of the result of the call
+     * @return the result of the call, may be null if the call returns null
+     * @throws LimitExceededException when the limit for the supplied priority has already been reached
+     * @throws CircuitOpenException   when the circuit breaker in front of the database is open
+     */
+    public <T> T execute(Priority priority, Supplier<T> call) throws LimitExceededException {
+        if (!this.databaseCircuitBreaker.tryAcquire()) {
+            throw new CircuitOpenException();
+        }
+
+        int inFlightAtStart = this.tryAcquire(priority);
+
+        if (inFlightAtStart < 0) {
+            this.databaseCircuitBreaker.release();
+            this.rejectedCounters.get(priority).increment();
+            throw new LimitExceededException();
+        }
+
+        long start = System.nanoTime();
+        boolean dropped = false;
+
+        try {
+            return call.get();
+        } catch (OptimisticLockingFailureException e) {
+            // A version conflict says nothing about how busy the database is.
+            throw e;
+        } catch (RuntimeException e) {
+            dropped = DatabaseCircuitBreaker.isDatabaseFailure(e);
+            throw e;
+        } finally {
+            long rttNanos = System.nanoTime() - start;
+
+            this.inFlight.decrementAndGet();
+            this.onSample(rttNanos, inFlightAtStart, dropped);
+            this.databaseCircuitBreaker.onResult(rttNanos, dropped);
+        }
+    }
+
+    /**
+     * Executes the supplied call if the limit for the given priority allows it, for calls that do not return anything.
+     *
+     * @param priority the priority of the work being done, not null
+     * @param call     the database call to execute, not null
+     * @throws LimitExceededException when the limit for the supplied priority has already been reached
+     */
+    public void run(Priority priority, Runnable call) throws LimitExceededException {
+        this.execute(priority, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public double getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Attempts to reserve a slot for a call of the supplied priority.
+     *
+     * @param priority the priority of the work being done, not null
+     * @return the number of calls in flight including this one, or -1 if no slot could be reserved
+     */
+    private int tryAcquire(Priority priority) {
+        int allowed = Math.max(1, (int) (this.limit * priority.getShare()));
+
+        while (true) {
+            int current = this.inFlight.get();
+
+            if (current >= allowed) {
+                return -1;
+            }
+
+            if (this.inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * Adjusts the limit based on the outcome of a single call.
+     * <p>
+     * The limit is only grown when the limiter was at least half utilised, otherwise a quiet period would let it grow
+     * far past what the database can actually handle.
+     *
+     * @param rttNanos        how long the call took
+     * @param inFlightAtStart the number of calls in flight when this call started
+     * @param dropped         true if the call failed because the database could not keep up
+     */
+    private synchronized void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        double current = this.limit;
+        double updated = current;
+
+        if (dropped || rttNanos > this.latencyThresholdNanos) {
+            updated = Math.max(this.minLimit, current * this.backoffRatio);
+        } else if (inFlightAtStart * 2 >= current) {
+            updated = Math.min(this.maxLimit, current + 1.0 / current);
+        }
+
+        if ((int) updated != (int) current) {
+            LOGGER.debug("[SSAPI]: Concurrency limit changed from [{}] to [{}].", (int) current, (int) updated);
+        }
+
+        this.limit = updated;
+    }
+}
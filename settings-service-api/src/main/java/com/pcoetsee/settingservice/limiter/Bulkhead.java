@@ -0,0 +1,386 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import com.pcoetsee.settingservice.exception.BulkheadFullException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs one class of work on an executor of its own, so a burst of that work can only use up its own threads and queue,
+ * never the request threads or the executors of other classes of work.
+ * <p>
+ * Work is admitted while fewer tasks are running or waiting than the executor has threads and queue slots together,
+ * and rejected with a {@link BulkheadFullException} otherwise, before anything is queued. The caller of admitted work
+ * that does not finish within the timeout is answered with 503 Service Unavailable, while the work keeps its slot until
+ * it has actually stopped.
+ * <p>
+ * The number of running and queued tasks, and the numbers of rejected and timed out tasks, are published per bulkhead
+ * as metrics.
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final ThreadPoolTaskExecutor executor;
+    private final long timeoutMillis;
+    private final int capacity;
+    private final Semaphore permits;
+    private final Counter rejected;
+    private final Counter timeouts;
+
+    /**
+     * @param name          the name of the class of work, used in messages and as the metrics tag, not null
+     * @param executor      the executor reserved for the work, already initialized, not null
+     * @param timeoutMillis how long work may take before it is abandoned
+     * @param meterRegistry the registry the bulkhead metrics are registered with, not null
+     */
+    public Bulkhead(String name, ThreadPoolTaskExecutor executor, long timeoutMillis, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+        this.capacity = executor.getMaxPoolSize() + executor.getThreadPoolExecutor().getQueue().remainingCapacity();
+        this.permits = new Semaphore(this.capacity);
+
+        Gauge.builder("settings.bulkhead.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("The number of tasks running on the executor of a bulkhead")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        Gauge.builder("settings.bulkhead.queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("The number of tasks waiting for a thread of a bulkhead")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        Gauge.builder("settings.bulkhead.saturation", this, Bulkhead::getSaturation)
+                .description("The share of the threads and queue slots of a bulkhead in use, from 0 to 1")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        this.rejected = Counter.builder("settings.bulkhead.rejected")
+                .description("The number of tasks rejected because a bulkhead was full")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+        this.timeouts = Counter.builder("settings.bulkhead.timeouts")
+                .description("The number of tasks abandoned because they did not finish in time")
+                .tag("bulkhead", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wraps work done for a request so Spring MVC runs it on this bulkhead, freeing the request thread while it runs.
+     * <p>
+     * The slot is held until the work has finished, even if the caller has been answered already because it timed
+     * out, so the bulkhead never admits more work than its executor can hold. Work that is abandoned before it starts
+     * gives its slot back straight away, and never starts.
+     *
+     * @param call the work to do, not null
+     * @param <T>  the type of the result
+     * @return the task to return from the controller, not null
+     * @throws BulkheadFullException when the bulkhead is full
+     */
+    public <T> WebAsyncTask<T> submit(Callable<T> call) throws BulkheadFullException {
+        Slot slot = new Slot(this.acquire());
+        WebAsyncTask<T> task = new WebAsyncTask<>(this.timeoutMillis, new SheddingExecutor(slot), () -> {
+            if (!slot.start()) {
+                throw new BulkheadFullException(this.name);
+            }
+
+            try {
+                return call.call();
+            } finally {
+                slot.release();
+            }
+        });
+
+        task.onTimeout(() -> {
+            this.timeouts.increment();
+            throw new BulkheadFullException(this.name);
+        });
+        // Runs however the request ends, and only gives the slot back if the work never started.
+        task.onCompletion(slot::abandon);
+
+        return task;
+    }
+
+    /**
+     * Runs work on this bulkhead and waits for its result, for work that must be kept off the calling thread's pool,
+     * such as hashing passwords.
+     * <p>
+     * Work that does not finish in time keeps its slot until it does, since work such as hashing does not stop when
+     * interrupted.
+     *
+     * @param call the work to do, not null
+     * @param <T>  the type of the result
+     * @return the result of the work, may be null
+     * @throws BulkheadFullException when the bulkhead is full, or the work did not finish in time
+     */
+    public <T> T call(Callable<T> call) throws BulkheadFullException {
+        Future<T> future = this.start(call);
+
+        try {
+            return future.get(this.timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            this.timeouts.increment();
+            throw new BulkheadFullException(this.name);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BulkheadFullException(this.name);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Starts work on this bulkhead without waiting for it, for callers that run many pieces of work side by side and
+     * wait for them with a deadline of their own, such as hashing the passwords of a batch of services.
+     * <p>
+     * The caller must cancel the work it stops waiting for. Cancelled work that has not started gives its slot back
+     * and never starts, work that has started keeps its slot until it ends.
+     *
+     * @param call the work to do, not null
+     * @param <T>  the type of the result
+     * @return the pending result of the work, not null
+     * @throws BulkheadFullException when the bulkhead is full
+     */
+    public <T> Future<T> start(Callable<T> call) throws BulkheadFullException {
+        Slot slot = new Slot(this.acquire());
+        Future<T> future;
+
+        try {
+            future = this.executor.submit(() -> {
+                if (!slot.start()) {
+                    throw new BulkheadFullException(this.name);
+                }
+
+                try {
+                    return call.call();
+                } finally {
+                    slot.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The slots can briefly outnumber the free threads and queue slots while finished work is handing its
+            // thread back.
+            slot.abandon();
+            this.rejected.increment();
+            throw new BulkheadFullException(this.name);
+        }
+
+        return new SlotFuture<>(future, slot);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public ThreadPoolTaskExecutor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return the share of the threads and queue slots in use, from 0 to 1
+     */
+    public double getSaturation() {
+        return (this.capacity - this.permits.availablePermits()) / (double) this.capacity;
+    }
+
+    /**
+     * Takes a slot, or rejects the work when there is none.
+     *
+     * @return gives the slot back; running it more than once gives it back only once, not null
+     */
+    private Runnable acquire() throws BulkheadFullException {
+        if (!this.permits.tryAcquire()) {
+            this.rejected.increment();
+            throw new BulkheadFullException(this.name);
+        }
+
+        AtomicBoolean released = new AtomicBoolean();
+
+        return () -> {
+            if (released.compareAndSet(false, true)) {
+                this.permits.release();
+            }
+        };
+    }
+
+    /**
+     * The slot taken by one piece of work. Either the work starts and gives the slot back once it ends, or the work is
+     * abandoned before it starts, gives the slot back at once and never starts.
+     */
+    private static final class Slot {
+
+        private final Runnable release;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Slot(Runnable release) {
+            this.release = release;
+        }
+
+        /**
+         * @return true if the work may run, false if it was abandoned first
+         */
+        boolean start() {
+            return this.claimed.compareAndSet(false, true);
+        }
+
+        /**
+         * Gives the slot back, once work that started has ended.
+         */
+        void release() {
+            this.release.run();
+        }
+
+        /**
+         * Gives the slot back if the work has not started, and keeps it from starting. Does nothing otherwise.
+         */
+        void abandon() {
+            if (this.claimed.compareAndSet(false, true)) {
+                this.release.run();
+            }
+        }
+    }
+
+    /**
+     * The result of work started on the executor. Cancelling it also abandons the slot of the work, so work cancelled
+     * before it starts gives its slot back straight away.
+     */
+    private static final class SlotFuture<T> implements Future<T> {
+
+        private final Future<T> future;
+        private final Slot slot;
+
+        SlotFuture(Future<T> future, Slot slot) {
+            this.future = future;
+            this.slot = slot;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = this.future.cancel(mayInterruptIfRunning);
+
+            this.slot.abandon();
+
+            return cancelled;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return this.future.isDone();
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            return this.future.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return this.future.get(timeout, unit);
+        }
+    }
+
+    /**
+     * Hands the tasks of Spring MVC to the executor. A task the executor rejects is run on the calling thread after its
+     * slot is abandoned, so it fails straight away with a {@link BulkheadFullException}, which Spring MVC answers
+     * like any other shed request.
+     */
+    private final class SheddingExecutor implements AsyncTaskExecutor {
+
+        private final Slot slot;
+
+        SheddingExecutor(Slot slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            this.submit(task);
+        }
+
+        @Override
+        public void execute(Runnable task, long startTimeout) {
+            this.submit(task);
+        }
+
+        @Override
+        public Future<?> submit(Runnable task) {
+            try {
+                return Bulkhead.this.executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                this.shed();
+                task.run();
+
+                return CompletableFuture.completedFuture(null);
+            }
+        }
+
+        @Override
+        public <T> Future<T> submit(Callable<T> task) {
+            try {
+                return Bulkhead.this.executor.submit(task);
+            } catch (RejectedExecutionException e) {
+                this.shed();
+
+                CompletableFuture<T> future = new CompletableFuture<>();
+
+                future.completeExceptionally(new BulkheadFullException(Bulkhead.this.name));
+
+                return future;
+            }
+        }
+
+        private void shed() {
+            this.slot.abandon();
+            Bulkhead.this.rejected.increment();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for the circuit breaker in front of the database, bound from the `settings.circuit-breaker` properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "settings.circuit-breaker")
+public class CircuitBreakerProperties {
+
+    /**
+     * Whether calls to the database pass through the circuit breaker at all.
+     */
+    private boolean enabled = true;
+
+    /**
+     * The number of most recent calls the failure rate is taken over.
+     */
+    private int windowSize = 50;
+
+    /**
+     * The number of calls that must have been recorded before the circuit may open.
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * The percentage of failed or slow calls in the window at which the circuit opens.
+     */
+    private int failureRatePercent = 50;
+
+    /**
+     * Calls taking longer than this many milliseconds count as failures.
+     */
+    private long slowCallMs = 2000;
+
+    /**
+     * How long, in milliseconds, a read of settings may take before it is given up on, counted as a failure and answered
+     * from the last-known-good copies. Statement timeouts are enforced in whole seconds, so this is rounded up to the
+     * next second.
+     */
+    private long readTimeoutMs = 2000;
+
+    /**
+     * How long, in milliseconds, the circuit stays open before trial calls are let through.
+     */
+    private long openMs = 10000;
+
+    /**
+     * The number of trial calls that must succeed before the circuit closes again.
+     */
+    private int halfOpenCalls = 5;
+
+    /**
+     * The maximum number of settings kept as last-known-good copies, served while the circuit is open.
+     */
+    private int lastKnownGoodMaxSettings = 100000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public int getFailureRatePercent() {
+        return failureRatePercent;
+    }
+
+    public void setFailureRatePercent(int failureRatePercent) {
+        this.failureRatePercent = failureRatePercent;
+    }
+
+    public long getSlowCallMs() {
+        return slowCallMs;
+    }
+
+    public void setSlowCallMs(long slowCallMs) {
+        this.slowCallMs = slowCallMs;
+    }
+
+    public long getReadTimeoutMs() {
+        return readTimeoutMs;
+    }
+
+    public void setReadTimeoutMs(long readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public long getOpenMs() {
+        return openMs;
+    }
+
+    public void setOpenMs(long openMs) {
+        this.openMs = openMs;
+    }
+
+    public int getHalfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    public void setHalfOpenCalls(int halfOpenCalls) {
+        this.halfOpenCalls = halfOpenCalls;
+    }
+
+    public int getLastKnownGoodMaxSettings() {
+        return lastKnownGoodMaxSettings;
+    }
+
+    public void setLastKnownGoodMaxSettings(int lastKnownGoodMaxSettings) {
+        this.lastKnownGoodMaxSettings = lastKnownGoodMaxSettings;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionTimedOutException;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This component stops calls from reaching the database once too many recent calls have failed or been too slow.
+ * <p>
+ * The outcomes of the last {@link CircuitBreakerProperties#getWindowSize()} calls are kept. Once enough calls have been
+ * recorded and the share that failed reaches the threshold, the circuit opens and calls are rejected at once, instead of
+ * each waiting for the database to time out. After the open period a few trial calls are let through; the circuit
+ * closes when they all succeed and opens again as soon as one fails.
+ * <p>
+ * Only failures that say the database is unreachable or not keeping up are counted. A call that fails for any other
+ * reason reached the database and got an answer, so it counts as a success.
+ */
+@Component
+public class DatabaseCircuitBreaker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCircuitBreaker.class);
+
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final long slowCallNanos;
+    private final long openMillis;
+    private final int halfOpenCalls;
+
+    /**
+     * The outcomes of the most recent calls while closed, true for a failure, used as a ring.
+     */
+    private final boolean[] window;
+    private final Counter successCounter;
+    private final Counter failureCounter;
+    private final Counter slowCounter;
+    private final Counter rejectedCounter;
+    private final Map<CircuitState, Counter> transitionCounters = new EnumMap<>(CircuitState.class);
+
+    /**
+     * The current state. Only modified while holding the lock on this object, but read without it, so a closed circuit
+     * costs a single volatile read per call.
+     */
+    private volatile CircuitState state = CircuitState.CLOSED;
+    private int windowNext;
+    private int windowCalls;
+    private int windowFailures;
+    private long openedAtMillis;
+    private int halfOpenPermits;
+    private int halfOpenSuccesses;
+
+    public DatabaseCircuitBreaker(@Autowired CircuitBreakerProperties properties, @Autowired MeterRegistry meterRegistry) {
+        if (properties.getWindowSize() < 1 || properties.getMinimumCalls() > properties.getWindowSize() || properties.getHalfOpenCalls() < 1) {
+            throw new IllegalArgumentException("Circuit breaker bounds must satisfy minimum-calls <= window-size and half-open-calls >= 1");
+        }
+
+        this.enabled = properties.isEnabled();
+        this.minimumCalls = Math.max(1, properties.getMinimumCalls());
+        this.failureRatePercent = properties.getFailureRatePercent();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(properties.getSlowCallMs());
+        this.openMillis = properties.getOpenMs();
+        this.halfOpenCalls = properties.getHalfOpenCalls();
+        this.window = new boolean[properties.getWindowSize()];
+
+        Gauge.builder("settings.circuit-breaker.state", this, breaker -> breaker.getState().ordinal())
+                .description("The state of the circuit breaker in front of the database: 0 closed, 1 open, 2 half open")
+                .register(meterRegistry);
+        this.successCounter = this.callCounter(meterRegistry, "success");
+        this.failureCounter = this.callCounter(meterRegistry, "failure");
+        this.slowCounter = this.callCounter(meterRegistry, "slow");
+        this.rejectedCounter = this.callCounter(meterRegistry, "rejected");
+
+        for (CircuitState circuitState : CircuitState.values()) {
+            this.transitionCounters.put(circuitState, Counter.builder("settings.circuit-breaker.transitions")
+                    .description("The number of times the circuit breaker changed state, by the state it changed to")
+                    .tag("state", circuitState.name())
+                    .register(meterRegistry));
+        }
+    }
+
+    /**
+     * @return true if the exception says the database is unreachable or not keeping up, including a read that ran past
+     * its deadline
+     */
+    public static boolean isDatabaseFailure(Throwable throwable) {
+        return throwable instanceof TransientDataAccessException
+                || throwable instanceof DataAccessResourceFailureException
+                || throwable instanceof CannotCreateTransactionException
+                || throwable instanceof TransactionTimedOutException;
+    }
+
+    /**
+     * Asks whether a call may reach the database. Every call allowed must be followed by {@link #onResult(long, boolean)}
+     * or {@link #release()}.
+     *
+     * @return true if the call may go ahead, false if it must be rejected
+     */
+    public boolean tryAcquire() {
+        if (!this.enabled || this.state == CircuitState.CLOSED) {
+            return true;
+        }
+
+        synchronized (this) {
+            if (this.state == CircuitState.OPEN && System.currentTimeMillis() - this.openedAtMillis >= this.openMillis) {
+                this.transition(CircuitState.HALF_OPEN);
+                this.halfOpenPermits = this.halfOpenCalls;
+                this.halfOpenSuccesses = 0;
+            }
+
+            if (this.state == CircuitState.HALF_OPEN && this.halfOpenPermits > 0) {
+                this.halfOpenPermits--;
+                return true;
+            }
+
+            if (this.state == CircuitState.CLOSED) {
+                return true;
+            }
+        }
+
+        this.rejectedCounter.increment();
+
+        return false;
+    }
+
+    /**
+     * Hands back the permission for a call that was allowed but never reached the database, so it neither counts as an
+     * outcome nor uses up a trial call.
+     */
+    public void release() {
+        if (this.state != CircuitState.HALF_OPEN) {
+            return;
+        }
+
+        synchronized (this) {
+            if (this.state == CircuitState.HALF_OPEN && this.halfOpenSuccesses + this.halfOpenPermits < this.halfOpenCalls) {
+                this.halfOpenPermits++;
+            }
+        }
+    }
+
+    /**
+     * Records the outcome of a call that was allowed to reach the database.
+     *
+     * @param durationNanos how long the call took
+     * @param failed        true if the call failed because the database is unreachable or not keeping up
+     */
+    public void onResult(long durationNanos, boolean failed) {
+        if (!this.enabled) {
+            return;
+        }
+
+        boolean slow = !failed && durationNanos > this.slowCallNanos;
+
+        (failed ? this.failureCounter : slow ? this.slowCounter : this.successCounter).increment();
+
+        synchronized (this) {
+            if (this.state == CircuitState.CLOSED) {
+                this.record(failed || slow);
+            } else if (this.state == CircuitState.HALF_OPEN) {
+                if (failed || slow) {
+                    LOGGER.warn("[SSAPI]: Trial database call failed, opening the circuit again for [{}] ms.", this.openMillis);
+                    this.open();
+                } else if (++this.halfOpenSuccesses >= this.halfOpenCalls) {
+                    this.close();
+                }
+            }
+            // Calls that finish after the circuit opened started before it did, so they say nothing new.
+        }
+    }
+
+    public CircuitState getState() {
+        return state;
+    }
+
+    private Counter callCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("settings.circuit-breaker.calls")
+                .description("The number of database calls seen by the circuit breaker, by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void record(boolean failure) {
+        if (this.windowCalls == this.window.length) {
+            if (this.window[this.windowNext]) {
+                this.windowFailures--;
+            }
+        } else {
+            this.windowCalls++;
+        }
+
+        this.window[this.windowNext] = failure;
+        this.windowNext = (this.windowNext + 1) % this.window.length;
+
+        if (failure) {
+            this.windowFailures++;
+        }
+
+        if (this.windowCalls >= this.minimumCalls && this.windowFailures * 100 >= this.failureRatePercent * this.windowCalls) {
+            LOGGER.warn("[SSAPI]: [{}] of the last [{}] database calls failed or were slow, opening the circuit for [{}] ms.",
+                    this.windowFailures, this.windowCalls, this.openMillis);
+            this.open();
+        }
+    }
+
+    private void open() {
+        this.openedAtMillis = System.currentTimeMillis();
+        this.transition(CircuitState.OPEN);
+    }
+
+    private void close() {
+        LOGGER.info("[SSAPI]: Trial database calls succeeded, closing the circuit.");
+        this.windowNext = 0;
+        this.windowCalls = 0;
+        this.windowFailures = 0;
+        this.transition(CircuitState.CLOSED);
+    }
+
+    private void transition(CircuitState to) {
+        this.state = to;
+        this.transitionCounters.get(to).increment();
+    }
+}
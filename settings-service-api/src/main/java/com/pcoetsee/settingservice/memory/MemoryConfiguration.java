@@ -0,0 +1,59 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.memory;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the {@link StringInterner} shared by everything holding settings in memory.
+ */
+@Configuration
+public class MemoryConfiguration {
+
+    @Bean
+    public StringInterner stringInterner(
+            @Value("${settings.interning.capacity:65536}") int capacity,
+            @Value("${settings.interning.max-length:128}") int maxLength,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        StringInterner stringInterner = new StringInterner(capacity, maxLength);
+
+        FunctionCounter.builder("settings.interning.lookups", stringInterner, StringInterner::getHits)
+                .description("Lookups of setting names and values in the intern table")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("settings.interning.lookups", stringInterner, StringInterner::getMisses)
+                .description("Lookups of setting names and values in the intern table")
+                .tag("result", "miss")
+                .register(meterRegistry);
+
+        return stringInterner;
+    }
+}
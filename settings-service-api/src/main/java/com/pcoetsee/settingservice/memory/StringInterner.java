@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.memory;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Canonicalizes the setting names and values held in memory, so a name such as `db.url` repeated across thousands of
+ * services is stored once instead of thousands of times.
+ * <p>
+ * The table is a fixed size array indexed by hash. A string replaces whatever shared its slot, so the table never holds
+ * more than its capacity, and a string that stops being used anywhere else is released once something replaces it.
+ * Losing a string to a collision only means the next copy is kept separately. Slots are read and written without locks:
+ * strings are immutable and safely published, so a reader sees either the old or the new string in a slot, and both
+ * are correct answers.
+ * <p>
+ * Long strings are passed through, they seldom repeat and would keep large values alive.
+ */
+public class StringInterner {
+
+    private final String[] table;
+    private final int mask;
+    private final int maxLength;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity  the number of strings held, rounded up to a power of two, 0 disables interning
+     * @param maxLength the longest string interned
+     */
+    public StringInterner(int capacity, int maxLength) {
+        if (capacity < 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("The intern table capacity must be between 0 and 2^30.");
+        }
+
+        int size = capacity == 0 ? 0 : Integer.highestOneBit(Math.max(1, capacity * 2 - 1));
+
+        this.table = new String[size];
+        this.mask = size - 1;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return an interner that hands back whatever it is given
+     */
+    public static StringInterner disabled() {
+        return new StringInterner(0, 0);
+    }
+
+    /**
+     * @param string the string to canonicalize, null returns null
+     * @return an equal string held by the table, or the supplied string, which then takes the slot
+     */
+    public String intern(String string) {
+        if (string == null || this.table.length == 0 || string.length() > this.maxLength) {
+            return string;
+        }
+
+        int hash = string.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & this.mask;
+        String held = this.table[slot];
+
+        if (string.equals(held)) {
+            this.hits.increment();
+            return held;
+        }
+
+        this.misses.increment();
+        this.table[slot] = string;
+
+        return string;
+    }
+
+    /**
+     * @return the number of lookups that found an equal string
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that did not find an equal string
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * @return the number of slots in the table, 0 when interning is disabled
+     */
+    public int getCapacity() {
+        return this.table.length;
+    }
+}
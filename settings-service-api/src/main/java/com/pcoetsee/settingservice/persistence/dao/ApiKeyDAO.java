@@ -0,0 +1,172 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.persistence.dao;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.ZonedDateTime;
+
+/**
+ * This entity class represents the `settings_service`.`api_keys` table in the database.
+ * <p>
+ * This table stores API keys that services can use instead of their password. Only an HMAC of the secret is stored,
+ * the secret itself is handed to the service once when the key is created.
+ */
+@Entity
+@Table(name = "`api_keys`")
+public class ApiKeyDAO implements Serializable {
+
+    private static final long serialVersionUID = -2203419585316473317L;
+
+    /**
+     * The auto generated ID used in the table.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "`id`")
+    private Long id;
+
+    /**
+     * The service this key belongs to.
+     */
+    @ManyToOne(fetch = FetchType.LAZY, targetEntity = ServiceDAO.class, optional = false)
+    @JoinColumn(name = "`service_id`", referencedColumnName = "`id`")
+    private ServiceDAO serviceDAO;
+
+    /**
+     * The public identifier of the key, sent by the service along with the secret.
+     */
+    @Column(name = "`key_id`")
+    private String keyId;
+
+    /**
+     * The Base64 encoded HMAC of the secret.
+     */
+    @Column(name = "`secret_hash`")
+    private String secretHash;
+
+    /**
+     * A long representing the time and date, in epoch seconds, that the key was created.
+     */
+    @Column(name = "`creation_time`")
+    private Long creationTime;
+
+    /**
+     * A long representing the time and date, in epoch seconds, after which the key may no longer be used. Null if the
+     * key does not expire.
+     */
+    @Column(name = "`expiry_time`")
+    private Long expiryTime;
+
+    /**
+     * Default constructor will set the creation time.
+     */
+    public ApiKeyDAO() {
+        this.creationTime = ZonedDateTime.now().toEpochSecond();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public ServiceDAO getServiceDAO() {
+        return serviceDAO;
+    }
+
+    public void setServiceDAO(ServiceDAO serviceDAO) {
+        this.serviceDAO = serviceDAO;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(String keyId) {
+        this.keyId = keyId;
+    }
+
+    public String getSecretHash() {
+        return secretHash;
+    }
+
+    public void setSecretHash(String secretHash) {
+        this.secretHash = secretHash;
+    }
+
+    public Long getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public Long getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(Long expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    /**
+     * Checks whether the key may still be used at the supplied time.
+     *
+     * @param epochSecond the time to check against, in epoch seconds
+     * @return true if the key has no expiry time, or expires after the supplied time, otherwise false
+     */
+    public boolean isActiveAt(long epochSecond) {
+        return this.expiryTime == null || this.expiryTime > epochSecond;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ApiKeyDAO)) return false;
+
+        ApiKeyDAO that = (ApiKeyDAO) o;
+
+        return getKeyId() != null ? getKeyId().equals(that.getKeyId()) : that.getKeyId() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        return getKeyId() != null ? getKeyId().hashCode() : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ApiKeyDAO{" +
+                "id=" + id +
+                ", keyId='" + keyId + '\'' +
+                ", creationTime=" + creationTime +
+                ", expiryTime=" + expiryTime +
+                '}';
+    }
+}
@@ -24,6 +24,10 @@
 
 package com.pcoetsee.settingservice.persistence.dao;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
@@ -36,11 +40,26 @@ import java.util.Collection;
  * This entity class represent the `settings_service`.`services` table in the database.
  * <p>
  * This table stores services that are allowed to connect to this server, along with some other details.
+ * <p>
+ * Services are looked up by name on every request, so the name is mapped as a natural id, and both the services and
+ * the mapping from name to ID are held in the second-level cache.
  */
 @Entity
 @Table(name = "`services`")
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ServiceDAO.CACHE_REGION)
+@NaturalIdCache(region = ServiceDAO.NATURAL_ID_CACHE_REGION)
 public class ServiceDAO implements UserDetails {
 
+    /**
+     * The second-level cache region holding services by ID.
+     */
+    public static final String CACHE_REGION = "services";
+
+    /**
+     * The second-level cache region holding the IDs of services by name.
+     */
+    public static final String NATURAL_ID_CACHE_REGION = "services-by-name";
+
     /**
      * The serial version UID for the class.
      */
@@ -55,8 +74,9 @@ public class ServiceDAO implements UserDetails {
     private Long id;
 
     /**
-     * A descriptive name for the service.
+     * A descriptive name for the service. It is unique, and may be changed.
      */
+    @NaturalId(mutable = true)
     @Column(name = "`name`")
     private String name;
 
@@ -72,6 +92,7 @@ public class ServiceDAO implements UserDetails {
      * Indicates whether the service represented by this record can create new users.
      */
     @Column(name = "`role`")
+    @Enumerated(EnumType.STRING)
     private Role role;
 
     /**
@@ -80,6 +101,13 @@ public class ServiceDAO implements UserDetails {
     @Column(name = "`creation_time`")
     private Long creationTime;
 
+    /**
+     * Incremented on every update, used to detect changes made concurrently by someone else.
+     */
+    @Version
+    @Column(name = "`version`")
+    private long version;
+
     /**
      * Default constructor will set the creation time.
      */
@@ -166,6 +194,14 @@ public class ServiceDAO implements UserDetails {
         this.creationTime = creationTime;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -174,6 +210,7 @@ public class ServiceDAO implements UserDetails {
         ServiceDAO that = (ServiceDAO) o;
 
         if (getRole() != that.getRole()) return false;
+        if (getVersion() != that.getVersion()) return false;
         if (!getId().equals(that.getId())) return false;
         if (!getName().equals(that.getName())) return false;
         if (!getPassword().equals(that.getPassword())) return false;
@@ -187,6 +224,7 @@ public class ServiceDAO implements UserDetails {
         result = 31 * result + getPassword().hashCode();
         result = 31 * result + (getRole().hashCode());
         result = 31 * result + getCreationTime().hashCode();
+        result = 31 * result + (int) (getVersion() ^ (getVersion() >>> 32));
         return result;
     }
 
@@ -198,6 +236,7 @@ public class ServiceDAO implements UserDetails {
                 ", password='" + password + '\'' +
                 ", admin=" + role +
                 ", creationTime=" + creationTime +
+                ", version=" + version +
                 '}';
     }
 }
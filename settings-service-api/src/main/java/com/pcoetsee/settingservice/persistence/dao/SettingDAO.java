@@ -34,7 +34,7 @@ import java.time.ZonedDateTime;
  * This table stores the settings for a specific service.
  */
 @Entity
-@Table(name = "`settings`")
+@Table(name = "`settings`", uniqueConstraints = @UniqueConstraint(name = "uk_service_id_setting_name", columnNames = {"`service_id`", "`name`"}))
 public class SettingDAO implements Serializable {
 
     private static final long serialVersionUID = 191468327370598534L;
@@ -72,6 +72,37 @@ public class SettingDAO implements Serializable {
     @Column(name = "`date_last_used`")
     private ZonedDateTime dateLastUsed;
 
+    /**
+     * Indicates whether the value is a secret, in which case it is stored encrypted.
+     */
+    @Column(name = "`secret`")
+    private boolean secret;
+
+    /**
+     * The version of the key the value was encrypted with, null if the value is not a secret.
+     */
+    @Column(name = "`key_version`")
+    private Integer keyVersion;
+
+    /**
+     * Incremented on every update, used to detect changes made concurrently by someone else.
+     */
+    @Version
+    @Column(name = "`version`")
+    private long version;
+
+    /**
+     * The size in bytes of the value when it is stored in the `setting_blobs` table, null for values held in `value`.
+     */
+    @Column(name = "`blob_size`")
+    private Long blobSize;
+
+    /**
+     * The SHA-256 of the value, in hex, when it is stored in the `setting_blobs` table, null for values held in `value`.
+     */
+    @Column(name = "`blob_sha256`")
+    private String blobSha256;
+
     public Long getId() {
         return id;
     }
@@ -112,6 +143,46 @@ public class SettingDAO implements Serializable {
         this.dateLastUsed = dateLastUsed;
     }
 
+    public boolean isSecret() {
+        return secret;
+    }
+
+    public void setSecret(boolean secret) {
+        this.secret = secret;
+    }
+
+    public Integer getKeyVersion() {
+        return keyVersion;
+    }
+
+    public void setKeyVersion(Integer keyVersion) {
+        this.keyVersion = keyVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public Long getBlobSize() {
+        return blobSize;
+    }
+
+    public void setBlobSize(Long blobSize) {
+        this.blobSize = blobSize;
+    }
+
+    public String getBlobSha256() {
+        return blobSha256;
+    }
+
+    public void setBlobSha256(String blobSha256) {
+        this.blobSha256 = blobSha256;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -123,6 +194,14 @@ public class SettingDAO implements Serializable {
         if (!getServiceDAO().equals(that.getServiceDAO())) return false;
         if (!getName().equals(that.getName())) return false;
         if (!getValue().equals(that.getValue())) return false;
+        if (isSecret() != that.isSecret()) return false;
+        if (getVersion() != that.getVersion()) return false;
+        if (getKeyVersion() != null ? !getKeyVersion().equals(that.getKeyVersion()) : that.getKeyVersion() != null)
+            return false;
+        if (getBlobSize() != null ? !getBlobSize().equals(that.getBlobSize()) : that.getBlobSize() != null)
+            return false;
+        if (getBlobSha256() != null ? !getBlobSha256().equals(that.getBlobSha256()) : that.getBlobSha256() != null)
+            return false;
         return getDateLastUsed().equals(that.getDateLastUsed());
     }
 
@@ -133,6 +212,11 @@ public class SettingDAO implements Serializable {
         result = 31 * result + getName().hashCode();
         result = 31 * result + getValue().hashCode();
         result = 31 * result + getDateLastUsed().hashCode();
+        result = 31 * result + (isSecret() ? 1 : 0);
+        result = 31 * result + (getKeyVersion() != null ? getKeyVersion().hashCode() : 0);
+        result = 31 * result + (int) (getVersion() ^ (getVersion() >>> 32));
+        result = 31 * result + (getBlobSize() != null ? getBlobSize().hashCode() : 0);
+        result = 31 * result + (getBlobSha256() != null ? getBlobSha256().hashCode() : 0);
         return result;
     }
 
@@ -144,6 +228,11 @@ public class SettingDAO implements Serializable {
                 ", name='" + name + '\'' +
                 ", value='" + value + '\'' +
                 ", dateLastUsed=" + dateLastUsed +
+                ", secret=" + secret +
+                ", keyVersion=" + keyVersion +
+                ", version=" + version +
+                ", blobSize=" + blobSize +
+                ", blobSha256='" + blobSha256 + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.persistence.projection;
+
+import com.pcoetsee.settingservice.persistence.dao.Role;
+
+/**
+ * The columns of the `settings_service`.`services` table needed to list services. Never holds the password.
+ * <p>
+ * Instances are created by a constructor expression in the query itself, so listing services neither reads the
+ * password nor hydrates, tracks or caches full {@link com.pcoetsee.settingservice.persistence.dao.ServiceDAO} entities.
+ */
+public class ServiceSummary {
+
+    private final String name;
+    private final Role role;
+    private final Long creationTime;
+    private final long version;
+
+    public ServiceSummary(String name, Role role, Long creationTime, long version) {
+        this.name = name;
+        this.role = role;
+        this.creationTime = creationTime;
+        this.version = version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public Long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceSummary{" +
+                "name='" + name + '\'' +
+                ", role=" + role +
+                ", creationTime=" + creationTime +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.persistence.repository;
+
+import com.pcoetsee.settingservice.persistence.dao.ApiKeyDAO;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This repository represents the methods used for CRUD operations performed on the `settings_service`.`api_keys` table.
+ */
+@Repository
+public interface ApiKeyRepository extends CrudRepository<ApiKeyDAO, Long> {
+    /**
+     * Fetches all keys that can still be used at the supplied time, along with the services they belong to.
+     *
+     * @param epochSecond the time to check against, in epoch seconds
+     * @return a list of all keys that have not expired, not null
+     */
+    @Query("select k from ApiKeyDAO k join fetch k.serviceDAO where k.expiryTime is null or k.expiryTime > ?1")
+    List<ApiKeyDAO> findAllActiveAt(Long epochSecond);
+
+    /**
+     * Fetches the keys of the services with the supplied names that can still be used at the supplied time, along with
+     * the services they belong to.
+     *
+     * @param serviceNames the names of the services, empty causes exception
+     * @param epochSecond  the time to check against, in epoch seconds
+     * @return a list of the keys of the services that have not expired, not null
+     */
+    @Query("select k from ApiKeyDAO k join fetch k.serviceDAO s where s.name in ?1 and (k.expiryTime is null or k.expiryTime > ?2)")
+    List<ApiKeyDAO> findAllActiveByServiceNamesAt(Collection<String> serviceNames, Long epochSecond);
+
+    /**
+     * Fetches all keys belonging to the service with the supplied name, including expired keys.
+     *
+     * @param serviceDAOName the name of the service the keys belong to, null or empty returns an empty list
+     * @return a list of keys belonging to the service, not null
+     */
+    List<ApiKeyDAO> findAllByServiceDAOName(String serviceDAOName);
+
+    /**
+     * Fetches a key by its public identifier, along with the service it belongs to.
+     *
+     * @param keyId the identifier of the key, null or empty returns null
+     * @return the matching key if it exists, otherwise null
+     */
+    @Query("select k from ApiKeyDAO k join fetch k.serviceDAO where k.keyId = ?1")
+    ApiKeyDAO findByKeyId(String keyId);
+}
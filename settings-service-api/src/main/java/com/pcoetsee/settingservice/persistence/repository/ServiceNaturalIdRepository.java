@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.persistence.repository;
+
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+
+/**
+ * Lookups of services by their natural id, the name. A derived query would always go to the database, these are
+ * answered from the second-level cache when the service is held there. Logins use the uncached lookup.
+ */
+public interface ServiceNaturalIdRepository {
+
+    /**
+     * This method finds a specific service by matching the name.
+     *
+     * @param name the name of the service we're looking for, null or empty returns null
+     * @return a service, but only if the supplied name finds a match in the database, otherwise null
+     */
+    ServiceDAO findByName(String name);
+
+    /**
+     * This method finds a specific service by matching the name, always reading it from the database. Used for logins,
+     * which must see a password or role changed through another node straight away, not once the cached copy expires.
+     *
+     * @param name the name of the service we're looking for, null or empty returns null
+     * @return a service, but only if the supplied name finds a match in the database, otherwise null
+     */
+    ServiceDAO findByNameUncached(String name);
+}
@@ -0,0 +1,80 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.persistence.repository;
+
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import org.apache.commons.lang3.StringUtils;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Resolves names through the Hibernate natural id API, which checks the session, then the natural id cache, and only
+ * then the database. Uncached lookups query the database directly.
+ */
+public class ServiceNaturalIdRepositoryImpl implements ServiceNaturalIdRepository {
+
+    private final EntityManager entityManager;
+
+    public ServiceNaturalIdRepositoryImpl(@Autowired EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * Runs in a transaction, since the session must stay open while the natural id is resolved and the service loaded.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ServiceDAO findByName(String name) {
+        if (StringUtils.isEmpty(name)) {
+            return null;
+        }
+
+        return this.entityManager.unwrap(Session.class)
+                .bySimpleNaturalId(ServiceDAO.class)
+                .load(name);
+    }
+
+    /**
+     * Neither reads the service from the second-level cache nor puts it there. A service already loaded in the current
+     * session is returned as loaded, which is never the case for logins.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public ServiceDAO findByNameUncached(String name) {
+        if (StringUtils.isEmpty(name)) {
+            return null;
+        }
+
+        return this.entityManager.unwrap(Session.class)
+                .createQuery("select s from ServiceDAO s where s.name = :name", ServiceDAO.class)
+                .setParameter("name", name)
+                .setCacheMode(CacheMode.IGNORE)
+                .uniqueResult();
+    }
+}
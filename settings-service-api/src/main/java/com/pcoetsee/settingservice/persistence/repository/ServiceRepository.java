@@ -25,19 +25,41 @@
 package com.pcoetsee.settingservice.persistence.repository;
 
 import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.projection.ServiceSummary;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * This repository represents the methods used for CRUD operations performed on the `settings_service`.`services` table.
+ * <p>
+ * Lookups by name are implemented in {@link ServiceNaturalIdRepository}, so they go through the natural id cache.
  */
 @Repository
-public interface ServiceRepository extends PagingAndSortingRepository<ServiceDAO, Long> {
+public interface ServiceRepository extends PagingAndSortingRepository<ServiceDAO, Long>, ServiceNaturalIdRepository {
+    /**
+     * This method finds all services whose names are in the supplied collection, in a single query.
+     *
+     * @param names the names of the services we're looking for, empty returns an empty list
+     * @return all services with a matching name, not null
+     */
+    List<ServiceDAO> findAllByNameIn(Collection<String> names);
+
     /**
-     * This method finds a specific service by matching the name.
+     * Fetches a page of services, reading only the columns needed to list them. The password is never read.
      *
-     * @param name the name of the service we're looking for, null or empty returns null
-     * @return a service, but only if the supplied name finds a match in the database, otherwise null
+     * @param pageable a {@link Pageable} object that allows for paging and sorting by the selected properties, unpaged
+     *                 returns all results
+     * @return a {@link Page} of services, not null
      */
-    ServiceDAO findByName(String name);
+    @Query(
+            value = "select new com.pcoetsee.settingservice.persistence.projection.ServiceSummary(s.name, s.role, s.creationTime, s.version) from ServiceDAO s",
+            countQuery = "select count(s) from ServiceDAO s"
+    )
+    Page<ServiceSummary> findAllSummaries(Pageable pageable);
 }
@@ -27,15 +27,18 @@ package com.pcoetsee.settingservice.persistence.repository;
 import com.pcoetsee.settingservice.persistence.dao.SettingDAO;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
+
 /**
  * This repository represents the methods used for CRUD operations performed on the `settings_service`.`settings` table.
  */
 @Repository
-public interface SettingRepository extends PagingAndSortingRepository<SettingDAO, Long> {
+public interface SettingRepository extends JpaRepository<SettingDAO, Long> {
     /**
      * Fetches a setting, if it exists based on the supplied parameters.
      * <p>
@@ -63,4 +66,72 @@ public interface SettingRepository extends PagingAndSortingRepository<SettingDAO
      */
     @Query("select s from SettingDAO s where s.serviceDAO.name = ?1 and s.serviceDAO.password = ?2")
     Page<SettingDAO> findAllByServiceServiceDAONameAndServiceDAOPassword(String serviceDAOName, String serviceDAOPassword, Pageable pageable);
+
+    /**
+     * Fetches a setting, if it exists, belonging to the service with the supplied name.
+     *
+     * @param serviceDAOName the name of the service for which we are fetching the setting, null or empty returns null
+     * @param name           the name of the setting we are looking for, null or empty returns null
+     * @return the setting matching the supplied name belonging to the supplied service, if it exists, otherwise null
+     */
+    SettingDAO findByServiceDAONameAndName(String serviceDAOName, String name);
+
+    /**
+     * Fetches all settings belonging to the service with the supplied name.
+     *
+     * @param serviceDAOName the name of the service for which we are fetching the settings, null or empty returns an
+     *                       empty page
+     * @param pageable       a {@link Pageable} object that allows for paging, null will return all results
+     * @return a {@link Page} of settings belonging to the matching service, not null
+     */
+    Page<SettingDAO> findAllByServiceDAOName(String serviceDAOName, Pageable pageable);
+
+    /**
+     * Fetches a setting, if it exists, belonging to the service with the supplied ID. Unlike the lookups by service
+     * name this does not join the services table, so it works on shards that only hold settings.
+     *
+     * @param serviceDAOId the ID of the service for which we are fetching the setting, null returns null
+     * @param name         the name of the setting we are looking for, null or empty returns null
+     * @return the setting matching the supplied name belonging to the supplied service, if it exists, otherwise null
+     */
+    @Query("select s from SettingDAO s where s.serviceDAO.id = ?1 and s.name = ?2")
+    SettingDAO findByServiceDAOIdAndName(Long serviceDAOId, String name);
+
+    /**
+     * Fetches all settings belonging to the service with the supplied ID, without joining the services table.
+     *
+     * @param serviceDAOId the ID of the service for which we are fetching the settings, null returns an empty page
+     * @param pageable     a {@link Pageable} object that allows for paging, null will return all results
+     * @return a {@link Page} of settings belonging to the matching service, not null
+     */
+    @Query(
+            value = "select s from SettingDAO s where s.serviceDAO.id = ?1",
+            countQuery = "select count(s) from SettingDAO s where s.serviceDAO.id = ?1"
+    )
+    Page<SettingDAO> findAllByServiceDAOId(Long serviceDAOId, Pageable pageable);
+
+    /**
+     * Fetches secret settings that are not encrypted with the supplied key, in order of ID, starting after the supplied
+     * ID so the table can be walked in chunks.
+     *
+     * @param keyVersion the version of the active key, not null
+     * @param afterId    only settings with a greater ID are returned, not null
+     * @param pageable   limits the number of settings returned, not null
+     * @return the next chunk of settings that need to be re-encrypted, not null
+     */
+    @Query("select s from SettingDAO s where s.secret = true and (s.keyVersion is null or s.keyVersion <> ?1) and s.id > ?2 order by s.id")
+    List<SettingDAO> findSecretsNotEncryptedWith(Integer keyVersion, Long afterId, Pageable pageable);
+
+    /**
+     * Replaces the encrypted value of a setting, but only if the value has not changed since it was read.
+     *
+     * @param id            the ID of the setting, not null
+     * @param expectedValue the encrypted value the setting had when it was read, not null
+     * @param value         the new encrypted value, not null
+     * @param keyVersion    the version of the key the new value is encrypted with, not null
+     * @return 1 if the value was replaced, 0 if the setting changed or no longer exists
+     */
+    @Modifying
+    @Query("update SettingDAO s set s.value = ?3, s.keyVersion = ?4 where s.id = ?1 and s.value = ?2")
+    int replaceEncryptedValue(Long id, String expectedValue, String value, Integer keyVersion);
 }
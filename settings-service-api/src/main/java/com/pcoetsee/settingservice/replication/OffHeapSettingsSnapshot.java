@@ -0,0 +1,361 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An immutable set of settings packed into direct buffers outside the heap, so millions of settings cost the garbage
+ * collector three objects instead of several per setting.
+ * <p>
+ * Every setting is written as one record, ordered by service ID and name:
+ * <pre>
+ *  0 long serviceId | 8 long version | 16 long dateLastUsed | 24 int keyVersion | 28 byte flags
+ * 29 int nameLength | 33 int valueLength | 37 name bytes | value bytes
+ * </pre>
+ * Names and values are UTF-8. A lookup goes through an open addressing index of one long per slot, holding the hash of
+ * the key in the upper half and the offset of the record in the lower half, probed linearly. A second index lists the
+ * record offsets in order, for fetching every setting of a service with a binary search. Nothing is decoded until a
+ * setting is asked for, and then only that setting.
+ * <p>
+ * The records are limited to 2 GB. The buffers count against `-XX:MaxDirectMemorySize` and are released once the
+ * snapshot has been garbage collected.
+ */
+public class OffHeapSettingsSnapshot {
+
+    private static final int SERVICE_ID = 0;
+    private static final int VERSION = 8;
+    private static final int DATE_LAST_USED = 16;
+    private static final int KEY_VERSION = 24;
+    private static final int FLAGS = 28;
+    private static final int NAME_LENGTH = 29;
+    private static final int VALUE_LENGTH = 33;
+    private static final int HEADER = 37;
+
+    private static final byte SECRET = 1;
+    private static final byte NULL_VALUE = 2;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+    private static final int NO_KEY_VERSION = Integer.MIN_VALUE;
+    private static final long EMPTY_SLOT = -1L;
+
+    private static final Comparator<ReplicatedSettingDTO> ORDER = Comparator
+            .comparing(ReplicatedSettingDTO::getServiceId)
+            .thenComparing(ReplicatedSettingDTO::getName);
+
+    private final ByteBuffer records;
+    private final ByteBuffer index;
+    private final ByteBuffer order;
+    private final int mask;
+    private final int size;
+
+    private OffHeapSettingsSnapshot(ByteBuffer records, ByteBuffer index, ByteBuffer order, int size) {
+        this.records = records;
+        this.index = index;
+        this.order = order;
+        this.mask = index.capacity() / Long.BYTES - 1;
+        this.size = size;
+    }
+
+    /**
+     * Packs the supplied settings. When a setting is supplied more than once, the last one is kept.
+     *
+     * @param settings the settings to pack, none may have a null service ID or name, not null
+     * @return the packed settings, not null
+     * @throws IllegalArgumentException when the settings do not fit in 2 GB
+     */
+    public static OffHeapSettingsSnapshot build(Collection<ReplicatedSettingDTO> settings) throws IllegalArgumentException {
+        List<ReplicatedSettingDTO> sorted = new ArrayList<>(settings);
+        sorted.sort(ORDER);
+
+        List<ReplicatedSettingDTO> unique = new ArrayList<>(sorted.size());
+        long bytes = 0;
+
+        for (int i = 0; i < sorted.size(); i++) {
+            ReplicatedSettingDTO setting = sorted.get(i);
+
+            if (i + 1 < sorted.size() && ORDER.compare(setting, sorted.get(i + 1)) == 0) {
+                continue;
+            }
+
+            unique.add(setting);
+            bytes += HEADER + OffHeapSettingsSnapshot.utf8Length(setting.getName()) + OffHeapSettingsSnapshot.utf8Length(setting.getValue());
+        }
+
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The settings take up " + bytes + " bytes, more than an off-heap snapshot can hold.");
+        }
+
+        int slots = Integer.highestOneBit(Math.max(2, unique.size() * 2 - 1)) << 1;
+        ByteBuffer records = ByteBuffer.allocateDirect((int) bytes);
+        ByteBuffer index = ByteBuffer.allocateDirect(slots * Long.BYTES);
+        ByteBuffer order = ByteBuffer.allocateDirect(unique.size() * Integer.BYTES);
+
+        for (int slot = 0; slot < slots; slot++) {
+            index.putLong(slot * Long.BYTES, EMPTY_SLOT);
+        }
+
+        for (int i = 0; i < unique.size(); i++) {
+            ReplicatedSettingDTO setting = unique.get(i);
+            int offset = records.position();
+            byte[] name = setting.getName().getBytes(StandardCharsets.UTF_8);
+            byte[] value = setting.getValue() == null ? new byte[0] : setting.getValue().getBytes(StandardCharsets.UTF_8);
+
+            records.putLong(setting.getServiceId());
+            records.putLong(setting.getVersion());
+            records.putLong(setting.getDateLastUsed() == null ? NO_DATE : setting.getDateLastUsed().toInstant().toEpochMilli());
+            records.putInt(setting.getKeyVersion() == null ? NO_KEY_VERSION : setting.getKeyVersion());
+            records.put((byte) ((setting.isSecret() ? SECRET : 0) | (setting.getValue() == null ? NULL_VALUE : 0)));
+            records.putInt(name.length);
+            records.putInt(value.length);
+            records.put(name);
+            records.put(value);
+
+            order.putInt(i * Integer.BYTES, offset);
+
+            int hash = OffHeapSettingsSnapshot.hash(setting.getServiceId(), setting.getName());
+            int slot = hash & (slots - 1);
+
+            while (index.getLong(slot * Long.BYTES) != EMPTY_SLOT) {
+                slot = (slot + 1) & (slots - 1);
+            }
+
+            index.putLong(slot * Long.BYTES, ((long) hash << 32) | offset);
+        }
+
+        return new OffHeapSettingsSnapshot(records, index, order, unique.size());
+    }
+
+    /**
+     * @return the number of settings held
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of bytes held outside the heap
+     */
+    public long getOffHeapBytes() {
+        return (long) this.records.capacity() + this.index.capacity() + this.order.capacity();
+    }
+
+    /**
+     * @param serviceId the ID of the service, null returns false
+     * @param name      the name of the setting, null returns false
+     * @return true if the setting is held
+     */
+    public boolean contains(Long serviceId, String name) {
+        return this.find(serviceId, name) >= 0;
+    }
+
+    /**
+     * @param serviceId the ID of the service, null returns null
+     * @param name      the name of the setting, null returns null
+     * @return a newly decoded copy of the setting, null if it is not held
+     */
+    public ReplicatedSettingDTO get(Long serviceId, String name) {
+        int offset = this.find(serviceId, name);
+
+        return offset < 0 ? null : this.decode(offset);
+    }
+
+    /**
+     * @param serviceId the ID of the service, null returns an empty list
+     * @return newly decoded copies of every setting of the service, ordered by name, not null
+     */
+    public List<ReplicatedSettingDTO> getAll(Long serviceId) {
+        List<ReplicatedSettingDTO> settings = new ArrayList<>();
+
+        if (serviceId == null) {
+            return settings;
+        }
+
+        int low = 0;
+        int high = this.size;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (this.records.getLong(this.offsetAt(middle) + SERVICE_ID) < serviceId) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low; i < this.size && this.records.getLong(this.offsetAt(i) + SERVICE_ID) == serviceId; i++) {
+            settings.add(this.decode(this.offsetAt(i)));
+        }
+
+        return settings;
+    }
+
+    /**
+     * Decodes every setting in turn, ordered by service ID and name.
+     *
+     * @param consumer receives each setting, not null
+     */
+    public void forEach(Consumer<ReplicatedSettingDTO> consumer) {
+        for (int i = 0; i < this.size; i++) {
+            consumer.accept(this.decode(this.offsetAt(i)));
+        }
+    }
+
+    private int offsetAt(int position) {
+        return this.order.getInt(position * Integer.BYTES);
+    }
+
+    /**
+     * @return the offset of the record, -1 if the setting is not held
+     */
+    private int find(Long serviceId, String name) {
+        if (serviceId == null || name == null || this.size == 0) {
+            return -1;
+        }
+
+        int hash = OffHeapSettingsSnapshot.hash(serviceId, name);
+        byte[] nameBytes = null;
+
+        for (int slot = hash & this.mask; ; slot = (slot + 1) & this.mask) {
+            long entry = this.index.getLong(slot * Long.BYTES);
+
+            if (entry == EMPTY_SLOT) {
+                return -1;
+            }
+
+            if ((int) (entry >>> 32) != hash) {
+                continue;
+            }
+
+            int offset = (int) entry;
+
+            if (nameBytes == null) {
+                nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            }
+
+            if (this.records.getLong(offset + SERVICE_ID) == serviceId && this.nameEquals(offset, nameBytes)) {
+                return offset;
+            }
+        }
+    }
+
+    private boolean nameEquals(int offset, byte[] name) {
+        if (this.records.getInt(offset + NAME_LENGTH) != name.length) {
+            return false;
+        }
+
+        for (int i = 0; i < name.length; i++) {
+            if (this.records.get(offset + HEADER + i) != name[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private ReplicatedSettingDTO decode(int offset) {
+        ByteBuffer view = this.records.duplicate();
+        byte flags = this.records.get(offset + FLAGS);
+        byte[] name = new byte[this.records.getInt(offset + NAME_LENGTH)];
+        byte[] value = new byte[this.records.getInt(offset + VALUE_LENGTH)];
+        long dateLastUsed = this.records.getLong(offset + DATE_LAST_USED);
+        int keyVersion = this.records.getInt(offset + KEY_VERSION);
+
+        view.position(offset + HEADER);
+        view.get(name);
+        view.get(value);
+
+        ReplicatedSettingDTO setting = new ReplicatedSettingDTO();
+
+        setting.setServiceId(this.records.getLong(offset + SERVICE_ID));
+        setting.setName(new String(name, StandardCharsets.UTF_8));
+        setting.setValue((flags & NULL_VALUE) != 0 ? null : new String(value, StandardCharsets.UTF_8));
+        setting.setSecret((flags & SECRET) != 0);
+        setting.setKeyVersion(keyVersion == NO_KEY_VERSION ? null : keyVersion);
+        setting.setVersion(this.records.getLong(offset + VERSION));
+        setting.setDateLastUsed(dateLastUsed == NO_DATE
+                ? null
+                : ZonedDateTime.ofInstant(Instant.ofEpochMilli(dateLastUsed), ZoneId.systemDefault()));
+
+        return setting;
+    }
+
+    /**
+     * Spreads the hash of the key, since string hashes of similar names differ in the low bits only.
+     */
+    private static int hash(long serviceId, String name) {
+        int hash = 31 * Long.hashCode(serviceId) + name.hashCode();
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @return the number of bytes the string takes up in UTF-8, 0 for null. An unpaired surrogate is written as a
+     * single question mark.
+     */
+    static int utf8Length(String string) {
+        if (string == null) {
+            return 0;
+        }
+
+        int length = 0;
+
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < string.length() && Character.isLowSurrogate(string.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicatedServiceDTO;
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.dto.ReplicationChangeDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+import com.pcoetsee.settingservice.memory.StringInterner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Every service and setting held in memory on a follower node.
+ * <p>
+ * Changes are applied by a single thread while any number of threads read. A snapshot is loaded into a new set of
+ * maps which then replaces the current one, so readers never see a half loaded snapshot.
+ * <p>
+ * When created to hold settings off the heap, the settings of a snapshot are packed into an
+ * {@link OffHeapSettingsSnapshot}, and changes are kept on the heap in front of it, with deleted settings marked. Once
+ * enough changes have piled up they are packed together with the snapshot into a new one.
+ * <p>
+ * Names and values of settings held on the heap are canonicalized with a {@link StringInterner}, since the same names
+ * and values repeat across services. Secret values are left alone, they are encrypted and never repeat.
+ */
+public class ReplicaStore {
+
+    /**
+     * The fewest changes held on the heap before they are packed into a new off-heap snapshot.
+     */
+    private static final int MIN_COMPACTION_CHANGES = 10000;
+
+    /**
+     * Marks a setting that was deleted after the off-heap snapshot was packed.
+     */
+    private static final ReplicatedSettingDTO DELETED = new ReplicatedSettingDTO();
+
+    private final boolean offHeap;
+    private final StringInterner stringInterner;
+    private volatile Dataset dataset;
+
+    public ReplicaStore() {
+        this(false);
+    }
+
+    /**
+     * @param offHeap true to pack settings into buffers outside the heap
+     */
+    public ReplicaStore(boolean offHeap) {
+        this(offHeap, StringInterner.disabled());
+    }
+
+    /**
+     * @param offHeap        true to pack settings into buffers outside the heap
+     * @param stringInterner canonicalizes the names and values of settings held on the heap, not null
+     */
+    public ReplicaStore(boolean offHeap, StringInterner stringInterner) {
+        this.offHeap = offHeap;
+        this.stringInterner = stringInterner;
+    }
+
+    /**
+     * @return true once a snapshot has been loaded
+     */
+    public boolean isLoaded() {
+        return this.dataset != null;
+    }
+
+    /**
+     * Replaces everything held with the contents of the snapshot. The store takes over the settings of the snapshot,
+     * their names and values may be replaced with equal ones.
+     *
+     * @param snapshot the snapshot to load, not null
+     */
+    public void load(ReplicationSnapshotDTO snapshot) {
+        Dataset loaded = new Dataset(
+                new ConcurrentSkipListMap<>(),
+                new ConcurrentHashMap<>(),
+                this.offHeap ? OffHeapSettingsSnapshot.build(snapshot.getSettings()) : null
+        );
+
+        for (ReplicatedServiceDTO service : snapshot.getServices()) {
+            loaded.putService(service);
+        }
+
+        if (loaded.packed == null) {
+            for (ReplicatedSettingDTO setting : snapshot.getSettings()) {
+                loaded.putSetting(this.interned(setting));
+            }
+        }
+
+        loaded.revisions.putAll(snapshot.getRevisions());
+        this.dataset = loaded;
+    }
+
+    /**
+     * Applies a change from the change stream. Must be called by one thread at a time, in the order of the stream. The
+     * store takes over the settings of the change, like those of a snapshot.
+     *
+     * @param change the change to apply, not null
+     * @throws IllegalStateException when no snapshot has been loaded yet
+     */
+    public void apply(ReplicationChangeDTO change) throws IllegalStateException {
+        Dataset current = this.dataset;
+
+        if (current == null) {
+            throw new IllegalStateException("A snapshot must be loaded before changes are applied.");
+        }
+
+        if (change.getService() != null) {
+            current.putService(change.getService());
+            return;
+        }
+
+        if (change.getSettings() != null) {
+            for (ReplicatedSettingDTO setting : change.getSettings()) {
+                current.putSetting(this.interned(setting));
+            }
+        }
+
+        if (change.getDeletedSettings() != null) {
+            for (String name : change.getDeletedSettings()) {
+                current.removeSetting(change.getServiceId(), name);
+            }
+        }
+
+        current.revisions.merge(change.getServiceId(), change.getRevision(), Math::max);
+
+        if (current.packed != null && current.changes.get() >= Math.max(MIN_COMPACTION_CHANGES, current.packed.size() / 8)) {
+            this.dataset = current.compact();
+        }
+    }
+
+    /**
+     * @param name the name of the service, null returns null
+     * @return the service with the supplied name, null if there is none or no snapshot has been loaded
+     */
+    public ReplicatedServiceDTO getService(String name) {
+        Dataset current = this.dataset;
+
+        return current == null || name == null ? null : current.services.get(name);
+    }
+
+    /**
+     * @return every service ordered by name, not null
+     */
+    public List<ReplicatedServiceDTO> getServices() {
+        Dataset current = this.dataset;
+
+        return current == null ? Collections.emptyList() : new ArrayList<>(current.services.values());
+    }
+
+    /**
+     * @param serviceName the name of the service, null returns null
+     * @param name        the name of the setting, null returns null
+     * @return the setting, with its value encrypted if it is a secret, null if there is none
+     */
+    public ReplicatedSettingDTO getSetting(String serviceName, String name) {
+        Dataset current = this.dataset;
+        ReplicatedServiceDTO service = this.getService(serviceName);
+
+        if (current == null || service == null || name == null) {
+            return null;
+        }
+
+        return current.getSetting(service.getId(), name);
+    }
+
+    /**
+     * @param serviceName the name of the service, null returns an empty list
+     * @return every setting of the service ordered by name, with secret values encrypted, not null
+     */
+    public List<ReplicatedSettingDTO> getSettings(String serviceName) {
+        Dataset current = this.dataset;
+        ReplicatedServiceDTO service = this.getService(serviceName);
+
+        if (current == null || service == null) {
+            return Collections.emptyList();
+        }
+
+        return current.getSettings(service.getId());
+    }
+
+    /**
+     * @param serviceId the ID of the service, null returns 0
+     * @return the revision of the settings of the service, 0 if they have never been changed
+     */
+    public long getRevision(Long serviceId) {
+        Dataset current = this.dataset;
+
+        return current == null || serviceId == null ? 0 : current.revisions.getOrDefault(serviceId, 0L);
+    }
+
+    public int getServiceCount() {
+        Dataset current = this.dataset;
+
+        return current == null ? 0 : current.services.size();
+    }
+
+    public int getSettingCount() {
+        Dataset current = this.dataset;
+
+        return current == null ? 0 : current.settingCount.get();
+    }
+
+    /**
+     * @return the number of bytes of settings held outside the heap, 0 when settings are held on the heap
+     */
+    public long getOffHeapBytes() {
+        Dataset current = this.dataset;
+
+        return current == null || current.packed == null ? 0 : current.packed.getOffHeapBytes();
+    }
+
+    private ReplicatedSettingDTO interned(ReplicatedSettingDTO setting) {
+        setting.setName(this.stringInterner.intern(setting.getName()));
+
+        if (!setting.isSecret()) {
+            setting.setValue(this.stringInterner.intern(setting.getValue()));
+        }
+
+        return setting;
+    }
+
+    /**
+     * The settings held on the heap, in front of the packed settings when there are any.
+     */
+    private static final class Dataset {
+        private final ConcurrentNavigableMap<String, ReplicatedServiceDTO> services;
+        private final ConcurrentMap<Long, Long> revisions;
+        private final OffHeapSettingsSnapshot packed;
+        private final ConcurrentMap<Long, ConcurrentNavigableMap<String, ReplicatedSettingDTO>> settings = new ConcurrentHashMap<>();
+        private final AtomicInteger settingCount = new AtomicInteger();
+        private final AtomicInteger changes = new AtomicInteger();
+
+        private Dataset(
+                ConcurrentNavigableMap<String, ReplicatedServiceDTO> services,
+                ConcurrentMap<Long, Long> revisions,
+                OffHeapSettingsSnapshot packed
+        ) {
+            this.services = services;
+            this.revisions = revisions;
+            this.packed = packed;
+            this.settingCount.set(packed == null ? 0 : packed.size());
+        }
+
+        private void putService(ReplicatedServiceDTO service) {
+            this.services.put(service.getName(), service);
+        }
+
+        private void putSetting(ReplicatedSettingDTO setting) {
+            ReplicatedSettingDTO previous = this.settings.computeIfAbsent(setting.getServiceId(), id -> new ConcurrentSkipListMap<>())
+                    .put(setting.getName(), setting);
+
+            if (!this.existed(previous, setting.getServiceId(), setting.getName())) {
+                this.settingCount.incrementAndGet();
+            }
+
+            if (previous == null) {
+                this.changes.incrementAndGet();
+            }
+        }
+
+        private void removeSetting(Long serviceId, String name) {
+            ConcurrentNavigableMap<String, ReplicatedSettingDTO> serviceSettings = this.packed == null
+                    ? this.settings.get(serviceId)
+                    : this.settings.computeIfAbsent(serviceId, id -> new ConcurrentSkipListMap<>());
+
+            if (serviceSettings == null) {
+                return;
+            }
+
+            ReplicatedSettingDTO previous = this.packed == null ? serviceSettings.remove(name) : serviceSettings.put(name, DELETED);
+
+            if (this.existed(previous, serviceId, name)) {
+                this.settingCount.decrementAndGet();
+            }
+
+            if (this.packed != null && previous == null) {
+                this.changes.incrementAndGet();
+            }
+        }
+
+        /**
+         * @param previous what was held on the heap for the setting before it was replaced
+         * @return true if the setting existed before it was replaced
+         */
+        private boolean existed(ReplicatedSettingDTO previous, Long serviceId, String name) {
+            if (previous != null) {
+                return previous != DELETED;
+            }
+
+            return this.packed != null && this.packed.contains(serviceId, name);
+        }
+
+        private ReplicatedSettingDTO getSetting(Long serviceId, String name) {
+            ConcurrentNavigableMap<String, ReplicatedSettingDTO> serviceSettings = this.settings.get(serviceId);
+            ReplicatedSettingDTO setting = serviceSettings == null ? null : serviceSettings.get(name);
+
+            if (setting == null) {
+                return this.packed == null ? null : this.packed.get(serviceId, name);
+            }
+
+            return setting == DELETED ? null : setting;
+        }
+
+        private List<ReplicatedSettingDTO> getSettings(Long serviceId) {
+            ConcurrentNavigableMap<String, ReplicatedSettingDTO> serviceSettings = this.settings.get(serviceId);
+
+            if (this.packed == null) {
+                return serviceSettings == null ? Collections.emptyList() : new ArrayList<>(serviceSettings.values());
+            }
+
+            List<ReplicatedSettingDTO> packedSettings = this.packed.getAll(serviceId);
+
+            if (serviceSettings == null || serviceSettings.isEmpty()) {
+                return packedSettings;
+            }
+
+            NavigableMap<String, ReplicatedSettingDTO> merged = new TreeMap<>();
+
+            for (ReplicatedSettingDTO setting : packedSettings) {
+                merged.put(setting.getName(), setting);
+            }
+
+            for (Map.Entry<String, ReplicatedSettingDTO> entry : serviceSettings.entrySet()) {
+                if (entry.getValue() == DELETED) {
+                    merged.remove(entry.getKey());
+                } else {
+                    merged.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            return new ArrayList<>(merged.values());
+        }
+
+        /**
+         * Packs the changes held on the heap together with the packed settings. The services and revisions are carried
+         * over as they are, since only the thread applying changes writes to them.
+         */
+        private Dataset compact() {
+            List<ReplicatedSettingDTO> all = new ArrayList<>(this.settingCount.get());
+
+            this.packed.forEach(setting -> {
+                ConcurrentNavigableMap<String, ReplicatedSettingDTO> serviceSettings = this.settings.get(setting.getServiceId());
+
+                if (serviceSettings == null || !serviceSettings.containsKey(setting.getName())) {
+                    all.add(setting);
+                }
+            });
+
+            for (ConcurrentNavigableMap<String, ReplicatedSettingDTO> serviceSettings : this.settings.values()) {
+                for (ReplicatedSettingDTO setting : serviceSettings.values()) {
+                    if (setting != DELETED) {
+                        all.add(setting);
+                    }
+                }
+            }
+
+            return new Dataset(this.services, this.revisions, OffHeapSettingsSnapshot.build(all));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.client.RemoteSettingsSource;
+import com.pcoetsee.settingservice.client.transport.UrlConnectionTransport;
+import com.pcoetsee.settingservice.memory.StringInterner;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Creates the beans a follower node needs, when `settings.replication.role` is `follower`. The primary side is the
+ * {@link ReplicationPrimary} component.
+ */
+@Configuration
+@ConditionalOnProperty(name = "settings.replication.role", havingValue = "follower")
+public class ReplicationConfiguration {
+
+    @Bean
+    public ReplicaStore replicaStore(
+            @Autowired ReplicationProperties replicationProperties,
+            @Autowired StringInterner stringInterner,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        ReplicaStore replicaStore = new ReplicaStore(replicationProperties.isOffHeap(), stringInterner);
+
+        Gauge.builder("settings.replication.off-heap", replicaStore, ReplicaStore::getOffHeapBytes)
+                .description("The memory outside the heap taken up by the settings this follower holds")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        return replicaStore;
+    }
+
+    /**
+     * Started as soon as it is created, so the snapshot is loading while the rest of the application starts.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public ReplicationFollower replicationFollower(
+            @Autowired ReplicationProperties replicationProperties,
+            @Autowired ReplicaStore replicaStore,
+            @Autowired ObjectMapper objectMapper,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        if (StringUtils.isBlank(replicationProperties.getPrimaryUrl())) {
+            throw new IllegalStateException("settings.replication.primary-url is required on a follower");
+        }
+
+        ReplicationFollower follower = new ReplicationFollower(
+                new UrlConnectionTransport(
+                        replicationProperties.getPrimaryUrl(),
+                        replicationProperties.getConnectTimeoutMs(),
+                        (int) replicationProperties.getPollTimeoutMs() + 30000
+                ),
+                RemoteSettingsSource.basicAuthorization(replicationProperties.getServiceName(), replicationProperties.getPassword()),
+                objectMapper,
+                replicaStore,
+                replicationProperties.getBatchSize(),
+                replicationProperties.getPollTimeoutMs(),
+                replicationProperties.getRetryDelayMs()
+        );
+
+        Gauge.builder("settings.replication.lag.changes", follower, f -> f.getStatus().getLagChanges())
+                .description("The number of changes recorded on the primary node that this follower has not applied")
+                .register(meterRegistry);
+        Gauge.builder("settings.replication.lag", follower, f -> f.getStatus().getLagMillis())
+                .description("How long ago this follower was last known to be up to date with the primary node")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+
+        return follower;
+    }
+}
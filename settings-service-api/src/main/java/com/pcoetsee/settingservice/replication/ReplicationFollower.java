@@ -0,0 +1,286 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.client.SettingsSourceException;
+import com.pcoetsee.settingservice.client.transport.HttpTransport;
+import com.pcoetsee.settingservice.client.transport.TransportRequest;
+import com.pcoetsee.settingservice.client.transport.TransportResponse;
+import com.pcoetsee.settingservice.dto.ReplicationBatchDTO;
+import com.pcoetsee.settingservice.dto.ReplicationChangeDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+import com.pcoetsee.settingservice.dto.ReplicationStatusDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps a {@link ReplicaStore} up to date with a primary node. A follower loads a snapshot, then asks the primary for
+ * the changes that followed it, again and again. The primary holds each request open until there is a change, so
+ * changes arrive as soon as they are recorded without the follower polling in a tight loop.
+ * <p>
+ * When the primary no longer holds the changes the follower needs, because it has restarted or the follower fell
+ * too far behind, the follower loads a new snapshot. A resync can also be asked for by hand.
+ */
+public class ReplicationFollower {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationFollower.class);
+
+    public static final String SYNCING = "SYNCING";
+    public static final String STREAMING = "STREAMING";
+    public static final String DISCONNECTED = "DISCONNECTED";
+
+    private final HttpTransport transport;
+    private final String authorization;
+    private final ObjectMapper objectMapper;
+    private final ReplicaStore replicaStore;
+    private final int batchSize;
+    private final long pollTimeoutMillis;
+    private final long retryDelayMillis;
+    private final long startedMillis = System.currentTimeMillis();
+
+    private volatile Thread thread;
+    private volatile boolean resyncRequested;
+    private volatile String state = SYNCING;
+    private volatile String streamId;
+    private volatile long appliedSequence;
+    private volatile long primarySequence;
+    private volatile long upToDateMillis;
+    private volatile long lastChangeDelayMillis;
+    private volatile long lastContactMillis;
+    private volatile int resyncs;
+
+    /**
+     * @param transport         the transport to the primary node, its read timeout must be longer than the poll
+     *                          timeout, not null
+     * @param authorization     the value of the Authorization header, for a service with the full role, not null
+     * @param objectMapper      the mapper used to read JSON, must be able to handle java.time types, not null
+     * @param replicaStore      the store to keep up to date, not null
+     * @param batchSize         the most changes to ask for at once
+     * @param pollTimeoutMillis how long the primary node holds a request open while there are no changes
+     * @param retryDelayMillis  how long to wait before trying again when the primary node could not be reached
+     */
+    public ReplicationFollower(
+            HttpTransport transport,
+            String authorization,
+            ObjectMapper objectMapper,
+            ReplicaStore replicaStore,
+            int batchSize,
+            long pollTimeoutMillis,
+            long retryDelayMillis
+    ) {
+        this.transport = transport;
+        this.authorization = authorization;
+        this.objectMapper = objectMapper;
+        this.replicaStore = replicaStore;
+        this.batchSize = batchSize;
+        this.pollTimeoutMillis = pollTimeoutMillis;
+        this.retryDelayMillis = retryDelayMillis;
+    }
+
+    /**
+     * Starts following the primary node in the background.
+     */
+    public synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.thread = new Thread(this::follow, "replication-follower");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops following the primary node, waiting for the request in progress to be abandoned.
+     */
+    public synchronized void stop() throws InterruptedException {
+        Thread running = this.thread;
+        this.thread = null;
+
+        if (running != null) {
+            running.interrupt();
+            running.join(this.retryDelayMillis + 1000);
+        }
+    }
+
+    /**
+     * Makes the follower load a new snapshot once the request in progress has been answered.
+     */
+    public void requestResync() {
+        this.resyncRequested = true;
+    }
+
+    /**
+     * @return the store kept up to date, not null
+     */
+    public ReplicaStore getReplicaStore() {
+        return replicaStore;
+    }
+
+    /**
+     * @return how far the follower is behind the primary node, not null
+     */
+    public ReplicationStatusDTO getStatus() {
+        long now = System.currentTimeMillis();
+        long applied = this.appliedSequence;
+        long primary = this.primarySequence;
+        String currentState = this.state;
+        ReplicationStatusDTO status = new ReplicationStatusDTO();
+
+        status.setState(currentState);
+        status.setAppliedSequence(applied);
+        status.setPrimarySequence(primary);
+        status.setLagChanges(Math.max(0, primary - applied));
+        status.setLagMillis(STREAMING.equals(currentState) && applied >= primary
+                ? 0
+                : now - (this.upToDateMillis == 0 ? this.startedMillis : this.upToDateMillis));
+        status.setLastChangeDelayMillis(this.lastChangeDelayMillis);
+        status.setResyncs(this.resyncs);
+        status.setServices(this.replicaStore.getServiceCount());
+        status.setSettings(this.replicaStore.getSettingCount());
+        status.setLastContact(this.lastContactMillis == 0
+                ? null
+                : ZonedDateTime.ofInstant(Instant.ofEpochMilli(this.lastContactMillis), ZoneId.systemDefault()));
+
+        return status;
+    }
+
+    private void follow() {
+        while (this.thread == Thread.currentThread()) {
+            try {
+                if (this.streamId == null || this.resyncRequested) {
+                    this.resync();
+                }
+
+                this.poll();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                if (this.thread != Thread.currentThread()) {
+                    return;
+                }
+
+                this.state = DISCONNECTED;
+                LOGGER.warn("[SSAPI]: Could not replicate from the primary node, trying again in [{}] ms: {}", this.retryDelayMillis, e.getMessage());
+
+                try {
+                    Thread.sleep(this.retryDelayMillis);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void resync() throws InterruptedException {
+        this.state = SYNCING;
+        this.resyncRequested = false;
+
+        long start = System.currentTimeMillis();
+        ReplicationSnapshotDTO snapshot = this.get("/replication/snapshot", ReplicationSnapshotDTO.class);
+
+        this.replicaStore.load(snapshot);
+        this.streamId = snapshot.getStreamId();
+        this.appliedSequence = snapshot.getSequence();
+        this.primarySequence = snapshot.getSequence();
+        this.upToDateMillis = snapshot.getTimestamp();
+        this.resyncs++;
+        this.state = STREAMING;
+
+        LOGGER.info("[SSAPI]: Loaded replication snapshot of [{}] services and [{}] settings at sequence [{}] in [{}] ms.",
+                snapshot.getServices().size(), snapshot.getSettings().size(), snapshot.getSequence(), System.currentTimeMillis() - start);
+    }
+
+    private void poll() throws InterruptedException {
+        ReplicationBatchDTO batch = this.get(
+                "/replication/changes?stream=" + ReplicationFollower.encode(this.streamId) +
+                        "&after=" + this.appliedSequence +
+                        "&limit=" + this.batchSize +
+                        "&waitMs=" + this.pollTimeoutMillis,
+                ReplicationBatchDTO.class
+        );
+
+        if (batch.isResyncRequired()) {
+            LOGGER.info("[SSAPI]: The primary node no longer holds the changes after sequence [{}], resyncing.", this.appliedSequence);
+            this.streamId = null;
+            return;
+        }
+
+        for (ReplicationChangeDTO change : batch.getChanges()) {
+            this.replicaStore.apply(change);
+            this.appliedSequence = change.getSequence();
+            this.lastChangeDelayMillis = Math.max(0, System.currentTimeMillis() - change.getTimestamp());
+        }
+
+        this.primarySequence = batch.getHeadSequence();
+        this.state = STREAMING;
+
+        if (this.appliedSequence >= batch.getHeadSequence()) {
+            this.upToDateMillis = batch.getTimestamp();
+        }
+    }
+
+    private <T> T get(String path, Class<T> type) throws InterruptedException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Authorization", this.authorization);
+        headers.put("Accept", "application/json");
+
+        TransportResponse response = this.transport.send(new TransportRequest("GET", path, headers, null));
+
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+
+        this.lastContactMillis = System.currentTimeMillis();
+
+        if (response.getStatus() >= 400) {
+            throw new SettingsSourceException(response.getStatus(), "Primary node answered " + response.getStatus() + ": " + new String(response.getBody(), StandardCharsets.UTF_8));
+        }
+
+        try {
+            return this.objectMapper.readValue(response.getBody(), type);
+        } catch (IOException e) {
+            throw new SettingsSourceException(response.getStatus(), "Could not read the response of the primary node", e);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
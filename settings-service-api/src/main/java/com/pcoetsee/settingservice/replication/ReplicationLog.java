@@ -0,0 +1,201 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicationBatchDTO;
+import com.pcoetsee.settingservice.dto.ReplicationChangeDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The change stream of a primary node: the most recent changes, numbered without gaps, held in a fixed size ring.
+ * <p>
+ * The stream only lives in memory. It is identified by a random ID, so followers can tell that the primary has
+ * restarted, or that the stream was reset after a change could not be recorded, and load a new snapshot.
+ */
+public class ReplicationLog {
+
+    private final ReplicationChangeDTO[] entries;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = this.lock.newCondition();
+    private String streamId = UUID.randomUUID().toString();
+    private long headSequence;
+
+    /**
+     * @param capacity the number of changes kept, at least 1
+     */
+    public ReplicationLog(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The replication log must hold at least one change.");
+        }
+
+        this.entries = new ReplicationChangeDTO[capacity];
+    }
+
+    /**
+     * @return the ID of the current stream, not null
+     */
+    public String getStreamId() {
+        this.lock.lock();
+
+        try {
+            return this.streamId;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the sequence of the last change recorded, 0 if none has been
+     */
+    public long getHeadSequence() {
+        this.lock.lock();
+
+        try {
+            return this.headSequence;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a snapshot at the current position of the stream. Whatever is read into the snapshot afterwards contains
+     * at least every change recorded so far, so a follower loading it continues from this position.
+     *
+     * @return a snapshot without services or settings, carrying the current stream and sequence, not null
+     */
+    public ReplicationSnapshotDTO startSnapshot() {
+        ReplicationSnapshotDTO snapshot = new ReplicationSnapshotDTO();
+        this.lock.lock();
+
+        try {
+            snapshot.setStreamId(this.streamId);
+            snapshot.setSequence(this.headSequence);
+            snapshot.setTimestamp(System.currentTimeMillis());
+
+            return snapshot;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Records a change, numbering and timestamping it, and wakes up every follower waiting for changes. The change must
+     * not be modified afterwards.
+     *
+     * @param change the change to record, not null
+     * @return the sequence of the change
+     */
+    public long append(ReplicationChangeDTO change) {
+        this.lock.lock();
+
+        try {
+            this.headSequence++;
+            change.setSequence(this.headSequence);
+            change.setTimestamp(System.currentTimeMillis());
+            this.entries[(int) ((this.headSequence - 1) % this.entries.length)] = change;
+            this.appended.signalAll();
+
+            return this.headSequence;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new stream, for when a change could not be recorded. Every follower loads a new snapshot.
+     */
+    public void reset() {
+        this.lock.lock();
+
+        try {
+            this.streamId = UUID.randomUUID().toString();
+            this.appended.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Fetches the changes recorded after the supplied one, waiting for one to be recorded if there are none yet.
+     *
+     * @param streamId      the stream the follower is following, null requires a resync
+     * @param afterSequence the last change the follower has applied
+     * @param maxChanges    the most changes to return, at least 1
+     * @param waitMillis    how long to wait for a change when there are none, 0 does not wait
+     * @return the changes, or an empty batch requiring a resync if the stream or the changes are no longer available,
+     * not null
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public ReplicationBatchDTO read(String streamId, long afterSequence, int maxChanges, long waitMillis) throws InterruptedException {
+        this.lock.lock();
+
+        try {
+            long remaining = TimeUnit.MILLISECONDS.toNanos(waitMillis);
+
+            while (this.isAvailable(streamId, afterSequence) && this.headSequence == afterSequence && remaining > 0) {
+                remaining = this.appended.awaitNanos(remaining);
+            }
+
+            ReplicationBatchDTO batch = new ReplicationBatchDTO();
+            List<ReplicationChangeDTO> changes = new ArrayList<>();
+
+            batch.setStreamId(this.streamId);
+            batch.setHeadSequence(this.headSequence);
+            batch.setTimestamp(System.currentTimeMillis());
+            batch.setChanges(changes);
+
+            if (!this.isAvailable(streamId, afterSequence)) {
+                batch.setResyncRequired(true);
+                return batch;
+            }
+
+            long last = Math.min(this.headSequence, afterSequence + Math.max(1, maxChanges));
+
+            for (long sequence = afterSequence + 1; sequence <= last; sequence++) {
+                changes.add(this.entries[(int) ((sequence - 1) % this.entries.length)]);
+            }
+
+            return batch;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Changes that have been overwritten in the ring, or that belong to another stream, can not be supplied.
+     */
+    private boolean isAvailable(String streamId, long afterSequence) {
+        return this.streamId.equals(streamId)
+                && afterSequence <= this.headSequence
+                && afterSequence >= this.headSequence - this.entries.length;
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicatedServiceDTO;
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.dto.ReplicationBatchDTO;
+import com.pcoetsee.settingservice.dto.ReplicationChangeDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+import com.pcoetsee.settingservice.event.ServicesChangedEvent;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Records every change made on a primary node in the {@link ReplicationLog}, and reads the snapshots followers start
+ * from.
+ * <p>
+ * A change is recorded by reading the current state of whatever changed once it has been committed, rather than
+ * copying the request, so an entry never contains anything that was rolled back. Reading and recording happen under
+ * the lock of the service, so whichever of two concurrent changes is recorded last has also read last.
+ */
+@Component
+@ConditionalOnProperty(name = "settings.replication.role", havingValue = "primary")
+public class ReplicationPrimary {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicationPrimary.class);
+
+    private static final String SELECT_SERVICES_SQL =
+            "SELECT `id`, `name`, `password`, `role`, `creation_time`, `version` FROM `services`";
+
+    private static final String SELECT_CHANGED_SERVICES_SQL = SELECT_SERVICES_SQL + " WHERE `name` IN (:names)";
+
+    private static final String SELECT_CHANGED_SETTINGS_SQL =
+            "SELECT `service_id`, `name`, `value`, `secret`, `key_version`, `version`, `date_last_used` FROM `settings` " +
+                    "WHERE `service_id` = :serviceId AND `name` IN (:names)";
+
+    private static final String SELECT_SETTINGS_PAGE_SQL =
+            "SELECT `service_id`, `name`, `value`, `secret`, `key_version`, `version`, `date_last_used`, `id` FROM `settings` " +
+                    "WHERE `id` > ? ORDER BY `id` LIMIT ?";
+
+    private static final String SELECT_REVISION_SQL = "SELECT `revision` FROM `service_revisions` WHERE `service_id` = ?";
+
+    private static final String SELECT_REVISIONS_SQL = "SELECT `service_id`, `revision` FROM `service_revisions`";
+
+    /**
+     * The number of locks changes are spread over. Changes to one service are recorded one at a time.
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    private static final int SNAPSHOT_PAGE_SIZE = 1000;
+
+    private final ReplicationLog replicationLog;
+    private final ShardDirectory shardDirectory;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Object servicesLock = new Object();
+
+    public ReplicationPrimary(
+            @Autowired ReplicationProperties replicationProperties,
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        this.replicationLog = new ReplicationLog(replicationProperties.getLogCapacity());
+        this.shardDirectory = shardDirectory;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+
+        Gauge.builder("settings.replication.sequence", this.replicationLog, ReplicationLog::getHeadSequence)
+                .description("The last change recorded in the change stream")
+                .register(meterRegistry);
+
+        LOGGER.info("[SSAPI]: Replication primary, keeping the last [{}] changes.", replicationProperties.getLogCapacity());
+    }
+
+    /**
+     * Fetches the changes recorded after the supplied one, holding the request open until there is one or the wait
+     * runs out.
+     *
+     * @param streamId      the stream the follower is following, null requires a resync
+     * @param afterSequence the last change the follower has applied
+     * @param maxChanges    the most changes to return, at least 1
+     * @param waitMillis    how long to wait for a change when there are none
+     * @return the changes, or an empty batch requiring a resync, not null
+     * @throws InterruptedException when interrupted while waiting
+     */
+    public ReplicationBatchDTO getChanges(String streamId, long afterSequence, int maxChanges, long waitMillis) throws InterruptedException {
+        return this.replicationLog.read(streamId, afterSequence, maxChanges, waitMillis);
+    }
+
+    /**
+     * Reads every service and setting. The position of the stream is taken first, so changes made while reading are
+     * also in the stream after that position and are applied again by the follower, which is harmless.
+     * <p>
+     * Settings are read a page at a time from every shard. While a service is being moved its settings are on two
+     * shards, and only the copy reads are currently served from is included.
+     *
+     * @return the snapshot, not null
+     * @throws LimitExceededException when the database is too busy, the follower tries again later
+     */
+    public ReplicationSnapshotDTO getSnapshot() throws LimitExceededException {
+        long start = System.currentTimeMillis();
+        ReplicationSnapshotDTO snapshot = this.replicationLog.startSnapshot();
+        List<ReplicatedServiceDTO> services = new ArrayList<>();
+        List<ReplicatedSettingDTO> settings = new ArrayList<>();
+        Map<Long, Long> revisions = new HashMap<>();
+
+        this.adaptiveConcurrencyLimiter.run(Priority.BULK_READ, () -> this.jdbcTemplate.query(
+                SELECT_SERVICES_SQL,
+                resultSet -> {
+                    services.add(ReplicationPrimary.readService(resultSet));
+                }
+        ));
+
+        for (String shard : this.shardDirectory.getShardNames()) {
+            this.adaptiveConcurrencyLimiter.run(Priority.BULK_READ, () -> ShardContext.runOn(shard, () -> this.jdbcTemplate.query(
+                    SELECT_REVISIONS_SQL,
+                    resultSet -> {
+                        if (shard.equals(this.shardDirectory.resolve(resultSet.getLong(1)))) {
+                            revisions.put(resultSet.getLong(1), resultSet.getLong(2));
+                        }
+                    }
+            )));
+
+            long[] lastId = {0};
+            int[] count = new int[1];
+
+            do {
+                long afterId = lastId[0];
+                count[0] = 0;
+
+                this.adaptiveConcurrencyLimiter.run(Priority.BULK_READ, () -> ShardContext.runOn(shard, () -> this.jdbcTemplate.query(
+                        SELECT_SETTINGS_PAGE_SQL,
+                        resultSet -> {
+                            lastId[0] = resultSet.getLong(8);
+                            count[0]++;
+
+                            if (shard.equals(this.shardDirectory.resolve(resultSet.getLong(1)))) {
+                                settings.add(ReplicationPrimary.readSetting(resultSet));
+                            }
+                        },
+                        afterId,
+                        SNAPSHOT_PAGE_SIZE
+                )));
+            } while (count[0] == SNAPSHOT_PAGE_SIZE);
+        }
+
+        snapshot.setServices(services);
+        snapshot.setSettings(settings);
+        snapshot.setRevisions(revisions);
+
+        LOGGER.info("[SSAPI]: Read replication snapshot of [{}] services and [{}] settings at sequence [{}] in [{}] ms.",
+                services.size(), settings.size(), snapshot.getSequence(), System.currentTimeMillis() - start);
+
+        return snapshot;
+    }
+
+    /**
+     * Records the current state of the settings named in the event. If they can not be read, the change can not be
+     * recorded, and the stream is reset so followers do not silently miss it.
+     */
+    @EventListener
+    public void onSettingsChanged(SettingsChangedEvent event) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("serviceId", event.getServiceId())
+                .addValue("names", event.getSettingNames());
+
+        synchronized (this.locks[Math.floorMod(event.getServiceId().hashCode(), LOCK_STRIPES)]) {
+            ReplicationChangeDTO change = new ReplicationChangeDTO();
+            List<ReplicatedSettingDTO> settings = new ArrayList<>();
+            Set<String> deleted = new HashSet<>(event.getSettingNames());
+
+            try {
+                // The reads follow a committed write, so they do not queue behind the concurrency limiter.
+                ShardContext.runOn(this.shardDirectory.resolve(event.getServiceId()), () -> {
+                    List<Long> revision = this.jdbcTemplate.queryForList(SELECT_REVISION_SQL, Long.class, event.getServiceId());
+
+                    change.setRevision(revision.isEmpty() ? 0 : revision.get(0));
+                    this.namedParameterJdbcTemplate.query(SELECT_CHANGED_SETTINGS_SQL, parameters, resultSet -> {
+                        ReplicatedSettingDTO setting = ReplicationPrimary.readSetting(resultSet);
+
+                        settings.add(setting);
+                        deleted.remove(setting.getName());
+                    });
+                });
+            } catch (RuntimeException e) {
+                LOGGER.error("[SSAPI]: Could not record changes to service [{}], resetting the change stream.", event.getServiceName(), e);
+                this.replicationLog.reset();
+                return;
+            }
+
+            change.setServiceId(event.getServiceId());
+            change.setSettings(settings);
+            change.setDeletedSettings(new ArrayList<>(deleted));
+            this.replicationLog.append(change);
+        }
+    }
+
+    /**
+     * Records the current state of the services named in the event.
+     */
+    @EventListener
+    public void onServicesChanged(ServicesChangedEvent event) {
+        List<ReplicatedServiceDTO> services = new ArrayList<>();
+
+        // Services are few and rarely change, so one lock is enough to keep their changes in order.
+        synchronized (this.servicesLock) {
+            try {
+                this.namedParameterJdbcTemplate.query(
+                        SELECT_CHANGED_SERVICES_SQL,
+                        new MapSqlParameterSource("names", event.getServiceNames()),
+                        resultSet -> {
+                            services.add(ReplicationPrimary.readService(resultSet));
+                        }
+                );
+            } catch (RuntimeException e) {
+                LOGGER.error("[SSAPI]: Could not record changes to services {}, resetting the change stream.", event.getServiceNames(), e);
+                this.replicationLog.reset();
+                return;
+            }
+
+            for (ReplicatedServiceDTO service : services) {
+                ReplicationChangeDTO change = new ReplicationChangeDTO();
+
+                change.setService(service);
+                this.replicationLog.append(change);
+            }
+        }
+    }
+
+    private static ReplicatedServiceDTO readService(ResultSet resultSet) throws SQLException {
+        ReplicatedServiceDTO service = new ReplicatedServiceDTO();
+
+        service.setId(resultSet.getLong(1));
+        service.setName(resultSet.getString(2));
+        service.setPassword(resultSet.getString(3));
+        service.setRole(resultSet.getString(4));
+        service.setCreationTime(resultSet.getLong(5));
+        service.setVersion(resultSet.getLong(6));
+
+        return service;
+    }
+
+    private static ReplicatedSettingDTO readSetting(ResultSet resultSet) throws SQLException {
+        ReplicatedSettingDTO setting = new ReplicatedSettingDTO();
+        int keyVersion = resultSet.getInt(5);
+        boolean hasKeyVersion = !resultSet.wasNull();
+        Timestamp dateLastUsed = resultSet.getTimestamp(7);
+
+        setting.setServiceId(resultSet.getLong(1));
+        setting.setName(resultSet.getString(2));
+        setting.setValue(resultSet.getString(3));
+        setting.setSecret(resultSet.getBoolean(4));
+        setting.setKeyVersion(hasKeyVersion ? keyVersion : null);
+        setting.setVersion(resultSet.getLong(6));
+        setting.setDateLastUsed(dateLastUsed == null ? null : ZonedDateTime.ofInstant(dateLastUsed.toInstant(), ZoneId.systemDefault()));
+
+        return setting;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Configuration for replication between nodes, bound from the `settings.replication` properties.
+ */
+@Component
+@ConfigurationProperties(prefix = "settings.replication")
+public class ReplicationProperties {
+
+    /**
+     * The part this node plays in replication.
+     */
+    private ReplicationRole role = ReplicationRole.STANDALONE;
+
+    /**
+     * The number of changes a primary node keeps for followers that are catching up. A follower that falls further
+     * behind loads a new snapshot.
+     */
+    private int logCapacity = 100000;
+
+    /**
+     * The URL of the primary node, used by followers.
+     */
+    private String primaryUrl;
+
+    /**
+     * The name of the service followers authenticate with. It needs the full role.
+     */
+    private String serviceName;
+
+    /**
+     * The password of the service followers authenticate with.
+     */
+    private String password;
+
+    /**
+     * The most changes a follower asks for at once.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * How long, in milliseconds, the primary node holds a request for changes open while there are none.
+     */
+    private long pollTimeoutMs = 20000;
+
+    /**
+     * How long, in milliseconds, a follower waits for a connection to the primary node.
+     */
+    private int connectTimeoutMs = 2000;
+
+    /**
+     * How long, in milliseconds, a follower waits before trying again when the primary node could not be reached.
+     */
+    private long retryDelayMs = 1000;
+
+    /**
+     * Whether a follower packs the settings it holds into buffers outside the heap, which keeps large datasets from
+     * lengthening garbage collection pauses. The buffers count against `-XX:MaxDirectMemorySize`.
+     */
+    private boolean offHeap;
+
+    public ReplicationRole getRole() {
+        return role;
+    }
+
+    public void setRole(ReplicationRole role) {
+        this.role = role;
+    }
+
+    public int getLogCapacity() {
+        return logCapacity;
+    }
+
+    public void setLogCapacity(int logCapacity) {
+        this.logCapacity = logCapacity;
+    }
+
+    public String getPrimaryUrl() {
+        return primaryUrl;
+    }
+
+    public void setPrimaryUrl(String primaryUrl) {
+        this.primaryUrl = primaryUrl;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public long getPollTimeoutMs() {
+        return pollTimeoutMs;
+    }
+
+    public void setPollTimeoutMs(long pollTimeoutMs) {
+        this.pollTimeoutMs = pollTimeoutMs;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public long getRetryDelayMs() {
+        return retryDelayMs;
+    }
+
+    public void setRetryDelayMs(long retryDelayMs) {
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+}
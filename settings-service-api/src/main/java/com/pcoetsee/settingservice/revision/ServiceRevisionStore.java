@@ -0,0 +1,79 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.revision;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Keeps the revision of the settings of each service in the `service_revisions` table.
+ * <p>
+ * The revision is incremented once for every write to the settings of a service, however many settings the write
+ * touches, so clients can tell whether anything changed by comparing a single number. The table lives on the same shard
+ * as the settings, so the increment commits or rolls back together with the settings it describes.
+ */
+@Component
+public class ServiceRevisionStore {
+
+    private static final String INCREMENT_SQL =
+            "INSERT INTO `service_revisions` (`service_id`, `revision`) VALUES (?, 1) ON DUPLICATE KEY UPDATE `revision` = `revision` + 1";
+
+    private static final String SELECT_SQL = "SELECT `revision` FROM `service_revisions` WHERE `service_id` = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ServiceRevisionStore(@Autowired JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Increments the revision of a service. Must be called inside the transaction that writes the settings, on the
+     * shard holding them. The row stays locked until the transaction ends, so writes to the settings of one service
+     * are applied one after the other.
+     *
+     * @param serviceId the ID of the service, null causes exception
+     * @return the new revision, not less than 1
+     */
+    public long increment(Long serviceId) {
+        this.jdbcTemplate.update(INCREMENT_SQL, serviceId);
+
+        return this.getRevision(serviceId);
+    }
+
+    /**
+     * Fetches the revision of a service, on the shard currently selected.
+     *
+     * @param serviceId the ID of the service, null causes exception
+     * @return the current revision, 0 if the settings of the service have never been written
+     */
+    public long getRevision(Long serviceId) {
+        List<Long> revisions = this.jdbcTemplate.queryForList(SELECT_SQL, Long.class, serviceId);
+
+        return revisions.isEmpty() ? 0 : revisions.get(0);
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.search;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * A thread safe, in-memory inverted index from tokens to the documents containing them.
+ * <p>
+ * The tokens of every document are kept as well, so a document can be replaced or removed without scanning the whole
+ * index. Tokens are held in sorted order, which makes prefix searches a range lookup.
+ *
+ * @param <K> the type of the key identifying a document
+ */
+public class InvertedIndex<K> {
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * A query term ending in this character matches every token starting with the rest of the term.
+     */
+    private static final String PREFIX_WILDCARD = "*";
+
+    private final Map<K, String[]> documents = new HashMap<>();
+    private final TreeMap<String, Set<K>> postings = new TreeMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Splits the supplied texts into distinct, lower case tokens. Anything that is not a letter or a digit separates
+     * tokens, so a host name such as db01.example.com becomes db01, example and com.
+     *
+     * @param texts the texts to split, null entries are ignored
+     * @return the distinct tokens in the order they first appear, not null
+     */
+    public static String[] tokenize(String... texts) {
+        Set<String> tokens = new LinkedHashSet<>();
+
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+
+            for (String token : SEPARATORS.split(text.toLowerCase(Locale.ROOT))) {
+                if (!token.isEmpty()) {
+                    tokens.add(token);
+                }
+            }
+        }
+
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * Adds a document, replacing the tokens it was indexed with before.
+     *
+     * @param key    the key of the document, not null
+     * @param tokens the tokens of the document, not null
+     */
+    public void put(K key, String[] tokens) {
+        this.lock.writeLock().lock();
+
+        try {
+            this.unindex(key);
+            this.index(key, tokens);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds many documents under a single lock, replacing the tokens they were indexed with before.
+     *
+     * @param documents the tokens of every document, by key, not null
+     */
+    public void putAll(Map<K, String[]> documents) {
+        this.lock.writeLock().lock();
+
+        try {
+            for (Map.Entry<K, String[]> document : documents.entrySet()) {
+                this.unindex(document.getKey());
+                this.index(document.getKey(), document.getValue());
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a document. Unknown keys are ignored.
+     *
+     * @param key the key of the document, not null
+     */
+    public void remove(K key) {
+        this.lock.writeLock().lock();
+
+        try {
+            this.unindex(key);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the documents containing every supplied term. A term ending in * matches any token starting with the rest
+     * of the term.
+     *
+     * @param terms the lower case terms to look for, null or empty returns no documents
+     * @return the keys of the matching documents, not null
+     */
+    public Set<K> search(Collection<String> terms) {
+        if (terms == null || terms.isEmpty()) {
+            return Collections.emptySet();
+        }
+
+        this.lock.readLock().lock();
+
+        try {
+            List<Set<K>> matches = new ArrayList<>(terms.size());
+
+            for (String term : terms) {
+                Set<K> match = this.match(term);
+
+                if (match.isEmpty()) {
+                    return Collections.emptySet();
+                }
+
+                matches.add(match);
+            }
+
+            // Intersecting from the smallest set keeps the work proportional to the rarest term.
+            matches.sort(Comparator.comparingInt(Set::size));
+
+            Set<K> result = new HashSet<>(matches.get(0));
+
+            for (int i = 1; i < matches.size() && !result.isEmpty(); i++) {
+                result.retainAll(matches.get(i));
+            }
+
+            return result;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int documentCount() {
+        this.lock.readLock().lock();
+
+        try {
+            return this.documents.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    public int tokenCount() {
+        this.lock.readLock().lock();
+
+        try {
+            return this.postings.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding the read lock. The returned set must not be modified.
+     */
+    private Set<K> match(String term) {
+        if (!term.endsWith(PREFIX_WILDCARD)) {
+            Set<K> keys = this.postings.get(term);
+
+            return keys == null ? Collections.emptySet() : keys;
+        }
+
+        String prefix = term.substring(0, term.length() - PREFIX_WILDCARD.length());
+        Set<K> keys = new HashSet<>();
+
+        for (Set<K> prefixed : this.postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            keys.addAll(prefixed);
+        }
+
+        return keys;
+    }
+
+    /**
+     * Must be called while holding the write lock.
+     */
+    private void index(K key, String[] tokens) {
+        this.documents.put(key, tokens);
+
+        for (String token : tokens) {
+            this.postings.computeIfAbsent(token, t -> new HashSet<>()).add(key);
+        }
+    }
+
+    /**
+     * Must be called while holding the write lock.
+     */
+    private void unindex(K key) {
+        String[] tokens = this.documents.remove(key);
+
+        if (tokens == null) {
+            return;
+        }
+
+        for (String token : tokens) {
+            Set<K> keys = this.postings.get(token);
+
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                this.postings.remove(token);
+            }
+        }
+    }
+}
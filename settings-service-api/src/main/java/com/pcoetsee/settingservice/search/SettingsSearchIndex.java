@@ -0,0 +1,402 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.search;
+
+import com.pcoetsee.settingservice.dto.SettingSearchResultDTO;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.SearchIndexNotReadyException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.memory.StringInterner;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps an in-memory {@link InvertedIndex} of the tokens in the names and values of all settings, so operators can find
+ * the settings mentioning a host name or a flag without scanning the `settings` table.
+ * <p>
+ * The index is built in the background once the application has started. Every shard is split into ID ranges that are
+ * read and tokenized in parallel. After that, every {@link SettingsChangedEvent} re-reads the settings it names and
+ * updates the index. Changes made while the index is being built are replayed once it is complete. The values of secret
+ * settings are never indexed, only their names.
+ */
+@Component
+public class SettingsSearchIndex {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SettingsSearchIndex.class);
+
+    private static final String SELECT_SERVICES_SQL = "SELECT `id`, `name` FROM `services`";
+
+    private static final String SELECT_ID_RANGE_SQL = "SELECT MIN(`id`), MAX(`id`) FROM `settings`";
+
+    private static final String SELECT_RANGE_SQL =
+            "SELECT `id`, `service_id`, `name`, `value`, `secret` FROM `settings` WHERE `id` > ? AND `id` <= ? ORDER BY `id` LIMIT ?";
+
+    private static final String SELECT_CHANGED_SQL =
+            "SELECT `name`, `value`, `secret` FROM `settings` WHERE `service_id` = :serviceId AND `name` IN (:names)";
+
+    /**
+     * The number of locks changes are spread over. Changes to the settings of one service are applied one at a time.
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * How long to wait before retrying a read the concurrency limiter turned away while building.
+     */
+    private static final long BUILD_RETRY_DELAY_MS = 100;
+
+    private final InvertedIndex<SettingKey> index = new InvertedIndex<>();
+    private final Set<SettingKey> secrets = ConcurrentHashMap.newKeySet();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final List<SettingsChangedEvent> pending = new ArrayList<>();
+
+    private final ShardDirectory shardDirectory;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final StringInterner stringInterner;
+    private final boolean enabled;
+    private final int buildThreads;
+    private final int pageSize;
+
+    /**
+     * Set once the initial build is complete. Only modified while holding the lock on the pending changes.
+     */
+    private volatile boolean ready;
+
+    public SettingsSearchIndex(
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired MeterRegistry meterRegistry,
+            @Autowired StringInterner stringInterner,
+            @Value("${settings.search.enabled:true}") boolean enabled,
+            @Value("${settings.search.build-threads:0}") int buildThreads,
+            @Value("${settings.search.page-size:1000}") int pageSize
+    ) {
+        this.shardDirectory = shardDirectory;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.stringInterner = stringInterner;
+        this.enabled = enabled;
+        this.buildThreads = buildThreads > 0 ? buildThreads : Runtime.getRuntime().availableProcessors();
+        this.pageSize = pageSize;
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+
+        Gauge.builder("settings.search.index.documents", this.index, InvertedIndex::documentCount)
+                .description("The number of settings in the search index")
+                .register(meterRegistry);
+        Gauge.builder("settings.search.index.tokens", this.index, InvertedIndex::tokenCount)
+                .description("The number of distinct tokens in the search index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts building the index in the background, so startup is not held up by reading every setting.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!this.enabled) {
+            LOGGER.info("[SSAPI]: Settings search disabled.");
+            return;
+        }
+
+        Thread builder = new Thread(this::build, "search-index-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Finds the settings whose name or value contains every word of the query. Words are split the same way the
+     * settings are, and a word ending in * matches any token starting with the rest of the word.
+     *
+     * @param query the words to look for, blank or null causes exception
+     * @param limit the maximum number of results, must be at least 1
+     * @return the matching settings ordered by service name and setting name, not null
+     * @throws IllegalArgumentException     when the query is blank or null, or the limit is less than 1
+     * @throws SearchIndexNotReadyException when the index is disabled or has not been built yet
+     */
+    public List<SettingSearchResultDTO> search(String query, int limit) throws IllegalArgumentException, SearchIndexNotReadyException {
+        if (StringUtils.isBlank(query) || limit < 1) {
+            throw new IllegalArgumentException("A query and a limit of at least 1 are required.");
+        }
+
+        if (!this.ready) {
+            throw new SearchIndexNotReadyException();
+        }
+
+        List<String> terms = new ArrayList<>();
+
+        for (String word : StringUtils.split(query)) {
+            String[] tokens = InvertedIndex.tokenize(word);
+
+            for (int i = 0; i < tokens.length; i++) {
+                terms.add(i == tokens.length - 1 && word.endsWith("*") ? tokens[i] + "*" : tokens[i]);
+            }
+        }
+
+        return this.index.search(terms).stream()
+                .sorted(Comparator.comparing(SettingKey::getServiceName).thenComparing(SettingKey::getName))
+                .limit(limit)
+                .map(key -> new SettingSearchResultDTO(key.getServiceName(), key.getName(), this.secrets.contains(key)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Updates the index after settings have been written.
+     */
+    @EventListener
+    public void onSettingsChanged(SettingsChangedEvent event) {
+        if (!this.enabled) {
+            return;
+        }
+
+        synchronized (this.pending) {
+            if (!this.ready) {
+                this.pending.add(event);
+                return;
+            }
+        }
+
+        this.refresh(event);
+    }
+
+    /**
+     * Re-reads the settings named in the event and replaces them in the index. Reading and applying happen under the
+     * lock of the service, so whichever of two concurrent refreshes applies last has also read last.
+     */
+    private void refresh(SettingsChangedEvent event) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("serviceId", event.getServiceId())
+                .addValue("names", event.getSettingNames());
+
+        synchronized (this.locks[Math.floorMod(event.getServiceId().hashCode(), LOCK_STRIPES)]) {
+            Map<SettingKey, String[]> found = new HashMap<>();
+
+            try {
+                String shard = this.shardDirectory.resolve(event.getServiceId());
+
+                this.adaptiveConcurrencyLimiter.run(Priority.READ, () -> ShardContext.runOn(
+                        shard,
+                        () -> this.namedParameterJdbcTemplate.query(SELECT_CHANGED_SQL, parameters, resultSet -> {
+                            SettingKey key = new SettingKey(event.getServiceId(), event.getServiceName(), this.stringInterner.intern(resultSet.getString(1)));
+
+                            found.put(key, this.tokenize(key, resultSet.getString(2), resultSet.getBoolean(3)));
+                        })
+                ));
+            } catch (RuntimeException e) {
+                LOGGER.warn("[SSAPI]: Could not refresh the search index for service [{}], results may be stale.", event.getServiceName(), e);
+                return;
+            }
+
+            for (String name : event.getSettingNames()) {
+                SettingKey key = new SettingKey(event.getServiceId(), event.getServiceName(), name);
+
+                if (!found.containsKey(key)) {
+                    this.index.remove(key);
+                    this.secrets.remove(key);
+                }
+            }
+
+            this.index.putAll(found);
+        }
+    }
+
+    private void build() {
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(this.buildThreads, new IndexThreadFactory());
+
+        try {
+            Map<Long, String> serviceNames = new HashMap<>();
+
+            this.retry(() -> {
+                this.jdbcTemplate.query(SELECT_SERVICES_SQL, resultSet -> {
+                    serviceNames.put(resultSet.getLong(1), resultSet.getString(2));
+                });
+                return null;
+            });
+
+            List<Future<Map<SettingKey, String[]>>> parts = new ArrayList<>();
+
+            for (String shard : this.shardDirectory.getShardNames()) {
+                long[] range = this.retry(() -> ShardContext.callOn(shard, () -> this.jdbcTemplate.queryForObject(
+                        SELECT_ID_RANGE_SQL,
+                        (resultSet, i) -> new long[]{resultSet.getLong(1), resultSet.getLong(2)}
+                )));
+
+                if (range == null || range[1] == 0) {
+                    continue;
+                }
+
+                long step = Math.max(1, (range[1] - range[0] + this.buildThreads) / this.buildThreads);
+
+                for (long from = range[0] - 1; from < range[1]; from += step) {
+                    long afterId = from;
+                    long toId = Math.min(range[1], from + step);
+
+                    parts.add(executor.submit(() -> this.read(shard, afterId, toId, serviceNames)));
+                }
+            }
+
+            for (Future<Map<SettingKey, String[]>> part : parts) {
+                this.index.putAll(part.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException | RuntimeException e) {
+            LOGGER.error("[SSAPI]: Could not build the search index, search stays unavailable.", e);
+            return;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<SettingsChangedEvent> replay;
+
+        synchronized (this.pending) {
+            this.ready = true;
+            replay = new ArrayList<>(this.pending);
+            this.pending.clear();
+        }
+
+        replay.forEach(this::refresh);
+        LOGGER.info("[SSAPI]: Built search index of [{}] settings and [{}] tokens in [{}] ms.",
+                this.index.documentCount(), this.index.tokenCount(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Reads and tokenizes the settings of a shard with an ID in the supplied range, a page at a time.
+     */
+    private Map<SettingKey, String[]> read(String shard, long afterId, long toId, Map<Long, String> serviceNames) throws InterruptedException {
+        Map<SettingKey, String[]> documents = new HashMap<>();
+        long[] lastId = {afterId};
+
+        while (lastId[0] < toId) {
+            long pageAfterId = lastId[0];
+            int[] count = new int[1];
+
+            this.retry(() -> ShardContext.callOn(shard, () -> {
+                this.jdbcTemplate.query(SELECT_RANGE_SQL, resultSet -> {
+                    SettingKey key = new SettingKey(resultSet.getLong(2), serviceNames.get(resultSet.getLong(2)), this.stringInterner.intern(resultSet.getString(3)));
+
+                    lastId[0] = resultSet.getLong(1);
+                    count[0]++;
+
+                    if (key.getServiceName() != null) {
+                        documents.put(key, this.tokenize(key, resultSet.getString(4), resultSet.getBoolean(5)));
+                    }
+                }, pageAfterId, toId, this.pageSize);
+                return null;
+            }));
+
+            if (count[0] < this.pageSize) {
+                break;
+            }
+        }
+
+        return documents;
+    }
+
+    /**
+     * Tokenizes a setting. The tokens are interned, since every setting holds its own array of them and the same tokens
+     * turn up in the names and values of thousands of settings.
+     */
+    private String[] tokenize(SettingKey key, String value, boolean secret) {
+        String[] tokens;
+
+        if (secret) {
+            this.secrets.add(key);
+            tokens = InvertedIndex.tokenize(key.getName());
+        } else {
+            this.secrets.remove(key);
+            tokens = InvertedIndex.tokenize(key.getName(), value);
+        }
+
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = this.stringInterner.intern(tokens[i]);
+        }
+
+        return tokens;
+    }
+
+    /**
+     * Runs a read through the concurrency limiter at the lowest priority, waiting and trying again whenever the limiter
+     * turns it away, so building the index gives way to live traffic instead of failing.
+     */
+    private <T> T retry(Supplier<T> call) throws InterruptedException {
+        while (true) {
+            try {
+                return this.adaptiveConcurrencyLimiter.execute(Priority.BULK_READ, call);
+            } catch (LimitExceededException e) {
+                Thread.sleep(BUILD_RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private static class IndexThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "search-index-build-" + this.count.incrementAndGet());
+            thread.setDaemon(true);
+
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.secret;
+
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.dao.SettingDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.persistence.repository.SettingRepository;
+import com.pcoetsee.settingservice.revision.ServiceRevisionStore;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This job re-encrypts secret settings that are not encrypted with the active key, after the active key is changed.
+ * <p>
+ * Every shard is walked in ID order in small batches, each in its own transaction, with a pause in between. The work
+ * goes through the concurrency limiter at the lowest priority, so it backs off as soon as live traffic needs the
+ * database. A value is only replaced if it has not changed since it was read, so a concurrent update is never lost.
+ * The version of the setting is left alone, since the value it holds does not change. A {@link SettingsChangedEvent}
+ * is still published for every batch, so copies of the stored value, such as those held by replicas, are replaced.
+ */
+@Component
+public class SecretRotationJob {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecretRotationJob.class);
+
+    private final SettingRepository settingRepository;
+    private final ServiceRepository serviceRepository;
+    private final SecretSettingCipher secretSettingCipher;
+    private final SecretSettingsProperties secretSettingsProperties;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final ShardDirectory shardDirectory;
+    private final ServiceRevisionStore serviceRevisionStore;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public SecretRotationJob(
+            @Autowired SettingRepository settingRepository,
+            @Autowired ServiceRepository serviceRepository,
+            @Autowired SecretSettingCipher secretSettingCipher,
+            @Autowired SecretSettingsProperties secretSettingsProperties,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired ServiceRevisionStore serviceRevisionStore,
+            @Autowired ApplicationEventPublisher applicationEventPublisher,
+            @Autowired PlatformTransactionManager transactionManager
+    ) {
+        this.settingRepository = settingRepository;
+        this.serviceRepository = serviceRepository;
+        this.secretSettingCipher = secretSettingCipher;
+        this.secretSettingsProperties = secretSettingsProperties;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.shardDirectory = shardDirectory;
+        this.serviceRevisionStore = serviceRevisionStore;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Re-encrypts all secret settings that are not encrypted with the active key.
+     */
+    @Scheduled(fixedDelayString = "${settings.secrets.rotation-interval-ms:300000}", initialDelayString = "${settings.secrets.rotation-interval-ms:300000}")
+    public void rotate() {
+        if (!this.secretSettingCipher.isEnabled() || !this.running.compareAndSet(false, true)) {
+            return;
+        }
+
+        Integer activeKeyVersion = this.secretSettingCipher.getActiveKeyVersion();
+        int rotated = 0;
+
+        try {
+            for (String shard : this.shardDirectory.getShardNames()) {
+                rotated += this.rotateShard(shard, activeKeyVersion);
+            }
+        } catch (LimitExceededException e) {
+            LOGGER.info("[SSAPI]: Database is busy, pausing secret key rotation until the next run.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.running.set(false);
+        }
+
+        if (rotated > 0) {
+            LOGGER.info("[SSAPI]: Re-encrypted [{}] secret settings with key version [{}].", rotated, activeKeyVersion);
+        }
+    }
+
+    private int rotateShard(String shard, Integer activeKeyVersion) throws InterruptedException {
+        Map<Long, String> serviceNames = new LinkedHashMap<>();
+        long afterId = 0;
+        int rotated = 0;
+
+        while (true) {
+            long batchAfterId = afterId;
+            List<SettingDAO> batch = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> this.settingRepository.findSecretsNotEncryptedWith(
+                            activeKeyVersion,
+                            batchAfterId,
+                            PageRequest.of(0, this.secretSettingsProperties.getRotationBatchSize())
+                    ))
+            );
+
+            if (batch.isEmpty()) {
+                return rotated;
+            }
+
+            for (SettingDAO settingDAO : batch) {
+                serviceNames.computeIfAbsent(settingDAO.getServiceDAO().getId(), this::serviceName);
+            }
+
+            List<SettingsChangedEvent> events = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> this.transactionTemplate.execute(status -> this.rotateBatch(batch, activeKeyVersion, serviceNames)))
+            );
+
+            if (events != null) {
+                for (SettingsChangedEvent event : events) {
+                    rotated += event.getSettingNames().size();
+                    this.applicationEventPublisher.publishEvent(event);
+                }
+            }
+
+            afterId = batch.get(batch.size() - 1).getId();
+
+            Thread.sleep(this.secretSettingsProperties.getRotationPauseMs());
+        }
+    }
+
+    /**
+     * Re-encrypts a batch of settings, on the shard currently selected and inside a transaction.
+     *
+     * @return an event per service with the names of the settings that were re-encrypted, to be published once the
+     * transaction has been committed, not null
+     */
+    private List<SettingsChangedEvent> rotateBatch(List<SettingDAO> batch, Integer activeKeyVersion, Map<Long, String> serviceNames) {
+        Map<Long, Set<String>> rotated = new LinkedHashMap<>();
+
+        for (SettingDAO settingDAO : batch) {
+            String value;
+
+            try {
+                value = this.secretSettingCipher.decrypt(settingDAO.getValue(), settingDAO.getKeyVersion());
+            } catch (RuntimeException e) {
+                LOGGER.error("[SSAPI]: Could not decrypt secret setting [{}] with key version [{}], skipping.",
+                        settingDAO.getId(), settingDAO.getKeyVersion(), e);
+                continue;
+            }
+
+            String encryptedValue = this.secretSettingCipher.encrypt(value);
+
+            if (this.settingRepository.replaceEncryptedValue(settingDAO.getId(), settingDAO.getValue(), encryptedValue, activeKeyVersion) == 1) {
+                this.secretSettingCipher.evict(settingDAO.getValue());
+
+                rotated.computeIfAbsent(settingDAO.getServiceDAO().getId(), id -> new LinkedHashSet<>()).add(settingDAO.getName());
+            } else {
+                this.secretSettingCipher.evict(encryptedValue);
+            }
+        }
+
+        List<SettingsChangedEvent> events = new ArrayList<>(rotated.size());
+
+        for (Map.Entry<Long, Set<String>> entry : rotated.entrySet()) {
+            events.add(new SettingsChangedEvent(
+                    entry.getKey(),
+                    serviceNames.get(entry.getKey()),
+                    this.serviceRevisionStore.getRevision(entry.getKey()),
+                    entry.getValue()
+            ));
+        }
+
+        return events;
+    }
+
+    /**
+     * Services live on the primary database, and the settings of a batch are no longer attached to a session, so names
+     * are read before the transaction on the shard takes a connection. Reading the ID of the service does not need
+     * the session, since the proxy holds it.
+     */
+    private String serviceName(Long serviceId) {
+        return ShardContext.callOn(null, () -> this.serviceRepository.findById(serviceId).map(ServiceDAO::getName).orElse(null));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.secret;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.jasypt.encryption.StringEncryptor;
+import org.jasypt.encryption.pbe.PooledPBEStringEncryptor;
+import org.jasypt.encryption.pbe.config.SimpleStringPBEConfig;
+import org.jasypt.iv.RandomIvGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This component encrypts and decrypts the values of secret settings.
+ * <p>
+ * Password based decryption is expensive, so every value is only decrypted once, after which it is served from a
+ * bounded {@link SecretValueCache}.
+ */
+@Component
+public class SecretSettingCipher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SecretSettingCipher.class);
+
+    /**
+     * The same algorithm jasypt-spring-boot uses for encrypted properties.
+     */
+    private static final String ALGORITHM = "PBEWITHHMACSHA512ANDAES_256";
+
+    private final Map<Integer, StringEncryptor> encryptors = new HashMap<>();
+    private final Integer activeKeyVersion;
+    private final SecretValueCache cache;
+
+    public SecretSettingCipher(
+            @Autowired SecretSettingsProperties secretSettingsProperties,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        for (Map.Entry<Integer, String> key : secretSettingsProperties.getKeys().entrySet()) {
+            if (StringUtils.isNotBlank(key.getValue())) {
+                this.encryptors.put(key.getKey(), SecretSettingCipher.createEncryptor(key.getValue()));
+            }
+        }
+
+        this.activeKeyVersion = secretSettingsProperties.getActiveKey();
+        this.cache = new SecretValueCache(secretSettingsProperties.getCacheSize(), meterRegistry);
+
+        if (this.activeKeyVersion != null && !this.encryptors.containsKey(this.activeKeyVersion)) {
+            throw new IllegalStateException("Active secret key version " + this.activeKeyVersion + " is not configured");
+        }
+
+        LOGGER.info("[SSAPI]: Secret settings {}, [{}] keys configured.", this.isEnabled() ? "enabled" : "disabled", this.encryptors.size());
+    }
+
+    /**
+     * @return true if an active key is configured, so secret settings can be stored
+     */
+    public boolean isEnabled() {
+        return this.activeKeyVersion != null;
+    }
+
+    /**
+     * @return the version of the key new secrets are encrypted with, null if secret settings are disabled
+     */
+    public Integer getActiveKeyVersion() {
+        return activeKeyVersion;
+    }
+
+    /**
+     * Encrypts the supplied value with the active key. The decrypted value is cached straight away, since it is likely
+     * to be read soon.
+     *
+     * @param value the value to encrypt, null causes exception
+     * @return the encrypted value, not null
+     * @throws IllegalStateException when secret settings are disabled
+     */
+    public String encrypt(String value) throws IllegalStateException {
+        if (!this.isEnabled()) {
+            throw new IllegalStateException("Secret settings are not enabled, no active key is configured");
+        }
+
+        String encryptedValue = this.encryptors.get(this.activeKeyVersion).encrypt(value);
+        this.cache.put(encryptedValue, value);
+
+        return encryptedValue;
+    }
+
+    /**
+     * Decrypts the supplied value, using the cache if the value has been decrypted before.
+     *
+     * @param encryptedValue the encrypted value, null returns null
+     * @param keyVersion     the version of the key the value was encrypted with, unknown versions cause exception
+     * @return the decrypted value, may return null
+     * @throws IllegalStateException when the key the value was encrypted with is not configured
+     */
+    public String decrypt(String encryptedValue, Integer keyVersion) throws IllegalStateException {
+        if (encryptedValue == null) {
+            return null;
+        }
+
+        String value = this.cache.get(encryptedValue);
+
+        if (value == null) {
+            StringEncryptor encryptor = keyVersion == null ? null : this.encryptors.get(keyVersion);
+
+            if (encryptor == null) {
+                throw new IllegalStateException("Secret key version " + keyVersion + " is not configured, can not decrypt");
+            }
+
+            value = encryptor.decrypt(encryptedValue);
+            this.cache.put(encryptedValue, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Removes the decrypted copy of a value that is being changed or deleted from the cache.
+     *
+     * @param encryptedValue the encrypted value, null is ignored
+     */
+    public void evict(String encryptedValue) {
+        this.cache.remove(encryptedValue);
+    }
+
+    private static StringEncryptor createEncryptor(String password) {
+        SimpleStringPBEConfig config = new SimpleStringPBEConfig();
+
+        config.setPassword(password);
+        config.setAlgorithm(ALGORITHM);
+        config.setKeyObtentionIterations(1000);
+        config.setPoolSize(Runtime.getRuntime().availableProcessors());
+        config.setSaltGeneratorClassName("org.jasypt.salt.RandomSaltGenerator");
+        config.setIvGenerator(new RandomIvGenerator());
+        config.setStringOutputType("base64");
+
+        PooledPBEStringEncryptor encryptor = new PooledPBEStringEncryptor();
+        encryptor.setConfig(config);
+
+        return encryptor;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.secret;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Configuration for encrypting secret settings, bound from the `settings.secrets` properties.
+ * <p>
+ * Every key has a version number. New secrets are encrypted with the active key, and secrets encrypted with any other
+ * key are re-encrypted with the active key in the background. To rotate, add a new key, make it the active key, and
+ * remove the old key once no secrets use it anymore.
+ */
+@Component
+@ConfigurationProperties(prefix = "settings.secrets")
+public class SecretSettingsProperties {
+
+    /**
+     * The encryption passwords, by key version.
+     */
+    private Map<Integer, String> keys = new HashMap<>();
+
+    /**
+     * The version of the key new secrets are encrypted with, null if secret settings are disabled.
+     */
+    private Integer activeKey;
+
+    /**
+     * The maximum number of decrypted values held in memory.
+     */
+    private int cacheSize = 10000;
+
+    /**
+     * The number of secrets re-encrypted per transaction when rotating keys.
+     */
+    private int rotationBatchSize = 100;
+
+    /**
+     * How long, in milliseconds, to pause between re-encryption batches.
+     */
+    private long rotationPauseMs = 100;
+
+    public Map<Integer, String> getKeys() {
+        return keys;
+    }
+
+    public void setKeys(Map<Integer, String> keys) {
+        this.keys = keys;
+    }
+
+    public Integer getActiveKey() {
+        return activeKey;
+    }
+
+    public void setActiveKey(Integer activeKey) {
+        this.activeKey = activeKey;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public int getRotationBatchSize() {
+        return rotationBatchSize;
+    }
+
+    public void setRotationBatchSize(int rotationBatchSize) {
+        this.rotationBatchSize = rotationBatchSize;
+    }
+
+    public long getRotationPauseMs() {
+        return rotationPauseMs;
+    }
+
+    public void setRotationPauseMs(long rotationPauseMs) {
+        this.rotationPauseMs = rotationPauseMs;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.secret;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, least recently used cache of decrypted secret values, keyed by their encrypted value.
+ * <p>
+ * Keying by the encrypted value means a cached value can never be stale: a changed secret is stored with a new
+ * encrypted value, and therefore misses the cache. Entries for values that change are still removed straight away, so
+ * decrypted secrets do not linger in memory longer than needed.
+ */
+public class SecretValueCache {
+
+    private final Map<String, String> values;
+    private final Counter hits;
+    private final Counter misses;
+
+    public SecretValueCache(int maxSize, MeterRegistry meterRegistry) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Secret cache size must be at least 1");
+        }
+
+        this.values = new LinkedHashMap<String, String>(16, 0.75f, true) {
+            private static final long serialVersionUID = 4521982245081658120L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return this.size() > maxSize;
+            }
+        };
+
+        Gauge.builder("settings.secrets.cache.size", this, SecretValueCache::size)
+                .description("The number of decrypted secret values held in memory")
+                .register(meterRegistry);
+        this.hits = Counter.builder("settings.secrets.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("settings.secrets.cache.requests").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Fetches the decrypted value for the supplied encrypted value.
+     *
+     * @param encryptedValue the encrypted value, null returns null
+     * @return the decrypted value if it is cached, otherwise null
+     */
+    public synchronized String get(String encryptedValue) {
+        String value = encryptedValue == null ? null : this.values.get(encryptedValue);
+
+        (value == null ? this.misses : this.hits).increment();
+
+        return value;
+    }
+
+    public synchronized void put(String encryptedValue, String value) {
+        this.values.put(encryptedValue, value);
+    }
+
+    public synchronized void remove(String encryptedValue) {
+        if (encryptedValue != null) {
+            this.values.remove(encryptedValue);
+        }
+    }
+
+    public synchronized void clear() {
+        this.values.clear();
+    }
+
+    public synchronized int size() {
+        return this.values.size();
+    }
+}
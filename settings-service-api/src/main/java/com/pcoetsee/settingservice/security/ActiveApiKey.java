@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import com.pcoetsee.settingservice.persistence.dao.Role;
+
+/**
+ * An immutable, in memory copy of an API key that is allowed to authenticate, along with the details of the service
+ * it belongs to.
+ */
+public final class ActiveApiKey {
+    private final String keyId;
+    private final String serviceName;
+    private final Role role;
+    private final byte[] secretHash;
+
+    /**
+     * The time, in epoch seconds, after which the key may no longer be used. Null if the key does not expire.
+     */
+    private final Long expiryTime;
+
+    public ActiveApiKey(String keyId, String serviceName, Role role, byte[] secretHash, Long expiryTime) {
+        this.keyId = keyId;
+        this.serviceName = serviceName;
+        this.role = role;
+        this.secretHash = secretHash;
+        this.expiryTime = expiryTime;
+    }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public Role getRole() {
+        return role;
+    }
+
+    public byte[] getSecretHash() {
+        return secretHash;
+    }
+
+    public Long getExpiryTime() {
+        return expiryTime;
+    }
+
+    /**
+     * Checks whether the key may still be used at the supplied time.
+     *
+     * @param epochSecond the time to check against, in epoch seconds
+     * @return true if the key has no expiry time, or expires after the supplied time, otherwise false
+     */
+    public boolean isActiveAt(long epochSecond) {
+        return this.expiryTime == null || this.expiryTime > epochSecond;
+    }
+
+    @Override
+    public String toString() {
+        return "ActiveApiKey{" +
+                "keyId='" + keyId + '\'' +
+                ", serviceName='" + serviceName + '\'' +
+                ", role=" + role +
+                ", expiryTime=" + expiryTime +
+                '}';
+    }
+}
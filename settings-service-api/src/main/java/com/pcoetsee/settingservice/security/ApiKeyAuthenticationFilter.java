@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import com.pcoetsee.settingservice.service.ApiKeyService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+
+/**
+ * This filter authenticates requests that carry an API key, sent as {@code Authorization: ApiKey <keyId>:<secret>}.
+ * <p>
+ * Requests without an API key are passed on untouched, so they can still authenticate with a service name and
+ * password.
+ */
+public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
+    /**
+     * The authorization scheme used for API keys.
+     */
+    public static final String AUTHORIZATION_SCHEME = "ApiKey";
+
+    private final ApiKeyService apiKeyService;
+
+    public ApiKeyAuthenticationFilter(ApiKeyService apiKeyService) {
+        this.apiKeyService = apiKeyService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        if (!StringUtils.startsWithIgnoreCase(header, AUTHORIZATION_SCHEME + " ")) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String credentials = header.substring(AUTHORIZATION_SCHEME.length() + 1).trim();
+        int separator = credentials.indexOf(':');
+        ActiveApiKey activeApiKey = separator <= 0 ? null : this.apiKeyService.authenticate(
+                credentials.substring(0, separator),
+                credentials.substring(separator + 1)
+        );
+
+        if (activeApiKey == null) {
+            SecurityContextHolder.clearContext();
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid API key");
+            return;
+        }
+
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                activeApiKey.getServiceName(),
+                null,
+                Collections.singletonList(activeApiKey.getRole())
+        );
+        authentication.setDetails(activeApiKey.getKeyId());
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+/**
+ * This class hashes API key secrets with HMAC-SHA256 and verifies them in constant time.
+ * <p>
+ * API key secrets are long random values, so unlike passwords they do not need a deliberately slow hash to resist
+ * guessing. Keying the HMAC with a server side secret means a leaked `api_keys` table can not be used to verify
+ * guesses offline.
+ */
+public class ApiKeyHasher {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final SecretKeySpec keySpec;
+
+    /**
+     * {@link Mac} instances are not thread safe, so every thread gets its own.
+     */
+    private final ThreadLocal<Mac> macs;
+
+    /**
+     * Constructor that sets the server side secret used to key the HMAC.
+     *
+     * @param hmacSecret the server side secret, blank or null causes exception
+     */
+    public ApiKeyHasher(String hmacSecret) {
+        if (hmacSecret == null || hmacSecret.trim().isEmpty()) {
+            throw new IllegalArgumentException("No HMAC secret supplied, can not hash API keys");
+        }
+
+        this.keySpec = new SecretKeySpec(hmacSecret.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+        this.macs = ThreadLocal.withInitial(this::newMac);
+    }
+
+    /**
+     * Calculates the HMAC of the supplied secret.
+     *
+     * @param secret the secret to hash, null causes exception
+     * @return the raw HMAC bytes, not null
+     */
+    public byte[] hash(String secret) {
+        return this.macs.get().doFinal(secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Calculates the HMAC of the supplied secret and encodes it for storage.
+     *
+     * @param secret the secret to hash, null causes exception
+     * @return the Base64 encoded HMAC, not null
+     */
+    public String hashToString(String secret) {
+        return Base64.getEncoder().encodeToString(this.hash(secret));
+    }
+
+    /**
+     * Checks whether the supplied secret matches the expected HMAC. The comparison takes the same amount of time no
+     * matter where the first mismatching byte is.
+     *
+     * @param secret       the secret presented by the caller, null returns false
+     * @param expectedHash the raw HMAC bytes stored for the key, null returns false
+     * @return true if the HMAC of the secret matches the expected HMAC, otherwise false
+     */
+    public boolean matches(String secret, byte[] expectedHash) {
+        if (secret == null || expectedHash == null) {
+            return false;
+        }
+
+        return MessageDigest.isEqual(this.hash(secret), expectedHash);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(this.keySpec);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+}
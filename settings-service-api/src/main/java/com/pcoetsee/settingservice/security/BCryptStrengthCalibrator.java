@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class picks the highest BCrypt strength that can hash a password within a latency budget on the current
+ * hardware.
+ * <p>
+ * Every increase in strength doubles the work BCrypt does, so the cost is measured once at the minimum strength and the
+ * strength that fits the budget is extrapolated from that. The extrapolated strength is then measured as well, and
+ * lowered if it turns out to be too slow.
+ */
+public class BCryptStrengthCalibrator {
+    private static final Logger LOGGER = LoggerFactory.getLogger(BCryptStrengthCalibrator.class);
+
+    /**
+     * The password that is hashed while calibrating.
+     */
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+
+    /**
+     * The number of timed hashes at the minimum strength, the fastest one is used.
+     */
+    private static final int SAMPLES = 3;
+
+    private final int minStrength;
+    private final int maxStrength;
+
+    /**
+     * Constructor that sets the bounds the calibrated strength must fall within.
+     *
+     * @param minStrength the lowest strength that may be picked, even if it is slower than the budget, 4 to 31
+     * @param maxStrength the highest strength that may be picked, minStrength to 31
+     */
+    public BCryptStrengthCalibrator(int minStrength, int maxStrength) {
+        if (minStrength < 4 || maxStrength > 31 || minStrength > maxStrength) {
+            throw new IllegalArgumentException("BCrypt strength bounds must satisfy 4 <= min <= max <= 31");
+        }
+
+        this.minStrength = minStrength;
+        this.maxStrength = maxStrength;
+    }
+
+    /**
+     * Finds the highest strength that hashes a password within the supplied budget.
+     *
+     * @param latencyBudgetMillis how long, in milliseconds, a single hash may take
+     * @return a strength between the minimum and maximum strength, inclusive
+     */
+    public int calibrate(long latencyBudgetMillis) {
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(latencyBudgetMillis);
+
+        BCryptStrengthCalibrator.timeHash(this.minStrength);
+
+        long baseNanos = Long.MAX_VALUE;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            baseNanos = Math.min(baseNanos, BCryptStrengthCalibrator.timeHash(this.minStrength));
+        }
+
+        int strength = this.minStrength;
+        long estimatedNanos = baseNanos;
+
+        while (strength < this.maxStrength && estimatedNanos * 2 <= budgetNanos) {
+            strength++;
+            estimatedNanos *= 2;
+        }
+
+        while (strength > this.minStrength && BCryptStrengthCalibrator.timeHash(strength) > budgetNanos) {
+            strength--;
+        }
+
+        LOGGER.info("[SSAPI]: BCrypt strength calibrated to [{}] for a budget of [{}ms], strength [{}] took [{}us].",
+                strength, latencyBudgetMillis, this.minStrength, TimeUnit.NANOSECONDS.toMicros(baseNanos));
+
+        return strength;
+    }
+
+    private static long timeHash(int strength) {
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long start = System.nanoTime();
+
+        encoder.encode(CALIBRATION_PASSWORD);
+
+        return System.nanoTime() - start;
+    }
+}
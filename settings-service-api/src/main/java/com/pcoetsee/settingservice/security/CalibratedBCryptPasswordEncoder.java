@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link BCryptPasswordEncoder} with a fixed strength that asks for any hash with a different strength to be
+ * upgraded, and that records how long verifying a password takes.
+ * <p>
+ * Spring Security calls {@link #upgradeEncoding(String)} after every successful login, and re-encodes the password
+ * with this encoder when it returns true, so stored hashes move to the configured strength as services log in.
+ */
+public class CalibratedBCryptPasswordEncoder extends BCryptPasswordEncoder {
+    /**
+     * Matches the version and strength at the start of a BCrypt hash, for example {@code $2a$10$}.
+     */
+    private static final Pattern BCRYPT_PREFIX = Pattern.compile("^\\$2[abxy]?\\$(\\d\\d)\\$");
+
+    private final int strength;
+    private final Timer matchedTimer;
+    private final Timer mismatchedTimer;
+
+    public CalibratedBCryptPasswordEncoder(int strength, MeterRegistry meterRegistry) {
+        super(strength);
+
+        this.strength = strength;
+        this.matchedTimer = CalibratedBCryptPasswordEncoder.verifyTimer(meterRegistry, "matched");
+        this.mismatchedTimer = CalibratedBCryptPasswordEncoder.verifyTimer(meterRegistry, "mismatched");
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        long start = System.nanoTime();
+        boolean matches = super.matches(rawPassword, encodedPassword);
+
+        (matches ? this.matchedTimer : this.mismatchedTimer).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        return matches;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        if (encodedPassword == null) {
+            return false;
+        }
+
+        Matcher matcher = BCRYPT_PREFIX.matcher(encodedPassword);
+
+        return matcher.find() && Integer.parseInt(matcher.group(1)) != this.strength;
+    }
+
+    private static Timer verifyTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("settings.security.password.verify")
+                .description("Time taken to verify a password against its BCrypt hash")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
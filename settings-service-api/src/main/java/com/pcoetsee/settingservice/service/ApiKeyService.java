@@ -0,0 +1,366 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.service;
+
+import com.pcoetsee.settingservice.dto.ApiKeyDTO;
+import com.pcoetsee.settingservice.event.ServicesChangedEvent;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.ServiceDoesNotExistException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.persistence.dao.ApiKeyDAO;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ApiKeyRepository;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.security.ActiveApiKey;
+import com.pcoetsee.settingservice.security.ApiKeyHasher;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This service is used for processing data relating to the `settings_service`.`api_keys` table.
+ * <p>
+ * All keys that can still be used are held in memory, so verifying a key costs a map lookup and a single HMAC, with no
+ * database access. The keys of a service are reloaded as soon as the service changes on this node, so a change of role
+ * applies to its keys straight away. The table is reloaded periodically so keys created or expired, and services
+ * changed, on other nodes are picked up.
+ */
+@Service
+public class ApiKeyService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ApiKeyService.class);
+
+    /**
+     * The prefix of every key ID, so keys are easy to recognise in logs and configuration.
+     */
+    private static final String KEY_ID_PREFIX = "ak_";
+    private static final int KEY_ID_BYTES = 12;
+    private static final int SECRET_BYTES = 32;
+
+    private final ApiKeyRepository apiKeyRepository;
+    private final ServiceRepository serviceRepository;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final ApiKeyHasher apiKeyHasher;
+    private final int maxActiveKeys;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * All keys that could still be used when the table was last loaded, by key ID.
+     */
+    private volatile ConcurrentMap<String, ActiveApiKey> activeKeys = new ConcurrentHashMap<>();
+
+    public ApiKeyService(
+            @Autowired ApiKeyRepository apiKeyRepository,
+            @Autowired ServiceRepository serviceRepository,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Value("${settings.api-keys.hmac-secret}") String hmacSecret,
+            @Value("${settings.api-keys.max-active-per-service:5}") int maxActiveKeys
+    ) {
+        this.apiKeyRepository = apiKeyRepository;
+        this.serviceRepository = serviceRepository;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.apiKeyHasher = new ApiKeyHasher(hmacSecret);
+        this.maxActiveKeys = maxActiveKeys;
+    }
+
+    /**
+     * This method converts an API key data access object to an API key data transfer object. The secret is never
+     * included.
+     *
+     * @param apiKeyDAO the ApiKeyDAO to convert to an ApiKeyDTO, null returns null
+     * @return an ApiKeyDTO representation of the supplied ApiKeyDAO, may return null
+     */
+    public static ApiKeyDTO apiKeyDAOToDTO(ApiKeyDAO apiKeyDAO) {
+        if (apiKeyDAO == null) {
+            return null;
+        }
+
+        ApiKeyDTO apiKeyDTO = new ApiKeyDTO();
+
+        apiKeyDTO.setKeyId(apiKeyDAO.getKeyId());
+        apiKeyDTO.setCreationTime(ApiKeyService.epochSecondToZonedDateTime(apiKeyDAO.getCreationTime()));
+        apiKeyDTO.setExpiryTime(ApiKeyService.epochSecondToZonedDateTime(apiKeyDAO.getExpiryTime()));
+
+        return apiKeyDTO;
+    }
+
+    /**
+     * Reloads all keys that can still be used from the database.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${settings.api-keys.refresh-interval-ms:60000}", initialDelayString = "${settings.api-keys.refresh-interval-ms:60000}")
+    public synchronized void refresh() {
+        long now = ZonedDateTime.now().toEpochSecond();
+        ConcurrentMap<String, ActiveApiKey> loaded = new ConcurrentHashMap<>();
+
+        for (ApiKeyDAO apiKeyDAO : this.apiKeyRepository.findAllActiveAt(now)) {
+            loaded.put(apiKeyDAO.getKeyId(), this.toActiveApiKey(apiKeyDAO, apiKeyDAO.getServiceDAO()));
+        }
+
+        this.activeKeys = loaded;
+        LOGGER.debug("[SSAPI]: Loaded [{}] active API keys.", loaded.size());
+    }
+
+    /**
+     * Reloads the keys of services that were created or updated, so they carry the current role of their service.
+     * Synchronized with {@link #refresh()}, so a reload of the whole table that started before the change can not put
+     * the old role back.
+     *
+     * @param event the names of the services that changed, not null
+     */
+    @EventListener
+    public synchronized void onServicesChanged(ServicesChangedEvent event) {
+        if (event.getServiceNames().isEmpty()) {
+            return;
+        }
+
+        // Keys are replaced in place, never removed first, so requests verified meanwhile do not fail. Keys that were
+        // not loaded again have expired, and are refused on their expiry time until the next full reload drops them.
+        for (ApiKeyDAO apiKeyDAO : this.apiKeyRepository.findAllActiveByServiceNamesAt(event.getServiceNames(), ZonedDateTime.now().toEpochSecond())) {
+            this.activeKeys.put(apiKeyDAO.getKeyId(), this.toActiveApiKey(apiKeyDAO, apiKeyDAO.getServiceDAO()));
+        }
+    }
+
+    /**
+     * Verifies the supplied API key credentials against the keys held in memory.
+     *
+     * @param keyId  the public identifier of the key, null returns null
+     * @param secret the secret presented by the caller, null returns null
+     * @return the matching key if the secret is correct and the key has not expired, otherwise null
+     */
+    public ActiveApiKey authenticate(String keyId, String secret) {
+        if (keyId == null || secret == null) {
+            return null;
+        }
+
+        ActiveApiKey activeApiKey = this.activeKeys.get(keyId);
+
+        if (activeApiKey == null || !activeApiKey.isActiveAt(ZonedDateTime.now().toEpochSecond())) {
+            return null;
+        }
+
+        return this.apiKeyHasher.matches(secret, activeApiKey.getSecretHash()) ? activeApiKey : null;
+    }
+
+    /**
+     * Fetches all keys, including expired keys, belonging to the supplied service.
+     *
+     * @param serviceName the name of the service, blank or null causes exception
+     * @return a list of keys belonging to the service, without secrets, not null
+     * @throws IllegalArgumentException when the service name is blank or null
+     * @throws IllegalAccessException   when the authenticated service may not manage keys for the supplied service
+     * @throws LimitExceededException   when the database is too busy to handle the request
+     */
+    public List<ApiKeyDTO> getApiKeys(String serviceName) throws IllegalArgumentException, IllegalAccessException, LimitExceededException {
+        this.checkAccess(serviceName);
+
+        List<ApiKeyDTO> result = new ArrayList<>();
+
+        for (ApiKeyDAO apiKeyDAO : this.adaptiveConcurrencyLimiter.execute(Priority.READ, () -> this.apiKeyRepository.findAllByServiceDAOName(serviceName))) {
+            result.add(ApiKeyService.apiKeyDAOToDTO(apiKeyDAO));
+        }
+
+        return result;
+    }
+
+    /**
+     * Creates a new key for the supplied service. Existing keys remain usable, so several keys can be active while
+     * callers move over to a new one.
+     *
+     * @param serviceName the name of the service, blank or null causes exception
+     * @return the new key, including the secret, which can not be retrieved again, not null
+     * @throws IllegalArgumentException     when the service name is blank or null, or the service already has the
+     *                                      maximum number of keys that have not been set to expire
+     * @throws IllegalAccessException       when the authenticated service may not manage keys for the supplied service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public ApiKeyDTO createApiKey(String serviceName) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, LimitExceededException {
+        this.checkAccess(serviceName);
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        long permanentCount = this.activeKeys.values().stream()
+                .filter(key -> key.getServiceName().equals(serviceDAO.getName()) && key.getExpiryTime() == null)
+                .count();
+
+        if (permanentCount >= this.maxActiveKeys) {
+            throw new IllegalArgumentException("Service already has the maximum number of non-expiring API keys, expire one first");
+        }
+
+        String secret = this.randomToken(SECRET_BYTES);
+        ApiKeyDAO apiKeyDAO = new ApiKeyDAO();
+
+        apiKeyDAO.setServiceDAO(serviceDAO);
+        apiKeyDAO.setKeyId(KEY_ID_PREFIX + this.randomToken(KEY_ID_BYTES));
+        apiKeyDAO.setSecretHash(this.apiKeyHasher.hashToString(secret));
+
+        ApiKeyDAO saved = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.apiKeyRepository.save(apiKeyDAO));
+        this.activeKeys.put(saved.getKeyId(), this.toActiveApiKey(saved, serviceDAO));
+
+        LOGGER.info("[SSAPI]: Created API key [{}] for service [{}].", saved.getKeyId(), serviceDAO.getName());
+
+        ApiKeyDTO apiKeyDTO = ApiKeyService.apiKeyDAOToDTO(saved);
+        apiKeyDTO.setSecret(secret);
+
+        return apiKeyDTO;
+    }
+
+    /**
+     * Rotates the keys of the supplied service. A new key is created, and every other key of the service is set to
+     * expire once the grace period has passed, giving callers time to switch to the new key.
+     *
+     * @param serviceName  the name of the service, blank or null causes exception
+     * @param graceSeconds how long, in seconds, the old keys should remain usable, negative causes exception
+     * @return the new key, including the secret, which can not be retrieved again, not null
+     * @throws IllegalArgumentException     when the service name is blank or null, or the grace period is negative
+     * @throws IllegalAccessException       when the authenticated service may not manage keys for the supplied service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public ApiKeyDTO rotateApiKeys(String serviceName, long graceSeconds) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, LimitExceededException {
+        if (graceSeconds < 0) {
+            throw new IllegalArgumentException("Grace period can not be negative");
+        }
+
+        List<ApiKeyDTO> existingKeys = this.getApiKeys(serviceName);
+
+        for (ApiKeyDTO existingKey : existingKeys) {
+            this.expireApiKey(serviceName, existingKey.getKeyId(), graceSeconds);
+        }
+
+        return this.createApiKey(serviceName);
+    }
+
+    /**
+     * Sets a key of the supplied service to expire once the grace period has passed. A key that already expires sooner
+     * is left as is.
+     *
+     * @param serviceName  the name of the service the key belongs to, blank or null causes exception
+     * @param keyId        the identifier of the key, blank or null causes exception
+     * @param graceSeconds how long, in seconds, the key should remain usable, zero expires the key immediately, negative
+     *                     causes exception
+     * @throws IllegalArgumentException when the service name or key ID is blank or null, the key does not belong to the
+     *                                  service, or the grace period is negative
+     * @throws IllegalAccessException   when the authenticated service may not manage keys for the supplied service
+     * @throws LimitExceededException   when the database is too busy to handle the request
+     */
+    public void expireApiKey(String serviceName, String keyId, long graceSeconds) throws IllegalArgumentException, IllegalAccessException, LimitExceededException {
+        this.checkAccess(serviceName);
+
+        if (StringUtils.isBlank(keyId)) {
+            throw new IllegalArgumentException("No key ID supplied, can't figure out which key to expire.");
+        }
+
+        if (graceSeconds < 0) {
+            throw new IllegalArgumentException("Grace period can not be negative");
+        }
+
+        ApiKeyDAO apiKeyDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.apiKeyRepository.findByKeyId(keyId));
+
+        if (apiKeyDAO == null || !StringUtils.equals(apiKeyDAO.getServiceDAO().getName(), serviceName)) {
+            throw new IllegalArgumentException("No API key with the supplied ID exists for the supplied service");
+        }
+
+        long expiryTime = ZonedDateTime.now().toEpochSecond() + graceSeconds;
+
+        if (apiKeyDAO.getExpiryTime() != null && apiKeyDAO.getExpiryTime() <= expiryTime) {
+            return;
+        }
+
+        apiKeyDAO.setExpiryTime(expiryTime);
+        this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.apiKeyRepository.save(apiKeyDAO));
+
+        if (graceSeconds == 0) {
+            this.activeKeys.remove(keyId);
+        } else {
+            this.activeKeys.computeIfPresent(keyId, (id, key) -> new ActiveApiKey(id, key.getServiceName(), key.getRole(), key.getSecretHash(), expiryTime));
+        }
+
+        LOGGER.info("[SSAPI]: API key [{}] for service [{}] set to expire in [{}] seconds.", keyId, serviceName, graceSeconds);
+    }
+
+    /**
+     * Checks that the currently authenticated service may manage the keys of the supplied service. Services may manage
+     * their own keys, and services with the {@link Role#FULL} role may manage the keys of any service.
+     *
+     * @param serviceName the name of the service whose keys are being managed, blank or null causes exception
+     * @throws IllegalArgumentException when the service name is blank or null
+     * @throws IllegalAccessException   when the authenticated service may not manage keys for the supplied service
+     */
+    private void checkAccess(String serviceName) throws IllegalArgumentException, IllegalAccessException {
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("No service name supplied, can't figure out which service's keys to manage.");
+        }
+
+        if (!StringUtils.equals(serviceName, AuthenticatedService.getName()) && !AuthenticatedService.hasRole(Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+    }
+
+    private ActiveApiKey toActiveApiKey(ApiKeyDAO apiKeyDAO, ServiceDAO serviceDAO) {
+        return new ActiveApiKey(
+                apiKeyDAO.getKeyId(),
+                serviceDAO.getName(),
+                serviceDAO.getRole(),
+                Base64.getDecoder().decode(apiKeyDAO.getSecretHash()),
+                apiKeyDAO.getExpiryTime()
+        );
+    }
+
+    private String randomToken(int bytes) {
+        byte[] token = new byte[bytes];
+        this.secureRandom.nextBytes(token);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token);
+    }
+
+    private static ZonedDateTime epochSecondToZonedDateTime(Long epochSecond) {
+        return epochSecond == null ? null : ZonedDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.service;
+
+import com.pcoetsee.settingservice.audit.AuditAction;
+import com.pcoetsee.settingservice.audit.AuditTrail;
+import com.pcoetsee.settingservice.dto.ServiceCreationResultDTO;
+import com.pcoetsee.settingservice.dto.ServiceDTO;
+import com.pcoetsee.settingservice.event.ServicesChangedEvent;
+import com.pcoetsee.settingservice.exception.BulkheadFullException;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.ReadOnlyReplicaException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This service is used for creating many services at once.
+ * <p>
+ * A batch is checked for existing names in a single query, the passwords are hashed in parallel on the hashing
+ * bulkhead, which bounds hashing for single services and batches alike, and all new rows are inserted with a single
+ * JDBC batch in one transaction.
+ */
+@Service
+public class ServiceProvisioningService {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceProvisioningService.class);
+
+    private static final String INSERT_SERVICE_SQL =
+            "INSERT INTO `services` (`name`, `password`, `role`, `creation_time`, `version`) VALUES (?, ?, ?, ?, 0)";
+
+    private final ServiceRepository serviceRepository;
+    private final BCryptPasswordEncoder bCryptPasswordEncoder;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Bulkhead hashingBulkhead;
+    private final AuditTrail auditTrail;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final ReplicaStore replicaStore;
+    private final int maxBatchSize;
+    private final long hashingTimeoutMillis;
+
+    public ServiceProvisioningService(
+            @Autowired ServiceRepository serviceRepository,
+            @Autowired BCryptPasswordEncoder bCryptPasswordEncoder,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired PlatformTransactionManager transactionManager,
+            @Autowired @Qualifier("hashingBulkhead") Bulkhead hashingBulkhead,
+            @Autowired AuditTrail auditTrail,
+            @Autowired ApplicationEventPublisher applicationEventPublisher,
+            @Autowired(required = false) ReplicaStore replicaStore,
+            @Value("${settings.services.batch.max-size:500}") int maxBatchSize,
+            @Value("${settings.services.batch.hashing-timeout-ms:60000}") long hashingTimeoutMillis
+    ) {
+        this.serviceRepository = serviceRepository;
+        this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hashingBulkhead = hashingBulkhead;
+        this.auditTrail = auditTrail;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.replicaStore = replicaStore;
+        this.maxBatchSize = maxBatchSize;
+        this.hashingTimeoutMillis = hashingTimeoutMillis;
+    }
+
+    /**
+     * This method creates all valid services in the supplied batch. Invalid entries, and entries whose name is already
+     * taken, are skipped and reported, they do not stop the rest of the batch from being created.
+     *
+     * @param serviceDTOs the services to create, null or empty causes exception
+     * @return one result per supplied service, in the same order as the supplied services, not null
+     * @throws IllegalArgumentException when no services, or more services than the maximum batch size, are supplied
+     * @throws IllegalAccessException   when the authenticated service is not allowed to create services
+     * @throws ReadOnlyReplicaException when this node is a follower
+     * @throws LimitExceededException   when the database is too busy to handle the request
+     */
+    public List<ServiceCreationResultDTO> createServices(List<ServiceDTO> serviceDTOs) throws IllegalArgumentException, IllegalAccessException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (serviceDTOs == null || serviceDTOs.isEmpty()) {
+            throw new IllegalArgumentException("No services supplied, nothing to create");
+        }
+
+        if (serviceDTOs.size() > this.maxBatchSize) {
+            throw new IllegalArgumentException("Too many services supplied, at most " + this.maxBatchSize + " can be created at once");
+        }
+
+        boolean hasFullRole = AuthenticatedService.hasRole(Role.FULL);
+
+        if (!hasFullRole && !AuthenticatedService.hasRole(Role.CREATE)) {
+            throw new IllegalAccessException();
+        }
+
+        ServiceCreationResultDTO[] results = new ServiceCreationResultDTO[serviceDTOs.size()];
+        Map<String, Integer> candidates = this.validate(serviceDTOs, hasFullRole, results);
+
+        if (!candidates.isEmpty()) {
+            this.skipExistingNames(candidates, results);
+        }
+
+        if (!candidates.isEmpty()) {
+            Map<Integer, ServiceDAO> hashed = this.hashPasswords(serviceDTOs, candidates, results);
+            this.insert(hashed, results);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Checks every supplied service for the required fields and for names repeated within the batch. Only services
+     * with the {@link Role#FULL} role may create other services with that role.
+     *
+     * @return the index of every service that passed, keyed by name
+     */
+    private Map<String, Integer> validate(List<ServiceDTO> serviceDTOs, boolean hasFullRole, ServiceCreationResultDTO[] results) {
+        Map<String, Integer> candidates = new LinkedHashMap<>();
+
+        for (int i = 0; i < serviceDTOs.size(); i++) {
+            ServiceDTO serviceDTO = serviceDTOs.get(i);
+            String name = serviceDTO == null ? null : serviceDTO.getName();
+
+            if (serviceDTO == null || StringUtils.isBlank(name)) {
+                results[i] = new ServiceCreationResultDTO(name, ServiceCreationResultDTO.Status.INVALID, "No name supplied");
+            } else if (StringUtils.isBlank(serviceDTO.getPassword())) {
+                results[i] = new ServiceCreationResultDTO(name, ServiceCreationResultDTO.Status.INVALID, "No password supplied");
+            } else if (!hasFullRole && Role.roleFromString(serviceDTO.getRole()) == Role.FULL) {
+                results[i] = new ServiceCreationResultDTO(name, ServiceCreationResultDTO.Status.INVALID, "Not allowed to create services with the FULL role");
+            } else if (candidates.containsKey(name)) {
+                results[i] = new ServiceCreationResultDTO(name, ServiceCreationResultDTO.Status.DUPLICATE, "Name repeated in batch");
+            } else {
+                candidates.put(name, i);
+            }
+        }
+
+        return candidates;
+    }
+
+    /**
+     * Removes every candidate whose name is already taken, using a single query.
+     */
+    private void skipExistingNames(Map<String, Integer> candidates, ServiceCreationResultDTO[] results) throws LimitExceededException {
+        List<ServiceDAO> existing = this.adaptiveConcurrencyLimiter.execute(
+                Priority.ADMIN_WRITE,
+                () -> this.serviceRepository.findAllByNameIn(candidates.keySet())
+        );
+
+        for (ServiceDAO serviceDAO : existing) {
+            Integer index = candidates.remove(serviceDAO.getName());
+
+            if (index != null) {
+                results[index] = new ServiceCreationResultDTO(
+                        serviceDAO.getName(),
+                        ServiceCreationResultDTO.Status.DUPLICATE,
+                        "A service with the supplied name already exists"
+                );
+            }
+        }
+    }
+
+    /**
+     * Hashes the passwords of all candidates in parallel on the hashing bulkhead. Candidates the bulkhead has no room
+     * for fail on their own, as do candidates not hashed before the deadline of the batch.
+     *
+     * @return a new, unsaved service for every candidate whose password was hashed, keyed by index
+     */
+    private Map<Integer, ServiceDAO> hashPasswords(List<ServiceDTO> serviceDTOs, Map<String, Integer> candidates, ServiceCreationResultDTO[] results) {
+        Map<Integer, Future<ServiceDAO>> futures = new LinkedHashMap<>();
+
+        for (Integer index : candidates.values()) {
+            ServiceDTO serviceDTO = serviceDTOs.get(index);
+
+            try {
+                futures.put(index, this.hashingBulkhead.start(() -> ServicesService.serviceDTOToDAO(serviceDTO, this.bCryptPasswordEncoder)));
+            } catch (BulkheadFullException e) {
+                results[index] = new ServiceCreationResultDTO(serviceDTO.getName(), ServiceCreationResultDTO.Status.FAILED, "Server is too busy to hash the password");
+            }
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.hashingTimeoutMillis);
+        Map<Integer, ServiceDAO> hashed = new LinkedHashMap<>();
+
+        for (Map.Entry<Integer, Future<ServiceDAO>> entry : futures.entrySet()) {
+            String name = serviceDTOs.get(entry.getKey()).getName();
+
+            try {
+                hashed.put(entry.getKey(), entry.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (InterruptedException e) {
+                entry.getValue().cancel(false);
+                Thread.currentThread().interrupt();
+                results[entry.getKey()] = new ServiceCreationResultDTO(name, ServiceCreationResultDTO.Status.FAILED, "Interrupted while hashing the password");
+            } catch (ExecutionException | TimeoutException e) {
+                entry.getValue().cancel(false);
+                results[entry.getKey()] = new ServiceCreationResultDTO(name, ServiceCreationResultDTO.Status.FAILED, "Could not hash the password");
+            }
+        }
+
+        return hashed;
+    }
+
+    /**
+     * Inserts all hashed services with a single JDBC batch in one transaction, then reads them back to report the
+     * created services. If the batch fails, none of the services are created.
+     */
+    private void insert(Map<Integer, ServiceDAO> hashed, ServiceCreationResultDTO[] results) throws LimitExceededException {
+        if (hashed.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(hashed.size());
+
+        for (ServiceDAO serviceDAO : hashed.values()) {
+            batchArgs.add(new Object[]{
+                    serviceDAO.getName(),
+                    serviceDAO.getPassword(),
+                    serviceDAO.getRole().name(),
+                    serviceDAO.getCreationTime()
+            });
+        }
+
+        Map<String, Integer> indexByName = new HashMap<>();
+
+        for (Map.Entry<Integer, ServiceDAO> entry : hashed.entrySet()) {
+            indexByName.put(entry.getValue().getName(), entry.getKey());
+        }
+
+        try {
+            this.adaptiveConcurrencyLimiter.execute(
+                    Priority.ADMIN_WRITE,
+                    () -> this.transactionTemplate.execute(status -> this.jdbcTemplate.batchUpdate(INSERT_SERVICE_SQL, batchArgs))
+            );
+        } catch (DataAccessException e) {
+            LOGGER.error("[SSAPI]: Batch insert of [{}] services failed.", batchArgs.size(), e);
+
+            for (Map.Entry<String, Integer> entry : indexByName.entrySet()) {
+                results[entry.getValue()] = new ServiceCreationResultDTO(entry.getKey(), ServiceCreationResultDTO.Status.FAILED, "Could not create new record");
+            }
+
+            return;
+        }
+
+        for (ServiceDAO serviceDAO : hashed.values()) {
+            this.auditTrail.record(AuditAction.CREATE, AuditTrail.SERVICE, serviceDAO.getName(), null, "role=" + serviceDAO.getRole());
+        }
+
+        this.applicationEventPublisher.publishEvent(new ServicesChangedEvent(indexByName.keySet()));
+
+        List<ServiceDAO> created = this.adaptiveConcurrencyLimiter.execute(
+                Priority.ADMIN_WRITE,
+                () -> this.serviceRepository.findAllByNameIn(indexByName.keySet())
+        );
+
+        ZoneId zone = ZoneId.systemDefault();
+
+        for (ServiceDAO serviceDAO : created) {
+            Integer index = indexByName.remove(serviceDAO.getName());
+
+            if (index != null) {
+                ServiceCreationResultDTO result = new ServiceCreationResultDTO(serviceDAO.getName(), ServiceCreationResultDTO.Status.CREATED, null);
+                result.setService(ServicesService.serviceDAOToDTO(serviceDAO, zone));
+                results[index] = result;
+            }
+        }
+
+        for (Map.Entry<String, Integer> entry : indexByName.entrySet()) {
+            results[entry.getValue()] = new ServiceCreationResultDTO(entry.getKey(), ServiceCreationResultDTO.Status.FAILED, "Could not create new record");
+        }
+
+        LOGGER.info("[SSAPI]: Created [{}] services in a single batch.", batchArgs.size() - indexByName.size());
+    }
+}
@@ -24,46 +24,88 @@
 
 package com.pcoetsee.settingservice.service;
 
+import com.pcoetsee.settingservice.audit.AuditAction;
+import com.pcoetsee.settingservice.audit.AuditTrail;
+import com.pcoetsee.settingservice.dto.ReplicatedServiceDTO;
 import com.pcoetsee.settingservice.dto.ServiceDTO;
+import com.pcoetsee.settingservice.event.ServicesChangedEvent;
 import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
 import com.pcoetsee.settingservice.exception.NoResultsException;
+import com.pcoetsee.settingservice.exception.ReadOnlyReplicaException;
 import com.pcoetsee.settingservice.exception.RecordCreationException;
+import com.pcoetsee.settingservice.exception.ReplicationUnavailableException;
 import com.pcoetsee.settingservice.exception.ServiceDoesNotExistException;
+import com.pcoetsee.settingservice.exception.VersionConflictException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.limiter.DatabaseCircuitBreaker;
+import com.pcoetsee.settingservice.limiter.Priority;
 import com.pcoetsee.settingservice.persistence.dao.Role;
 import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.projection.ServiceSummary;
 import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.authentication.AuthenticationServiceException;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
-import java.time.ZonedDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * This service is used for processing data relating to the `settings_service`.`services` table.
+ * <p>
+ * On a follower node services are read from the {@link ReplicaStore} instead of the database, and changes are refused.
+ * Passwords are hashed on the hashing {@link Bulkhead}, so a burst of service changes can not use up the threads
+ * serving other requests with BCrypt.
  */
 @Service
-public class ServicesService implements UserDetailsService {
+public class ServicesService implements UserDetailsService, UserDetailsPasswordService {
     private static final Logger LOGGER = LoggerFactory.getLogger(ServicesService.class);
 
     private final ServiceRepository serviceRepository;
     private final BCryptPasswordEncoder bCryptPasswordEncoder;
+    private final Bulkhead hashingBulkhead;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final AuditTrail auditTrail;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final ReplicaStore replicaStore;
 
     public ServicesService(
             @Autowired ServiceRepository serviceRepository,
-            @Autowired BCryptPasswordEncoder bCryptPasswordEncoder
+            @Autowired BCryptPasswordEncoder bCryptPasswordEncoder,
+            @Autowired @Qualifier("hashingBulkhead") Bulkhead hashingBulkhead,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired AuditTrail auditTrail,
+            @Autowired ApplicationEventPublisher applicationEventPublisher,
+            @Autowired(required = false) ReplicaStore replicaStore
     ) {
         this.serviceRepository = serviceRepository;
         this.bCryptPasswordEncoder = bCryptPasswordEncoder;
+        this.hashingBulkhead = hashingBulkhead;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.auditTrail = auditTrail;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.replicaStore = replicaStore;
     }
 
     /**
@@ -73,17 +115,83 @@ public class ServicesService implements UserDetailsService {
      * @return a ServiceDTO object representation of the supplied ServiceDAO object, may return null
      */
     public static ServiceDTO serviceDAOToDTO(ServiceDAO serviceDAO) {
+        return ServicesService.serviceDAOToDTO(serviceDAO, ZoneId.systemDefault());
+    }
+
+    /**
+     * This method converts a service data access object to a service data transfer object, expressing its creation
+     * time in the supplied zone. Used when converting many services, so the zone is only resolved once.
+     *
+     * @param serviceDAO the ServiceDAO to convert to a ServiceDTO object, null returns null
+     * @param zone       the zone the creation time is expressed in, not null
+     * @return a ServiceDTO object representation of the supplied ServiceDAO object, may return null
+     */
+    public static ServiceDTO serviceDAOToDTO(ServiceDAO serviceDAO, ZoneId zone) {
         if (serviceDAO == null) {
             return null;
         }
 
-        ServiceDTO serviceDTO = new ServiceDTO();
+        return ServicesService.serviceDTO(serviceDAO.getName(), serviceDAO.getRole(), serviceDAO.getCreationTime(), serviceDAO.getVersion(), zone);
+    }
 
-        serviceDTO.setName(serviceDAO.getName());
-        serviceDTO.setRole(serviceDAO.getRole().name());
-        serviceDTO.setCreationTime(ZonedDateTime.ofInstant(Instant.ofEpochMilli(serviceDAO.getCreationTime()), ZonedDateTime.now().getZone()));
+    /**
+     * This method converts the listed columns of a service to a service data transfer object, expressing its creation
+     * time in the supplied zone.
+     *
+     * @param serviceSummary the ServiceSummary to convert to a ServiceDTO object, null returns null
+     * @param zone           the zone the creation time is expressed in, not null
+     * @return a ServiceDTO object representation of the supplied ServiceSummary object, may return null
+     */
+    public static ServiceDTO serviceSummaryToDTO(ServiceSummary serviceSummary, ZoneId zone) {
+        if (serviceSummary == null) {
+            return null;
+        }
 
-        return serviceDTO;
+        return ServicesService.serviceDTO(serviceSummary.getName(), serviceSummary.getRole(), serviceSummary.getCreationTime(), serviceSummary.getVersion(), zone);
+    }
+
+    /**
+     * This method converts a service replicated from a primary node to a service data transfer object, expressing its
+     * creation time in the supplied zone. The password is left out.
+     *
+     * @param replicatedServiceDTO the replicated service to convert, null returns null
+     * @param zone                 the zone the creation time is expressed in, not null
+     * @return a ServiceDTO object representation of the replicated service, may return null
+     */
+    public static ServiceDTO replicatedServiceToDTO(ReplicatedServiceDTO replicatedServiceDTO, ZoneId zone) {
+        if (replicatedServiceDTO == null) {
+            return null;
+        }
+
+        return ServicesService.serviceDTO(
+                replicatedServiceDTO.getName(),
+                Role.roleFromString(replicatedServiceDTO.getRole()),
+                replicatedServiceDTO.getCreationTime(),
+                replicatedServiceDTO.getVersion(),
+                zone
+        );
+    }
+
+    /**
+     * This method converts a service replicated from a primary node to a service data access object.
+     *
+     * @param replicatedServiceDTO the replicated service to convert, null returns null
+     * @return a ServiceDAO object representation of the replicated service, may return null
+     */
+    public static ServiceDAO replicatedServiceToDAO(ReplicatedServiceDTO replicatedServiceDTO) {
+        if (replicatedServiceDTO == null) {
+            return null;
+        }
+
+        ServiceDAO serviceDAO = new ServiceDAO(replicatedServiceDTO.getId());
+
+        serviceDAO.setName(replicatedServiceDTO.getName());
+        serviceDAO.setPassword(replicatedServiceDTO.getPassword());
+        serviceDAO.setRole(Role.roleFromString(replicatedServiceDTO.getRole()));
+        serviceDAO.setCreationTime(replicatedServiceDTO.getCreationTime());
+        serviceDAO.setVersion(replicatedServiceDTO.getVersion());
+
+        return serviceDAO;
     }
 
     /**
@@ -113,8 +221,9 @@ public class ServicesService implements UserDetailsService {
      * @return a service matching the supplied name if found, exception if none found
      * @throws IllegalArgumentException     when the supplied name is blank or null
      * @throws ServiceDoesNotExistException if not service with a matching name is found
+     * @throws LimitExceededException       when the database is too busy to handle the lookup
      */
-    public ServiceDTO getServiceMatchingName(String name) throws IllegalArgumentException, ServiceDoesNotExistException {
+    public ServiceDTO getServiceMatchingName(String name) throws IllegalArgumentException, ServiceDoesNotExistException, LimitExceededException {
         return ServicesService.serviceDAOToDTO(this.getServiceDAOMatchingName(name));
     }
 
@@ -123,30 +232,123 @@ public class ServicesService implements UserDetailsService {
      *
      * @param pageable this object allows for paging, null returns all results
      * @return a Page of all services as limited by the pageable parameter, not null
-     * @throws NoResultsException when no results are found
+     * @throws NoResultsException     when no results are found
+     * @throws LimitExceededException when the database is too busy to handle the lookup
      */
-    public Page<ServiceDTO> getAllServices(Pageable pageable) throws NoResultsException {
-        return this.getAllServicesDAO(pageable).map(ServicesService::serviceDAOToDTO);
+    public Page<ServiceDTO> getAllServices(Pageable pageable) throws NoResultsException, LimitExceededException {
+        ZoneId zone = ZoneId.systemDefault();
+        Page<ServiceDTO> returnValue;
+
+        if (this.replicaStore != null) {
+            List<ReplicatedServiceDTO> replicatedServices = this.loadedReplica().getServices();
+            List<ServiceDTO> services = new ArrayList<>(replicatedServices.size());
+
+            for (ReplicatedServiceDTO replicatedService : replicatedServices) {
+                services.add(ServicesService.replicatedServiceToDTO(replicatedService, zone));
+            }
+
+            returnValue = ServicesService.page(services, pageable);
+        } else {
+            Page<ServiceSummary> summaries = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> this.serviceRepository.findAllSummaries(pageable == null ? Pageable.unpaged() : pageable)
+            );
+
+            returnValue = summaries == null ? null : summaries.map(serviceSummary -> ServicesService.serviceSummaryToDTO(serviceSummary, zone));
+        }
+
+        if (returnValue == null || returnValue.isEmpty()) {
+            throw new NoResultsException();
+        }
+
+        return returnValue;
     }
 
+    /**
+     * Looks up the service logging in. A lookup that could not be done, because the database is too busy or can not be
+     * reached, is reported as an {@link AuthenticationServiceException} rather than a missing service, so the login is
+     * answered with 503 Service Unavailable instead of 401 Unauthorized.
+     * <p>
+     * The service is read from the database, never from the second-level cache, so a password or role changed through
+     * another node applies to the next login here.
+     *
+     * @param username the name of the service logging in
+     * @return the service, not null
+     * @throws UsernameNotFoundException      when no service with the supplied name exists
+     * @throws AuthenticationServiceException when the service could not be looked up
+     */
     @Override
-    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+    public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException, AuthenticationServiceException {
         try {
-            return (UserDetails) this.getServiceMatchingName(username);
+            return this.getServiceDAOMatchingName(username, true);
+        } catch (LimitExceededException | ReplicationUnavailableException e) {
+            throw new AuthenticationServiceException(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            if (DatabaseCircuitBreaker.isDatabaseFailure(e)) {
+                throw new AuthenticationServiceException(e.getMessage(), e);
+            }
+
+            throw new UsernameNotFoundException(e.getMessage());
         } catch (Exception e) {
             throw new UsernameNotFoundException(e.getMessage());
         }
     }
 
     /**
-     * This method handles the creation of new services.
+     * Stores a password that has been rehashed after a successful login, because the existing hash was created with a
+     * different strength than the one currently configured.
+     * <p>
+     * The rehash is skipped if the database is too busy, it will be retried on the next login. Followers never rehash,
+     * they pick up the new hash once the primary node has stored it.
+     *
+     * @param user        the service that has just logged in, must be a {@link ServiceDAO}
+     * @param newPassword the password, already encoded with the current strength
+     * @return the service with the updated password, or the supplied service if the password could not be updated
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        if (!(user instanceof ServiceDAO) || StringUtils.isBlank(newPassword) || this.replicaStore != null) {
+            return user;
+        }
+
+        ServiceDAO serviceDAO = (ServiceDAO) user;
+        serviceDAO.setPassword(newPassword);
+
+        try {
+            ServiceDAO saved = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.save(serviceDAO));
+            this.applicationEventPublisher.publishEvent(new ServicesChangedEvent(Collections.singleton(saved.getName())));
+            LOGGER.info("[SSAPI]: Rehashed password for service [{}].", saved.getName());
+
+            return saved;
+        } catch (LimitExceededException e) {
+            LOGGER.warn("[SSAPI]: Skipped rehashing password for service [{}], database is too busy.", serviceDAO.getName());
+
+            return user;
+        } catch (OptimisticLockingFailureException e) {
+            LOGGER.warn("[SSAPI]: Skipped rehashing password for service [{}], it was changed concurrently.", serviceDAO.getName());
+
+            return user;
+        }
+    }
+
+    /**
+     * This method handles the creation of new services. As with creating services in a batch, the authenticated service
+     * needs the {@link Role#CREATE} or {@link Role#FULL} role, and only services with the {@link Role#FULL} role may
+     * create other services with that role.
      *
      * @param serviceDTO object containing all fields needed to create a new service, null throws exception
      * @return the newly created service, not null
      * @throws IllegalArgumentException when no data is supplied, or when an invalid username or password is used
+     * @throws IllegalAccessException   when the authenticated service is not allowed to create the service
      * @throws RecordCreationException  when all other checks are passed, but the record can still not be created
+     * @throws ReadOnlyReplicaException when this node is a follower
+     * @throws LimitExceededException   when the database is too busy to handle the request
      */
-    public ServiceDTO createService(ServiceDTO serviceDTO) throws IllegalArgumentException, RecordCreationException {
+    public ServiceDTO createService(ServiceDTO serviceDTO) throws IllegalArgumentException, IllegalAccessException, RecordCreationException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
         if (serviceDTO == null) {
             throw new IllegalArgumentException("No valid parameters supplied");
         }
@@ -159,22 +361,57 @@ public class ServicesService implements UserDetailsService {
             throw new IllegalArgumentException("No password supplied, can not create new service");
         }
 
-        ServiceDAO serviceDAO = this.serviceRepository.findByName(serviceDTO.getName());
+        boolean hasFullRole = AuthenticatedService.hasRole(Role.FULL);
+
+        if (!hasFullRole && (!AuthenticatedService.hasRole(Role.CREATE) || Role.roleFromString(serviceDTO.getRole()) == Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(
+                Priority.ADMIN_WRITE,
+                () -> this.serviceRepository.findByName(serviceDTO.getName())
+        );
 
         if (serviceDAO != null) {
             throw new IllegalArgumentException("A service with the supplied name already exists");
         }
 
-        serviceDAO = this.serviceRepository.save(ServicesService.serviceDTOToDAO(serviceDTO, this.bCryptPasswordEncoder));
+        ServiceDAO newServiceDAO = this.hashingBulkhead.call(() -> ServicesService.serviceDTOToDAO(serviceDTO, this.bCryptPasswordEncoder));
+        serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.save(newServiceDAO));
 
         if (serviceDAO.getId() == null) {
             throw new RecordCreationException();
         }
 
+        this.auditTrail.record(AuditAction.CREATE, AuditTrail.SERVICE, serviceDAO.getName(), null, "role=" + serviceDAO.getRole());
+        this.applicationEventPublisher.publishEvent(new ServicesChangedEvent(Collections.singleton(serviceDAO.getName())));
+
         return ServicesService.serviceDAOToDTO(serviceDAO);
     }
 
-    public boolean updateService(String password, ServiceDTO serviceDTO) throws IllegalArgumentException, IllegalAccessException {
+    /**
+     * This method updates the password of an existing service, and its role if the authenticated service has the
+     * {@link Role#FULL} role.
+     * <p>
+     * A service updating itself must confirm its current password. If the supplied service carries a version, the
+     * update only succeeds if the service is still at that version, otherwise a change made between reading and
+     * writing the service is still detected.
+     *
+     * @param password   the current password of the service being updated, only required when a service without the
+     *                   {@link Role#FULL} role updates itself
+     * @param serviceDTO the name of the service to update along with the new values, null causes exception
+     * @return the updated service, not null
+     * @throws IllegalArgumentException when no data or no name is supplied, or no service with the name exists
+     * @throws IllegalAccessException   when the authenticated service may not make the supplied changes
+     * @throws VersionConflictException when the service has changed since the supplied version
+     * @throws ReadOnlyReplicaException when this node is a follower
+     * @throws LimitExceededException   when the database is too busy to handle the request
+     */
+    public ServiceDTO updateService(String password, ServiceDTO serviceDTO) throws IllegalArgumentException, IllegalAccessException, VersionConflictException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
         if (serviceDTO == null) {
             throw new IllegalArgumentException("No valid parameters supplied.");
         }
@@ -182,20 +419,62 @@ public class ServicesService implements UserDetailsService {
             throw new IllegalArgumentException("No name supplied, can't figure out which service to update.");
         }
 
-        ServiceDAO serviceDAO = this.serviceRepository.findByName(serviceDTO.getName());
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(
+                Priority.ADMIN_WRITE,
+                () -> this.serviceRepository.findByName(serviceDTO.getName())
+        );
 
         if (serviceDAO == null) {
             throw new IllegalArgumentException("No service found with specified name, can not update unknown service");
         }
 
-        ServiceDAO updateServiceDAO = ServicesService.serviceDTOToDAO(serviceDTO, this.bCryptPasswordEncoder);
+        boolean hasFullRole = AuthenticatedService.hasRole(Role.FULL);
 
-        String service = SecurityContextHolder.getContext().getAuthentication().getName();
-        boolean hasFullRole = SecurityContextHolder.getContext().getAuthentication().getAuthorities().contains(Role.FULL.getAuthority());
+        if (!this.isUpdateAllowed(serviceDAO, AuthenticatedService.getName(), hasFullRole)) {
+            throw new IllegalAccessException();
+        }
 
-        if (!isUpdateAllowed(updateServiceDAO, service, hasFullRole, ) {
+        if (!hasFullRole && (StringUtils.isBlank(password) || !this.passwordMatches(password, serviceDAO.getPassword()))) {
             throw new IllegalAccessException();
         }
+
+        if (serviceDTO.getVersion() != null && serviceDTO.getVersion() != serviceDAO.getVersion()) {
+            throw new VersionConflictException();
+        }
+
+        List<String> changes = new ArrayList<>();
+
+        if (StringUtils.isNotBlank(serviceDTO.getPassword())) {
+            serviceDAO.setPassword(this.hashingBulkhead.call(() -> this.bCryptPasswordEncoder.encode(serviceDTO.getPassword())));
+            changes.add("password changed");
+        }
+
+        if (StringUtils.isNotBlank(serviceDTO.getRole())) {
+            Role role = Role.roleFromString(serviceDTO.getRole());
+
+            if (role != serviceDAO.getRole() && !hasFullRole) {
+                throw new IllegalAccessException();
+            }
+
+            if (role != serviceDAO.getRole()) {
+                changes.add("role=" + serviceDAO.getRole() + "->" + role);
+            }
+
+            serviceDAO.setRole(role);
+        }
+
+        ServiceDAO saved;
+
+        try {
+            saved = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.save(serviceDAO));
+        } catch (OptimisticLockingFailureException e) {
+            throw new VersionConflictException();
+        }
+
+        this.auditTrail.record(AuditAction.UPDATE, AuditTrail.SERVICE, saved.getName(), null, String.join(", ", changes));
+        this.applicationEventPublisher.publishEvent(new ServicesChangedEvent(Collections.singleton(saved.getName())));
+
+        return ServicesService.serviceDAOToDTO(saved);
     }
 
     /**
@@ -205,13 +484,34 @@ public class ServicesService implements UserDetailsService {
      * @return a service matching the supplied name if found, exception if none found
      * @throws IllegalArgumentException     when the supplied name is blank or null
      * @throws ServiceDoesNotExistException if not service with a matching name is found
+     * @throws LimitExceededException       when the database is too busy to handle the lookup
      */
-    private ServiceDAO getServiceDAOMatchingName(String name) throws IllegalArgumentException, ServiceDoesNotExistException {
+    private ServiceDAO getServiceDAOMatchingName(String name) throws IllegalArgumentException, ServiceDoesNotExistException, LimitExceededException {
+        return this.getServiceDAOMatchingName(name, false);
+    }
+
+    /**
+     * This method will fetch a service matching the supplied name.
+     *
+     * @param name     the name of the service that we want details for, null causes exception
+     * @param uncached true to read the service from the database rather than the second-level cache, which is local to
+     *                 this node and may hold a password or role since changed through another node
+     * @return a service matching the supplied name if found, exception if none found
+     * @throws IllegalArgumentException     when the supplied name is blank or null
+     * @throws ServiceDoesNotExistException if not service with a matching name is found
+     * @throws LimitExceededException       when the database is too busy to handle the lookup
+     */
+    private ServiceDAO getServiceDAOMatchingName(String name, boolean uncached) throws IllegalArgumentException, ServiceDoesNotExistException, LimitExceededException {
         if (StringUtils.isBlank(name)) {
             throw new IllegalArgumentException("Cannot match service, null or empty name supplied.");
         }
 
-        ServiceDAO result = this.serviceRepository.findByName(name);
+        ServiceDAO result = this.replicaStore != null
+                ? ServicesService.replicatedServiceToDAO(this.loadedReplica().getService(name))
+                : this.adaptiveConcurrencyLimiter.execute(
+                        Priority.READ,
+                        () -> uncached ? this.serviceRepository.findByNameUncached(name) : this.serviceRepository.findByName(name)
+                );
 
         if (result == null) {
             throw new ServiceDoesNotExistException();
@@ -221,20 +521,58 @@ public class ServicesService implements UserDetailsService {
     }
 
     /**
-     * This method will find all available services. Allows for paging.
+     * Builds a service data transfer object. The creation time is stored in epoch milliseconds.
+     */
+    private static ServiceDTO serviceDTO(String name, Role role, Long creationTime, long version, ZoneId zone) {
+        ServiceDTO serviceDTO = new ServiceDTO();
+
+        serviceDTO.setName(name);
+        serviceDTO.setRole(role.name());
+        serviceDTO.setCreationTime(creationTime == null ? null : Instant.ofEpochMilli(creationTime).atZone(zone));
+        serviceDTO.setVersion(version);
+
+        return serviceDTO;
+    }
+
+    /**
+     * Cuts a page out of a list held in memory, as a repository would from a table.
      *
-     * @param pageable this object allows for paging, null returns all results
-     * @return a Page of all services as limited by the pageable parameter, not null
-     * @throws NoResultsException when no results are found
+     * @param content  every element, in order, not null
+     * @param pageable the page to cut out, null returns every element
+     * @return the requested page, not null
      */
-    private Page<ServiceDAO> getAllServicesDAO(Pageable pageable) throws NoResultsException {
-        Page<ServiceDAO> returnValue = this.serviceRepository.findAll(pageable);
+    static <T> Page<T> page(List<T> content, Pageable pageable) {
+        if (pageable == null || pageable.isUnpaged()) {
+            return new PageImpl<>(content);
+        }
 
-        if (returnValue == null || returnValue.isEmpty()) {
-            throw new NoResultsException();
+        int from = (int) Math.min(pageable.getOffset(), content.size());
+        int to = Math.min(from + pageable.getPageSize(), content.size());
+
+        return new PageImpl<>(content.subList(from, to), pageable, content.size());
+    }
+
+    /**
+     * @return the replicated services and settings, once a follower has loaded them
+     * @throws ReplicationUnavailableException when the follower has not loaded its first snapshot yet
+     */
+    private ReplicaStore loadedReplica() throws ReplicationUnavailableException {
+        if (!this.replicaStore.isLoaded()) {
+            throw new ReplicationUnavailableException("This follower has not loaded the settings from its primary node yet.");
         }
 
-        return returnValue;
+        return this.replicaStore;
+    }
+
+    /**
+     * Checks a password against its hash on the hashing bulkhead.
+     *
+     * @throws com.pcoetsee.settingservice.exception.BulkheadFullException when too many passwords are being hashed
+     */
+    private boolean passwordMatches(String password, String hash) {
+        Boolean matches = this.hashingBulkhead.call(() -> this.bCryptPasswordEncoder.matches(password, hash));
+
+        return Boolean.TRUE.equals(matches);
     }
 
     /**
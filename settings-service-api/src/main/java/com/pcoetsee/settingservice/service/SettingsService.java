@@ -0,0 +1,1341 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.service;
+
+import com.pcoetsee.settingservice.analytics.UsageAnalytics;
+import com.pcoetsee.settingservice.archive.SettingUsageTracker;
+import com.pcoetsee.settingservice.archive.SettingsArchive;
+import com.pcoetsee.settingservice.audit.AuditAction;
+import com.pcoetsee.settingservice.audit.AuditTrail;
+import com.pcoetsee.settingservice.blob.BlobReference;
+import com.pcoetsee.settingservice.blob.SettingBlobStore;
+import com.pcoetsee.settingservice.blob.StagedBlob;
+import com.pcoetsee.settingservice.dto.ArchivedSettingDTO;
+import com.pcoetsee.settingservice.dto.ReplicatedServiceDTO;
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetResultDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.dto.SettingUpsertResultDTO;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.exception.CircuitOpenException;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.NoResultsException;
+import com.pcoetsee.settingservice.exception.ReadOnlyReplicaException;
+import com.pcoetsee.settingservice.exception.ReplicationUnavailableException;
+import com.pcoetsee.settingservice.exception.ServiceDoesNotExistException;
+import com.pcoetsee.settingservice.exception.ServiceMigratingException;
+import com.pcoetsee.settingservice.exception.ValueTooLargeException;
+import com.pcoetsee.settingservice.exception.VersionConflictException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.CircuitBreakerProperties;
+import com.pcoetsee.settingservice.limiter.DatabaseCircuitBreaker;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.dao.SettingDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.persistence.repository.SettingRepository;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+import com.pcoetsee.settingservice.revision.ServiceRevisionStore;
+import com.pcoetsee.settingservice.secret.SecretSettingCipher;
+import com.pcoetsee.settingservice.security.AuthenticatedService;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import com.pcoetsee.settingservice.snapshot.EncodedSnapshot;
+import com.pcoetsee.settingservice.snapshot.LastKnownGoodStore;
+import com.pcoetsee.settingservice.snapshot.SnapshotResponseCache;
+import com.pcoetsee.settingservice.template.SettingTemplateResolver;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * This service is used for processing data relating to the `settings_service`.`settings` table.
+ * <p>
+ * Settings may be spread across several shards, so the service is looked up on the primary database first and its ID
+ * is used to find the shard holding its settings.
+ * <p>
+ * On a follower node settings are read from the {@link ReplicaStore} instead of the database, and changes are refused.
+ * <p>
+ * On other nodes, settings read from the database are kept in the {@link LastKnownGoodStore}. When a read is rejected
+ * because the circuit breaker in front of the database is open, or fails because the database can not be reached, it
+ * is answered from there instead and the response is marked as stale. Writes are not retried; they fail at once.
+ * <p>
+ * Values may reference other settings of the same service as `${name}`. Settings read are returned with these
+ * references resolved by the {@link SettingTemplateResolver}, and writes that would make settings reference each other in
+ * a cycle are refused.
+ * <p>
+ * Values too large for the `settings` table are stored by the {@link SettingBlobStore}. Such a setting is read with an
+ * empty value, its size and its hash, and the value itself is streamed separately.
+ */
+@Service
+public class SettingsService {
+
+    /**
+     * Creates a setting, or updates it if the service already has a setting with the same name. Supported by MySQL and
+     * by H2 in MySQL mode.
+     */
+    private static final String UPSERT_SETTING_SQL =
+            "INSERT INTO `settings` (`service_id`, `name`, `value`, `secret`, `key_version`, `version`) VALUES (?, ?, ?, ?, ?, 0) " +
+                    "ON DUPLICATE KEY UPDATE `value` = VALUES(`value`), `secret` = VALUES(`secret`), " +
+                    "`key_version` = VALUES(`key_version`), `blob_size` = NULL, `blob_sha256` = NULL, `version` = `version` + 1";
+
+    private static final String SELECT_EXISTING_SQL =
+            "SELECT `name`, `value`, `secret` FROM `settings` WHERE `service_id` = :serviceId AND `name` IN (:names)";
+
+    private static final String SELECT_CHANGED_SQL =
+            "SELECT `name`, `value`, `secret`, `version` FROM `settings` WHERE `service_id` = :serviceId AND `name` IN (:names)";
+
+    private static final String INSERT_SETTING_SQL =
+            "INSERT INTO `settings` (`service_id`, `name`, `value`, `secret`, `key_version`, `version`) VALUES (?, ?, ?, ?, ?, 0)";
+
+    private static final String UPDATE_SETTING_SQL =
+            "UPDATE `settings` SET `value` = ?, `secret` = ?, `key_version` = ?, `blob_size` = NULL, `blob_sha256` = NULL, " +
+                    "`version` = `version` + 1 " +
+                    "WHERE `service_id` = ? AND `name` = ?";
+
+    private static final String DELETE_SETTING_SQL = "DELETE FROM `settings` WHERE `service_id` = ? AND `name` = ?";
+
+    private final SettingRepository settingRepository;
+    private final ServiceRepository serviceRepository;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final SecretSettingCipher secretSettingCipher;
+    private final ShardDirectory shardDirectory;
+    private final ServiceRevisionStore serviceRevisionStore;
+    private final ApplicationEventPublisher applicationEventPublisher;
+    private final AuditTrail auditTrail;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readTransactionTemplate;
+    private final ReplicaStore replicaStore;
+    private final SnapshotResponseCache snapshotResponseCache;
+    private final UsageAnalytics usageAnalytics;
+    private final SettingUsageTracker settingUsageTracker;
+    private final SettingsArchive settingsArchive;
+    private final LastKnownGoodStore lastKnownGoodStore;
+    private final SettingTemplateResolver settingTemplateResolver;
+    private final SettingBlobStore settingBlobStore;
+    private final int maxBatchSize;
+
+    public SettingsService(
+            @Autowired SettingRepository settingRepository,
+            @Autowired ServiceRepository serviceRepository,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired SecretSettingCipher secretSettingCipher,
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired ServiceRevisionStore serviceRevisionStore,
+            @Autowired ApplicationEventPublisher applicationEventPublisher,
+            @Autowired AuditTrail auditTrail,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired PlatformTransactionManager transactionManager,
+            @Autowired(required = false) ReplicaStore replicaStore,
+            @Autowired SnapshotResponseCache snapshotResponseCache,
+            @Autowired UsageAnalytics usageAnalytics,
+            @Autowired SettingUsageTracker settingUsageTracker,
+            @Autowired SettingsArchive settingsArchive,
+            @Autowired LastKnownGoodStore lastKnownGoodStore,
+            @Autowired SettingTemplateResolver settingTemplateResolver,
+            @Autowired SettingBlobStore settingBlobStore,
+            @Autowired CircuitBreakerProperties circuitBreakerProperties,
+            @Value("${settings.settings.batch.max-size:1000}") int maxBatchSize
+    ) {
+        this.settingRepository = settingRepository;
+        this.serviceRepository = serviceRepository;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.secretSettingCipher = secretSettingCipher;
+        this.shardDirectory = shardDirectory;
+        this.serviceRevisionStore = serviceRevisionStore;
+        this.applicationEventPublisher = applicationEventPublisher;
+        this.auditTrail = auditTrail;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readTransactionTemplate.setReadOnly(true);
+        this.readTransactionTemplate.setTimeout((int) Math.max(1, (circuitBreakerProperties.getReadTimeoutMs() + 999) / 1000));
+        this.replicaStore = replicaStore;
+        this.snapshotResponseCache = snapshotResponseCache;
+        this.usageAnalytics = usageAnalytics;
+        this.settingUsageTracker = settingUsageTracker;
+        this.settingsArchive = settingsArchive;
+        this.lastKnownGoodStore = lastKnownGoodStore;
+        this.settingTemplateResolver = settingTemplateResolver;
+        this.settingBlobStore = settingBlobStore;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * This method converts a setting data access object to a setting data transfer object. Secret values are
+     * decrypted.
+     *
+     * @param settingDAO          the SettingDAO to convert to a SettingDTO object, null returns null
+     * @param secretSettingCipher the cipher used to decrypt secret values, not null
+     * @return a SettingDTO object representation of the supplied SettingDAO object, may return null
+     */
+    public static SettingDTO settingDAOToDTO(SettingDAO settingDAO, SecretSettingCipher secretSettingCipher) {
+        if (settingDAO == null) {
+            return null;
+        }
+
+        SettingDTO settingDTO = new SettingDTO();
+
+        settingDTO.setName(settingDAO.getName());
+        settingDTO.setValue(settingDAO.isSecret()
+                ? secretSettingCipher.decrypt(settingDAO.getValue(), settingDAO.getKeyVersion())
+                : settingDAO.getValue());
+        settingDTO.setDateLastUsed(settingDAO.getDateLastUsed());
+        settingDTO.setSecret(settingDAO.isSecret());
+        settingDTO.setVersion(settingDAO.getVersion());
+        settingDTO.setBlobSize(settingDAO.getBlobSize());
+        settingDTO.setBlobSha256(settingDAO.getBlobSha256());
+
+        return settingDTO;
+    }
+
+    /**
+     * This method converts a setting replicated from a primary node to a setting data transfer object. Secret values
+     * are decrypted.
+     *
+     * @param replicatedSettingDTO the replicated setting to convert, null returns null
+     * @param secretSettingCipher  the cipher used to decrypt secret values, not null
+     * @return a SettingDTO object representation of the replicated setting, may return null
+     */
+    public static SettingDTO replicatedSettingToDTO(ReplicatedSettingDTO replicatedSettingDTO, SecretSettingCipher secretSettingCipher) {
+        if (replicatedSettingDTO == null) {
+            return null;
+        }
+
+        SettingDTO settingDTO = new SettingDTO();
+
+        settingDTO.setName(replicatedSettingDTO.getName());
+        settingDTO.setValue(replicatedSettingDTO.isSecret()
+                ? secretSettingCipher.decrypt(replicatedSettingDTO.getValue(), replicatedSettingDTO.getKeyVersion())
+                : replicatedSettingDTO.getValue());
+        settingDTO.setDateLastUsed(replicatedSettingDTO.getDateLastUsed());
+        settingDTO.setSecret(replicatedSettingDTO.isSecret());
+        settingDTO.setVersion(replicatedSettingDTO.getVersion());
+
+        return settingDTO;
+    }
+
+    /**
+     * This method will fetch a single setting belonging to the supplied service.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param name        the name of the setting, blank or null causes exception
+     * @return the matching setting, not null
+     * @throws IllegalArgumentException        when the service name or setting name is blank or null
+     * @throws IllegalAccessException          when the authenticated service may not read the settings of the supplied
+     *                                         service
+     * @throws NoResultsException              when no matching setting is found
+     * @throws ReplicationUnavailableException when this node is a follower that has not loaded the settings yet
+     * @throws LimitExceededException          when the database is too busy to handle the lookup, or can not be reached
+     *                                         and no last-known-good copy of the setting is held
+     */
+    public SettingDTO getSetting(String serviceName, String name) throws IllegalArgumentException, IllegalAccessException, NoResultsException, LimitExceededException {
+        if (StringUtils.isBlank(serviceName) || StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("Cannot match setting, null or empty service name or setting name supplied.");
+        }
+
+        this.checkAccess(serviceName);
+
+        SettingDTO result = this.lookUpSetting(serviceName, name);
+
+        // Only reads that were allowed and found something are counted, so probes of settings that do not exist, or of
+        // other services, do not show up as usage.
+        this.usageAnalytics.recordRead(serviceName, name);
+
+        return result;
+    }
+
+    /**
+     * Looks a single setting up on this follower, or in the database with its last-known-good copy to fall back on.
+     */
+    private SettingDTO lookUpSetting(String serviceName, String name) throws NoResultsException, LimitExceededException {
+        if (this.replicaStore != null) {
+            SettingDTO settingDTO = SettingsService.replicatedSettingToDTO(this.loadedReplica().getSetting(serviceName, name), this.secretSettingCipher);
+
+            if (settingDTO == null) {
+                throw new NoResultsException();
+            }
+
+            this.resolveReplicated(serviceName, Collections.singletonList(settingDTO));
+
+            return settingDTO;
+        }
+
+        try {
+            return this.readSetting(serviceName, name);
+        } catch (RuntimeException e) {
+            SettingDTO settingDTO = SettingsService.isDatabaseUnavailable(e) ? this.lastKnownGoodStore.serveSetting(serviceName, name) : null;
+
+            if (settingDTO == null) {
+                throw e;
+            }
+
+            return settingDTO;
+        }
+    }
+
+    /**
+     * Reads a single setting from the database, keeping a last-known-good copy of it.
+     */
+    private SettingDTO readSetting(String serviceName, String name) throws NoResultsException {
+        ServiceDAO serviceDAO = this.read(Priority.READ, null, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new NoResultsException();
+        }
+
+        String shard = this.shardDirectory.resolve(serviceDAO.getId());
+        SettingDAO settingDAO = this.read(Priority.READ, shard, () -> this.settingRepository.findByServiceDAOIdAndName(serviceDAO.getId(), name));
+
+        if (settingDAO == null) {
+            this.lastKnownGoodStore.forgetSetting(serviceName, name);
+            throw new NoResultsException();
+        }
+
+        SettingDTO settingDTO = SettingsService.settingDAOToDTO(settingDAO, this.secretSettingCipher);
+
+        this.settingTemplateResolver.resolve(serviceDAO.getId(), Collections.singletonList(settingDTO));
+        this.settingUsageTracker.touch(serviceDAO.getId(), name);
+        this.lastKnownGoodStore.captureSetting(serviceName, serviceDAO.getId(), settingDTO);
+
+        return settingDTO;
+    }
+
+    /**
+     * This method will fetch all settings belonging to the supplied service. Allows for paging. On a follower node the
+     * settings are ordered by name.
+     *
+     * @param serviceName the name of the service the settings belong to, blank or null causes exception
+     * @param pageable    this object allows for paging, null returns all results
+     * @return a Page of all settings as limited by the pageable parameter, not null
+     * @throws IllegalArgumentException        when the service name is blank or null
+     * @throws IllegalAccessException          when the authenticated service may not read the settings of the supplied
+     *                                         service
+     * @throws NoResultsException              when no results are found
+     * @throws ReplicationUnavailableException when this node is a follower that has not loaded the settings yet
+     * @throws LimitExceededException          when the database is too busy to handle the lookup, or can not be reached
+     *                                         and no complete last-known-good copy of the settings is held
+     */
+    public Page<SettingDTO> getAllSettings(String serviceName, Pageable pageable) throws IllegalArgumentException, IllegalAccessException, NoResultsException, LimitExceededException {
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("Cannot match settings, null or empty service name supplied.");
+        }
+
+        this.checkAccess(serviceName);
+
+        Page<SettingDTO> result = this.lookUpAllSettings(serviceName, pageable);
+
+        this.usageAnalytics.recordRead(serviceName, null);
+
+        return result;
+    }
+
+    /**
+     * Looks a page of settings up on this follower, or in the database with the last-known-good copies to fall back on.
+     */
+    private Page<SettingDTO> lookUpAllSettings(String serviceName, Pageable pageable) throws NoResultsException, LimitExceededException {
+        if (this.replicaStore != null) {
+            List<SettingDTO> settingDTOs = new ArrayList<>();
+
+            for (ReplicatedSettingDTO replicatedSettingDTO : this.loadedReplica().getSettings(serviceName)) {
+                settingDTOs.add(SettingsService.replicatedSettingToDTO(replicatedSettingDTO, this.secretSettingCipher));
+            }
+
+            Page<SettingDTO> page = ServicesService.page(settingDTOs, pageable);
+
+            if (page.isEmpty()) {
+                throw new NoResultsException();
+            }
+
+            this.resolveReplicated(serviceName, page.getContent());
+
+            return page;
+        }
+
+        try {
+            return this.readAllSettings(serviceName, pageable);
+        } catch (RuntimeException e) {
+            List<SettingDTO> settingDTOs = SettingsService.isDatabaseUnavailable(e) ? this.lastKnownGoodStore.serveSettings(serviceName) : null;
+
+            if (settingDTOs == null) {
+                throw e;
+            }
+
+            return ServicesService.page(settingDTOs, pageable);
+        }
+    }
+
+    /**
+     * Reads a page of settings from the database. When the page holds every setting of the service, a last-known-good
+     * copy of them is kept.
+     */
+    private Page<SettingDTO> readAllSettings(String serviceName, Pageable pageable) throws NoResultsException {
+        ServiceDAO serviceDAO = this.read(Priority.BULK_READ, null, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new NoResultsException();
+        }
+
+        String shard = this.shardDirectory.resolve(serviceDAO.getId());
+        Page<SettingDAO> returnValue = this.read(Priority.BULK_READ, shard, () -> this.settingRepository.findAllByServiceDAOId(
+                serviceDAO.getId(),
+                pageable == null ? Pageable.unpaged() : pageable
+        ));
+
+        if (returnValue == null || returnValue.isEmpty()) {
+            throw new NoResultsException();
+        }
+
+        Page<SettingDTO> page = returnValue.map(settingDAO -> SettingsService.settingDAOToDTO(settingDAO, this.secretSettingCipher));
+
+        this.settingTemplateResolver.resolve(serviceDAO.getId(), page.getContent());
+        this.settingUsageTracker.touch(serviceDAO.getId(), null);
+
+        if (page.getNumber() == 0 && !page.hasNext()) {
+            this.lastKnownGoodStore.capture(serviceName, serviceDAO.getId(), page.getContent(), null);
+        }
+
+        return page;
+    }
+
+    /**
+     * This method fetches all settings belonging to the supplied service, encoded as a JSON array, as they are at the
+     * current revision of the service. The encoded settings are cached until the revision changes, so an unchanged
+     * service is answered without reading or encoding its settings again; only its revision is looked up.
+     * <p>
+     * A snapshot is only cached when the revision did not change while the settings were being read, so a cached
+     * snapshot never mixes settings from two revisions.
+     *
+     * @param serviceName the name of the service the settings belong to, blank or null causes exception
+     * @return the encoded settings of the service, not null
+     * @throws IllegalArgumentException        when the service name is blank or null
+     * @throws IllegalAccessException          when the authenticated service may not read the settings of the supplied
+     *                                         service
+     * @throws NoResultsException              when the service does not exist or has no settings
+     * @throws ReplicationUnavailableException when this node is a follower that has not loaded the settings yet
+     * @throws LimitExceededException          when the database is too busy to handle the lookup, or can not be reached
+     *                                         and no last-known-good snapshot of the settings is held
+     */
+    public EncodedSnapshot getSettingsSnapshot(String serviceName) throws IllegalArgumentException, IllegalAccessException, NoResultsException, LimitExceededException {
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("Cannot match settings, null or empty service name supplied.");
+        }
+
+        this.checkAccess(serviceName);
+
+        EncodedSnapshot result = this.lookUpSettingsSnapshot(serviceName);
+
+        this.usageAnalytics.recordRead(serviceName, null);
+
+        return result;
+    }
+
+    /**
+     * Looks the encoded settings up on this follower, or in the database with the last-known-good snapshot to fall
+     * back on.
+     */
+    private EncodedSnapshot lookUpSettingsSnapshot(String serviceName) throws NoResultsException, LimitExceededException {
+        if (this.replicaStore != null) {
+            ReplicaStore replica = this.loadedReplica();
+            ReplicatedServiceDTO service = replica.getService(serviceName);
+
+            if (service == null) {
+                throw new NoResultsException();
+            }
+
+            long revision = replica.getRevision(service.getId());
+            EncodedSnapshot cached = this.snapshotResponseCache.get(service.getId(), revision);
+
+            if (cached != null) {
+                return cached;
+            }
+
+            List<SettingDTO> settingDTOs = new ArrayList<>();
+
+            for (ReplicatedSettingDTO replicatedSettingDTO : replica.getSettings(serviceName)) {
+                settingDTOs.add(SettingsService.replicatedSettingToDTO(replicatedSettingDTO, this.secretSettingCipher));
+            }
+
+            this.settingTemplateResolver.resolve(service.getId(), revision, () -> SettingTemplateResolver.plainValues(settingDTOs), settingDTOs);
+
+            return this.encodeSnapshot(service.getId(), revision, replica.getRevision(service.getId()), settingDTOs);
+        }
+
+        try {
+            return this.readSettingsSnapshot(serviceName);
+        } catch (RuntimeException e) {
+            EncodedSnapshot snapshot = SettingsService.isDatabaseUnavailable(e) ? this.lastKnownGoodStore.serveSnapshot(serviceName) : null;
+
+            if (snapshot == null) {
+                throw e;
+            }
+
+            return snapshot;
+        }
+    }
+
+    /**
+     * Reads the encoded settings of a service at its current revision from the database, or the snapshot cache, and
+     * keeps them as the last-known-good copy.
+     */
+    private EncodedSnapshot readSettingsSnapshot(String serviceName) throws NoResultsException {
+        ServiceDAO serviceDAO = this.read(Priority.READ, null, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new NoResultsException();
+        }
+
+        this.settingUsageTracker.touch(serviceDAO.getId(), null);
+
+        String shard = this.shardDirectory.resolve(serviceDAO.getId());
+        long revision = this.read(Priority.READ, shard, () -> this.serviceRevisionStore.getRevision(serviceDAO.getId()));
+        EncodedSnapshot cached = this.snapshotResponseCache.get(serviceDAO.getId(), revision);
+
+        if (cached != null) {
+            this.lastKnownGoodStore.captureSnapshot(serviceName, serviceDAO.getId(), cached);
+            return cached;
+        }
+
+        List<SettingDTO> settingDTOs = new ArrayList<>();
+        long revisionAfter = this.read(Priority.BULK_READ, shard, () -> {
+            for (SettingDAO settingDAO : this.settingRepository.findAllByServiceDAOId(serviceDAO.getId(), Pageable.unpaged())) {
+                settingDTOs.add(SettingsService.settingDAOToDTO(settingDAO, this.secretSettingCipher));
+            }
+
+            return this.serviceRevisionStore.getRevision(serviceDAO.getId());
+        });
+
+        // Every setting was just read, so references are resolved against them rather than a graph of another revision.
+        this.settingTemplateResolver.resolve(serviceDAO.getId(), revision, () -> SettingTemplateResolver.plainValues(settingDTOs), settingDTOs);
+
+        EncodedSnapshot snapshot = this.encodeSnapshot(serviceDAO.getId(), revision, revisionAfter, settingDTOs);
+
+        this.lastKnownGoodStore.capture(serviceName, serviceDAO.getId(), settingDTOs, snapshot);
+
+        return snapshot;
+    }
+
+    /**
+     * This method creates a setting for the supplied service, or updates it if a setting with the same name already
+     * exists. Secret values are encrypted before they are stored.
+     * <p>
+     * If the supplied setting carries a version, it is only stored if the existing setting is still at that version,
+     * which lets concurrent writers detect each other. Without a version the setting is stored regardless.
+     * <p>
+     * The revision of the service is incremented in the same transaction, and a {@link SettingsChangedEvent} is
+     * published once it has been committed.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param settingDTO  the setting to store, must contain a name and a value, null causes exception
+     * @return the stored setting, not null
+     * @throws IllegalArgumentException     when the service name, setting name or value is missing, or a secret is
+     *                                      supplied while secret settings are not enabled
+     * @throws IllegalAccessException       when the authenticated service may not change the settings of the supplied
+     *                                      service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws ServiceMigratingException    when the settings of the service are being moved to another shard
+     * @throws VersionConflictException     when the setting does not exist or has changed since the supplied version
+     * @throws ReadOnlyReplicaException     when this node is a follower
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public SettingDTO saveSetting(String serviceName, SettingDTO settingDTO) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, ServiceMigratingException, VersionConflictException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("No service name supplied, can't figure out which service the setting belongs to.");
+        }
+
+        this.checkAccess(serviceName);
+
+        if (settingDTO == null || StringUtils.isBlank(settingDTO.getName()) || settingDTO.getValue() == null) {
+            throw new IllegalArgumentException("No valid setting supplied, a name and value are required.");
+        }
+
+        if (settingDTO.isSecret() && !this.secretSettingCipher.isEnabled()) {
+            throw new IllegalArgumentException("Secret settings are not enabled on this server.");
+        }
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        String shard = this.shardDirectory.resolveForWrite(serviceDAO.getId());
+        // Encrypting is slow, so it is done before the transaction takes the revision lock.
+        SettingDAO values = new SettingDAO();
+        String[] previousValue = new String[1];
+        long[] revision = new long[1];
+        boolean[] created = new boolean[1];
+        SettingDAO saved;
+
+        this.applyValue(values, settingDTO.getValue(), settingDTO.isSecret());
+
+        try {
+            saved = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.ADMIN_WRITE,
+                    () -> ShardContext.callOn(shard, () -> this.transactionTemplate.execute(status -> {
+                        revision[0] = this.serviceRevisionStore.increment(serviceDAO.getId());
+
+                        this.settingTemplateResolver.checkCycles(
+                                serviceDAO.getId(),
+                                Collections.singletonMap(settingDTO.getName(), settingDTO.isSecret() ? null : settingDTO.getValue())
+                        );
+
+                        SettingDAO settingDAO = this.settingRepository.findByServiceDAOIdAndName(serviceDAO.getId(), settingDTO.getName());
+
+                        if (settingDTO.getVersion() != null && (settingDAO == null || settingDAO.getVersion() != settingDTO.getVersion())) {
+                            throw new VersionConflictException();
+                        }
+
+                        if (settingDAO == null) {
+                            settingDAO = new SettingDAO();
+                            settingDAO.setServiceDAO(serviceDAO);
+                            settingDAO.setName(settingDTO.getName());
+                            created[0] = true;
+                        } else if (settingDAO.isSecret()) {
+                            previousValue[0] = settingDAO.getValue();
+                        }
+
+                        settingDAO.setValue(values.getValue());
+                        settingDAO.setSecret(values.isSecret());
+                        settingDAO.setKeyVersion(values.getKeyVersion());
+                        settingDAO.setBlobSize(null);
+                        settingDAO.setBlobSha256(null);
+
+                        return this.settingRepository.saveAndFlush(settingDAO);
+                    }))
+            );
+        } catch (OptimisticLockingFailureException e) {
+            throw new VersionConflictException();
+        }
+
+        this.secretSettingCipher.evict(previousValue[0]);
+        this.applicationEventPublisher.publishEvent(new SettingsChangedEvent(
+                serviceDAO.getId(),
+                serviceDAO.getName(),
+                revision[0],
+                Collections.singleton(settingDTO.getName())
+        ));
+        this.audit(serviceDAO, settingDTO.getName(), created[0] ? AuditAction.CREATE : AuditAction.UPDATE, settingDTO.isSecret(), settingDTO.getValue(), revision[0]);
+
+        SettingDTO savedDTO = SettingsService.settingDAOToDTO(saved, this.secretSettingCipher);
+
+        this.settingTemplateResolver.resolve(serviceDAO.getId(), Collections.singletonList(savedDTO));
+
+        return savedDTO;
+    }
+
+    /**
+     * This method creates or updates all supplied settings of a service in a single transaction, using batched native
+     * upserts instead of a read and a save per setting.
+     * <p>
+     * The counts are taken from the settings that existed when the transaction started, since the row counts reported
+     * for an upsert differ between MySQL and H2 and are lost entirely when MySQL rewrites batches.
+     *
+     * @param serviceName the name of the service the settings belong to, blank or null causes exception
+     * @param settingDTOs the settings to store, each must contain a name and a value, null or empty causes exception
+     * @return the number of settings created and updated, not null
+     * @throws IllegalArgumentException     when the service name is missing, no settings or more settings than the
+     *                                      maximum batch size are supplied, a setting is missing its name or value or is
+     *                                      supplied more than once, or a secret is supplied while secret settings are not
+     *                                      enabled
+     * @throws IllegalAccessException       when the authenticated service may not change the settings of the supplied
+     *                                      service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws ServiceMigratingException    when the settings of the service are being moved to another shard
+     * @throws ReadOnlyReplicaException     when this node is a follower
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public SettingUpsertResultDTO upsertSettings(String serviceName, List<SettingDTO> settingDTOs) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, ServiceMigratingException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("No service name supplied, can't figure out which service the settings belong to.");
+        }
+
+        this.checkAccess(serviceName);
+
+        if (settingDTOs == null || settingDTOs.isEmpty()) {
+            throw new IllegalArgumentException("No settings supplied, nothing to save.");
+        }
+
+        if (settingDTOs.size() > this.maxBatchSize) {
+            throw new IllegalArgumentException("Too many settings supplied, at most " + this.maxBatchSize + " can be saved at once.");
+        }
+
+        Map<String, SettingDTO> byName = new LinkedHashMap<>();
+
+        for (SettingDTO settingDTO : settingDTOs) {
+            if (settingDTO == null || StringUtils.isBlank(settingDTO.getName()) || settingDTO.getValue() == null) {
+                throw new IllegalArgumentException("No valid setting supplied, a name and value are required.");
+            }
+
+            if (settingDTO.isSecret() && !this.secretSettingCipher.isEnabled()) {
+                throw new IllegalArgumentException("Secret settings are not enabled on this server.");
+            }
+
+            if (byName.put(settingDTO.getName(), settingDTO) != null) {
+                throw new IllegalArgumentException("Setting " + settingDTO.getName() + " is supplied more than once.");
+            }
+        }
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        String shard = this.shardDirectory.resolveForWrite(serviceDAO.getId());
+        List<Object[]> batchArgs = new ArrayList<>(byName.size());
+        Map<String, String> plainValues = new HashMap<>();
+
+        for (SettingDTO settingDTO : byName.values()) {
+            SettingDAO settingDAO = new SettingDAO();
+
+            plainValues.put(settingDTO.getName(), settingDTO.isSecret() ? null : settingDTO.getValue());
+
+            this.applyValue(settingDAO, settingDTO.getValue(), settingDTO.isSecret());
+            batchArgs.add(new Object[]{
+                    serviceDAO.getId(),
+                    settingDTO.getName(),
+                    settingDAO.getValue(),
+                    settingDAO.isSecret(),
+                    settingDAO.getKeyVersion()
+            });
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("serviceId", serviceDAO.getId())
+                .addValue("names", byName.keySet());
+        List<String> replacedSecrets = new ArrayList<>();
+        Set<String> existing = new HashSet<>();
+        long[] revision = new long[1];
+
+        this.adaptiveConcurrencyLimiter.run(
+                Priority.ADMIN_WRITE,
+                () -> ShardContext.runOn(shard, () -> this.transactionTemplate.executeWithoutResult(status -> {
+                    revision[0] = this.serviceRevisionStore.increment(serviceDAO.getId());
+
+                    this.settingTemplateResolver.checkCycles(serviceDAO.getId(), plainValues);
+                    this.namedParameterJdbcTemplate.query(SELECT_EXISTING_SQL, parameters, resultSet -> {
+                        existing.add(resultSet.getString(1));
+
+                        if (resultSet.getBoolean(3)) {
+                            replacedSecrets.add(resultSet.getString(2));
+                        }
+                    });
+                    this.jdbcTemplate.batchUpdate(UPSERT_SETTING_SQL, batchArgs);
+                }))
+        );
+
+        replacedSecrets.forEach(this.secretSettingCipher::evict);
+        this.applicationEventPublisher.publishEvent(new SettingsChangedEvent(serviceDAO.getId(), serviceDAO.getName(), revision[0], byName.keySet()));
+
+        for (SettingDTO settingDTO : byName.values()) {
+            AuditAction action = existing.contains(settingDTO.getName()) ? AuditAction.UPDATE : AuditAction.CREATE;
+
+            this.audit(serviceDAO, settingDTO.getName(), action, settingDTO.isSecret(), settingDTO.getValue(), revision[0]);
+        }
+
+        return new SettingUpsertResultDTO(byName.size() - existing.size(), existing.size());
+    }
+
+    /**
+     * This method applies all supplied changes to the settings of a service in a single transaction. Either every
+     * change is applied or none is, the revision of the service is incremented once, and a single
+     * {@link SettingsChangedEvent} is published once the transaction has been committed.
+     * <p>
+     * If the change set carries an expected revision, it is only applied if the settings of the service are still at
+     * that revision. Changes carrying a version are only applied if the setting is still at that version. Deleting a
+     * setting that does not exist is ignored, unless a version is supplied.
+     *
+     * @param serviceName         the name of the service the settings belong to, blank or null causes exception
+     * @param settingChangeSetDTO the changes to apply, each must contain a name, and a value unless it is a delete, null
+     *                            or empty causes exception
+     * @return the new revision and the number of settings created, updated and deleted, not null
+     * @throws IllegalArgumentException     when the service name is missing, no changes or more changes than the
+     *                                      maximum batch size are supplied, a change is missing its name or value or is
+     *                                      supplied more than once, or a secret is supplied while secret settings are not
+     *                                      enabled
+     * @throws IllegalAccessException       when the authenticated service may not change the settings of the supplied
+     *                                      service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws ServiceMigratingException    when the settings of the service are being moved to another shard
+     * @throws VersionConflictException     when the settings are not at the expected revision, or a setting does not
+     *                                      exist or has changed since the supplied version
+     * @throws ReadOnlyReplicaException     when this node is a follower
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public SettingChangeSetResultDTO applyChangeSet(String serviceName, SettingChangeSetDTO settingChangeSetDTO) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, ServiceMigratingException, VersionConflictException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("No service name supplied, can't figure out which service the settings belong to.");
+        }
+
+        this.checkAccess(serviceName);
+
+        if (settingChangeSetDTO == null || settingChangeSetDTO.getChanges() == null || settingChangeSetDTO.getChanges().isEmpty()) {
+            throw new IllegalArgumentException("No changes supplied, nothing to apply.");
+        }
+
+        if (settingChangeSetDTO.getChanges().size() > this.maxBatchSize) {
+            throw new IllegalArgumentException("Too many changes supplied, at most " + this.maxBatchSize + " can be applied at once.");
+        }
+
+        Map<String, SettingChangeDTO> byName = new LinkedHashMap<>();
+
+        for (SettingChangeDTO change : settingChangeSetDTO.getChanges()) {
+            if (change == null || StringUtils.isBlank(change.getName()) || (!change.isDelete() && change.getValue() == null)) {
+                throw new IllegalArgumentException("No valid change supplied, a name and, unless deleting, a value are required.");
+            }
+
+            if (!change.isDelete() && change.isSecret() && !this.secretSettingCipher.isEnabled()) {
+                throw new IllegalArgumentException("Secret settings are not enabled on this server.");
+            }
+
+            if (byName.put(change.getName(), change) != null) {
+                throw new IllegalArgumentException("Setting " + change.getName() + " is changed more than once.");
+            }
+        }
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        String shard = this.shardDirectory.resolveForWrite(serviceDAO.getId());
+        // Encrypting is slow, so it is done before the transaction takes the revision lock.
+        Map<String, SettingDAO> values = new HashMap<>();
+        Map<String, String> plainValues = new HashMap<>();
+
+        for (SettingChangeDTO change : byName.values()) {
+            plainValues.put(change.getName(), change.isDelete() || change.isSecret() ? null : change.getValue());
+
+            if (!change.isDelete()) {
+                SettingDAO settingDAO = new SettingDAO();
+
+                this.applyValue(settingDAO, change.getValue(), change.isSecret());
+                values.put(change.getName(), settingDAO);
+            }
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("serviceId", serviceDAO.getId())
+                .addValue("names", byName.keySet());
+        List<String> replacedSecrets = new ArrayList<>();
+        Map<String, AuditAction> actions = new LinkedHashMap<>();
+
+        SettingChangeSetResultDTO result = this.adaptiveConcurrencyLimiter.execute(
+                Priority.ADMIN_WRITE,
+                () -> ShardContext.callOn(shard, () -> this.transactionTemplate.execute(status -> {
+                    long revision = this.serviceRevisionStore.increment(serviceDAO.getId());
+
+                    if (settingChangeSetDTO.getExpectedRevision() != null && revision - 1 != settingChangeSetDTO.getExpectedRevision()) {
+                        throw new VersionConflictException();
+                    }
+
+                    this.settingTemplateResolver.checkCycles(serviceDAO.getId(), plainValues);
+
+                    // The revision row stays locked until the end of the transaction, so these rows can not change
+                    // underneath the checks below.
+                    Map<String, SettingDAO> existing = new HashMap<>();
+
+                    this.namedParameterJdbcTemplate.query(SELECT_CHANGED_SQL, parameters, resultSet -> {
+                        SettingDAO settingDAO = new SettingDAO();
+
+                        settingDAO.setName(resultSet.getString(1));
+                        settingDAO.setValue(resultSet.getString(2));
+                        settingDAO.setSecret(resultSet.getBoolean(3));
+                        settingDAO.setVersion(resultSet.getLong(4));
+                        existing.put(settingDAO.getName(), settingDAO);
+                    });
+
+                    List<Object[]> inserts = new ArrayList<>();
+                    List<Object[]> updates = new ArrayList<>();
+                    List<Object[]> deletes = new ArrayList<>();
+
+                    for (SettingChangeDTO change : byName.values()) {
+                        SettingDAO current = existing.get(change.getName());
+
+                        if (change.getVersion() != null && (current == null || current.getVersion() != change.getVersion())) {
+                            throw new VersionConflictException();
+                        }
+
+                        if (current != null && current.isSecret()) {
+                            replacedSecrets.add(current.getValue());
+                        }
+
+                        SettingDAO value = values.get(change.getName());
+
+                        if (change.isDelete()) {
+                            if (current != null) {
+                                deletes.add(new Object[]{serviceDAO.getId(), change.getName()});
+                                actions.put(change.getName(), AuditAction.DELETE);
+                            }
+                        } else if (current == null) {
+                            inserts.add(new Object[]{serviceDAO.getId(), change.getName(), value.getValue(), value.isSecret(), value.getKeyVersion()});
+                            actions.put(change.getName(), AuditAction.CREATE);
+                        } else {
+                            updates.add(new Object[]{value.getValue(), value.isSecret(), value.getKeyVersion(), serviceDAO.getId(), change.getName()});
+                            actions.put(change.getName(), AuditAction.UPDATE);
+                        }
+                    }
+
+                    if (!deletes.isEmpty()) {
+                        this.jdbcTemplate.batchUpdate(DELETE_SETTING_SQL, deletes);
+                    }
+
+                    if (!updates.isEmpty()) {
+                        this.jdbcTemplate.batchUpdate(UPDATE_SETTING_SQL, updates);
+                    }
+
+                    if (!inserts.isEmpty()) {
+                        this.jdbcTemplate.batchUpdate(INSERT_SETTING_SQL, inserts);
+                    }
+
+                    return new SettingChangeSetResultDTO(revision, inserts.size(), updates.size(), deletes.size());
+                }))
+        );
+
+        replacedSecrets.forEach(this.secretSettingCipher::evict);
+        this.applicationEventPublisher.publishEvent(new SettingsChangedEvent(serviceDAO.getId(), serviceDAO.getName(), result.getRevision(), byName.keySet()));
+
+        for (Map.Entry<String, AuditAction> action : actions.entrySet()) {
+            SettingChangeDTO change = byName.get(action.getKey());
+
+            this.audit(serviceDAO, change.getName(), action.getValue(), change.isSecret(), change.getValue(), result.getRevision());
+        }
+
+        return result;
+    }
+
+    /**
+     * This method stores a value too large for the `settings` table as the value of a setting, creating the setting if
+     * it does not exist. The value is compressed and written in chunks while it is read from the supplied stream, before
+     * the transaction storing the setting starts, so the revision lock is only held while the setting is updated. A
+     * secret setting replaced this way stops being a secret.
+     * <p>
+     * The revision of the service is incremented in the same transaction, and a {@link SettingsChangedEvent} is
+     * published once it has been committed.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param name        the name of the setting, blank or null causes exception
+     * @param content     the value, read to its end but not closed, null causes exception
+     * @return the stored setting, with an empty value, the size and the hash of the stored value, not null
+     * @throws IllegalArgumentException     when the service name, setting name or value is missing
+     * @throws IllegalAccessException       when the authenticated service may not change the settings of the supplied
+     *                                      service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws ServiceMigratingException    when the settings of the service are being moved to another shard
+     * @throws ValueTooLargeException       when the value is larger than the configured maximum
+     * @throws ReadOnlyReplicaException     when this node is a follower
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     * @throws IOException                  when the value can not be read
+     */
+    public SettingDTO saveBlobSetting(String serviceName, String name, InputStream content) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, ServiceMigratingException, ValueTooLargeException, ReadOnlyReplicaException, LimitExceededException, IOException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName) || StringUtils.isBlank(name) || content == null) {
+            throw new IllegalArgumentException("No valid setting supplied, a service name, setting name and value are required.");
+        }
+
+        this.checkAccess(serviceName);
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        String shard = this.shardDirectory.resolveForWrite(serviceDAO.getId());
+        StagedBlob stagedBlob = this.settingBlobStore.stage(serviceDAO.getId(), shard, content);
+        String[] previousValue = new String[1];
+        long[] revision = new long[1];
+        boolean[] created = new boolean[1];
+        SettingDAO saved;
+
+        try {
+            // The upload can take a while, long enough for a move of the service to have started or finished.
+            if (!shard.equals(this.shardDirectory.resolveForWrite(serviceDAO.getId()))) {
+                throw new ServiceMigratingException();
+            }
+
+            // An empty value references nothing, so storing it can not close a cycle of references.
+            saved = this.adaptiveConcurrencyLimiter.execute(
+                    Priority.ADMIN_WRITE,
+                    () -> ShardContext.callOn(shard, () -> this.transactionTemplate.execute(status -> {
+                        revision[0] = this.serviceRevisionStore.increment(serviceDAO.getId());
+
+                        SettingDAO settingDAO = this.settingRepository.findByServiceDAOIdAndName(serviceDAO.getId(), name);
+
+                        if (settingDAO == null) {
+                            settingDAO = new SettingDAO();
+                            settingDAO.setServiceDAO(serviceDAO);
+                            settingDAO.setName(name);
+                            created[0] = true;
+                        } else if (settingDAO.isSecret()) {
+                            previousValue[0] = settingDAO.getValue();
+                        }
+
+                        this.settingBlobStore.commit(serviceDAO.getId(), stagedBlob);
+
+                        settingDAO.setValue("");
+                        settingDAO.setSecret(false);
+                        settingDAO.setKeyVersion(null);
+                        settingDAO.setBlobSize(stagedBlob.getSize());
+                        settingDAO.setBlobSha256(stagedBlob.getSha256());
+
+                        return this.settingRepository.saveAndFlush(settingDAO);
+                    }))
+            );
+        } catch (RuntimeException e) {
+            this.settingBlobStore.discard(serviceDAO.getId(), shard, stagedBlob);
+            throw e;
+        }
+
+        this.secretSettingCipher.evict(previousValue[0]);
+        this.applicationEventPublisher.publishEvent(new SettingsChangedEvent(serviceDAO.getId(), serviceDAO.getName(), revision[0], Collections.singleton(name)));
+        this.auditTrail.record(
+                created[0] ? AuditAction.CREATE : AuditAction.UPDATE,
+                AuditTrail.SETTING,
+                serviceDAO.getName(),
+                name,
+                "large value size=" + stagedBlob.getSize() + ", sha256=" + stagedBlob.getSha256() + ", revision=" + revision[0]
+        );
+
+        return SettingsService.settingDAOToDTO(saved, this.secretSettingCipher);
+    }
+
+    /**
+     * This method looks up where the large value of a setting is stored, so it can be streamed. Large values are only
+     * held by primary and standalone nodes.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param name        the name of the setting, blank or null causes exception
+     * @return where the value is stored, with its size and hash, not null
+     * @throws IllegalArgumentException when the service name or setting name is blank or null
+     * @throws IllegalAccessException   when the authenticated service may not read the settings of the supplied service
+     * @throws NoResultsException       when no matching setting is found, or its value is not a large value
+     * @throws ReadOnlyReplicaException when this node is a follower
+     * @throws LimitExceededException   when the database is too busy to handle the lookup
+     */
+    public BlobReference getBlobSetting(String serviceName, String name) throws IllegalArgumentException, IllegalAccessException, NoResultsException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName) || StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("Cannot match setting, null or empty service name or setting name supplied.");
+        }
+
+        this.checkAccess(serviceName);
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.READ, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new NoResultsException();
+        }
+
+        String shard = this.shardDirectory.resolve(serviceDAO.getId());
+        SettingDAO settingDAO = this.adaptiveConcurrencyLimiter.execute(
+                Priority.READ,
+                () -> ShardContext.callOn(shard, () -> this.settingRepository.findByServiceDAOIdAndName(serviceDAO.getId(), name))
+        );
+
+        if (settingDAO == null || settingDAO.getBlobSha256() == null) {
+            throw new NoResultsException();
+        }
+
+        this.settingUsageTracker.touch(serviceDAO.getId(), name);
+        this.usageAnalytics.recordRead(serviceName, name);
+
+        return new BlobReference(serviceDAO.getId(), shard, settingDAO.getBlobSize(), settingDAO.getBlobSha256());
+    }
+
+    /**
+     * This method lists the settings of the supplied service that were moved to the archive because they went unused.
+     * Values are left out.
+     *
+     * @param serviceName the name of the service the settings belong to, blank or null causes exception
+     * @return the archived settings ordered by name, not null
+     * @throws IllegalArgumentException when the service name is blank or null
+     * @throws IllegalAccessException   when the authenticated service may not read the settings of the supplied service
+     * @throws NoResultsException       when the service does not exist or has no archived settings
+     * @throws ReadOnlyReplicaException when this node is a follower, which does not hold the archive
+     * @throws LimitExceededException   when the database is too busy to handle the lookup
+     */
+    public List<ArchivedSettingDTO> getArchivedSettings(String serviceName) throws IllegalArgumentException, IllegalAccessException, NoResultsException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("Cannot match settings, null or empty service name supplied.");
+        }
+
+        this.checkAccess(serviceName);
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.BULK_READ, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new NoResultsException();
+        }
+
+        String shard = this.shardDirectory.resolve(serviceDAO.getId());
+        List<ArchivedSettingDTO> archived = this.adaptiveConcurrencyLimiter.execute(
+                Priority.BULK_READ,
+                () -> ShardContext.callOn(shard, () -> this.settingsArchive.findArchived(serviceDAO.getId()))
+        );
+
+        if (archived.isEmpty()) {
+            throw new NoResultsException();
+        }
+
+        return archived;
+    }
+
+    /**
+     * This method moves an archived setting back to the live settings of the supplied service. The setting is dated as
+     * used today and its version is incremented.
+     * <p>
+     * The revision of the service is incremented in the same transaction, and a {@link SettingsChangedEvent} is
+     * published once it has been committed.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param name        the name of the archived setting, blank or null causes exception
+     * @return the restored setting, not null
+     * @throws IllegalArgumentException     when the service name or setting name is blank or null, or a setting with the
+     *                                      same name exists
+     * @throws IllegalAccessException       when the authenticated service may not change the settings of the supplied
+     *                                      service
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws NoResultsException           when no setting with the supplied name is archived
+     * @throws ServiceMigratingException    when the settings of the service are being moved to another shard
+     * @throws ReadOnlyReplicaException     when this node is a follower
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public SettingDTO restoreSetting(String serviceName, String name) throws IllegalArgumentException, IllegalAccessException, ServiceDoesNotExistException, NoResultsException, ServiceMigratingException, ReadOnlyReplicaException, LimitExceededException {
+        if (this.replicaStore != null) {
+            throw new ReadOnlyReplicaException();
+        }
+
+        if (StringUtils.isBlank(serviceName) || StringUtils.isBlank(name)) {
+            throw new IllegalArgumentException("Cannot match setting, null or empty service name or setting name supplied.");
+        }
+
+        this.checkAccess(serviceName);
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        String shard = this.shardDirectory.resolveForWrite(serviceDAO.getId());
+        long[] revision = new long[1];
+        SettingDAO restored = this.adaptiveConcurrencyLimiter.execute(
+                Priority.ADMIN_WRITE,
+                () -> ShardContext.callOn(shard, () -> this.transactionTemplate.execute(status -> {
+                    // The revision row is locked before the setting rows, in the order every writer locks them.
+                    revision[0] = this.serviceRevisionStore.increment(serviceDAO.getId());
+
+                    SettingDAO settingDAO = this.settingsArchive.restore(serviceDAO.getId(), name, LocalDate.now());
+
+                    if (settingDAO == null) {
+                        // Nothing changed, so the revision is not bumped either.
+                        status.setRollbackOnly();
+                        return null;
+                    }
+
+                    this.settingTemplateResolver.checkCycles(
+                            serviceDAO.getId(),
+                            Collections.singletonMap(name, settingDAO.isSecret() ? null : settingDAO.getValue())
+                    );
+
+                    return settingDAO;
+                }))
+        );
+
+        if (restored == null) {
+            throw new NoResultsException();
+        }
+
+        SettingDTO settingDTO = SettingsService.settingDAOToDTO(restored, this.secretSettingCipher);
+
+        this.applicationEventPublisher.publishEvent(new SettingsChangedEvent(serviceDAO.getId(), serviceDAO.getName(), revision[0], Collections.singleton(name)));
+        this.audit(serviceDAO, name, AuditAction.RESTORE, settingDTO.isSecret(), settingDTO.getValue(), revision[0]);
+        this.settingTemplateResolver.resolve(serviceDAO.getId(), Collections.singletonList(settingDTO));
+
+        return settingDTO;
+    }
+
+    /**
+     * Runs a read of settings on the supplied shard, or the primary when null, within the read deadline. A read that
+     * runs past it fails like an unreachable database: it counts against the circuit breaker, and the callers answer
+     * from the last-known-good copies.
+     */
+    private <T> T read(Priority priority, String shard, Supplier<T> read) throws LimitExceededException {
+        return this.adaptiveConcurrencyLimiter.execute(
+                priority,
+                () -> ShardContext.callOn(shard, () -> this.readTransactionTemplate.execute(status -> read.get()))
+        );
+    }
+
+    /**
+     * Encodes settings read between two lookups of the revision of their service. They are only cached when both
+     * lookups returned the same revision.
+     */
+    private EncodedSnapshot encodeSnapshot(Long serviceId, long revision, long revisionAfter, List<SettingDTO> settingDTOs) throws NoResultsException {
+        if (settingDTOs.isEmpty()) {
+            throw new NoResultsException();
+        }
+
+        EncodedSnapshot snapshot = this.snapshotResponseCache.encode(serviceId, revision, settingDTOs);
+
+        return revision == revisionAfter ? this.snapshotResponseCache.put(snapshot) : snapshot;
+    }
+
+    /**
+     * @return the replicated services and settings, once a follower has loaded them
+     * @throws ReplicationUnavailableException when the follower has not loaded its first snapshot yet
+     */
+    private ReplicaStore loadedReplica() throws ReplicationUnavailableException {
+        if (!this.replicaStore.isLoaded()) {
+            throw new ReplicationUnavailableException("This follower has not loaded the settings from its primary node yet.");
+        }
+
+        return this.replicaStore;
+    }
+
+    /**
+     * Resolves the references in settings read from the replica, against the other settings of the service held there.
+     */
+    private void resolveReplicated(String serviceName, List<SettingDTO> settingDTOs) {
+        ReplicaStore replica = this.loadedReplica();
+        ReplicatedServiceDTO service = replica.getService(serviceName);
+
+        if (service == null) {
+            return;
+        }
+
+        this.settingTemplateResolver.resolve(service.getId(), replica.getRevision(service.getId()), () -> {
+            Map<String, String> values = new HashMap<>();
+
+            for (ReplicatedSettingDTO replicatedSettingDTO : replica.getSettings(serviceName)) {
+                if (!replicatedSettingDTO.isSecret()) {
+                    values.put(replicatedSettingDTO.getName(), replicatedSettingDTO.getValue());
+                }
+            }
+
+            return values;
+        }, settingDTOs);
+    }
+
+    /**
+     * @return true if the exception says the database can not be used right now, so a last-known-good copy may be
+     * served instead
+     */
+    private static boolean isDatabaseUnavailable(RuntimeException e) {
+        return e instanceof CircuitOpenException || DatabaseCircuitBreaker.isDatabaseFailure(e);
+    }
+
+    /**
+     * Only the service itself, or a service with the full role, may read or change its settings.
+     */
+    private void checkAccess(String serviceName) throws IllegalAccessException {
+        if (!StringUtils.equals(serviceName, AuthenticatedService.getName()) && !AuthenticatedService.hasRole(Role.FULL)) {
+            throw new IllegalAccessException();
+        }
+    }
+
+    /**
+     * Records a committed change to a setting in the audit trail. Secret values are never recorded.
+     */
+    private void audit(ServiceDAO serviceDAO, String name, AuditAction action, boolean secret, String value, long revision) {
+        String detail = "revision=" + revision;
+
+        if (action != AuditAction.DELETE) {
+            detail = (secret ? "secret value" : "value=" + value) + ", " + detail;
+        }
+
+        this.auditTrail.record(action, AuditTrail.SETTING, serviceDAO.getName(), name, detail);
+    }
+
+    /**
+     * Sets the value of a setting, encrypting it with the active key if it is a secret.
+     */
+    private void applyValue(SettingDAO settingDAO, String value, boolean secret) {
+        settingDAO.setSecret(secret);
+
+        if (secret) {
+            settingDAO.setValue(this.secretSettingCipher.encrypt(value));
+            settingDAO.setKeyVersion(this.secretSettingCipher.getActiveKeyVersion());
+        } else {
+            settingDAO.setValue(value);
+            settingDAO.setKeyVersion(null);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A consistent hash ring that places keys on shards.
+ * <p>
+ * Every shard is placed on the ring a number of times, and a key belongs to the first shard found clockwise from the
+ * hash of the key. Adding or removing a shard therefore only moves the keys next to its points, instead of nearly every
+ * key as a plain modulo would. The ring is immutable and safe to share between threads.
+ */
+public class ConsistentHashRing {
+
+    private final TreeMap<Long, String> ring = new TreeMap<>();
+
+    /**
+     * @param shards       the names of the shards on the ring, empty causes exception
+     * @param virtualNodes the number of points each shard gets on the ring, less than 1 causes exception
+     * @throws IllegalArgumentException when no shards or no virtual nodes are supplied
+     */
+    public ConsistentHashRing(Collection<String> shards, int virtualNodes) throws IllegalArgumentException {
+        if (shards == null || shards.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A hash ring needs at least one shard and one virtual node per shard.");
+        }
+
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                this.ring.put(ConsistentHashRing.hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    /**
+     * Finds the shard the supplied key belongs to.
+     *
+     * @param key the key to place, null causes exception
+     * @return the name of the shard, not null
+     */
+    public String getShard(String key) {
+        SortedMap<Long, String> tail = this.ring.tailMap(ConsistentHashRing.hash(key));
+
+        return tail.isEmpty() ? this.ring.firstEntry().getValue() : tail.get(tail.firstKey());
+    }
+
+    /**
+     * @return the number of points on the ring
+     */
+    public int size() {
+        return this.ring.size();
+    }
+
+    /**
+     * @return the points on the ring, mapped to the shard they belong to
+     */
+    Map<Long, String> getPoints() {
+        return this.ring;
+    }
+
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
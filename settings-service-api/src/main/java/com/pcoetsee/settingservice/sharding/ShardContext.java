@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the shard the current thread is working against, which {@link ShardRoutingDataSource} uses to pick a database.
+ * <p>
+ * The shard has to be set before a transaction starts, since the connection is taken when the transaction begins.
+ * Without a shard, the primary database is used.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<String> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return the shard the current thread is working against, or null for the primary database
+     */
+    public static String getCurrentShard() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Runs the supplied work against the supplied shard, restoring the previous shard afterwards.
+     *
+     * @param shard    the name of the shard, null uses the primary database
+     * @param supplier the work to run, not null
+     * @param <T>      the type of the result
+     * @return the result of the work, may return null
+     */
+    public static <T> T callOn(String shard, Supplier<T> supplier) {
+        String previous = CURRENT.get();
+
+        CURRENT.set(shard);
+
+        try {
+            return supplier.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Runs the supplied work against the supplied shard, restoring the previous shard afterwards.
+     *
+     * @param shard    the name of the shard, null uses the primary database
+     * @param runnable the work to run, not null
+     */
+    public static void runOn(String shard, Runnable runnable) {
+        ShardContext.callOn(shard, () -> {
+            runnable.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The data sources of all shards, keyed by shard name. The primary database is always one of them.
+ */
+public class ShardDataSources {
+
+    private final String primaryShard;
+    private final Map<String, DataSource> dataSources;
+
+    /**
+     * @param primaryShard the name of the shard backed by the primary database, must be a key in the data sources
+     * @param dataSources  the data sources of all shards, keyed by shard name
+     * @throws IllegalArgumentException when the primary shard has no data source
+     */
+    public ShardDataSources(String primaryShard, Map<String, DataSource> dataSources) throws IllegalArgumentException {
+        if (!dataSources.containsKey(primaryShard)) {
+            throw new IllegalArgumentException("No data source supplied for the primary shard " + primaryShard);
+        }
+
+        this.primaryShard = primaryShard;
+        this.dataSources = Collections.unmodifiableMap(new LinkedHashMap<>(dataSources));
+    }
+
+    public String getPrimaryShard() {
+        return primaryShard;
+    }
+
+    public DataSource getPrimaryDataSource() {
+        return this.dataSources.get(this.primaryShard);
+    }
+
+    public Map<String, DataSource> getDataSources() {
+        return dataSources;
+    }
+
+    public Set<String> getShardNames() {
+        return this.dataSources.keySet();
+    }
+
+    /**
+     * @param shard the name of the shard, unknown names cause exception
+     * @return the data source of the shard, not null
+     * @throws IllegalArgumentException when no shard with the supplied name exists
+     */
+    public DataSource getDataSource(String shard) throws IllegalArgumentException {
+        DataSource dataSource = this.dataSources.get(shard);
+
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown shard " + shard);
+        }
+
+        return dataSource;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import com.pcoetsee.settingservice.exception.ServiceMigratingException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which shard holds the settings of a service.
+ * <p>
+ * Services are placed with a consistent hash of their ID, unless the `shard_directory` table on the primary database
+ * holds an override for them. Overrides are written when a service is moved, so the table only holds services that do
+ * not live where the ring would put them. Reads use a copy of the overrides held in memory, reloaded every
+ * `settings.sharding.refresh-interval-ms`. Writes always read the override from the database, so they are never
+ * routed to a shard a service has just left, and are refused while the service is being moved.
+ */
+@Component
+public class ShardDirectory {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardDirectory.class);
+
+    private static final String STATE_ACTIVE = "ACTIVE";
+    private static final String STATE_MIGRATING = "MIGRATING";
+
+    private final ShardingProperties shardingProperties;
+    private final ShardDataSources shardDataSources;
+    private final ConsistentHashRing ring;
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Map<Long, String> overrides = Collections.emptyMap();
+
+    public ShardDirectory(
+            @Autowired ShardingProperties shardingProperties,
+            @Autowired ShardDataSources shardDataSources
+    ) {
+        this.shardingProperties = shardingProperties;
+        this.shardDataSources = shardDataSources;
+        this.ring = new ConsistentHashRing(shardDataSources.getShardNames(), shardingProperties.getVirtualNodes());
+        this.jdbcTemplate = new JdbcTemplate(shardDataSources.getPrimaryDataSource());
+    }
+
+    /**
+     * Reloads the overrides from the database.
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${settings.sharding.refresh-interval-ms:30000}", initialDelayString = "${settings.sharding.refresh-interval-ms:30000}")
+    public void refresh() {
+        if (!this.shardingProperties.isEnabled()) {
+            return;
+        }
+
+        Map<Long, String> loaded = new HashMap<>();
+
+        this.jdbcTemplate.query("SELECT `service_id`, `shard` FROM `shard_directory`", resultSet -> {
+            loaded.put(resultSet.getLong(1), resultSet.getString(2));
+        });
+
+        loaded.values().removeIf(shard -> {
+            if (!this.shardDataSources.getShardNames().contains(shard)) {
+                LOGGER.error("[SSAPI]: Shard directory refers to unknown shard [{}], falling back to the hash ring.", shard);
+                return true;
+            }
+
+            return false;
+        });
+
+        this.overrides = loaded;
+        LOGGER.debug("[SSAPI]: Loaded [{}] shard overrides.", loaded.size());
+    }
+
+    /**
+     * @return the names of all shards
+     */
+    public List<String> getShardNames() {
+        return Collections.unmodifiableList(new ArrayList<>(this.shardDataSources.getShardNames()));
+    }
+
+    /**
+     * Finds the shard to read the settings of a service from, using the overrides held in memory.
+     *
+     * @param serviceId the ID of the service, null causes exception
+     * @return the name of the shard, not null
+     */
+    public String resolve(Long serviceId) {
+        String shard = this.overrides.get(serviceId);
+
+        return shard != null ? shard : this.getRingShard(serviceId);
+    }
+
+    /**
+     * Finds the shard to write the settings of a service to, reading the override from the database.
+     *
+     * @param serviceId the ID of the service, null causes exception
+     * @return the name of the shard, not null
+     * @throws ServiceMigratingException when the service is being moved to another shard
+     */
+    public String resolveForWrite(Long serviceId) throws ServiceMigratingException {
+        if (!this.shardingProperties.isEnabled()) {
+            return this.shardDataSources.getPrimaryShard();
+        }
+
+        List<String[]> rows = this.jdbcTemplate.query(
+                "SELECT `shard`, `state` FROM `shard_directory` WHERE `service_id` = ?",
+                (resultSet, i) -> new String[]{resultSet.getString(1), resultSet.getString(2)},
+                serviceId
+        );
+
+        if (rows.isEmpty()) {
+            return this.getRingShard(serviceId);
+        }
+
+        if (STATE_MIGRATING.equals(rows.get(0)[1])) {
+            throw new ServiceMigratingException();
+        }
+
+        return rows.get(0)[0];
+    }
+
+    /**
+     * @param serviceId the ID of the service, null causes exception
+     * @return the shard the hash ring places the service on, ignoring overrides, not null
+     */
+    public String getRingShard(Long serviceId) {
+        return this.ring.getShard(String.valueOf(serviceId));
+    }
+
+    /**
+     * Marks a service as being moved. Reads keep going to the source shard, writes are refused.
+     *
+     * @param serviceId   the ID of the service, null causes exception
+     * @param sourceShard the shard currently holding the settings, not null
+     * @param targetShard the shard the settings are moved to, not null
+     * @throws IllegalStateException when the service is already being moved
+     */
+    void beginMigration(Long serviceId, String sourceShard, String targetShard) throws IllegalStateException {
+        int updated = this.jdbcTemplate.update(
+                "UPDATE `shard_directory` SET `shard` = ?, `target_shard` = ?, `state` = ? WHERE `service_id` = ? AND `state` = ?",
+                sourceShard, targetShard, STATE_MIGRATING, serviceId, STATE_ACTIVE
+        );
+
+        if (updated == 0) {
+            try {
+                this.jdbcTemplate.update(
+                        "INSERT INTO `shard_directory` (`service_id`, `shard`, `target_shard`, `state`) VALUES (?, ?, ?, ?)",
+                        serviceId, sourceShard, targetShard, STATE_MIGRATING
+                );
+            } catch (DuplicateKeyException e) {
+                throw new IllegalStateException("Service " + serviceId + " is already being moved");
+            }
+        }
+    }
+
+    /**
+     * Ends the move of a service, leaving its settings on the supplied shard. If that is where the hash ring puts the
+     * service anyway, the override is removed.
+     *
+     * @param serviceId the ID of the service, null causes exception
+     * @param shard     the shard that holds the settings from now on, not null
+     */
+    void endMigration(Long serviceId, String shard) {
+        if (shard.equals(this.getRingShard(serviceId))) {
+            this.jdbcTemplate.update("DELETE FROM `shard_directory` WHERE `service_id` = ?", serviceId);
+        } else {
+            this.jdbcTemplate.update(
+                    "UPDATE `shard_directory` SET `shard` = ?, `target_shard` = NULL, `state` = ? WHERE `service_id` = ?",
+                    shard, STATE_ACTIVE, serviceId
+            );
+        }
+
+        this.refresh();
+    }
+}
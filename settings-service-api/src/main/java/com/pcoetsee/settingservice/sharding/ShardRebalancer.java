@@ -0,0 +1,324 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.exception.ServiceDoesNotExistException;
+import com.pcoetsee.settingservice.exception.ServiceMigratingException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Blob;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the settings of a service from one shard to another while the service stays online.
+ * <p>
+ * A move marks the service as migrating in the shard directory, which refuses writes while reads keep going to the
+ * source shard. The settings are then copied to the target shard in batches and counted on both sides before the
+ * directory is switched to the target shard. The copies on the source shard are only removed after every node has had
+ * time to reload the directory, so a node still reading from the source shard keeps finding them. If anything fails,
+ * the partial copy is removed and the service stays where it was. Archived settings and the chunks of large values move
+ * along with the service.
+ * <p>
+ * A write that passed the directory check just before the move began can still land on the source shard while the
+ * copy runs. Every write increments the revision of the service, so the revision on the source shard is read before
+ * and after the copy, each time waiting for writes still holding its row, and the move is abandoned if it changed. A
+ * write that commits to the source shard after the switch is caught the same way before the copies there are removed,
+ * and they are kept so the write can be recovered.
+ */
+@Component
+public class ShardRebalancer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    /**
+     * The columns copied when a setting is moved. The ID is left out, since each shard generates its own IDs.
+     */
+    private static final String COLUMNS =
+            "`service_id`, `name`, `value`, `date_last_used`, `secret`, `key_version`, `version`, `blob_size`, `blob_sha256`";
+
+    /**
+     * The columns copied when an archived setting is moved along with the service.
+     */
+    private static final String ARCHIVE_COLUMNS = COLUMNS + ", `date_archived`";
+
+    /**
+     * The columns copied when the chunks of a large value are moved along with the service.
+     */
+    private static final String BLOB_COLUMNS = "`service_id`, `sha256`, `seq`, `data`, `creation_time`";
+
+    /**
+     * The number of chunks of large values copied per batch. Chunks are large, so far fewer are copied at once than
+     * settings.
+     */
+    private static final int BLOB_BATCH_SIZE = 4;
+
+    private final ShardDirectory shardDirectory;
+    private final ShardDataSources shardDataSources;
+    private final ShardingProperties shardingProperties;
+    private final ServiceRepository serviceRepository;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final TaskScheduler taskScheduler;
+
+    public ShardRebalancer(
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired ShardDataSources shardDataSources,
+            @Autowired ShardingProperties shardingProperties,
+            @Autowired ServiceRepository serviceRepository,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired TaskScheduler taskScheduler
+    ) {
+        this.shardDirectory = shardDirectory;
+        this.shardDataSources = shardDataSources;
+        this.shardingProperties = shardingProperties;
+        this.serviceRepository = serviceRepository;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * Moves the settings of the service with the supplied name to the supplied shard.
+     *
+     * @param serviceName the name of the service, blank or null causes exception
+     * @param targetShard the name of the shard to move to, unknown names cause exception
+     * @return the number of settings moved, 0 if the service already lives on the target shard
+     * @throws IllegalArgumentException     when the service name is blank or null, or the shard is unknown
+     * @throws IllegalStateException        when sharding is disabled, or the copy does not match the source
+     * @throws ServiceDoesNotExistException when no service with the supplied name exists
+     * @throws ServiceMigratingException    when the service is already being moved
+     * @throws LimitExceededException       when the database is too busy to handle the request
+     */
+    public int moveService(String serviceName, String targetShard) throws IllegalArgumentException, IllegalStateException, ServiceDoesNotExistException, ServiceMigratingException, LimitExceededException {
+        if (StringUtils.isBlank(serviceName)) {
+            throw new IllegalArgumentException("No service name supplied, can't figure out which service to move.");
+        }
+
+        ServiceDAO serviceDAO = this.adaptiveConcurrencyLimiter.execute(Priority.ADMIN_WRITE, () -> this.serviceRepository.findByName(serviceName));
+
+        if (serviceDAO == null) {
+            throw new ServiceDoesNotExistException();
+        }
+
+        return this.moveService(serviceDAO.getId(), targetShard);
+    }
+
+    /**
+     * Moves the settings of the service with the supplied ID to the supplied shard.
+     *
+     * @param serviceId   the ID of the service, null causes exception
+     * @param targetShard the name of the shard to move to, unknown names cause exception
+     * @return the number of settings moved, 0 if the service already lives on the target shard
+     * @throws IllegalArgumentException  when the shard is unknown
+     * @throws IllegalStateException     when sharding is disabled, or the copy does not match the source
+     * @throws ServiceMigratingException when the service is already being moved
+     * @throws LimitExceededException    when the database is too busy to handle the request
+     */
+    public int moveService(Long serviceId, String targetShard) throws IllegalArgumentException, IllegalStateException, ServiceMigratingException, LimitExceededException {
+        if (!this.shardingProperties.isEnabled()) {
+            throw new IllegalStateException("Sharding is not enabled, there is nowhere to move settings to");
+        }
+
+        JdbcTemplate target = new JdbcTemplate(this.shardDataSources.getDataSource(targetShard));
+        String sourceShard = this.shardDirectory.resolveForWrite(serviceId);
+
+        if (sourceShard.equals(targetShard)) {
+            return 0;
+        }
+
+        JdbcTemplate source = new JdbcTemplate(this.shardDataSources.getDataSource(sourceShard));
+
+        this.shardDirectory.beginMigration(serviceId, sourceShard, targetShard);
+        LOGGER.info("[SSAPI]: Moving settings of service [{}] from shard [{}] to shard [{}].", serviceId, sourceShard, targetShard);
+
+        int copied;
+        long revision;
+
+        try {
+            // Rows left behind by an earlier move that failed, or by a move away from the target that is not purged yet.
+            target.update("DELETE FROM `settings` WHERE `service_id` = ?", serviceId);
+            target.update("DELETE FROM `settings_archive` WHERE `service_id` = ?", serviceId);
+            target.update("DELETE FROM `setting_blobs` WHERE `service_id` = ?", serviceId);
+            target.update("DELETE FROM `service_revisions` WHERE `service_id` = ?", serviceId);
+
+            revision = this.lockRevision(serviceId, source);
+            copied = this.copy(serviceId, "settings", COLUMNS, this.shardingProperties.getRebalanceBatchSize(), source, target);
+            this.copy(serviceId, "settings_archive", ARCHIVE_COLUMNS, this.shardingProperties.getRebalanceBatchSize(), source, target);
+            this.copy(serviceId, "setting_blobs", BLOB_COLUMNS, BLOB_BATCH_SIZE, source, target);
+
+            long revisionAfter = this.lockRevision(serviceId, source);
+
+            if (revisionAfter != revision) {
+                throw new IllegalStateException("The settings changed from revision " + revision + " to " + revisionAfter + " while they were copied");
+            }
+
+            this.copyRevision(serviceId, revision, target);
+
+            Integer sourceCount = source.queryForObject("SELECT COUNT(*) FROM `settings` WHERE `service_id` = ?", Integer.class, serviceId);
+            Integer targetCount = target.queryForObject("SELECT COUNT(*) FROM `settings` WHERE `service_id` = ?", Integer.class, serviceId);
+
+            if (sourceCount == null || !sourceCount.equals(targetCount)) {
+                throw new IllegalStateException("Copied " + targetCount + " settings but the source holds " + sourceCount);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("[SSAPI]: Moving settings of service [{}] to shard [{}] failed, rolling back.", serviceId, targetShard, e);
+            target.update("DELETE FROM `settings` WHERE `service_id` = ?", serviceId);
+            target.update("DELETE FROM `settings_archive` WHERE `service_id` = ?", serviceId);
+            target.update("DELETE FROM `setting_blobs` WHERE `service_id` = ?", serviceId);
+            target.update("DELETE FROM `service_revisions` WHERE `service_id` = ?", serviceId);
+            this.shardDirectory.endMigration(serviceId, sourceShard);
+            throw e;
+        }
+
+        this.shardDirectory.endMigration(serviceId, targetShard);
+        LOGGER.info("[SSAPI]: Moved [{}] settings of service [{}] to shard [{}].", copied, serviceId, targetShard);
+
+        long purgeDelay = this.shardingProperties.getRefreshIntervalMs() * 2;
+
+        if (this.taskScheduler == null || purgeDelay <= 0) {
+            this.purge(serviceId, sourceShard, revision);
+        } else {
+            this.taskScheduler.schedule(() -> this.purge(serviceId, sourceShard, revision), Instant.now().plusMillis(purgeDelay));
+        }
+
+        return copied;
+    }
+
+    /**
+     * Copies the rows of a service from one table to the same table on another shard, in batches walked in ID order.
+     */
+    private int copy(Long serviceId, String table, String columns, int batchSize, JdbcTemplate source, JdbcTemplate target) {
+        TransactionTemplate targetTransaction = new TransactionTemplate(new DataSourceTransactionManager(target.getDataSource()));
+        int columnCount = columns.split(",").length;
+        String placeholders = String.join(", ", Collections.nCopies(columnCount, "?"));
+        long afterId = 0;
+        int copied = 0;
+
+        while (true) {
+            long batchAfterId = afterId;
+            List<Object[]> batch = this.adaptiveConcurrencyLimiter.execute(Priority.BULK_READ, () -> source.query(
+                    "SELECT `id`, " + columns + " FROM `" + table + "` WHERE `service_id` = ? AND `id` > ? ORDER BY `id` LIMIT ?",
+                    (resultSet, i) -> {
+                        Object[] row = new Object[columnCount + 1];
+
+                        for (int column = 0; column <= columnCount; column++) {
+                            Object value = resultSet.getObject(column + 1);
+
+                            // A blob reads from the connection it came from, which is closed once the batch is read.
+                            if (value instanceof Blob) {
+                                value = ((Blob) value).getBytes(1, (int) ((Blob) value).length());
+                            }
+
+                            row[column] = value;
+                        }
+
+                        return row;
+                    },
+                    serviceId, batchAfterId, batchSize
+            ));
+
+            if (batch.isEmpty()) {
+                return copied;
+            }
+
+            targetTransaction.executeWithoutResult(status -> target.batchUpdate(
+                    "INSERT INTO `" + table + "` (" + columns + ") VALUES (" + placeholders + ")",
+                    batch.stream().map(row -> Arrays.copyOfRange(row, 1, row.length)).collect(Collectors.toList())
+            ));
+
+            copied += batch.size();
+            afterId = ((Number) batch.get(batch.size() - 1)[0]).longValue();
+        }
+    }
+
+    /**
+     * Reads the revision of the settings of a service, 0 if they were never written. The row is locked while it is read,
+     * so writes still holding it are waited for and counted.
+     */
+    private long lockRevision(Long serviceId, JdbcTemplate source) {
+        TransactionTemplate sourceTransaction = new TransactionTemplate(new DataSourceTransactionManager(source.getDataSource()));
+        List<Long> revisions = sourceTransaction.execute(status -> source.queryForList(
+                "SELECT `revision` FROM `service_revisions` WHERE `service_id` = ? FOR UPDATE", Long.class, serviceId));
+
+        return revisions == null || revisions.isEmpty() ? 0 : revisions.get(0);
+    }
+
+    /**
+     * Carries the revision of the settings over, so clients comparing revisions do not see it go backwards.
+     */
+    private void copyRevision(Long serviceId, long revision, JdbcTemplate target) {
+        if (revision > 0) {
+            target.update("INSERT INTO `service_revisions` (`service_id`, `revision`) VALUES (?, ?)", serviceId, revision);
+        }
+    }
+
+    /**
+     * Removes the settings of a service from a shard it has moved away from. Nothing is removed if the service has
+     * moved back, or is being moved again, in the meantime, or if a write landed on the shard after the settings were
+     * copied away from it.
+     */
+    private void purge(Long serviceId, String sourceShard, long movedRevision) {
+        try {
+            if (sourceShard.equals(this.shardDirectory.resolveForWrite(serviceId))) {
+                return;
+            }
+        } catch (ServiceMigratingException e) {
+            return;
+        }
+
+        JdbcTemplate source = new JdbcTemplate(this.shardDataSources.getDataSource(sourceShard));
+        long revision = this.lockRevision(serviceId, source);
+
+        if (revision != movedRevision) {
+            LOGGER.error("[SSAPI]: Settings of service [{}] on shard [{}] changed from revision [{}] to [{}] after they were moved, keeping them to be recovered.",
+                    serviceId, sourceShard, movedRevision, revision);
+            return;
+        }
+
+        int removed = source.update("DELETE FROM `settings` WHERE `service_id` = ?", serviceId);
+
+        source.update("DELETE FROM `settings_archive` WHERE `service_id` = ?", serviceId);
+
+        source.update("DELETE FROM `setting_blobs` WHERE `service_id` = ?", serviceId);
+
+        source.update("DELETE FROM `service_revisions` WHERE `service_id` = ?", serviceId);
+
+        LOGGER.info("[SSAPI]: Removed [{}] moved settings of service [{}] from shard [{}].", removed, serviceId, sourceShard);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import javax.sql.DataSource;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Configures the data sources of the shards.
+ * <p>
+ * When sharding is enabled the application data source routes to the shard set in {@link ShardContext}, so JPA, JDBC
+ * and the transaction manager all follow the shard of the service being worked on. When it is disabled the primary
+ * database is the only shard, and the data source is left to Spring Boot.
+ */
+@Configuration
+public class ShardingConfiguration {
+
+    @Configuration
+    @ConditionalOnProperty(name = "settings.sharding.enabled", havingValue = "true")
+    static class Enabled {
+
+        @Bean
+        public ShardDataSources shardDataSources(
+                @Autowired DataSourceProperties dataSourceProperties,
+                @Autowired ShardingProperties shardingProperties
+        ) {
+            Map<String, DataSource> dataSources = new LinkedHashMap<>();
+
+            dataSources.put(
+                    shardingProperties.getPrimaryShard(),
+                    dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build()
+            );
+
+            for (Map.Entry<String, ShardingProperties.Shard> shard : shardingProperties.getShards().entrySet()) {
+                if (dataSources.containsKey(shard.getKey())) {
+                    throw new IllegalStateException("Shard " + shard.getKey() + " is configured more than once");
+                }
+
+                dataSources.put(shard.getKey(), Enabled.createDataSource(shard.getKey(), shard.getValue()));
+            }
+
+            return new ShardDataSources(shardingProperties.getPrimaryShard(), dataSources);
+        }
+
+        @Bean
+        @Primary
+        public DataSource dataSource(@Autowired ShardDataSources shardDataSources) {
+            return new ShardRoutingDataSource(shardDataSources);
+        }
+
+        private static DataSource createDataSource(String name, ShardingProperties.Shard shard) {
+            HikariDataSource dataSource = new HikariDataSource();
+
+            dataSource.setPoolName("shard-" + name);
+            dataSource.setJdbcUrl(shard.getUrl());
+            dataSource.setUsername(shard.getUsername());
+            dataSource.setPassword(shard.getPassword());
+            dataSource.setMaximumPoolSize(shard.getMaximumPoolSize());
+
+            if (shard.getDriverClassName() != null) {
+                dataSource.setDriverClassName(shard.getDriverClassName());
+            }
+
+            return dataSource;
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "settings.sharding.enabled", havingValue = "false", matchIfMissing = true)
+    static class Disabled {
+
+        @Bean
+        public ShardDataSources shardDataSources(
+                @Autowired DataSource dataSource,
+                @Autowired ShardingProperties shardingProperties
+        ) {
+            return new ShardDataSources(
+                    shardingProperties.getPrimaryShard(),
+                    Collections.singletonMap(shardingProperties.getPrimaryShard(), dataSource)
+            );
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.snapshot;
+
+/**
+ * The response body of the settings of one service at one revision, encoded once and served as is until the revision
+ * changes.
+ * <p>
+ * The arrays are shared by every request served from the snapshot and must never be modified.
+ */
+public class EncodedSnapshot {
+
+    private final Long serviceId;
+    private final long revision;
+    private final String eTag;
+    private final byte[] json;
+    private final byte[] gzip;
+
+    /**
+     * @param serviceId the ID of the service the settings belong to, not null
+     * @param revision  the revision of the settings of the service
+     * @param json      the settings encoded as a JSON array, not null
+     * @param gzip      the JSON gzip-compressed, null when it is too small to be worth compressing
+     */
+    public EncodedSnapshot(Long serviceId, long revision, byte[] json, byte[] gzip) {
+        this.serviceId = serviceId;
+        this.revision = revision;
+        this.eTag = "\"" + serviceId + "-" + revision + "\"";
+        this.json = json;
+        this.gzip = gzip;
+    }
+
+    public Long getServiceId() {
+        return serviceId;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    /**
+     * @return a strong entity tag for the snapshot, quoted, not null
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    public byte[] getJson() {
+        return json;
+    }
+
+    public byte[] getGzip() {
+        return gzip;
+    }
+
+    /**
+     * @return the number of bytes the snapshot holds on to
+     */
+    public long size() {
+        return this.json.length + (this.gzip == null ? 0 : this.gzip.length);
+    }
+
+    @Override
+    public String toString() {
+        return "EncodedSnapshot{" +
+                "serviceId=" + serviceId +
+                ", revision=" + revision +
+                ", json=" + json.length + " bytes" +
+                ", gzip=" + (gzip == null ? "none" : gzip.length + " bytes") +
+                '}';
+    }
+}
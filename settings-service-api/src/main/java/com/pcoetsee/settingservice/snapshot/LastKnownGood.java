@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.snapshot;
+
+import com.pcoetsee.settingservice.dto.SettingDTO;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The settings of one service as they were last read from the database, kept by {@link LastKnownGoodStore} to be
+ * served while the database can not be reached.
+ * <p>
+ * A copy is complete when it was taken from a read of all settings of the service. Copies built up from reads of
+ * single settings only answer for those settings.
+ */
+public class LastKnownGood {
+
+    private final Long serviceId;
+    private final ConcurrentMap<String, SettingDTO> settings;
+    private final boolean complete;
+    private volatile EncodedSnapshot snapshot;
+    private volatile long capturedAtMillis;
+
+    LastKnownGood(Long serviceId, ConcurrentMap<String, SettingDTO> settings, boolean complete, EncodedSnapshot snapshot, long capturedAtMillis) {
+        this.serviceId = serviceId;
+        this.settings = settings;
+        this.complete = complete;
+        this.snapshot = snapshot;
+        this.capturedAtMillis = capturedAtMillis;
+    }
+
+    static LastKnownGood partial(Long serviceId, long capturedAtMillis) {
+        return new LastKnownGood(serviceId, new ConcurrentHashMap<>(), false, null, capturedAtMillis);
+    }
+
+    public Long getServiceId() {
+        return serviceId;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public EncodedSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    void setSnapshot(EncodedSnapshot snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * @return when the settings were last read from the database, in milliseconds since the epoch
+     */
+    public long getCapturedAtMillis() {
+        return capturedAtMillis;
+    }
+
+    void setCapturedAtMillis(long capturedAtMillis) {
+        this.capturedAtMillis = capturedAtMillis;
+    }
+
+    ConcurrentMap<String, SettingDTO> getSettings() {
+        return settings;
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.snapshot;
+
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.limiter.CircuitBreakerProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps the settings of each service as they were last read from the database, by service name, so reads can still be
+ * answered while the circuit breaker in front of the database is open, or a read fails because the database can not be
+ * reached.
+ * <p>
+ * A response served from here is marked with the {@value #STALE_HEADER} header and an Age header holding the number of
+ * seconds since the settings were read. The number of settings held is bounded, approximately, by
+ * {@link CircuitBreakerProperties#getLastKnownGoodMaxSettings()}; the services read longest ago are dropped first.
+ */
+@Component
+public class LastKnownGoodStore {
+
+    /**
+     * The header marking a response served from a last-known-good copy.
+     */
+    public static final String STALE_HEADER = "X-Settings-Stale";
+
+    private final int maxSettings;
+    private final ConcurrentMap<String, LastKnownGood> services = new ConcurrentHashMap<>();
+    private final AtomicInteger settingCount = new AtomicInteger();
+    private final Counter servedCounter;
+    private final Counter missedCounter;
+
+    public LastKnownGoodStore(@Autowired CircuitBreakerProperties circuitBreakerProperties, @Autowired MeterRegistry meterRegistry) {
+        this.maxSettings = circuitBreakerProperties.getLastKnownGoodMaxSettings();
+
+        Gauge.builder("settings.last-known-good.settings", this.settingCount, AtomicInteger::get)
+                .description("The number of settings held as last-known-good copies")
+                .register(meterRegistry);
+        this.servedCounter = Counter.builder("settings.last-known-good.requests").tag("result", "served").register(meterRegistry);
+        this.missedCounter = Counter.builder("settings.last-known-good.requests").tag("result", "missed").register(meterRegistry);
+    }
+
+    /**
+     * Replaces the copy of a service with all of its settings.
+     *
+     * @param serviceName the name of the service, not null
+     * @param serviceId   the ID of the service, not null
+     * @param settings    all settings of the service, not null
+     * @param snapshot    the settings encoded, null when they were not encoded
+     */
+    public void capture(String serviceName, Long serviceId, List<SettingDTO> settings, EncodedSnapshot snapshot) {
+        if (settings.size() > this.maxSettings) {
+            return;
+        }
+
+        ConcurrentMap<String, SettingDTO> byName = new ConcurrentHashMap<>(settings.size() * 4 / 3 + 1);
+
+        for (SettingDTO settingDTO : settings) {
+            byName.put(settingDTO.getName(), settingDTO);
+        }
+
+        LastKnownGood previous = this.services.put(serviceName, new LastKnownGood(serviceId, byName, true, snapshot, System.currentTimeMillis()));
+
+        if (this.settingCount.addAndGet(byName.size() - (previous == null ? 0 : previous.getSettings().size())) > this.maxSettings) {
+            this.evict(serviceName);
+        }
+    }
+
+    /**
+     * Records the encoded settings of a service that were served from the snapshot cache, so the copy keeps the
+     * latest snapshot without reading the settings again.
+     */
+    public void captureSnapshot(String serviceName, Long serviceId, EncodedSnapshot snapshot) {
+        LastKnownGood lastKnownGood = this.services.get(serviceName);
+
+        if (lastKnownGood == null) {
+            lastKnownGood = this.services.computeIfAbsent(serviceName, name -> LastKnownGood.partial(serviceId, System.currentTimeMillis()));
+        }
+
+        lastKnownGood.setSnapshot(snapshot);
+        lastKnownGood.setCapturedAtMillis(System.currentTimeMillis());
+    }
+
+    /**
+     * Records a single setting read from the database.
+     */
+    public void captureSetting(String serviceName, Long serviceId, SettingDTO settingDTO) {
+        LastKnownGood lastKnownGood = this.services.get(serviceName);
+
+        if (lastKnownGood == null) {
+            if (this.settingCount.get() >= this.maxSettings) {
+                return;
+            }
+
+            lastKnownGood = this.services.computeIfAbsent(serviceName, name -> LastKnownGood.partial(serviceId, System.currentTimeMillis()));
+        }
+
+        if (lastKnownGood.getSettings().put(settingDTO.getName(), settingDTO) == null) {
+            this.settingCount.incrementAndGet();
+        }
+
+        lastKnownGood.setCapturedAtMillis(System.currentTimeMillis());
+    }
+
+    /**
+     * Drops a setting the database says does not exist.
+     */
+    public void forgetSetting(String serviceName, String name) {
+        LastKnownGood lastKnownGood = this.services.get(serviceName);
+
+        if (lastKnownGood != null && lastKnownGood.getSettings().remove(name) != null) {
+            this.settingCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return the last-known-good copy of a setting, marking the response as stale, or null when there is none
+     */
+    public SettingDTO serveSetting(String serviceName, String name) {
+        LastKnownGood lastKnownGood = this.services.get(serviceName);
+        SettingDTO settingDTO = lastKnownGood == null ? null : lastKnownGood.getSettings().get(name);
+
+        return settingDTO == null ? this.miss() : this.served(lastKnownGood, settingDTO);
+    }
+
+    /**
+     * @return the last-known-good copy of all settings of a service ordered by name, marking the response as stale, or
+     * null when no complete copy is held
+     */
+    public List<SettingDTO> serveSettings(String serviceName) {
+        LastKnownGood lastKnownGood = this.services.get(serviceName);
+
+        if (lastKnownGood == null || !lastKnownGood.isComplete()) {
+            return this.miss();
+        }
+
+        List<SettingDTO> settings = new ArrayList<>(lastKnownGood.getSettings().values());
+
+        settings.sort(Comparator.comparing(SettingDTO::getName));
+
+        return this.served(lastKnownGood, settings);
+    }
+
+    /**
+     * @return the last-known-good encoded settings of a service, marking the response as stale, or null when none are
+     * held
+     */
+    public EncodedSnapshot serveSnapshot(String serviceName) {
+        LastKnownGood lastKnownGood = this.services.get(serviceName);
+        EncodedSnapshot snapshot = lastKnownGood == null ? null : lastKnownGood.getSnapshot();
+
+        return snapshot == null ? this.miss() : this.served(lastKnownGood, snapshot);
+    }
+
+    public int getSettingCount() {
+        return this.settingCount.get();
+    }
+
+    /**
+     * Drops the copies read longest ago until the settings held fit the bound again, keeping the one just captured.
+     */
+    private synchronized void evict(String keep) {
+        while (this.settingCount.get() > this.maxSettings) {
+            Map.Entry<String, LastKnownGood> eldest = null;
+
+            for (Map.Entry<String, LastKnownGood> entry : this.services.entrySet()) {
+                if (!entry.getKey().equals(keep) && (eldest == null || entry.getValue().getCapturedAtMillis() < eldest.getValue().getCapturedAtMillis())) {
+                    eldest = entry;
+                }
+            }
+
+            if (eldest == null) {
+                return;
+            }
+
+            if (this.services.remove(eldest.getKey(), eldest.getValue())) {
+                this.settingCount.addAndGet(-eldest.getValue().getSettings().size());
+            }
+        }
+    }
+
+    private <T> T miss() {
+        this.missedCounter.increment();
+
+        return null;
+    }
+
+    private <T> T served(LastKnownGood lastKnownGood, T value) {
+        this.servedCounter.increment();
+
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        HttpServletResponse response = requestAttributes instanceof ServletRequestAttributes
+                ? ((ServletRequestAttributes) requestAttributes).getResponse()
+                : null;
+
+        if (response != null) {
+            long ageSeconds = TimeUnit.MILLISECONDS.toSeconds(Math.max(0, System.currentTimeMillis() - lastKnownGood.getCapturedAtMillis()));
+
+            response.setHeader(STALE_HEADER, "true");
+            response.setHeader(HttpHeaders.AGE, Long.toString(ageSeconds));
+        }
+
+        return value;
+    }
+}
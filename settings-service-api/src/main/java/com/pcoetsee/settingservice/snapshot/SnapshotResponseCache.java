@@ -0,0 +1,207 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.snapshot;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A bounded, least recently used cache of the encoded settings of each service, keyed by the revision of the settings.
+ * <p>
+ * Every write to the settings of a service increments its revision, so a snapshot is only served while the revision it
+ * was encoded at is still current, and an unchanged service is answered with the same bytes every time, without
+ * serializing or compressing anything. Snapshots of older revisions are dropped as soon as a {@link
+ * SettingsChangedEvent} announces a newer one.
+ */
+@Component
+public class SnapshotResponseCache {
+
+    private final ObjectMapper objectMapper;
+    private final long maxBytes;
+    private final int minGzipBytes;
+    private final Map<Long, EncodedSnapshot> snapshots = new LinkedHashMap<>(16, 0.75f, true);
+    private final Counter hits;
+    private final Counter misses;
+    private long bytes;
+
+    /**
+     * @param objectMapper  the mapper used to encode the settings, the same one used for every other response, not
+     *                      null
+     * @param maxBytes      the number of bytes the cached snapshots may hold together, 0 disables the cache
+     * @param minGzipBytes  the smallest JSON body that gets a gzip-compressed copy, smaller ones are always sent as is
+     * @param meterRegistry the registry the cache metrics are registered with, not null
+     */
+    public SnapshotResponseCache(
+            @Autowired ObjectMapper objectMapper,
+            @Value("${settings.snapshot-cache.max-bytes:67108864}") long maxBytes,
+            @Value("${settings.snapshot-cache.min-gzip-bytes:1024}") int minGzipBytes,
+            @Autowired MeterRegistry meterRegistry
+    ) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Snapshot cache size cannot be negative");
+        }
+
+        this.objectMapper = objectMapper;
+        this.maxBytes = maxBytes;
+        this.minGzipBytes = minGzipBytes;
+
+        Gauge.builder("settings.snapshot-cache.size", this, SnapshotResponseCache::getBytes)
+                .description("The number of bytes held by encoded settings snapshots")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.hits = Counter.builder("settings.snapshot-cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("settings.snapshot-cache.requests").tag("result", "miss").register(meterRegistry);
+    }
+
+    /**
+     * Fetches the snapshot of a service, if it was encoded at the supplied revision.
+     *
+     * @param serviceId the ID of the service, null returns null
+     * @param revision  the current revision of the settings of the service
+     * @return the cached snapshot, or null when there is none for the revision
+     */
+    public synchronized EncodedSnapshot get(Long serviceId, long revision) {
+        EncodedSnapshot snapshot = serviceId == null ? null : this.snapshots.get(serviceId);
+
+        if (snapshot != null && snapshot.getRevision() != revision) {
+            if (snapshot.getRevision() < revision) {
+                this.remove(serviceId);
+            }
+
+            snapshot = null;
+        }
+
+        (snapshot == null ? this.misses : this.hits).increment();
+
+        return snapshot;
+    }
+
+    /**
+     * Encodes the settings of a service, and a gzip-compressed copy when the JSON is large enough. The snapshot is not
+     * cached, see {@link #put(EncodedSnapshot)}.
+     *
+     * @param serviceId the ID of the service, not null
+     * @param revision  the revision the settings were read at
+     * @param settings  the settings of the service, in the order they are to be served, not null
+     * @return the encoded settings, not null
+     */
+    public EncodedSnapshot encode(Long serviceId, long revision, List<SettingDTO> settings) {
+        byte[] json;
+
+        try {
+            json = this.objectMapper.writeValueAsBytes(settings);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not encode the settings of service " + serviceId, e);
+        }
+
+        return new EncodedSnapshot(serviceId, revision, json, json.length < this.minGzipBytes ? null : SnapshotResponseCache.gzip(json));
+    }
+
+    /**
+     * Caches a snapshot, unless a snapshot of a later revision of the same service is already cached or the snapshot is
+     * larger than the whole cache. The least recently used snapshots are dropped to make room.
+     *
+     * @param snapshot the snapshot to cache, not null
+     * @return the supplied snapshot, not null
+     */
+    public synchronized EncodedSnapshot put(EncodedSnapshot snapshot) {
+        EncodedSnapshot existing = this.snapshots.get(snapshot.getServiceId());
+
+        if (snapshot.size() > this.maxBytes || (existing != null && existing.getRevision() > snapshot.getRevision())) {
+            return snapshot;
+        }
+
+        this.remove(snapshot.getServiceId());
+
+        Iterator<EncodedSnapshot> eldest = this.snapshots.values().iterator();
+
+        while (this.bytes + snapshot.size() > this.maxBytes && eldest.hasNext()) {
+            this.bytes -= eldest.next().size();
+            eldest.remove();
+        }
+
+        this.snapshots.put(snapshot.getServiceId(), snapshot);
+        this.bytes += snapshot.size();
+
+        return snapshot;
+    }
+
+    /**
+     * Drops the snapshot of a service whose settings have moved past the revision it was encoded at.
+     */
+    @EventListener
+    public synchronized void onSettingsChanged(SettingsChangedEvent event) {
+        EncodedSnapshot snapshot = this.snapshots.get(event.getServiceId());
+
+        if (snapshot != null && snapshot.getRevision() < event.getRevision()) {
+            this.remove(event.getServiceId());
+        }
+    }
+
+    public synchronized int size() {
+        return this.snapshots.size();
+    }
+
+    public synchronized long getBytes() {
+        return this.bytes;
+    }
+
+    private void remove(Long serviceId) {
+        EncodedSnapshot removed = this.snapshots.remove(serviceId);
+
+        if (removed != null) {
+            this.bytes -= removed.size();
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(json);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not compress a settings snapshot", e);
+        }
+
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.source;
+
+import com.pcoetsee.settingservice.client.SettingsSource;
+import com.pcoetsee.settingservice.client.SettingsSourceException;
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetResultDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.exception.NoResultsException;
+import com.pcoetsee.settingservice.service.ServicesService;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link SettingsSource} for applications running in the same process as the Settings Service, which calls the
+ * service layer directly instead of going through HTTP and JSON.
+ * <p>
+ * Calls are made as the configured service, so the same access checks apply as when the application calls the Settings
+ * Service over HTTP. Failures are reported with the HTTP status the Settings Service would have answered with.
+ */
+public class EmbeddedSettingsSource implements SettingsSource {
+
+    private final SettingsService settingsService;
+    private final Authentication authentication;
+
+    /**
+     * @param settingsService the service layer for settings, not null
+     * @param servicesService used to look up the roles of the service calls are made as, not null
+     * @param serviceName     the name of the service calls are made as, must exist
+     */
+    public EmbeddedSettingsSource(SettingsService settingsService, ServicesService servicesService, String serviceName) {
+        UserDetails userDetails = servicesService.loadUserByUsername(serviceName);
+
+        this.settingsService = settingsService;
+        this.authentication = new UsernamePasswordAuthenticationToken(userDetails.getUsername(), null, userDetails.getAuthorities());
+    }
+
+    @Override
+    public SettingDTO getSetting(String serviceName, String name) throws SettingsSourceException {
+        return this.call(() -> {
+            try {
+                return this.settingsService.getSetting(serviceName, name);
+            } catch (NoResultsException e) {
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public List<SettingDTO> getAllSettings(String serviceName) throws SettingsSourceException {
+        return this.call(() -> {
+            try {
+                Page<SettingDTO> settings = this.settingsService.getAllSettings(serviceName, Pageable.unpaged());
+
+                return new ArrayList<>(settings.getContent());
+            } catch (NoResultsException e) {
+                return new ArrayList<>();
+            }
+        });
+    }
+
+    @Override
+    public SettingDTO saveSetting(String serviceName, SettingDTO settingDTO) throws SettingsSourceException {
+        return this.call(() -> this.settingsService.saveSetting(serviceName, settingDTO));
+    }
+
+    @Override
+    public SettingChangeSetResultDTO applyChangeSet(String serviceName, SettingChangeSetDTO settingChangeSetDTO) throws SettingsSourceException {
+        return this.call(() -> this.settingsService.applyChangeSet(serviceName, settingChangeSetDTO));
+    }
+
+    /**
+     * Runs the supplied call authenticated as the configured service, restoring whatever the thread was authenticated
+     * as before.
+     */
+    private <T> T call(ServiceCall<T> call) throws SettingsSourceException {
+        SecurityContext previous = SecurityContextHolder.getContext();
+        SecurityContext context = SecurityContextHolder.createEmptyContext();
+
+        context.setAuthentication(this.authentication);
+        SecurityContextHolder.setContext(context);
+
+        try {
+            return call.call();
+        } catch (IllegalArgumentException e) {
+            throw new SettingsSourceException(HttpStatus.BAD_REQUEST.value(), e.getMessage(), e);
+        } catch (Exception e) {
+            ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+            HttpStatus status = responseStatus == null ? HttpStatus.INTERNAL_SERVER_ERROR : responseStatus.code();
+
+            throw new SettingsSourceException(status.value(), e.getMessage(), e);
+        } finally {
+            SecurityContextHolder.setContext(previous);
+        }
+    }
+
+    /**
+     * A call to the service layer, which declares its failures as checked exceptions.
+     */
+    @FunctionalInterface
+    private interface ServiceCall<T> {
+        T call() throws Exception;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.source;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.client.RemoteSettingsSource;
+import com.pcoetsee.settingservice.client.SettingsSource;
+import com.pcoetsee.settingservice.client.transport.HttpTransport;
+import com.pcoetsee.settingservice.client.transport.PooledHttpTransport;
+import com.pcoetsee.settingservice.client.transport.PooledHttpTransportOptions;
+import com.pcoetsee.settingservice.client.transport.UrlConnectionTransport;
+import com.pcoetsee.settingservice.service.ServicesService;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Offers a {@link SettingsSource} to applications that include the Settings Service, chosen with the
+ * `settings.source.mode` property.
+ * <p>
+ * With `embedded`, settings are read through the service layer of this process. With `remote`, they are read from the
+ * Settings Service at `settings.source.remote.url`. Without the property no source is created, which is the right
+ * choice for the Settings Service itself.
+ * <p>
+ * The remote URL may list several nodes separated by commas, in which case requests are spread over them by a
+ * {@link PooledHttpTransport}.
+ */
+@Configuration
+public class SettingsSourceConfiguration {
+
+    /**
+     * Created lazily, since the service it runs as can only be looked up once the database is available.
+     */
+    @Bean
+    @Lazy
+    @ConditionalOnProperty(name = "settings.source.mode", havingValue = "embedded")
+    public SettingsSource embeddedSettingsSource(
+            @Autowired SettingsService settingsService,
+            @Autowired ServicesService servicesService,
+            @Value("${settings.source.service-name}") String serviceName
+    ) {
+        return new EmbeddedSettingsSource(settingsService, servicesService, serviceName);
+    }
+
+    /**
+     * A single node is reached with the JDK client unless `settings.source.remote.pooled` is set, several nodes always
+     * use the pooled client.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "settings.source.mode", havingValue = "remote")
+    public HttpTransport settingsSourceTransport(
+            @Value("${settings.source.remote.url}") String url,
+            @Value("${settings.source.remote.pooled:false}") boolean pooled,
+            @Value("${settings.source.remote.connect-timeout-ms:2000}") int connectTimeoutMillis,
+            @Value("${settings.source.remote.read-timeout-ms:5000}") int readTimeoutMillis,
+            @Value("${settings.source.remote.max-connections-per-node:20}") int maxConnectionsPerNode,
+            @Value("${settings.source.remote.hedging-enabled:true}") boolean hedgingEnabled,
+            @Value("${settings.source.remote.failure-backoff-ms:5000}") long failureBackoffMillis
+    ) {
+        List<String> urls = new ArrayList<>();
+
+        for (String node : StringUtils.split(url, ',')) {
+            if (StringUtils.isNotBlank(node)) {
+                urls.add(node.trim());
+            }
+        }
+
+        if (urls.isEmpty()) {
+            throw new IllegalStateException("settings.source.remote.url does not contain a URL");
+        }
+
+        if (urls.size() == 1 && !pooled) {
+            return new UrlConnectionTransport(urls.get(0), connectTimeoutMillis, readTimeoutMillis);
+        }
+
+        PooledHttpTransportOptions options = new PooledHttpTransportOptions();
+        options.setConnectTimeoutMillis(connectTimeoutMillis);
+        options.setResponseTimeoutMillis(readTimeoutMillis);
+        options.setMaxConnectionsPerNode(maxConnectionsPerNode);
+        options.setMaxConnectionsTotal(maxConnectionsPerNode * urls.size());
+        options.setHedgingEnabled(hedgingEnabled);
+        options.setFailureBackoffMillis(failureBackoffMillis);
+
+        return new PooledHttpTransport(urls, options);
+    }
+
+    /**
+     * Authenticates with an API key if one is configured, otherwise with the name and password of the service.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "settings.source.mode", havingValue = "remote")
+    public SettingsSource remoteSettingsSource(
+            @Autowired ObjectMapper objectMapper,
+            @Autowired HttpTransport settingsSourceTransport,
+            @Value("${settings.source.service-name:}") String serviceName,
+            @Value("${settings.source.remote.password:}") String password,
+            @Value("${settings.source.remote.api-key-id:}") String apiKeyId,
+            @Value("${settings.source.remote.api-key-secret:}") String apiKeySecret
+    ) {
+        String authorization = StringUtils.isNotBlank(apiKeyId)
+                ? RemoteSettingsSource.apiKeyAuthorization(apiKeyId, apiKeySecret)
+                : RemoteSettingsSource.basicAuthorization(serviceName, password);
+
+        return new RemoteSettingsSource(settingsSourceTransport, authorization, objectMapper);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.template;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Parses and renders setting values that reference other settings of the same service, such as
+ * `jdbc:mysql://${db.host}:${db.port}/app`.
+ * <p>
+ * A reference is `${` followed by the name of a setting and `}`. Writing `$${` instead produces a literal `${` that is not
+ * a reference.
+ */
+public final class SettingTemplate {
+
+    private static final String OPEN = "${";
+    private static final char CLOSE = '}';
+    private static final char ESCAPE = '$';
+
+    private SettingTemplate() {
+    }
+
+    /**
+     * A quick check that lets values without references skip parsing and resolving altogether.
+     *
+     * @return true if the value may reference other settings
+     */
+    public static boolean hasReferences(String value) {
+        return value != null && value.contains(OPEN);
+    }
+
+    /**
+     * @param value the value to parse, null returns an empty set
+     * @return the names of the settings referenced by the value, in the order they first appear, not null
+     */
+    public static Set<String> references(String value) {
+        if (!SettingTemplate.hasReferences(value)) {
+            return Collections.emptySet();
+        }
+
+        Set<String> references = new LinkedHashSet<>();
+        int from = 0;
+        int start;
+
+        while ((start = value.indexOf(OPEN, from)) >= 0) {
+            if (start > 0 && value.charAt(start - 1) == ESCAPE) {
+                from = start + OPEN.length();
+                continue;
+            }
+
+            int end = value.indexOf(CLOSE, start + OPEN.length());
+
+            if (end < 0) {
+                break;
+            }
+
+            if (end > start + OPEN.length()) {
+                references.add(value.substring(start + OPEN.length(), end));
+            }
+
+            from = end + 1;
+        }
+
+        return references;
+    }
+
+    /**
+     * Replaces every reference in the value with the value the lookup returns for it. References the lookup returns
+     * null for are left as they are.
+     *
+     * @param value  the value to render, null returns null
+     * @param lookup returns the value to put in place of the referenced setting, or null to keep the reference, not null
+     * @return the rendered value
+     */
+    public static String render(String value, Function<String, String> lookup) {
+        if (!SettingTemplate.hasReferences(value)) {
+            return value;
+        }
+
+        StringBuilder rendered = new StringBuilder(value.length() + 32);
+        int from = 0;
+        int start;
+
+        while ((start = value.indexOf(OPEN, from)) >= 0) {
+            if (start > 0 && value.charAt(start - 1) == ESCAPE) {
+                rendered.append(value, from, start - 1).append(OPEN);
+                from = start + OPEN.length();
+                continue;
+            }
+
+            int end = value.indexOf(CLOSE, start + OPEN.length());
+
+            if (end < 0) {
+                break;
+            }
+
+            String replacement = end > start + OPEN.length() ? lookup.apply(value.substring(start + OPEN.length(), end)) : null;
+
+            rendered.append(value, from, start).append(replacement != null ? replacement : value.substring(start, end + 1));
+            from = end + 1;
+        }
+
+        return rendered.append(value, from, value.length()).toString();
+    }
+}
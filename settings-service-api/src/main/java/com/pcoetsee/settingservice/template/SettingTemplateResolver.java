@@ -0,0 +1,404 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.template;
+
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Priority;
+import com.pcoetsee.settingservice.revision.ServiceRevisionStore;
+import com.pcoetsee.settingservice.sharding.ShardContext;
+import com.pcoetsee.settingservice.sharding.ShardDirectory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Resolves the `${name}` references in setting values, see {@link SettingTemplate}.
+ * <p>
+ * A {@link TemplateGraph} of the settings of a service is built the first time a value referencing other settings is
+ * read, and kept for the services read most recently. Every {@link SettingsChangedEvent} re-reads only the settings it
+ * names, and drops the resolved values of those settings and of the settings depending on them; everything else stays
+ * resolved. Graphs built from settings older than a change already announced are used once and not kept.
+ * <p>
+ * Writes are checked for cycles inside their transaction, following references through the database from the changed
+ * settings only, so two concurrent writes can not close a cycle between them.
+ */
+@Component
+public class SettingTemplateResolver {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SettingTemplateResolver.class);
+
+    private static final String SELECT_SETTINGS_SQL = "SELECT `name`, `value`, `secret` FROM `settings` WHERE `service_id` = ?";
+
+    private static final String SELECT_NAMED_SQL =
+            "SELECT `name`, `value`, `secret` FROM `settings` WHERE `service_id` = :serviceId AND `name` IN (:names)";
+
+    /**
+     * The number of locks changes are spread over. Changes to the settings of one service are applied one at a time.
+     */
+    private static final int LOCK_STRIPES = 64;
+
+    /**
+     * The most names looked up in one query while checking for cycles.
+     */
+    private static final int MAX_NAMES_PER_QUERY = 1000;
+
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final Map<Long, Long> revisions = new ConcurrentHashMap<>();
+    private final Map<Long, TemplateGraph> graphs;
+
+    private final ShardDirectory shardDirectory;
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+    private final ServiceRevisionStore serviceRevisionStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+    private final boolean enabled;
+    private final Counter invalidated;
+
+    public SettingTemplateResolver(
+            @Autowired ShardDirectory shardDirectory,
+            @Autowired AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter,
+            @Autowired ServiceRevisionStore serviceRevisionStore,
+            @Autowired JdbcTemplate jdbcTemplate,
+            @Autowired MeterRegistry meterRegistry,
+            @Value("${settings.templates.enabled:true}") boolean enabled,
+            @Value("${settings.templates.max-services:1000}") int maxServices
+    ) {
+        this.shardDirectory = shardDirectory;
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.serviceRevisionStore = serviceRevisionStore;
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.enabled = enabled;
+        this.graphs = Collections.synchronizedMap(new LinkedHashMap<Long, TemplateGraph>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TemplateGraph> eldest) {
+                return this.size() > maxServices;
+            }
+        });
+
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            this.locks[i] = new Object();
+        }
+
+        Gauge.builder("settings.templates.services", this.graphs, Map::size)
+                .description("The number of services whose setting references are held resolved")
+                .register(meterRegistry);
+        this.invalidated = Counter.builder("settings.templates.invalidated")
+                .description("The number of resolved values dropped because a setting they depend on changed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return the values of the settings that are not secret, by name, as a {@link TemplateGraph} is built from
+     */
+    public static Map<String, String> plainValues(Collection<SettingDTO> settingDTOs) {
+        Map<String, String> values = new HashMap<>();
+
+        for (SettingDTO settingDTO : settingDTOs) {
+            if (!settingDTO.isSecret()) {
+                values.put(settingDTO.getName(), settingDTO.getValue());
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Sets the resolved value of every supplied setting referencing other settings, reading the settings of the service
+     * from the database when they are not held yet.
+     *
+     * @param serviceId   the ID of the service the settings belong to, not null
+     * @param settingDTOs the settings to resolve, not null
+     * @throws LimitExceededException when the settings of the service have to be read and the database is too busy
+     */
+    public void resolve(Long serviceId, Collection<SettingDTO> settingDTOs) throws LimitExceededException {
+        if (!this.enabled || !SettingTemplateResolver.hasReferences(settingDTOs)) {
+            return;
+        }
+
+        TemplateGraph graph = this.graphs.get(serviceId);
+
+        if (graph == null) {
+            String shard = this.shardDirectory.resolve(serviceId);
+
+            graph = this.keep(serviceId, this.adaptiveConcurrencyLimiter.execute(
+                    Priority.BULK_READ,
+                    () -> ShardContext.callOn(shard, () -> {
+                        // The revision is read first, so the graph is never marked newer than the settings it holds.
+                        long revision = this.serviceRevisionStore.getRevision(serviceId);
+                        Map<String, String> values = new HashMap<>();
+
+                        this.jdbcTemplate.query(SELECT_SETTINGS_SQL, resultSet -> {
+                            if (!resultSet.getBoolean(3)) {
+                                values.put(resultSet.getString(1), resultSet.getString(2));
+                            }
+                        }, serviceId);
+
+                        return new TemplateGraph(revision, values);
+                    })
+            ));
+        }
+
+        this.apply(graph, settingDTOs);
+    }
+
+    /**
+     * Sets the resolved value of every supplied setting referencing other settings, for callers that hold every setting
+     * of the service at a known revision, such as followers and snapshots. The graph held is only used when it is at
+     * that revision, otherwise it is rebuilt from the supplied values.
+     *
+     * @param serviceId   the ID of the service the settings belong to, not null
+     * @param revision    the revision of the settings of the service
+     * @param values      supplies the values of all settings of the service that are not secret, by name, not null
+     * @param settingDTOs the settings to resolve, not null
+     */
+    public void resolve(Long serviceId, long revision, Supplier<Map<String, String>> values, Collection<SettingDTO> settingDTOs) {
+        if (!this.enabled || !SettingTemplateResolver.hasReferences(settingDTOs)) {
+            return;
+        }
+
+        TemplateGraph graph = this.graphs.get(serviceId);
+
+        if (graph == null || graph.getRevision() != revision) {
+            graph = this.keep(serviceId, new TemplateGraph(revision, values.get()));
+        }
+
+        this.apply(graph, settingDTOs);
+    }
+
+    /**
+     * Checks that the supplied changes do not make settings reference each other in a cycle. Must be called inside the
+     * transaction writing the changes, on the shard holding the settings, after the revision of the service has been
+     * incremented, so no other write to the settings of the service can change them during the check.
+     *
+     * @param serviceId the ID of the service the settings belong to, not null
+     * @param changes   the new values of the changed settings by name, null for settings being deleted or made secret,
+     *                  not null
+     * @throws IllegalArgumentException when the changes would make a setting reference itself
+     */
+    public void checkCycles(Long serviceId, Map<String, String> changes) throws IllegalArgumentException {
+        if (!this.enabled) {
+            return;
+        }
+
+        Map<String, Set<String>> references = new HashMap<>();
+        List<String> starts = new ArrayList<>();
+
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            Set<String> referenced = SettingTemplate.references(change.getValue());
+
+            references.put(change.getKey(), referenced);
+
+            if (!referenced.isEmpty()) {
+                starts.add(change.getKey());
+            }
+        }
+
+        // Settings that reference nothing can not be part of a new cycle.
+        if (starts.isEmpty()) {
+            return;
+        }
+
+        Set<String> unknown = SettingTemplateResolver.unknown(references, references.keySet());
+
+        while (!unknown.isEmpty()) {
+            Map<String, Set<String>> found = this.readReferences(serviceId, unknown);
+
+            for (String name : unknown) {
+                references.put(name, found.getOrDefault(name, Collections.emptySet()));
+            }
+
+            unknown = SettingTemplateResolver.unknown(references, found.keySet());
+        }
+
+        List<String> cycle = TemplateGraph.findCycle(references, starts);
+
+        if (cycle != null) {
+            throw new IllegalArgumentException("Setting " + cycle.get(0) + " would reference itself: " + String.join(" -> ", cycle) + ".");
+        }
+    }
+
+    /**
+     * Re-reads the settings named in the event, and drops the resolved values depending on them.
+     */
+    @EventListener
+    public void onSettingsChanged(SettingsChangedEvent event) {
+        if (!this.enabled) {
+            return;
+        }
+
+        this.revisions.merge(event.getServiceId(), event.getRevision(), Math::max);
+
+        if (this.graphs.get(event.getServiceId()) == null) {
+            return;
+        }
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("serviceId", event.getServiceId())
+                .addValue("names", event.getSettingNames());
+
+        synchronized (this.locks[Math.floorMod(event.getServiceId().hashCode(), LOCK_STRIPES)]) {
+            TemplateGraph graph = this.graphs.get(event.getServiceId());
+            Map<String, String> found = new HashMap<>();
+
+            if (graph == null) {
+                return;
+            }
+
+            try {
+                String shard = this.shardDirectory.resolve(event.getServiceId());
+
+                this.adaptiveConcurrencyLimiter.run(Priority.READ, () -> ShardContext.runOn(
+                        shard,
+                        () -> this.namedParameterJdbcTemplate.query(SELECT_NAMED_SQL, parameters, resultSet -> {
+                            if (!resultSet.getBoolean(3)) {
+                                found.put(resultSet.getString(1), resultSet.getString(2));
+                            }
+                        })
+                ));
+            } catch (RuntimeException e) {
+                LOGGER.warn("[SSAPI]: Could not refresh the setting references of service [{}], they are read again on next use.", event.getServiceName(), e);
+                this.graphs.remove(event.getServiceId());
+                return;
+            }
+
+            int dropped = 0;
+
+            synchronized (graph) {
+                for (String name : event.getSettingNames()) {
+                    dropped += found.containsKey(name) ? graph.put(name, found.get(name)) : graph.remove(name);
+                }
+
+                graph.advanceTo(event.getRevision());
+            }
+
+            this.invalidated.increment(dropped);
+        }
+    }
+
+    /**
+     * Keeps a graph unless a change newer than the settings it was built from has already been announced, or the graph
+     * held is at least as new.
+     *
+     * @return the supplied graph, not null
+     */
+    private TemplateGraph keep(Long serviceId, TemplateGraph graph) {
+        synchronized (this.graphs) {
+            TemplateGraph current = this.graphs.get(serviceId);
+
+            if ((current == null || current.getRevision() < graph.getRevision()) && graph.getRevision() >= this.revisions.getOrDefault(serviceId, 0L)) {
+                this.graphs.put(serviceId, graph);
+            }
+        }
+
+        return graph;
+    }
+
+    private void apply(TemplateGraph graph, Collection<SettingDTO> settingDTOs) {
+        synchronized (graph) {
+            for (SettingDTO settingDTO : settingDTOs) {
+                if (settingDTO.isSecret() || !SettingTemplate.hasReferences(settingDTO.getValue())) {
+                    continue;
+                }
+
+                // The setting may have been read before or after the graph saw its latest change.
+                settingDTO.setResolvedValue(settingDTO.getValue().equals(graph.getValue(settingDTO.getName()))
+                        ? graph.resolve(settingDTO.getName())
+                        : SettingTemplate.render(settingDTO.getValue(), graph::resolve));
+            }
+        }
+    }
+
+    /**
+     * Reads the names referenced by the supplied settings, on the connection of the calling transaction. Secret
+     * settings reference nothing.
+     */
+    private Map<String, Set<String>> readReferences(Long serviceId, Set<String> names) {
+        Map<String, Set<String>> found = new HashMap<>();
+        List<String> remaining = new ArrayList<>(names);
+
+        for (int from = 0; from < remaining.size(); from += MAX_NAMES_PER_QUERY) {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("serviceId", serviceId)
+                    .addValue("names", remaining.subList(from, Math.min(remaining.size(), from + MAX_NAMES_PER_QUERY)));
+
+            this.namedParameterJdbcTemplate.query(SELECT_NAMED_SQL, parameters, resultSet -> {
+                found.put(resultSet.getString(1), resultSet.getBoolean(3) ? Collections.emptySet() : SettingTemplate.references(resultSet.getString(2)));
+            });
+        }
+
+        return found;
+    }
+
+    /**
+     * @return the names referenced by the supplied settings whose references have not been looked up yet
+     */
+    private static Set<String> unknown(Map<String, Set<String>> references, Collection<String> names) {
+        Set<String> unknown = new HashSet<>();
+
+        for (String name : names) {
+            for (String reference : references.get(name)) {
+                if (!references.containsKey(reference)) {
+                    unknown.add(reference);
+                }
+            }
+        }
+
+        return unknown;
+    }
+
+    private static boolean hasReferences(Collection<SettingDTO> settingDTOs) {
+        for (SettingDTO settingDTO : settingDTOs) {
+            if (!settingDTO.isSecret() && SettingTemplate.hasReferences(settingDTO.getValue())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.template;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The settings of one service that reference each other, and the values they resolve to.
+ * <p>
+ * Every setting keeps the names it references, and every name keeps the settings referencing it, including names of
+ * settings that do not exist yet. Resolved values are cached. When a setting changes, only the cached values of the
+ * setting and of the settings depending on it, directly or through others, are dropped, and they are resolved again the
+ * next time they are read.
+ * <p>
+ * Secret settings are never part of the graph, so a secret can not end up inside a plain value. References to them, to
+ * settings that do not exist, and to settings in a cycle are left as they are.
+ * <p>
+ * Not thread safe; callers synchronize on the graph.
+ */
+class TemplateGraph {
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<String, Set<String>> dependents = new HashMap<>();
+    private volatile long revision;
+
+    /**
+     * @param revision the revision of the settings of the service the values were read at
+     * @param values   the values of the settings of the service that are not secret, by name, not null
+     */
+    TemplateGraph(long revision, Map<String, String> values) {
+        this.revision = revision;
+
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            this.put(value.getKey(), value.getValue());
+        }
+    }
+
+    long getRevision() {
+        return this.revision;
+    }
+
+    void advanceTo(long revision) {
+        this.revision = Math.max(this.revision, revision);
+    }
+
+    int size() {
+        return this.nodes.size();
+    }
+
+    /**
+     * Adds or replaces a setting.
+     *
+     * @return the number of cached values dropped
+     */
+    int put(String name, String value) {
+        this.unlink(name);
+
+        Node node = new Node(value);
+
+        this.nodes.put(name, node);
+
+        for (String reference : node.references) {
+            this.dependents.computeIfAbsent(reference, key -> new HashSet<>()).add(name);
+        }
+
+        return this.invalidate(name);
+    }
+
+    /**
+     * Removes a setting that was deleted or became secret.
+     *
+     * @return the number of cached values dropped
+     */
+    int remove(String name) {
+        this.unlink(name);
+        int invalidated = this.invalidate(name);
+
+        this.nodes.remove(name);
+
+        return invalidated;
+    }
+
+    /**
+     * @return the value of the setting with its references resolved, or null if the graph does not hold the setting
+     */
+    String resolve(String name) {
+        return this.resolve(name, new Resolution());
+    }
+
+    /**
+     * @return the value of the setting as it is stored, or null if the graph does not hold the setting
+     */
+    String getValue(String name) {
+        Node node = this.nodes.get(name);
+
+        return node == null ? null : node.value;
+    }
+
+    /**
+     * Finds a cycle among settings, starting from the supplied ones.
+     *
+     * @param references the names referenced by each setting; settings that are missing reference nothing, not null
+     * @param starts     the settings to start from, not null
+     * @return the settings on the first cycle found, starting and ending with the same one, or null if there is none
+     */
+    static List<String> findCycle(Map<String, Set<String>> references, Collection<String> starts) {
+        Set<String> done = new HashSet<>();
+
+        for (String start : starts) {
+            List<String> cycle = TemplateGraph.findCycle(references, start, new LinkedHashSet<>(), done);
+
+            if (cycle != null) {
+                return cycle;
+            }
+        }
+
+        return null;
+    }
+
+    private static List<String> findCycle(Map<String, Set<String>> references, String name, LinkedHashSet<String> path, Set<String> done) {
+        if (done.contains(name)) {
+            return null;
+        }
+
+        if (!path.add(name)) {
+            List<String> cycle = new ArrayList<>();
+            boolean onCycle = false;
+
+            for (String step : path) {
+                onCycle |= step.equals(name);
+
+                if (onCycle) {
+                    cycle.add(step);
+                }
+            }
+
+            cycle.add(name);
+
+            return cycle;
+        }
+
+        for (String reference : references.getOrDefault(name, Collections.emptySet())) {
+            List<String> cycle = TemplateGraph.findCycle(references, reference, path, done);
+
+            if (cycle != null) {
+                return cycle;
+            }
+        }
+
+        path.remove(name);
+        done.add(name);
+
+        return null;
+    }
+
+    private String resolve(String name, Resolution resolution) {
+        Node node = this.nodes.get(name);
+
+        if (node == null) {
+            return null;
+        }
+
+        if (node.references.isEmpty()) {
+            return node.value;
+        }
+
+        if (node.resolved != null) {
+            return node.resolved;
+        }
+
+        if (!resolution.resolving.add(name)) {
+            resolution.cycle = true;
+            return null;
+        }
+
+        boolean cycleBefore = resolution.cycle;
+
+        resolution.cycle = false;
+
+        String resolved = SettingTemplate.render(node.value, reference -> this.resolve(reference, resolution));
+
+        resolution.resolving.remove(name);
+
+        // A value resolved part way around a cycle depends on where resolving started, so it is not kept.
+        if (!resolution.cycle) {
+            node.resolved = resolved;
+        }
+
+        resolution.cycle |= cycleBefore;
+
+        return resolved;
+    }
+
+    /**
+     * Drops the cached value of the setting and of every setting depending on it.
+     */
+    private int invalidate(String name) {
+        Deque<String> queue = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        int invalidated = 0;
+
+        queue.add(name);
+        seen.add(name);
+
+        while (!queue.isEmpty()) {
+            String current = queue.poll();
+            Node node = this.nodes.get(current);
+
+            if (node != null && node.resolved != null) {
+                node.resolved = null;
+                invalidated++;
+            }
+
+            for (String dependent : this.dependents.getOrDefault(current, Collections.emptySet())) {
+                if (seen.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+
+        return invalidated;
+    }
+
+    private void unlink(String name) {
+        Node node = this.nodes.get(name);
+
+        if (node == null) {
+            return;
+        }
+
+        for (String reference : node.references) {
+            Set<String> referencing = this.dependents.get(reference);
+
+            if (referencing != null) {
+                referencing.remove(name);
+
+                if (referencing.isEmpty()) {
+                    this.dependents.remove(reference);
+                }
+            }
+        }
+    }
+
+    private static class Node {
+        private final String value;
+        private final Set<String> references;
+        private String resolved;
+
+        private Node(String value) {
+            this.value = value;
+            this.references = SettingTemplate.references(value);
+        }
+    }
+
+    private static class Resolution {
+        private final Set<String> resolving = new HashSet<>();
+        private boolean cycle;
+    }
+}
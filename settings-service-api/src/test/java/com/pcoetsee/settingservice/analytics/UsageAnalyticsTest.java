@@ -0,0 +1,153 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.analytics;
+
+import com.pcoetsee.settingservice.dto.HotKeyDTO;
+import com.pcoetsee.settingservice.dto.HotKeysDTO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Class used for testing the counting of reads per service and setting.
+ */
+public class UsageAnalyticsTest {
+
+    private static final long MINUTE = 60_000L;
+
+    /**
+     * This method tests that a sketch never estimates less than the actual count, even when far more keys are counted
+     * than it has counters.
+     */
+    @Test
+    public void testSketchNeverUnderestimates() {
+        CountMinSketch sketch = new CountMinSketch(64, 4);
+        int[] counts = new int[1000];
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(counts.length);
+            counts[key]++;
+            sketch.add(key);
+        }
+
+        for (int key = 0; key < counts.length; key++) {
+            Assert.assertTrue(sketch.estimate(key) >= counts[key]);
+        }
+
+        Assert.assertEquals(64, sketch.getWidth());
+        sketch.clear();
+        Assert.assertEquals(0, sketch.estimate(1));
+    }
+
+    /**
+     * This method tests that the most read settings and services are found among many rarely read ones.
+     */
+    @Test
+    public void testHotKeys() {
+        UsageAnalytics usageAnalytics = new UsageAnalytics(this.properties(10));
+        long now = 10 * MINUTE;
+
+        for (int i = 0; i < 5000; i++) {
+            usageAnalytics.recordRead("cold", "setting" + i, now);
+        }
+
+        for (int i = 0; i < 3000; i++) {
+            usageAnalytics.recordRead("noisy", "hottest", now);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            usageAnalytics.recordRead("noisy", null, now);
+            usageAnalytics.recordRead("quiet", "warm", now);
+        }
+
+        HotKeysDTO hotKeys = usageAnalytics.getHotKeys(60, 3, now);
+
+        Assert.assertEquals(10000, hotKeys.getTotalReads());
+        Assert.assertEquals(3, hotKeys.getSettings().size());
+        Assert.assertEquals(new HotKeyDTO("noisy", "hottest", 3000), this.withoutError(hotKeys.getSettings().get(0), 3000));
+        Assert.assertEquals("cold", hotKeys.getServices().get(0).getServiceName());
+        Assert.assertEquals(new HotKeyDTO("noisy", null, 4000), this.withoutError(hotKeys.getServices().get(1), 4000));
+        Assert.assertEquals(new HotKeyDTO("quiet", null, 1000), this.withoutError(hotKeys.getServices().get(2), 1000));
+    }
+
+    /**
+     * This method tests that a window only adds up the buckets it covers, and that old buckets are reused.
+     */
+    @Test
+    public void testWindows() {
+        UsageAnalytics usageAnalytics = new UsageAnalytics(this.properties(3));
+
+        for (int minute = 0; minute < 5; minute++) {
+            for (int i = 0; i <= minute; i++) {
+                usageAnalytics.recordRead("service", "setting", minute * MINUTE);
+            }
+        }
+
+        long now = 4 * MINUTE + 30_000;
+
+        Assert.assertEquals(5, usageAnalytics.getHotKeys(60, 10, now).getTotalReads());
+        Assert.assertEquals(9, usageAnalytics.getHotKeys(120, 10, now).getTotalReads());
+        Assert.assertEquals(12, usageAnalytics.getHotKeys(3600, 10, now).getTotalReads());
+        Assert.assertEquals(180, usageAnalytics.getHotKeys(3600, 10, now).getWindowSeconds());
+        Assert.assertEquals(12, usageAnalytics.getHotKeys(3600, 10, now).getSettings().get(0).getReads());
+        Assert.assertEquals(0, usageAnalytics.getHotKeys(3600, 10, now + 10 * MINUTE).getTotalReads());
+    }
+
+    /**
+     * This method tests that nothing is counted when analytics are disabled.
+     */
+    @Test
+    public void testDisabled() {
+        AnalyticsProperties analyticsProperties = this.properties(3);
+        analyticsProperties.setEnabled(false);
+        UsageAnalytics usageAnalytics = new UsageAnalytics(analyticsProperties);
+
+        usageAnalytics.recordRead("service", "setting", 0);
+
+        Assert.assertEquals(0, usageAnalytics.getHotKeys(60, 10, 0).getTotalReads());
+        Assert.assertTrue(usageAnalytics.getHotKeys(60, 10, 0).getSettings().isEmpty());
+    }
+
+    private AnalyticsProperties properties(int buckets) {
+        AnalyticsProperties analyticsProperties = new AnalyticsProperties();
+
+        analyticsProperties.setBuckets(buckets);
+        analyticsProperties.setSketchWidth(1024);
+        analyticsProperties.setTopK(10);
+
+        return analyticsProperties;
+    }
+
+    /**
+     * Estimates may exceed the actual count by a little when keys share counters.
+     */
+    private HotKeyDTO withoutError(HotKeyDTO hotKeyDTO, long actual) {
+        Assert.assertTrue(hotKeyDTO.getReads() >= actual && hotKeyDTO.getReads() <= actual + 50);
+
+        return new HotKeyDTO(hotKeyDTO.getServiceName(), hotKeyDTO.getSettingName(), actual);
+    }
+}
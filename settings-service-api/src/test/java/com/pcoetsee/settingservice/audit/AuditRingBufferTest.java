@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.audit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Class used for testing the buffer that hands audit records to the background writer.
+ */
+public class AuditRingBufferTest {
+
+    /**
+     * This method tests that records are drained oldest first, in batches no larger than the supplied array.
+     */
+    @Test
+    public void testDrainInOrder() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(8, 2, OverflowPolicy.DROP_NEWEST, 0);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(this.offer(buffer, i));
+        }
+
+        AuditRecord[] batch = this.batch(3);
+
+        Assert.assertEquals(3, buffer.drainTo(batch, 0));
+        Assert.assertEquals("0", batch[0].getEntityName());
+        Assert.assertEquals("2", batch[2].getEntityName());
+        Assert.assertEquals(2, buffer.drainTo(batch, 0));
+        Assert.assertEquals("3", batch[0].getEntityName());
+        Assert.assertEquals("4", batch[1].getEntityName());
+        Assert.assertEquals(0, buffer.drainTo(batch, 0));
+    }
+
+    /**
+     * This method tests that a full buffer keeps its oldest records when the newest are dropped.
+     */
+    @Test
+    public void testDropNewest() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(2, 2, OverflowPolicy.DROP_NEWEST, 0);
+
+        Assert.assertTrue(this.offer(buffer, 0));
+        Assert.assertTrue(this.offer(buffer, 1));
+        Assert.assertFalse(this.offer(buffer, 2));
+
+        AuditRecord[] batch = this.batch(2);
+
+        Assert.assertEquals(2, buffer.drainTo(batch, 0));
+        Assert.assertEquals("0", batch[0].getEntityName());
+        Assert.assertEquals("1", batch[1].getEntityName());
+    }
+
+    /**
+     * This method tests that a full buffer makes room for new records by dropping the oldest.
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(2, 2, OverflowPolicy.DROP_OLDEST, 0);
+
+        Assert.assertTrue(this.offer(buffer, 0));
+        Assert.assertTrue(this.offer(buffer, 1));
+        Assert.assertFalse(this.offer(buffer, 2));
+        Assert.assertEquals(2, buffer.size());
+
+        AuditRecord[] batch = this.batch(2);
+
+        Assert.assertEquals(2, buffer.drainTo(batch, 0));
+        Assert.assertEquals("1", batch[0].getEntityName());
+        Assert.assertEquals("2", batch[1].getEntityName());
+    }
+
+    /**
+     * This method tests that a blocked caller gets its record in once the writer makes room, and gives up when it does
+     * not.
+     */
+    @Test
+    public void testBlock() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(1, 1, OverflowPolicy.BLOCK, 5000);
+
+        Assert.assertTrue(this.offer(buffer, 0));
+
+        Thread drainer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                buffer.drainTo(this.batch(1), 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        drainer.start();
+        Assert.assertTrue(this.offer(buffer, 1));
+        drainer.join();
+
+        AuditRingBuffer impatient = new AuditRingBuffer(1, 1, OverflowPolicy.BLOCK, 10);
+
+        Assert.assertTrue(this.offer(impatient, 0));
+        Assert.assertFalse(this.offer(impatient, 1));
+    }
+
+    /**
+     * This method tests that waking the writer up drains a partial batch straight away.
+     */
+    @Test
+    public void testWakeUp() throws Exception {
+        AuditRingBuffer buffer = new AuditRingBuffer(8, 8, OverflowPolicy.DROP_NEWEST, 0);
+
+        Assert.assertTrue(this.offer(buffer, 0));
+        buffer.wakeUp();
+
+        long start = System.currentTimeMillis();
+
+        Assert.assertEquals(1, buffer.drainTo(this.batch(8), 10000));
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    private boolean offer(AuditRingBuffer buffer, int i) {
+        return buffer.offer(i, "tester", AuditAction.UPDATE, AuditTrail.SETTING, "service", String.valueOf(i), null);
+    }
+
+    private AuditRecord[] batch(int size) {
+        AuditRecord[] batch = new AuditRecord[size];
+
+        for (int i = 0; i < size; i++) {
+            batch[i] = new AuditRecord();
+        }
+
+        return batch;
+    }
+}
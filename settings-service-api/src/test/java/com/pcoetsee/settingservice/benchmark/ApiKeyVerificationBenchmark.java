@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.benchmark;
+
+import com.pcoetsee.settingservice.security.ApiKeyHasher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the cost of verifying a service's credentials with BCrypt against verifying an API key with
+ * HMAC-SHA256.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.pcoetsee.settingservice.benchmark.ApiKeyVerificationBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ApiKeyVerificationBenchmark {
+
+    private static final String PASSWORD = "a-service-password";
+    private static final String SECRET = "bL9pQ2vX7nR4tY8wZ1cF6hJ3kM5sA0dE_gU-iO2lP4q";
+
+    /**
+     * The BCrypt strength to compare against, 10 is the default of {@link BCryptPasswordEncoder}.
+     */
+    @Param({"10"})
+    private int bCryptStrength;
+
+    private BCryptPasswordEncoder bCryptPasswordEncoder;
+    private String bCryptHash;
+    private ApiKeyHasher apiKeyHasher;
+    private byte[] secretHash;
+
+    @Setup
+    public void setup() {
+        this.bCryptPasswordEncoder = new BCryptPasswordEncoder(this.bCryptStrength);
+        this.bCryptHash = this.bCryptPasswordEncoder.encode(PASSWORD);
+        this.apiKeyHasher = new ApiKeyHasher("benchmark-hmac-secret");
+        this.secretHash = this.apiKeyHasher.hash(SECRET);
+    }
+
+    @Benchmark
+    public boolean bCryptPassword() {
+        return this.bCryptPasswordEncoder.matches(PASSWORD, this.bCryptHash);
+    }
+
+    @Benchmark
+    public boolean hmacApiKey() {
+        return this.apiKeyHasher.matches(SECRET, this.secretHash);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ApiKeyVerificationBenchmark.class.getSimpleName())
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.benchmark;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A histogram of the live objects on the heap by class, the same one `jcmd GC.class_histogram` prints, taken from
+ * inside the JVM through the diagnostic command MBean. Taking it runs a full collection first.
+ */
+public final class HeapHistogram {
+
+    private static final Pattern ROW = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+).*$");
+    private static final Pattern TOTAL = Pattern.compile("^Total\\s+(\\d+)\\s+(\\d+).*$");
+
+    private final Map<String, long[]> rows = new HashMap<>();
+    private long totalInstances;
+    private long totalBytes;
+
+    private HeapHistogram() {
+    }
+
+    /**
+     * @return the histogram of the live objects on the heap, not null
+     * @throws JMException when this JVM does not offer the diagnostic command MBean
+     */
+    public static HeapHistogram take() throws JMException {
+        String output = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"),
+                "gcClassHistogram",
+                new Object[]{new String[0]},
+                new String[]{String[].class.getName()}
+        );
+        HeapHistogram histogram = new HeapHistogram();
+
+        for (String line : output.split("\n")) {
+            Matcher row = ROW.matcher(line);
+            Matcher total = TOTAL.matcher(line);
+
+            if (row.matches()) {
+                histogram.rows.put(row.group(3), new long[]{Long.parseLong(row.group(1)), Long.parseLong(row.group(2))});
+            } else if (total.matches()) {
+                histogram.totalInstances = Long.parseLong(total.group(1));
+                histogram.totalBytes = Long.parseLong(total.group(2));
+            }
+        }
+
+        return histogram;
+    }
+
+    /**
+     * @param className the name of the class as the JVM reports it, such as `java.lang.String` or `[B`
+     * @return the number of live instances of the class
+     */
+    public long getInstances(String className) {
+        return this.rows.getOrDefault(className, new long[2])[0];
+    }
+
+    /**
+     * @param className the name of the class as the JVM reports it, such as `java.lang.String` or `[B`
+     * @return the number of bytes taken up by live instances of the class
+     */
+    public long getBytes(String className) {
+        return this.rows.getOrDefault(className, new long[2])[1];
+    }
+
+    public long getTotalInstances() {
+        return this.totalInstances;
+    }
+
+    public long getTotalBytes() {
+        return this.totalBytes;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.benchmark;
+
+import com.pcoetsee.settingservice.dto.ReplicatedServiceDTO;
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+import com.pcoetsee.settingservice.memory.StringInterner;
+import com.pcoetsee.settingservice.replication.ReplicaStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reports, from heap histograms, how much memory interning setting names and values saves when a follower holds a
+ * dataset shaped like the load test one: many services sharing a small vocabulary of names and values, plus some that
+ * are their own.
+ * <p>
+ * Every string is created separately, the way reading JSON creates them. The dataset is loaded into a
+ * {@link ReplicaStore} without interning, then into one with it, and a histogram is taken while each is held.
+ * <p>
+ * Run with {@code MAVEN_OPTS="-Xmx2g" mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.pcoetsee.settingservice.benchmark.InterningFootprint -Dexec.args="2000 200"}, the arguments
+ * being the number of services and the number of settings per service.
+ */
+public class InterningFootprint {
+
+    private static final String[] COMMON_NAMES = {
+            "db.url", "db.username", "db.password", "db.pool.size", "log.level", "log.format", "cache.ttl", "cache.size",
+            "http.timeout", "http.retries", "feature.new-ui", "feature.beta", "region", "environment", "queue.url",
+            "queue.batch-size", "metrics.enabled", "tracing.sample-rate", "smtp.host", "smtp.port"
+    };
+
+    private static final String[] COMMON_VALUES = {
+            "true", "false", "INFO", "DEBUG", "WARN", "json", "0", "1", "3", "10", "30", "100", "1000", "30000",
+            "eu-west-1", "us-east-1", "production", "staging", "jdbc:mysql://db.internal:3306/app", "smtp.internal", "587"
+    };
+
+    /**
+     * The settings being measured, kept here so they stay reachable.
+     */
+    private static volatile ReplicaStore held;
+
+    public static void main(String[] args) throws Exception {
+        int services = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int settingsPerService = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        HeapHistogram empty = HeapHistogram.take();
+
+        held = new ReplicaStore(false, StringInterner.disabled());
+        held.load(InterningFootprint.dataset(services, settingsPerService));
+        HeapHistogram plain = HeapHistogram.take();
+
+        held = null;
+        StringInterner stringInterner = new StringInterner(65536, 128);
+        held = new ReplicaStore(false, stringInterner);
+        held.load(InterningFootprint.dataset(services, settingsPerService));
+        HeapHistogram interned = HeapHistogram.take();
+
+        System.out.printf("%d services, %d settings, intern table hits %d, misses %d%n",
+                services, services * settingsPerService, stringInterner.getHits(), stringInterner.getMisses());
+        System.out.printf("%-18s %14s %14s %14s%n", "class", "plain MB", "interned MB", "saved MB");
+        InterningFootprint.print("java.lang.String", empty.getBytes("java.lang.String"), plain.getBytes("java.lang.String"), interned.getBytes("java.lang.String"));
+        InterningFootprint.print("[B", empty.getBytes("[B"), plain.getBytes("[B"), interned.getBytes("[B"));
+        InterningFootprint.print("[C", empty.getBytes("[C"), plain.getBytes("[C"), interned.getBytes("[C"));
+        InterningFootprint.print("total", empty.getTotalBytes(), plain.getTotalBytes(), interned.getTotalBytes());
+    }
+
+    private static void print(String className, long baseline, long plain, long interned) {
+        System.out.printf("%-18s %14.1f %14.1f %14.1f%n",
+                className, (plain - baseline) / 1048576.0, (interned - baseline) / 1048576.0, (plain - interned) / 1048576.0);
+    }
+
+    /**
+     * Four in five names are shared by every service and three in five values are drawn from a shared vocabulary, the
+     * rest are unique.
+     */
+    private static ReplicationSnapshotDTO dataset(int services, int settingsPerService) {
+        Random random = new Random(42);
+        List<ReplicatedServiceDTO> serviceDTOs = new ArrayList<>(services);
+        List<ReplicatedSettingDTO> settingDTOs = new ArrayList<>(services * settingsPerService);
+
+        for (long serviceId = 1; serviceId <= services; serviceId++) {
+            ReplicatedServiceDTO service = new ReplicatedServiceDTO();
+
+            service.setId(serviceId);
+            service.setName("service-" + serviceId);
+            serviceDTOs.add(service);
+
+            for (int i = 0; i < settingsPerService; i++) {
+                ReplicatedSettingDTO setting = new ReplicatedSettingDTO();
+
+                setting.setServiceId(serviceId);
+                setting.setName(i % 5 < 4
+                        ? COMMON_NAMES[i % COMMON_NAMES.length] + "." + i / COMMON_NAMES.length
+                        : "custom." + serviceId + "." + i);
+                setting.setValue(random.nextInt(5) < 3
+                        ? new String(COMMON_VALUES[random.nextInt(COMMON_VALUES.length)].toCharArray())
+                        : Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+                settingDTOs.add(setting);
+            }
+        }
+
+        ReplicationSnapshotDTO snapshot = new ReplicationSnapshotDTO();
+
+        snapshot.setServices(serviceDTOs);
+        snapshot.setSettings(settingDTOs);
+        snapshot.setRevisions(Collections.emptyMap());
+
+        return snapshot;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.benchmark;
+
+import com.pcoetsee.settingservice.dto.ServiceDTO;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.projection.ServiceSummary;
+import com.pcoetsee.settingservice.service.ServicesService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark comparing the cost of mapping a page of services to DTOs one at a time, resolving the zone for every
+ * service, against mapping the page in one batch with the zone resolved once, from entities and from the listed
+ * columns alone.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.pcoetsee.settingservice.benchmark.ServiceDTOMappingBenchmark}. The GC profiler reports the bytes
+ * allocated per page as {@code gc.alloc.rate.norm}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceDTOMappingBenchmark {
+
+    /**
+     * The number of services on a page.
+     */
+    @Param({"20", "500"})
+    private int pageSize;
+
+    private List<ServiceDAO> serviceDAOs;
+    private List<ServiceSummary> serviceSummaries;
+
+    @Setup
+    public void setup() {
+        this.serviceDAOs = new ArrayList<>(this.pageSize);
+        this.serviceSummaries = new ArrayList<>(this.pageSize);
+
+        for (int i = 0; i < this.pageSize; i++) {
+            ServiceDAO serviceDAO = new ServiceDAO((long) i);
+
+            serviceDAO.setName("service-" + i);
+            serviceDAO.setPassword("$2a$10$abcdefghijklmnopqrstuuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ01");
+            serviceDAO.setRole(i % 10 == 0 ? Role.FULL : Role.READ);
+            serviceDAO.setCreationTime(1_600_000_000_000L + i * 60_000L);
+            this.serviceDAOs.add(serviceDAO);
+            this.serviceSummaries.add(new ServiceSummary(serviceDAO.getName(), serviceDAO.getRole(), serviceDAO.getCreationTime(), serviceDAO.getVersion()));
+        }
+    }
+
+    /**
+     * The mapping as it was before the batch path, resolving the zone through {@code ZonedDateTime.now()} per row.
+     */
+    @Benchmark
+    public List<ServiceDTO> perRowNow() {
+        List<ServiceDTO> serviceDTOs = new ArrayList<>(this.serviceDAOs.size());
+
+        for (ServiceDAO serviceDAO : this.serviceDAOs) {
+            ServiceDTO serviceDTO = new ServiceDTO();
+
+            serviceDTO.setName(serviceDAO.getName());
+            serviceDTO.setRole(serviceDAO.getRole().name());
+            serviceDTO.setCreationTime(ZonedDateTime.ofInstant(Instant.ofEpochMilli(serviceDAO.getCreationTime()), ZonedDateTime.now().getZone()));
+            serviceDTO.setVersion(serviceDAO.getVersion());
+            serviceDTOs.add(serviceDTO);
+        }
+
+        return serviceDTOs;
+    }
+
+    @Benchmark
+    public List<ServiceDTO> perRowZone() {
+        List<ServiceDTO> serviceDTOs = new ArrayList<>(this.serviceDAOs.size());
+
+        for (ServiceDAO serviceDAO : this.serviceDAOs) {
+            serviceDTOs.add(ServicesService.serviceDAOToDTO(serviceDAO));
+        }
+
+        return serviceDTOs;
+    }
+
+    @Benchmark
+    public List<ServiceDTO> batchZone() {
+        ZoneId zone = ZoneId.systemDefault();
+        List<ServiceDTO> serviceDTOs = new ArrayList<>(this.serviceDAOs.size());
+
+        for (ServiceDAO serviceDAO : this.serviceDAOs) {
+            serviceDTOs.add(ServicesService.serviceDAOToDTO(serviceDAO, zone));
+        }
+
+        return serviceDTOs;
+    }
+
+    @Benchmark
+    public List<ServiceDTO> batchZoneSummaries() {
+        ZoneId zone = ZoneId.systemDefault();
+        List<ServiceDTO> serviceDTOs = new ArrayList<>(this.serviceSummaries.size());
+
+        for (ServiceSummary serviceSummary : this.serviceSummaries) {
+            serviceDTOs.add(ServicesService.serviceSummaryToDTO(serviceSummary, zone));
+        }
+
+        return serviceDTOs;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ServiceDTOMappingBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
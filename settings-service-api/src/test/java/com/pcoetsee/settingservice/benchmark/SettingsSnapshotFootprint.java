@@ -0,0 +1,223 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.benchmark;
+
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.dao.SettingDAO;
+import com.pcoetsee.settingservice.replication.OffHeapSettingsSnapshot;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the heap taken up by, and the garbage collection pauses caused by, holding every setting in a
+ * {@code HashMap<String, SettingDAO>} against holding them in an {@link OffHeapSettingsSnapshot}.
+ * <p>
+ * Each layout is loaded on its own, the heap still in use after a full collection is measured, then short lived
+ * garbage is allocated for a while, the way request handling does, and the pauses that causes are recorded. Finally a
+ * full collection is timed. JMH does not measure pauses, so this is a plain program.
+ * <p>
+ * Run with {@code MAVEN_OPTS="-Xmx4g -XX:MaxDirectMemorySize=2g" mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.pcoetsee.settingservice.benchmark.SettingsSnapshotFootprint -Dexec.args="2000000"}, the
+ * argument being the number of settings.
+ */
+public class SettingsSnapshotFootprint {
+
+    private static final int SETTINGS_PER_SERVICE = 1000;
+    private static final long CHURN_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    private static final AtomicLong PAUSES = new AtomicLong();
+    private static final AtomicLong PAUSE_MILLIS = new AtomicLong();
+    private static final AtomicLong MAX_PAUSE_MILLIS = new AtomicLong();
+
+    /**
+     * The settings being measured, kept here so they stay reachable.
+     */
+    private static volatile Object held;
+
+    public static void main(String[] args) throws Exception {
+        int settings = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+
+        SettingsSnapshotFootprint.listenForPauses();
+
+        System.out.printf("%-10s %12s %12s %8s %12s %12s %12s%n",
+                "layout", "heap MB", "off-heap MB", "pauses", "total ms", "max ms", "full gc ms");
+
+        held = SettingsSnapshotFootprint.heapSettings(settings);
+        SettingsSnapshotFootprint.measure("HashMap", 0);
+
+        held = null;
+        OffHeapSettingsSnapshot offHeap = SettingsSnapshotFootprint.offHeapSettings(settings);
+        held = offHeap;
+        SettingsSnapshotFootprint.measure("off-heap", offHeap.getOffHeapBytes());
+    }
+
+    /**
+     * Prints the heap in use while the settings are held, and the pauses caused while they are held.
+     */
+    private static void measure(String layout, long offHeapBytes) throws InterruptedException {
+        long heapBytes = SettingsSnapshotFootprint.usedAfterGc();
+
+        PAUSES.set(0);
+        PAUSE_MILLIS.set(0);
+        MAX_PAUSE_MILLIS.set(0);
+        SettingsSnapshotFootprint.churn();
+
+        long pauses = PAUSES.get();
+        long pauseMillis = PAUSE_MILLIS.get();
+        long maxPauseMillis = MAX_PAUSE_MILLIS.get();
+        long start = System.nanoTime();
+
+        System.gc();
+
+        long fullGcMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        System.out.printf("%-10s %12.1f %12.1f %8d %12d %12d %12d%n",
+                layout, heapBytes / 1048576.0, offHeapBytes / 1048576.0, pauses, pauseMillis, maxPauseMillis, fullGcMillis);
+    }
+
+    private static Map<String, SettingDAO> heapSettings(int count) {
+        Map<String, SettingDAO> settings = new HashMap<>();
+        Random random = new Random(42);
+        ServiceDAO serviceDAO = null;
+
+        for (int i = 0; i < count; i++) {
+            if (i % SETTINGS_PER_SERVICE == 0) {
+                serviceDAO = new ServiceDAO();
+                serviceDAO.setId((long) i / SETTINGS_PER_SERVICE);
+                serviceDAO.setName("service" + serviceDAO.getId());
+            }
+
+            SettingDAO settingDAO = new SettingDAO();
+
+            settingDAO.setId((long) i);
+            settingDAO.setServiceDAO(serviceDAO);
+            settingDAO.setName("setting." + i);
+            settingDAO.setValue(SettingsSnapshotFootprint.value(random));
+            settingDAO.setVersion(0L);
+            settingDAO.setDateLastUsed(ZonedDateTime.now(ZoneId.systemDefault()));
+            settings.put(serviceDAO.getId() + ":" + settingDAO.getName(), settingDAO);
+        }
+
+        return settings;
+    }
+
+    private static OffHeapSettingsSnapshot offHeapSettings(int count) {
+        List<ReplicatedSettingDTO> settings = new ArrayList<>(count);
+        Random random = new Random(42);
+
+        for (int i = 0; i < count; i++) {
+            ReplicatedSettingDTO setting = new ReplicatedSettingDTO();
+
+            setting.setServiceId((long) i / SETTINGS_PER_SERVICE);
+            setting.setName("setting." + i);
+            setting.setValue(SettingsSnapshotFootprint.value(random));
+            setting.setDateLastUsed(ZonedDateTime.now(ZoneId.systemDefault()));
+            settings.add(setting);
+        }
+
+        return OffHeapSettingsSnapshot.build(settings);
+    }
+
+    /**
+     * @return a value of 20 to 60 characters, the typical length of a setting
+     */
+    private static String value(Random random) {
+        char[] value = new char[20 + random.nextInt(41)];
+
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (char) ('a' + random.nextInt(26));
+        }
+
+        return new String(value);
+    }
+
+    /**
+     * Allocates short lived garbage, keeping a little of it alive for a while so some of it is promoted.
+     */
+    private static void churn() {
+        long deadline = System.currentTimeMillis() + CHURN_MILLIS;
+        Object[] survivors = new Object[4096];
+        Random random = new Random(7);
+
+        while (System.currentTimeMillis() < deadline) {
+            for (int i = 0; i < 10000; i++) {
+                byte[] garbage = new byte[64 + random.nextInt(1024)];
+                survivors[random.nextInt(survivors.length)] = garbage;
+            }
+        }
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Records the duration of every collection other than the explicit ones.
+     */
+    private static void listenForPauses() {
+        NotificationListener listener = (Notification notification, Object handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+
+            if ("System.gc()".equals(info.getGcCause())) {
+                return;
+            }
+
+            long duration = info.getGcInfo().getDuration();
+
+            PAUSES.incrementAndGet();
+            PAUSE_MILLIS.addAndGet(duration);
+            MAX_PAUSE_MILLIS.accumulateAndGet(duration, Math::max);
+        };
+
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+        }
+    }
+}
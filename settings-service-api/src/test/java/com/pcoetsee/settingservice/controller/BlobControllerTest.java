@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.controller;
+
+import com.pcoetsee.settingservice.blob.BlobProperties;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class used for testing that large values are downloaded through the controller, as stored and decompressed.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:blobcontrollerdb;Mode=MYSQL;DB_CLOSE_ON_EXIT=FALSE")
+@AutoConfigureMockMvc
+@WithMockUser(username = BlobControllerTest.SERVICE_NAME, authorities = "READ")
+public class BlobControllerTest {
+
+    /**
+     * Name of the service the large value belongs to, also the name of the authenticated service.
+     */
+    static final String SERVICE_NAME = "blobControllerTest";
+
+    private static final String PATH = "/services/" + SERVICE_NAME + "/settings/download/blob";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private BlobProperties blobProperties;
+
+    private byte[] value;
+    private String eTag;
+
+    /**
+     * This method creates the service and stores a value spanning several chunks, if an earlier test has not yet.
+     */
+    @Before
+    public void init() throws Exception {
+        if (this.serviceRepository.findByName(SERVICE_NAME) == null) {
+            ServiceDAO serviceDAO = new ServiceDAO();
+
+            serviceDAO.setName(SERVICE_NAME);
+            serviceDAO.setPassword("password");
+            serviceDAO.setRole(Role.READ);
+            serviceDAO.setCreationTime(0L);
+
+            this.serviceRepository.save(serviceDAO);
+        }
+
+        // Random bytes do not compress, so the value spans several chunks.
+        this.value = new byte[this.blobProperties.getChunkBytes() * 2 + 1000];
+        new Random(7).nextBytes(this.value);
+        this.settingsService.saveBlobSetting(SERVICE_NAME, "download", new ByteArrayInputStream(this.value));
+        this.eTag = this.settingsService.getBlobSetting(SERVICE_NAME, "download").getETag();
+    }
+
+    /**
+     * This method tests that a client that does not accept gzip gets the value decompressed, with its length.
+     */
+    @Test
+    public void testDownloadDecompressed() throws Exception {
+        MvcResult started = this.mockMvc.perform(MockMvcRequestBuilders.get(PATH))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.ETAG, this.eTag))
+                .andExpect(MockMvcResultMatchers.header().longValue(HttpHeaders.CONTENT_LENGTH, this.value.length))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn();
+
+        Assert.assertArrayEquals(this.value, result.getResponse().getContentAsByteArray());
+    }
+
+    /**
+     * This method tests that a client that accepts gzip gets the value as stored.
+     */
+    @Test
+    public void testDownloadCompressed() throws Exception {
+        MvcResult started = this.mockMvc.perform(MockMvcRequestBuilders.get(PATH).header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+
+        Assert.assertArrayEquals(this.value, this.readAll(new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))));
+    }
+
+    /**
+     * This method tests that a client that already holds the value is answered with 304 Not Modified and no body.
+     */
+    @Test
+    public void testDownloadNotModified() throws Exception {
+        MvcResult started = this.mockMvc.perform(MockMvcRequestBuilders.get(PATH).header(HttpHeaders.IF_NONE_MATCH, this.eTag))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andReturn();
+
+        Assert.assertEquals(0, result.getResponse().getContentAsByteArray().length);
+    }
+
+    /**
+     * This method tests that a missing value is answered like any other missing setting, before anything is written.
+     */
+    @Test
+    public void testDownloadMissing() throws Exception {
+        MvcResult started = this.mockMvc.perform(MockMvcRequestBuilders.get("/services/" + SERVICE_NAME + "/settings/missing/blob"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    /**
+     * This method tests that a value uploaded through the controller is stored in chunks, and downloaded as uploaded.
+     */
+    @Test
+    public void testUpload() throws Exception {
+        byte[] uploaded = new byte[this.blobProperties.getChunkBytes() + 500];
+        new Random(11).nextBytes(uploaded);
+
+        MvcResult started = this.mockMvc.perform(MockMvcRequestBuilders.put("/services/" + SERVICE_NAME + "/settings/upload/blob")
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .content(uploaded))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("upload"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.blobSize").value(uploaded.length));
+
+        started = this.mockMvc.perform(MockMvcRequestBuilders.get("/services/" + SERVICE_NAME + "/settings/upload/blob"))
+                .andExpect(MockMvcResultMatchers.request().asyncStarted())
+                .andReturn();
+
+        MvcResult result = this.mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andReturn();
+
+        Assert.assertArrayEquals(uploaded, result.getResponse().getContentAsByteArray());
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import com.pcoetsee.settingservice.exception.LimitExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class used for testing the adaptive concurrency limiter placed in front of the repositories.
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    /**
+     * The limit the limiter is created with.
+     */
+    private static final int INITIAL_LIMIT = 10;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Before
+    public void init() {
+        CircuitBreakerProperties circuitBreakerProperties = new CircuitBreakerProperties();
+
+        // The breaker has its own test; here only the limit itself is under test.
+        circuitBreakerProperties.setEnabled(false);
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.limiter = new AdaptiveConcurrencyLimiter(
+                INITIAL_LIMIT, 2, 50, 0.5, 50,
+                new DatabaseCircuitBreaker(circuitBreakerProperties, this.meterRegistry),
+                this.meterRegistry
+        );
+    }
+
+    /**
+     * This method tests that bulk reads are shed before admin writes once the database is busy.
+     */
+    @Test
+    public void testBulkReadsShedBeforeAdminWrites() throws Exception {
+        int bulkAllowed = (int) (INITIAL_LIMIT * Priority.BULK_READ.getShare());
+        CountDownLatch started = new CountDownLatch(bulkAllowed);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executorService = Executors.newFixedThreadPool(bulkAllowed);
+
+        try {
+            for (int i = 0; i < bulkAllowed; i++) {
+                executorService.submit(() -> this.limiter.execute(Priority.BULK_READ, () -> {
+                    started.countDown();
+                    this.await(release);
+                    return null;
+                }));
+            }
+
+            Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            try {
+                this.limiter.execute(Priority.BULK_READ, () -> "rejected");
+                Assert.fail("Bulk read should have been rejected");
+            } catch (LimitExceededException e) {
+                Assert.assertEquals(1.0, this.meterRegistry.get("settings.limiter.rejected")
+                        .tag("priority", Priority.BULK_READ.name()).counter().count(), 0.0);
+            }
+
+            Assert.assertEquals("accepted", this.limiter.execute(Priority.ADMIN_WRITE, () -> "accepted"));
+        } finally {
+            release.countDown();
+            executorService.shutdown();
+            executorService.awaitTermination(5, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals(0, this.limiter.getInFlight());
+    }
+
+    /**
+     * This method tests that the limit is reduced when the database times out.
+     */
+    @Test
+    public void testLimitBacksOffOnTimeout() {
+        try {
+            this.limiter.execute(Priority.READ, () -> {
+                throw new QueryTimeoutException("timed out");
+            });
+            Assert.fail("Timeout should have been rethrown");
+        } catch (QueryTimeoutException e) {
+            Assert.assertEquals(INITIAL_LIMIT * 0.5, this.limiter.getLimit(), 0.0);
+        }
+    }
+
+    /**
+     * This method tests that the limit is reduced when calls are slower than the threshold, but never below the
+     * minimum.
+     */
+    @Test
+    public void testLimitBacksOffOnSlowCallsToMinimum() {
+        for (int i = 0; i < 5; i++) {
+            this.limiter.run(Priority.READ, () -> this.sleep(60));
+        }
+
+        Assert.assertEquals(2.0, this.limiter.getLimit(), 0.0);
+        Assert.assertEquals(2.0, this.meterRegistry.get("settings.limiter.limit").gauge().value(), 0.0);
+    }
+
+    /**
+     * This method tests that an idle limiter does not grow its limit on fast calls.
+     */
+    @Test
+    public void testLimitDoesNotGrowWhenIdle() {
+        for (int i = 0; i < 100; i++) {
+            this.limiter.execute(Priority.READ, () -> "fast");
+        }
+
+        Assert.assertEquals(INITIAL_LIMIT, this.limiter.getLimit(), 0.0);
+    }
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import com.pcoetsee.settingservice.exception.BulkheadFullException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Class used for testing the bulkheads that keep classes of work on executors of their own.
+ */
+public class BulkheadTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ThreadPoolTaskExecutor executor;
+    private Bulkhead bulkhead;
+
+    @Before
+    public void init() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(1);
+        this.executor.setMaxPoolSize(1);
+        this.executor.setQueueCapacity(1);
+        this.executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        this.executor.initialize();
+        this.bulkhead = new Bulkhead("test", this.executor, 200, this.meterRegistry);
+    }
+
+    @After
+    public void destroy() {
+        this.executor.shutdown();
+    }
+
+    /**
+     * This method tests that work runs on the executor of the bulkhead, and that its slot is given back afterwards.
+     */
+    @Test
+    public void testCall() {
+        String thread = this.bulkhead.call(() -> Thread.currentThread().getName());
+
+        Assert.assertNotEquals(Thread.currentThread().getName(), thread);
+        Assert.assertEquals(0.0, this.bulkhead.getSaturation(), 0.0);
+    }
+
+    /**
+     * This method tests that work is rejected once every thread and queue slot is taken.
+     */
+    @Test
+    public void testRejectsWhenFull() {
+        // Tasks returned by submit are only started by Spring MVC, so they keep their slots for the whole test.
+        this.bulkhead.submit(() -> true);
+        this.bulkhead.submit(() -> true);
+
+        Assert.assertEquals(1.0, this.bulkhead.getSaturation(), 0.0);
+
+        try {
+            this.bulkhead.call(() -> true);
+            Assert.fail("Work was admitted to a full bulkhead");
+        } catch (BulkheadFullException e) {
+            Assert.assertEquals(1.0, this.meterRegistry.get("settings.bulkhead.rejected").tag("bulkhead", "test").counter().count(), 0.0);
+        }
+    }
+
+    /**
+     * This method tests that the caller of work taking longer than the timeout is rejected, while the work keeps its
+     * slot until it has stopped.
+     */
+    @Test
+    public void testTimeout() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+
+        try {
+            this.bulkhead.call(() -> {
+                // Like hashing a password, this work does not stop when interrupted.
+                while (done.getCount() > 0) {
+                    Thread.yield();
+                }
+                return true;
+            });
+            Assert.fail("Work was waited on past the timeout");
+        } catch (BulkheadFullException e) {
+            Assert.assertEquals(1.0, this.meterRegistry.get("settings.bulkhead.timeouts").tag("bulkhead", "test").counter().count(), 0.0);
+            Assert.assertEquals(0.5, this.bulkhead.getSaturation(), 0.0);
+        }
+
+        done.countDown();
+        this.executor.shutdown();
+        Assert.assertTrue(this.executor.getThreadPoolExecutor().awaitTermination(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0.0, this.bulkhead.getSaturation(), 0.0);
+    }
+
+    /**
+     * This method tests that a request whose task the executor rejects is answered as shed, and gives its slot back.
+     */
+    @Test
+    public void testSubmitRejectedByExecutor() {
+        this.executor.shutdown();
+
+        WebAsyncTask<Boolean> task = this.bulkhead.submit(() -> true);
+        AtomicReference<Exception> result = new AtomicReference<>();
+
+        // Spring MVC hands the executor a task that calls the work and keeps whatever it throws as the result.
+        task.getExecutor().submit(() -> {
+            try {
+                task.getCallable().call();
+            } catch (Exception e) {
+                result.set(e);
+            }
+        });
+
+        Assert.assertTrue(result.get() instanceof BulkheadFullException);
+        Assert.assertEquals(1.0, this.meterRegistry.get("settings.bulkhead.rejected").tag("bulkhead", "test").counter().count(), 0.0);
+        Assert.assertEquals(0.0, this.bulkhead.getSaturation(), 0.0);
+    }
+
+    /**
+     * This method tests that exceptions thrown by the work reach the caller as they are.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testExceptionPassesThrough() {
+        this.bulkhead.call(() -> {
+            throw new IllegalArgumentException();
+        });
+    }
+}
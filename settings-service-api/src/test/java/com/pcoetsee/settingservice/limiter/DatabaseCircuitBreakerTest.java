@@ -0,0 +1,195 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.limiter;
+
+import com.pcoetsee.settingservice.exception.CircuitOpenException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.TransactionTimedOutException;
+
+/**
+ * Class used for testing the circuit breaker placed in front of the database.
+ */
+public class DatabaseCircuitBreakerTest {
+
+    /**
+     * How long the circuit stays open in these tests, in milliseconds.
+     */
+    private static final long OPEN_MS = 50;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DatabaseCircuitBreaker breaker;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Before
+    public void init() {
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+
+        properties.setWindowSize(10);
+        properties.setMinimumCalls(4);
+        properties.setFailureRatePercent(50);
+        properties.setSlowCallMs(1000);
+        properties.setOpenMs(OPEN_MS);
+        properties.setHalfOpenCalls(2);
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.breaker = new DatabaseCircuitBreaker(properties, this.meterRegistry);
+        this.limiter = new AdaptiveConcurrencyLimiter(20, 4, 200, 0.9, 1000, this.breaker, this.meterRegistry);
+    }
+
+    /**
+     * This method tests that the circuit stays closed while most calls succeed, and opens once half of them fail, after
+     * which calls are rejected without running.
+     */
+    @Test
+    public void testOpensOnFailureRate() {
+        this.succeed();
+        this.succeed();
+        this.fail();
+
+        Assert.assertEquals(CircuitState.CLOSED, this.breaker.getState());
+
+        this.fail();
+
+        Assert.assertEquals(CircuitState.OPEN, this.breaker.getState());
+
+        boolean[] ran = new boolean[1];
+
+        try {
+            this.limiter.run(Priority.READ, () -> ran[0] = true);
+            Assert.fail("Calls should be rejected while the circuit is open.");
+        } catch (CircuitOpenException e) {
+            Assert.assertFalse(ran[0]);
+        }
+
+        Assert.assertEquals(1.0, this.meterRegistry.get("settings.circuit-breaker.calls").tag("result", "rejected").counter().count(), 0);
+        Assert.assertEquals(1.0, this.meterRegistry.get("settings.circuit-breaker.state").gauge().value(), 0);
+    }
+
+    /**
+     * This method tests that failures that do not say anything about the database, such as a missing setting, leave
+     * the circuit closed.
+     */
+    @Test
+    public void testIgnoresOtherFailures() {
+        for (int i = 0; i < 10; i++) {
+            try {
+                this.limiter.execute(Priority.READ, () -> {
+                    throw new IllegalStateException("not a database failure");
+                });
+            } catch (IllegalStateException e) {
+                // Expected.
+            }
+        }
+
+        Assert.assertEquals(CircuitState.CLOSED, this.breaker.getState());
+    }
+
+    /**
+     * This method tests that the circuit lets trial calls through after the open period, closes when they succeed, and
+     * opens again at once when one fails.
+     */
+    @Test
+    public void testHalfOpenTrials() throws Exception {
+        this.open();
+        Thread.sleep(OPEN_MS + 10);
+
+        this.succeed();
+
+        Assert.assertEquals(CircuitState.HALF_OPEN, this.breaker.getState());
+
+        this.succeed();
+
+        Assert.assertEquals(CircuitState.CLOSED, this.breaker.getState());
+
+        this.open();
+        Thread.sleep(OPEN_MS + 10);
+
+        this.fail();
+
+        Assert.assertEquals(CircuitState.OPEN, this.breaker.getState());
+    }
+
+    /**
+     * This method tests that only the configured number of trial calls are let through while half open.
+     */
+    @Test
+    public void testHalfOpenPermits() throws Exception {
+        this.open();
+        Thread.sleep(OPEN_MS + 10);
+
+        Assert.assertTrue(this.breaker.tryAcquire());
+        Assert.assertTrue(this.breaker.tryAcquire());
+        Assert.assertFalse(this.breaker.tryAcquire());
+
+        this.breaker.release();
+
+        Assert.assertTrue(this.breaker.tryAcquire());
+    }
+
+    /**
+     * This method tests that reads running past their deadline count as failures, whether the database cut the
+     * statement off or the deadline passed between statements.
+     */
+    @Test
+    public void testReadDeadlineCountsAsFailure() {
+        for (int i = 0; i < 4; i++) {
+            try {
+                this.limiter.execute(Priority.READ, () -> {
+                    throw new TransactionTimedOutException("deadline passed");
+                });
+            } catch (TransactionTimedOutException e) {
+                // Expected.
+            }
+        }
+
+        Assert.assertEquals(CircuitState.OPEN, this.breaker.getState());
+        Assert.assertEquals(4.0, this.meterRegistry.get("settings.circuit-breaker.calls").tag("result", "failure").counter().count(), 0);
+    }
+
+    private void open() {
+        for (int i = 0; i < 4 && this.breaker.getState() != CircuitState.OPEN; i++) {
+            this.fail();
+        }
+
+        Assert.assertEquals(CircuitState.OPEN, this.breaker.getState());
+    }
+
+    private void succeed() {
+        this.limiter.execute(Priority.READ, () -> "ok");
+    }
+
+    private void fail() {
+        try {
+            this.limiter.execute(Priority.READ, () -> {
+                throw new QueryTimeoutException("timed out");
+            });
+        } catch (QueryTimeoutException e) {
+            // Expected.
+        }
+    }
+}
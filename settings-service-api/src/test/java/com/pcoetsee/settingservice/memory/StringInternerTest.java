@@ -0,0 +1,70 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.memory;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Class used for testing the canonicalization of setting names and values.
+ */
+public class StringInternerTest {
+
+    /**
+     * This method tests that equal strings are handed back as the same instance once one has been interned.
+     */
+    @Test
+    public void testIntern() {
+        StringInterner stringInterner = new StringInterner(16, 32);
+        String first = new String("db.url".toCharArray());
+        String second = new String("db.url".toCharArray());
+
+        Assert.assertSame(first, stringInterner.intern(first));
+        Assert.assertSame(first, stringInterner.intern(second));
+        Assert.assertEquals(1, stringInterner.getHits());
+        Assert.assertEquals(1, stringInterner.getMisses());
+        Assert.assertEquals(16, stringInterner.getCapacity());
+        Assert.assertNull(stringInterner.intern(null));
+    }
+
+    /**
+     * This method tests that long strings are passed through, as is everything when interning is disabled.
+     */
+    @Test
+    public void testPassThrough() {
+        StringInterner stringInterner = new StringInterner(16, 4);
+        String longValue = new String("longer than four".toCharArray());
+
+        stringInterner.intern(longValue);
+        Assert.assertNotSame(longValue, stringInterner.intern(new String(longValue.toCharArray())));
+
+        StringInterner disabled = StringInterner.disabled();
+        String value = new String("true".toCharArray());
+
+        disabled.intern(value);
+        Assert.assertNotSame(value, disabled.intern(new String(value.toCharArray())));
+        Assert.assertEquals(0, disabled.getCapacity());
+    }
+}
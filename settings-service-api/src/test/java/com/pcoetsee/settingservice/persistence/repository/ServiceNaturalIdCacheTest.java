@@ -0,0 +1,144 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.persistence.repository;
+
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.service.ServicesService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Class used for testing that services looked up by name are served from the second-level cache, that the cache
+ * follows updates, and that logins bypass it.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ServiceNaturalIdCacheTest {
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private ServicesService servicesService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Statistics statistics;
+
+    @Before
+    public void init() {
+        this.statistics = this.entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * This method tests that once a service has been looked up, further lookups by name do not query the database.
+     */
+    @Test
+    public void testLookupServedFromCache() {
+        ServiceDAO saved = this.serviceRepository.save(this.service("naturalIdCached", "password"));
+
+        Assert.assertEquals(saved.getId(), this.serviceRepository.findByName("naturalIdCached").getId());
+
+        this.statistics.clear();
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(saved.getId(), this.serviceRepository.findByName("naturalIdCached").getId());
+        }
+
+        Assert.assertEquals(0, this.statistics.getNaturalIdQueryExecutionCount());
+        Assert.assertEquals(0, this.statistics.getEntityLoadCount());
+        Assert.assertEquals(3, this.statistics.getNaturalIdCacheHitCount());
+        Assert.assertNull(this.serviceRepository.findByName("naturalIdMissing"));
+        Assert.assertNull(this.serviceRepository.findByName(""));
+    }
+
+    /**
+     * This method tests that a lookup after an update or a rename sees the new values, not the cached ones.
+     */
+    @Test
+    public void testCacheFollowsUpdates() {
+        ServiceDAO saved = this.serviceRepository.save(this.service("naturalIdUpdated", "before"));
+        ServiceDAO found = this.serviceRepository.findByName("naturalIdUpdated");
+
+        found.setPassword("after");
+        found.setRole(Role.CREATE);
+        this.serviceRepository.save(found);
+
+        ServiceDAO updated = this.serviceRepository.findByName("naturalIdUpdated");
+
+        Assert.assertEquals("after", updated.getPassword());
+        Assert.assertEquals(Role.CREATE, updated.getRole());
+        Assert.assertEquals(saved.getVersion() + 1, updated.getVersion());
+
+        updated.setName("naturalIdRenamed");
+        this.serviceRepository.save(updated);
+
+        Assert.assertNull(this.serviceRepository.findByName("naturalIdUpdated"));
+        Assert.assertEquals(saved.getId(), this.serviceRepository.findByName("naturalIdRenamed").getId());
+    }
+
+    /**
+     * This method tests that a login sees a password changed through another node, which the cache of this node does
+     * not know about yet.
+     */
+    @Test
+    public void testLoginBypassesCache() {
+        this.serviceRepository.save(this.service("naturalIdLogin", "before"));
+        Assert.assertEquals("before", this.serviceRepository.findByName("naturalIdLogin").getPassword());
+
+        // Another node writes straight to the shared database, so this node's cache is not told.
+        this.jdbcTemplate.update("UPDATE `services` SET `password` = ?, `version` = `version` + 1 WHERE `name` = ?", "after", "naturalIdLogin");
+
+        Assert.assertEquals("before", this.serviceRepository.findByName("naturalIdLogin").getPassword());
+        Assert.assertEquals("after", this.serviceRepository.findByNameUncached("naturalIdLogin").getPassword());
+        Assert.assertEquals("after", this.servicesService.loadUserByUsername("naturalIdLogin").getPassword());
+        Assert.assertNull(this.serviceRepository.findByNameUncached("naturalIdMissing"));
+    }
+
+    private ServiceDAO service(String name, String password) {
+        ServiceDAO serviceDAO = new ServiceDAO();
+
+        serviceDAO.setName(name);
+        serviceDAO.setPassword(password);
+        serviceDAO.setRole(Role.READ);
+
+        return serviceDAO;
+    }
+}
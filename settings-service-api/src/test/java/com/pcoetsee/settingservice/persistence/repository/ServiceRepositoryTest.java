@@ -26,6 +26,7 @@ package com.pcoetsee.settingservice.persistence.repository;
 
 import com.pcoetsee.settingservice.persistence.dao.Role;
 import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.projection.ServiceSummary;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -35,7 +36,9 @@ import org.springframework.boot.jdbc.EmbeddedDatabaseConnection;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.time.ZonedDateTime;
@@ -173,4 +176,31 @@ public class ServiceRepositoryTest {
         Assert.assertNull(serviceDAO);
         Assert.assertEquals(serviceDAOS.getTotalElements() - 1, newServiceDAOS.getTotalElements());
     }
-}
\ No newline at end of file
+
+    /**
+     * This method tests that listing services reads the listed columns of every service, paged like the entities.
+     */
+    @Test
+    public void testFindAllSummaries() {
+        Page<ServiceDAO> serviceDAOS = this.serviceRepository.findAll(Pageable.unpaged());
+        Page<ServiceSummary> summaries = this.serviceRepository.findAllSummaries(Pageable.unpaged());
+
+        Assert.assertEquals(serviceDAOS.getTotalElements(), summaries.getTotalElements());
+
+        ServiceDAO serviceDAO = this.serviceRepository.findByName(ServiceRepositoryTest.SECOND_SERVICE_NAME);
+        ServiceSummary summary = summaries.stream()
+                .filter(candidate -> ServiceRepositoryTest.SECOND_SERVICE_NAME.equals(candidate.getName()))
+                .findFirst()
+                .orElse(null);
+
+        Assert.assertNotNull(summary);
+        Assert.assertEquals(serviceDAO.getRole(), summary.getRole());
+        Assert.assertEquals(serviceDAO.getCreationTime(), summary.getCreationTime());
+        Assert.assertEquals(serviceDAO.getVersion(), summary.getVersion());
+
+        Page<ServiceSummary> firstPage = this.serviceRepository.findAllSummaries(PageRequest.of(0, 1, Sort.by("name")));
+
+        Assert.assertEquals(1, firstPage.getNumberOfElements());
+        Assert.assertEquals(serviceDAOS.getTotalElements(), firstPage.getTotalElements());
+    }
+}
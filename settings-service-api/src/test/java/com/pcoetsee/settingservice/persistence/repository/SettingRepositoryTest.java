@@ -227,4 +227,23 @@ public class SettingRepositoryTest {
         Assert.assertNull(settingDAO);
         Assert.assertEquals(settingDAOS.getTotalElements() - 1, newSettingDAOS.getTotalElements());
     }
-}
\ No newline at end of file
+
+    /**
+     * This method tests that settings can be found by the ID of their service, without joining the services table.
+     */
+    @Test
+    public void testFindByServiceId() {
+        SettingDAO settingDAO = this.settingRepository.findByServiceDAOIdAndName(
+                SettingRepositoryTest.SERVICE_ID,
+                SettingRepositoryTest.FIRST_SETTING_NAME
+        );
+
+        Assert.assertNotNull(settingDAO);
+        Assert.assertEquals(SettingRepositoryTest.FIRST_SETTING_VALUE, settingDAO.getValue());
+
+        Page<SettingDAO> settingDAOS = this.settingRepository.findAllByServiceDAOId(SettingRepositoryTest.SERVICE_ID, Pageable.unpaged());
+
+        Assert.assertEquals(2, settingDAOS.getTotalElements());
+        Assert.assertNull(this.settingRepository.findByServiceDAOIdAndName(SettingRepositoryTest.SERVICE_ID, "missing"));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Class used for testing settings packed outside the heap.
+ */
+public class OffHeapSettingsSnapshotTest {
+
+    /**
+     * This method tests that every field of a setting survives being packed, including nulls and multi-byte characters.
+     */
+    @Test
+    public void testRoundTrip() {
+        ZonedDateTime dateLastUsed = ZonedDateTime.ofInstant(Instant.ofEpochMilli(1624000000123L), ZoneId.systemDefault());
+        ReplicatedSettingDTO plain = this.setting(1L, "plain", "v\u00E4lue \u2713 \uD83D\uDE00");
+        ReplicatedSettingDTO secret = this.setting(1L, "s\u00E9cret", "ciphertext");
+        ReplicatedSettingDTO empty = this.setting(2L, "empty", null);
+
+        plain.setVersion(7);
+        plain.setDateLastUsed(dateLastUsed);
+        secret.setSecret(true);
+        secret.setKeyVersion(3);
+
+        OffHeapSettingsSnapshot snapshot = OffHeapSettingsSnapshot.build(Arrays.asList(plain, secret, empty));
+
+        Assert.assertEquals(3, snapshot.size());
+        Assert.assertEquals(plain, snapshot.get(1L, "plain"));
+        Assert.assertEquals(secret, snapshot.get(1L, "s\u00E9cret"));
+        Assert.assertEquals(empty, snapshot.get(2L, "empty"));
+        Assert.assertNull(snapshot.get(2L, "plain"));
+        Assert.assertNull(snapshot.get(1L, "missing"));
+        Assert.assertNull(snapshot.get(null, "plain"));
+        Assert.assertTrue(snapshot.contains(1L, "plain"));
+        Assert.assertFalse(snapshot.contains(3L, "empty"));
+    }
+
+    /**
+     * This method tests that the settings of a service are listed by name, and that the last copy of a setting supplied
+     * twice is kept.
+     */
+    @Test
+    public void testGetAll() {
+        List<ReplicatedSettingDTO> settings = new ArrayList<>();
+
+        for (long serviceId = 1; serviceId <= 50; serviceId++) {
+            for (int i = 0; i < 40; i++) {
+                settings.add(this.setting(serviceId, "setting" + i, serviceId + "-" + i));
+            }
+        }
+
+        Collections.shuffle(settings);
+        settings.add(this.setting(20L, "setting5", "replaced"));
+
+        OffHeapSettingsSnapshot snapshot = OffHeapSettingsSnapshot.build(settings);
+        List<String> names = snapshot.getAll(20L).stream().map(ReplicatedSettingDTO::getName).collect(Collectors.toList());
+        List<String> expected = new ArrayList<>();
+
+        for (int i = 0; i < 40; i++) {
+            expected.add("setting" + i);
+        }
+
+        Collections.sort(expected);
+
+        Assert.assertEquals(2000, snapshot.size());
+        Assert.assertEquals(expected, names);
+        Assert.assertEquals("replaced", snapshot.get(20L, "setting5").getValue());
+        Assert.assertEquals("50-39", snapshot.get(50L, "setting39").getValue());
+        Assert.assertTrue(snapshot.getAll(51L).isEmpty());
+        Assert.assertTrue(OffHeapSettingsSnapshot.build(Collections.emptyList()).getAll(1L).isEmpty());
+    }
+
+    /**
+     * This method tests that the length of a string in UTF-8 is worked out the way the encoder writes it.
+     */
+    @Test
+    public void testUtf8Length() {
+        for (String string : Arrays.asList("", "ascii", "v\u00E4lue", "\u2713", "\uD83D\uDE00", "lone \uD83D surrogate")) {
+            Assert.assertEquals(string, string.getBytes(StandardCharsets.UTF_8).length, OffHeapSettingsSnapshot.utf8Length(string));
+        }
+    }
+
+    private ReplicatedSettingDTO setting(Long serviceId, String name, String value) {
+        ReplicatedSettingDTO setting = new ReplicatedSettingDTO();
+
+        setting.setServiceId(serviceId);
+        setting.setName(name);
+        setting.setValue(value);
+
+        return setting;
+    }
+}
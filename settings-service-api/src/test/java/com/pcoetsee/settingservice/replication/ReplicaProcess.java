@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.client.RemoteSettingsSource;
+import com.pcoetsee.settingservice.client.transport.UrlConnectionTransport;
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.dto.ReplicationStatusDTO;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A follower running in its own JVM, for {@link ReplicationMultiJvmTest}. It is driven over standard input, one command
+ * per line, and answers every command with one line on standard output:
+ * <ul>
+ *     <li>`get service setting` answers `value` followed by the value of the setting, or `missing`</li>
+ *     <li>`status` answers `status applied primary state resyncs`</li>
+ *     <li>`resync` asks for a new snapshot and answers `ok`</li>
+ *     <li>`exit` stops the follower and answers `bye`</li>
+ * </ul>
+ * Every answer starts with {@link #ANSWER}, so log lines written to standard output in between can be told apart.
+ */
+public class ReplicaProcess {
+
+    static final String ANSWER = "replica> ";
+
+    /**
+     * @param args the URL of the primary node, the name and the password of a service with the full role
+     */
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        ReplicaStore replicaStore = new ReplicaStore();
+        ReplicationFollower follower = new ReplicationFollower(
+                new UrlConnectionTransport(args[0], 2000, 10000),
+                RemoteSettingsSource.basicAuthorization(args[1], args[2]),
+                objectMapper,
+                replicaStore,
+                100,
+                1000,
+                200
+        );
+
+        follower.start();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            String[] command = line.trim().split(" ");
+
+            switch (command[0]) {
+                case "get":
+                    ReplicatedSettingDTO setting = replicaStore.getSetting(command[1], command[2]);
+                    ReplicaProcess.answer(setting == null ? "missing" : "value " + setting.getValue());
+                    break;
+                case "status":
+                    ReplicationStatusDTO status = follower.getStatus();
+                    ReplicaProcess.answer("status " + status.getAppliedSequence() + " " + status.getPrimarySequence() + " "
+                            + status.getState() + " " + status.getResyncs());
+                    break;
+                case "resync":
+                    follower.requestResync();
+                    ReplicaProcess.answer("ok");
+                    break;
+                case "exit":
+                    follower.stop();
+                    ReplicaProcess.answer("bye");
+                    return;
+                default:
+                    ReplicaProcess.answer("unknown " + command[0]);
+            }
+        }
+
+        follower.stop();
+    }
+
+    private static void answer(String answer) {
+        System.out.println(ANSWER + answer);
+        System.out.flush();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicatedServiceDTO;
+import com.pcoetsee.settingservice.dto.ReplicatedSettingDTO;
+import com.pcoetsee.settingservice.dto.ReplicationChangeDTO;
+import com.pcoetsee.settingservice.dto.ReplicationSnapshotDTO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Class used for testing the settings a follower holds, on and off the heap.
+ */
+public class ReplicaStoreTest {
+
+    /**
+     * This method tests that changes applied after a snapshot are read back the same way on and off the heap.
+     */
+    @Test
+    public void testApplyChanges() {
+        for (boolean offHeap : new boolean[]{false, true}) {
+            ReplicaStore replicaStore = new ReplicaStore(offHeap);
+
+            replicaStore.load(this.snapshot(10));
+            replicaStore.apply(this.change(Collections.singletonList(this.setting("setting3", "changed")), Collections.singletonList("setting5")));
+            replicaStore.apply(this.change(Collections.singletonList(this.setting("added", "new")), Collections.singletonList("unknown")));
+
+            Assert.assertEquals("changed", replicaStore.getSetting("service", "setting3").getValue());
+            Assert.assertEquals("new", replicaStore.getSetting("service", "added").getValue());
+            Assert.assertEquals("7", replicaStore.getSetting("service", "setting7").getValue());
+            Assert.assertNull(replicaStore.getSetting("service", "setting5"));
+            Assert.assertEquals(10, replicaStore.getSettingCount());
+            Assert.assertEquals(
+                    Arrays.asList("added", "setting0", "setting1", "setting2", "setting3", "setting4", "setting6", "setting7", "setting8", "setting9"),
+                    replicaStore.getSettings("service").stream().map(ReplicatedSettingDTO::getName).collect(Collectors.toList())
+            );
+
+            replicaStore.apply(this.change(Collections.singletonList(this.setting("setting5", "back")), Collections.emptyList()));
+
+            Assert.assertEquals("back", replicaStore.getSetting("service", "setting5").getValue());
+            Assert.assertEquals(11, replicaStore.getSettingCount());
+            Assert.assertEquals(offHeap, replicaStore.getOffHeapBytes() > 0);
+        }
+    }
+
+    /**
+     * This method tests that once enough changes have been applied off the heap they are packed into a new snapshot
+     * without losing any.
+     */
+    @Test
+    public void testCompaction() {
+        ReplicaStore replicaStore = new ReplicaStore(true);
+        replicaStore.load(this.snapshot(100));
+
+        long packedBytes = replicaStore.getOffHeapBytes();
+
+        for (int i = 0; i < 12000; i++) {
+            replicaStore.apply(this.change(Collections.singletonList(this.setting("added" + i, String.valueOf(i))), Collections.emptyList()));
+        }
+
+        Assert.assertTrue(replicaStore.getOffHeapBytes() > packedBytes);
+        Assert.assertEquals(12100, replicaStore.getSettingCount());
+        Assert.assertEquals(12100, replicaStore.getSettings("service").size());
+        Assert.assertEquals("11999", replicaStore.getSetting("service", "added11999").getValue());
+        Assert.assertEquals("42", replicaStore.getSetting("service", "setting42").getValue());
+    }
+
+    private ReplicationSnapshotDTO snapshot(int settings) {
+        ReplicatedServiceDTO service = new ReplicatedServiceDTO();
+        ReplicationSnapshotDTO snapshot = new ReplicationSnapshotDTO();
+        List<ReplicatedSettingDTO> settingDTOs = new ArrayList<>();
+
+        service.setId(1L);
+        service.setName("service");
+
+        for (int i = 0; i < settings; i++) {
+            settingDTOs.add(this.setting("setting" + i, String.valueOf(i)));
+        }
+
+        snapshot.setServices(Collections.singletonList(service));
+        snapshot.setSettings(settingDTOs);
+        snapshot.setRevisions(Collections.singletonMap(1L, 1L));
+
+        return snapshot;
+    }
+
+    private ReplicationChangeDTO change(List<ReplicatedSettingDTO> settings, List<String> deletedSettings) {
+        ReplicationChangeDTO change = new ReplicationChangeDTO();
+
+        change.setServiceId(1L);
+        change.setRevision(2);
+        change.setSettings(settings);
+        change.setDeletedSettings(deletedSettings);
+
+        return change;
+    }
+
+    private ReplicatedSettingDTO setting(String name, String value) {
+        ReplicatedSettingDTO setting = new ReplicatedSettingDTO();
+
+        setting.setServiceId(1L);
+        setting.setName(name);
+        setting.setValue(value);
+
+        return setting;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.ReplicationBatchDTO;
+import com.pcoetsee.settingservice.dto.ReplicationChangeDTO;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class used for testing the log of changes followers read from.
+ */
+public class ReplicationLogTest {
+
+    /**
+     * This method tests that changes are numbered in order and returned after the last one applied, a batch at a time.
+     */
+    @Test
+    public void testReadAfterSequence() throws Exception {
+        ReplicationLog log = new ReplicationLog(10);
+        String streamId = log.getStreamId();
+
+        for (long serviceId = 1; serviceId <= 5; serviceId++) {
+            Assert.assertEquals(serviceId, log.append(this.change(serviceId)));
+        }
+
+        ReplicationBatchDTO batch = log.read(streamId, 1, 3, 0);
+
+        Assert.assertFalse(batch.isResyncRequired());
+        Assert.assertEquals(5, batch.getHeadSequence());
+        Assert.assertEquals(3, batch.getChanges().size());
+        Assert.assertEquals(2, batch.getChanges().get(0).getSequence());
+        Assert.assertEquals(Long.valueOf(4), batch.getChanges().get(2).getServiceId());
+        Assert.assertTrue(log.read(streamId, 5, 3, 0).getChanges().isEmpty());
+    }
+
+    /**
+     * This method tests that a follower waiting for changes is woken up as soon as one is recorded.
+     */
+    @Test
+    public void testReadWaitsForChange() throws Exception {
+        ReplicationLog log = new ReplicationLog(10);
+        String streamId = log.getStreamId();
+
+        CompletableFuture<ReplicationBatchDTO> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return log.read(streamId, 0, 10, TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(100);
+        Assert.assertFalse(waiting.isDone());
+
+        log.append(this.change(7L));
+
+        ReplicationBatchDTO batch = waiting.get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, batch.getChanges().size());
+        Assert.assertEquals(Long.valueOf(7), batch.getChanges().get(0).getServiceId());
+    }
+
+    /**
+     * This method tests that a follower is told to load a snapshot when the changes it needs are no longer held, when
+     * it follows another stream or when the stream was reset.
+     */
+    @Test
+    public void testResyncRequired() throws Exception {
+        ReplicationLog log = new ReplicationLog(3);
+        String streamId = log.getStreamId();
+
+        for (long serviceId = 1; serviceId <= 5; serviceId++) {
+            log.append(this.change(serviceId));
+        }
+
+        Assert.assertTrue(log.read(streamId, 1, 10, 0).isResyncRequired());
+        Assert.assertFalse(log.read(streamId, 2, 10, 0).isResyncRequired());
+        Assert.assertTrue(log.read(streamId, 6, 10, 0).isResyncRequired());
+        Assert.assertTrue(log.read("another-stream", 5, 10, 0).isResyncRequired());
+        Assert.assertTrue(log.read(null, 5, 10, 0).isResyncRequired());
+
+        log.reset();
+
+        ReplicationBatchDTO batch = log.read(streamId, 5, 10, TimeUnit.SECONDS.toMillis(30));
+
+        Assert.assertTrue(batch.isResyncRequired());
+        Assert.assertNotEquals(streamId, batch.getStreamId());
+        Assert.assertEquals(log.getStreamId(), log.startSnapshot().getStreamId());
+        Assert.assertEquals(5, log.startSnapshot().getSequence());
+    }
+
+    private ReplicationChangeDTO change(Long serviceId) {
+        ReplicationChangeDTO change = new ReplicationChangeDTO();
+
+        change.setServiceId(serviceId);
+
+        return change;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.replication;
+
+import com.pcoetsee.settingservice.dto.SettingChangeDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * Class used for testing that followers running in other JVMs load the settings of this node and keep up with it.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "spring.datasource.url=jdbc:h2:mem:replicationdb;Mode=MYSQL;DB_CLOSE_ON_EXIT=FALSE",
+                "settings.replication.role=primary",
+                "settings.replication.poll-timeout-ms=1000"
+        }
+)
+@WithMockUser(username = ReplicationMultiJvmTest.SERVICE_NAME, authorities = "READ")
+public class ReplicationMultiJvmTest {
+
+    /**
+     * Name of the service the replicated settings belong to, also the name of the authenticated service.
+     */
+    static final String SERVICE_NAME = "replicationTest";
+
+    /**
+     * Name of the service the followers authenticate as.
+     */
+    private static final String FOLLOWER_NAME = "replicationFollower";
+    private static final String FOLLOWER_PASSWORD = "followerPassword";
+
+    private static final long TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    /**
+     * This method creates the service the settings belong to and the service the followers authenticate as.
+     */
+    @Before
+    public void init() {
+        if (this.serviceRepository.findByName(SERVICE_NAME) == null) {
+            this.serviceRepository.save(this.service(SERVICE_NAME, "password", Role.READ));
+            this.serviceRepository.save(this.service(FOLLOWER_NAME, this.bCryptPasswordEncoder.encode(FOLLOWER_PASSWORD), Role.FULL));
+        }
+    }
+
+    /**
+     * This method tests that two followers load the settings written before they started, apply the changes written
+     * afterwards, catch up completely, and load a new snapshot when asked to.
+     */
+    @Test
+    public void testFollowersReplicate() throws Exception {
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("replicated", "before"));
+
+        try (Replica first = new Replica(this.port); Replica second = new Replica(this.port)) {
+            first.await("get " + SERVICE_NAME + " replicated", "value before"::equals);
+            second.await("get " + SERVICE_NAME + " replicated", "value before"::equals);
+
+            this.settingsService.saveSetting(SERVICE_NAME, this.setting("replicated", "after"));
+            this.settingsService.saveSetting(SERVICE_NAME, this.setting("added", "new"));
+
+            first.await("get " + SERVICE_NAME + " replicated", "value after"::equals);
+            first.await("get " + SERVICE_NAME + " added", "value new"::equals);
+            second.await("get " + SERVICE_NAME + " added", "value new"::equals);
+
+            String[] status = first.await("status", answer -> {
+                String[] parts = answer.split(" ");
+                return parts[1].equals(parts[2]) && "STREAMING".equals(parts[3]);
+            }).split(" ");
+
+            Assert.assertEquals("1", status[4]);
+
+            SettingChangeDTO delete = new SettingChangeDTO();
+            SettingChangeSetDTO changeSet = new SettingChangeSetDTO();
+
+            delete.setName("added");
+            delete.setDelete(true);
+            changeSet.getChanges().add(delete);
+            this.settingsService.applyChangeSet(SERVICE_NAME, changeSet);
+            second.await("get " + SERVICE_NAME + " added", "missing"::equals);
+
+            Assert.assertEquals("ok", second.ask("resync"));
+            second.await("status", answer -> "2".equals(answer.split(" ")[4]) && "STREAMING".equals(answer.split(" ")[3]));
+            Assert.assertEquals("value after", second.ask("get " + SERVICE_NAME + " replicated"));
+            Assert.assertEquals("missing", second.ask("get " + SERVICE_NAME + " added"));
+        }
+    }
+
+    private ServiceDAO service(String name, String password, Role role) {
+        ServiceDAO serviceDAO = new ServiceDAO();
+
+        serviceDAO.setName(name);
+        serviceDAO.setPassword(password);
+        serviceDAO.setRole(role);
+        serviceDAO.setCreationTime(0L);
+
+        return serviceDAO;
+    }
+
+    private SettingDTO setting(String name, String value) {
+        SettingDTO settingDTO = new SettingDTO();
+
+        settingDTO.setName(name);
+        settingDTO.setValue(value);
+
+        return settingDTO;
+    }
+
+    /**
+     * A {@link ReplicaProcess} running in a JVM of its own, using the class path of this one.
+     */
+    private static final class Replica implements AutoCloseable {
+
+        private final Process process;
+        private final Writer input;
+        private final BufferedReader output;
+
+        private Replica(int port) throws IOException {
+            this.process = new ProcessBuilder(
+                    System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                    "-cp", System.getProperty("java.class.path"),
+                    ReplicaProcess.class.getName(),
+                    "http://localhost:" + port,
+                    FOLLOWER_NAME,
+                    FOLLOWER_PASSWORD
+            ).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            this.input = new OutputStreamWriter(this.process.getOutputStream(), StandardCharsets.UTF_8);
+            this.output = new BufferedReader(new InputStreamReader(this.process.getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Sends a command and returns the answer, skipping whatever the replica logged in between.
+         */
+        private String ask(String command) throws IOException {
+            this.input.write(command + "\n");
+            this.input.flush();
+
+            String line;
+
+            while ((line = this.output.readLine()) != null) {
+                if (line.startsWith(ReplicaProcess.ANSWER)) {
+                    return line.substring(ReplicaProcess.ANSWER.length());
+                }
+            }
+
+            throw new IOException("The replica exited before answering [" + command + "]");
+        }
+
+        /**
+         * Repeats a command until the answer is the expected one.
+         */
+        private String await(String command, Predicate<String> expected) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            String answer = this.ask(command);
+
+            while (!expected.test(answer)) {
+                if (System.currentTimeMillis() > deadline) {
+                    Assert.fail("The replica answered [" + answer + "] to [" + command + "] for too long");
+                }
+
+                Thread.sleep(50);
+                answer = this.ask(command);
+            }
+
+            return answer;
+        }
+
+        @Override
+        public void close() throws Exception {
+            try {
+                this.ask("exit");
+            } catch (IOException e) {
+                // The replica is stopped below either way.
+            }
+
+            if (!this.process.waitFor(10, TimeUnit.SECONDS)) {
+                this.process.destroyForcibly();
+            }
+        }
+    }
+}
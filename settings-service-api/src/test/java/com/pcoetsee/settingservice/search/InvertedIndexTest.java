@@ -0,0 +1,87 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * Class used for testing the in-memory inverted index behind settings search.
+ */
+public class InvertedIndexTest {
+
+    /**
+     * This method tests that text is split into distinct lower case tokens on anything that is not a letter or digit.
+     */
+    @Test
+    public void testTokenize() {
+        Assert.assertArrayEquals(
+                new String[]{"db", "url", "jdbc", "mysql", "db01", "example", "com", "3306"},
+                InvertedIndex.tokenize("db.url", "jdbc:mysql://DB01.example.com:3306/db")
+        );
+        Assert.assertArrayEquals(new String[0], InvertedIndex.tokenize(null, " -- "));
+    }
+
+    /**
+     * This method tests that only documents containing every term are found, and that prefix terms match.
+     */
+    @Test
+    public void testSearch() {
+        InvertedIndex<String> index = new InvertedIndex<>();
+
+        index.put("a", InvertedIndex.tokenize("db.url", "jdbc:mysql://db01.example.com/app"));
+        index.put("b", InvertedIndex.tokenize("cache.host", "db01.example.com"));
+        index.put("c", InvertedIndex.tokenize("feature.legacy-checkout", "true"));
+
+        Assert.assertEquals(new HashSet<>(Arrays.asList("a", "b")), index.search(Arrays.asList("db01", "example")));
+        Assert.assertEquals(Collections.singleton("a"), index.search(Arrays.asList("db01", "mysql")));
+        Assert.assertEquals(Collections.singleton("c"), index.search(Collections.singletonList("leg*")));
+        Assert.assertTrue(index.search(Arrays.asList("db01", "missing")).isEmpty());
+    }
+
+    /**
+     * This method tests that replacing and removing a document drops the tokens it no longer contains.
+     */
+    @Test
+    public void testReplaceAndRemove() {
+        InvertedIndex<String> index = new InvertedIndex<>();
+
+        index.put("a", InvertedIndex.tokenize("host", "old.example.com"));
+        index.put("a", InvertedIndex.tokenize("host", "new.example.com"));
+
+        Assert.assertTrue(index.search(Collections.singletonList("old")).isEmpty());
+        Assert.assertEquals(Collections.singleton("a"), index.search(Collections.singletonList("new")));
+        Assert.assertEquals(1, index.documentCount());
+
+        index.remove("a");
+
+        Assert.assertEquals(0, index.documentCount());
+        Assert.assertEquals(0, index.tokenCount());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.secret;
+
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class used for testing that secrets encrypted with an old key are re-encrypted with the active key.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:secretrotationdb;Mode=MYSQL;DB_CLOSE_ON_EXIT=FALSE",
+        "settings.secrets.keys.1=test-secret-settings-key",
+        "settings.secrets.keys.2=second-secret-settings-key",
+        "settings.secrets.active-key=2",
+        "settings.secrets.rotation-pause-ms=0"
+})
+public class SecretRotationJobTest {
+
+    private static final String SERVICE_NAME = "secretRotationTest";
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private SecretRotationJob secretRotationJob;
+
+    @Autowired
+    private SecretSettingCipher secretSettingCipher;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RecordedEvents recordedEvents;
+
+    /**
+     * This method tests that a secret encrypted with an old key is re-encrypted with the active key, keeps its value and
+     * version, and that the change is published with the name of the service it belongs to.
+     */
+    @Test
+    public void testRotateToActiveKey() {
+        ServiceDAO serviceDAO = new ServiceDAO();
+
+        serviceDAO.setName(SERVICE_NAME);
+        serviceDAO.setPassword("password");
+        serviceDAO.setRole(Role.READ);
+        serviceDAO.setCreationTime(0L);
+        serviceDAO = this.serviceRepository.save(serviceDAO);
+
+        SecretSettingsProperties oldKey = new SecretSettingsProperties();
+
+        oldKey.getKeys().put(1, "test-secret-settings-key");
+        oldKey.setActiveKey(1);
+
+        String encrypted = new SecretSettingCipher(oldKey, new SimpleMeterRegistry()).encrypt("password");
+
+        this.jdbcTemplate.update(
+                "INSERT INTO `settings` (`service_id`, `name`, `value`, `secret`, `key_version`, `version`) VALUES (?, ?, ?, TRUE, 1, 3)",
+                serviceDAO.getId(), "rotated", encrypted
+        );
+
+        this.secretRotationJob.rotate();
+
+        Map<String, Object> row = this.jdbcTemplate.queryForMap(
+                "SELECT `value`, `key_version`, `version` FROM `settings` WHERE `service_id` = ? AND `name` = 'rotated'", serviceDAO.getId());
+
+        Assert.assertEquals(2, ((Number) row.get("key_version")).intValue());
+        Assert.assertEquals(3L, ((Number) row.get("version")).longValue());
+        Assert.assertNotEquals(encrypted, row.get("value"));
+        Assert.assertEquals("password", this.secretSettingCipher.decrypt((String) row.get("value"), 2));
+
+        Assert.assertEquals(1, this.recordedEvents.events.size());
+
+        SettingsChangedEvent event = this.recordedEvents.events.get(0);
+
+        Assert.assertEquals(serviceDAO.getId(), event.getServiceId());
+        Assert.assertEquals(SERVICE_NAME, event.getServiceName());
+        Assert.assertTrue(event.getSettingNames().contains("rotated"));
+    }
+
+    @TestConfiguration
+    static class RecordedEventsConfiguration {
+
+        @Bean
+        RecordedEvents recordedEvents() {
+            return new RecordedEvents();
+        }
+    }
+
+    /**
+     * Records the settings changes published while the test runs.
+     */
+    static class RecordedEvents {
+
+        private final List<SettingsChangedEvent> events = new CopyOnWriteArrayList<>();
+
+        @EventListener
+        public void onSettingsChanged(SettingsChangedEvent event) {
+            this.events.add(event);
+        }
+    }
+}
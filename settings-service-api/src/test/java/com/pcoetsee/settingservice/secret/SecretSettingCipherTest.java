@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.secret;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class used for testing the encryption and caching of secret setting values.
+ */
+public class SecretSettingCipherTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private SecretSettingsProperties properties;
+
+    @Before
+    public void init() {
+        this.meterRegistry = new SimpleMeterRegistry();
+        this.properties = new SecretSettingsProperties();
+        this.properties.getKeys().put(1, "first-test-key");
+        this.properties.getKeys().put(2, "second-test-key");
+        this.properties.setActiveKey(2);
+    }
+
+    /**
+     * This method tests that values encrypted with an old key can still be decrypted after the active key changes.
+     */
+    @Test
+    public void testDecryptWithOldKey() {
+        this.properties.setActiveKey(1);
+        String encrypted = new SecretSettingCipher(this.properties, this.meterRegistry).encrypt("password");
+
+        this.properties.setActiveKey(2);
+        SecretSettingCipher cipher = new SecretSettingCipher(this.properties, new SimpleMeterRegistry());
+
+        Assert.assertNotEquals("password", encrypted);
+        Assert.assertEquals("password", cipher.decrypt(encrypted, 1));
+        Assert.assertEquals(Integer.valueOf(2), cipher.getActiveKeyVersion());
+    }
+
+    /**
+     * This method tests that a value is only decrypted once, until it is evicted.
+     */
+    @Test
+    public void testDecryptedValueIsCachedUntilEvicted() {
+        SecretSettingCipher cipher = new SecretSettingCipher(this.properties, this.meterRegistry);
+        String encrypted = cipher.encrypt("password");
+
+        Assert.assertEquals("password", cipher.decrypt(encrypted, 2));
+        Assert.assertEquals(1.0, this.meterRegistry.get("settings.secrets.cache.requests").tag("result", "hit").counter().count(), 0.0);
+
+        cipher.evict(encrypted);
+
+        Assert.assertEquals("password", cipher.decrypt(encrypted, 2));
+        Assert.assertEquals(1.0, this.meterRegistry.get("settings.secrets.cache.requests").tag("result", "miss").counter().count(), 0.0);
+    }
+
+    /**
+     * This method tests that encryption is refused when no active key is configured.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testEncryptWhenDisabled() {
+        this.properties.setActiveKey(null);
+        SecretSettingCipher cipher = new SecretSettingCipher(this.properties, this.meterRegistry);
+
+        Assert.assertFalse(cipher.isEnabled());
+        cipher.encrypt("password");
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import com.pcoetsee.settingservice.dto.ApiKeyDTO;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.service.ApiKeyService;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Class used for testing how the API key filter reads the authorization header.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WithMockUser(username = ApiKeyAuthenticationFilterTest.SERVICE_NAME, authorities = "READ")
+public class ApiKeyAuthenticationFilterTest {
+
+    /**
+     * Name of the service the key belongs to, also the name of the service that creates it.
+     */
+    static final String SERVICE_NAME = "apiKeyFilterTest";
+
+    /**
+     * Created once, since a service may only hold a few keys that do not expire.
+     */
+    private static ApiKeyDTO apiKeyDTO;
+
+    @Autowired
+    private ApiKeyService apiKeyService;
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    private ApiKeyAuthenticationFilter filter;
+
+    /**
+     * This method creates the service and its key, if an earlier test has not yet, and starts every test without an
+     * authenticated service.
+     */
+    @Before
+    public void init() throws Exception {
+        if (this.serviceRepository.findByName(SERVICE_NAME) == null) {
+            ServiceDAO serviceDAO = new ServiceDAO();
+
+            serviceDAO.setName(SERVICE_NAME);
+            serviceDAO.setPassword("password");
+            serviceDAO.setRole(Role.READ);
+            serviceDAO.setCreationTime(0L);
+
+            this.serviceRepository.save(serviceDAO);
+        }
+
+        if (apiKeyDTO == null) {
+            apiKeyDTO = this.apiKeyService.createApiKey(SERVICE_NAME);
+        }
+
+        this.filter = new ApiKeyAuthenticationFilter(this.apiKeyService);
+        SecurityContextHolder.clearContext();
+    }
+
+    @After
+    public void cleanUp() {
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * This method tests that a valid key authenticates the request as its service, with the role of the service.
+     */
+    @Test
+    public void testValidKey() throws Exception {
+        MockFilterChain chain = this.filter("ApiKey " + apiKeyDTO.getKeyId() + ":" + apiKeyDTO.getSecret(), HttpServletResponse.SC_OK);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+
+        Assert.assertNotNull(chain.getRequest());
+        Assert.assertNotNull(authentication);
+        Assert.assertEquals(SERVICE_NAME, authentication.getName());
+        Assert.assertEquals(apiKeyDTO.getKeyId(), authentication.getDetails());
+        Assert.assertTrue(authentication.getAuthorities().contains(Role.READ));
+    }
+
+    /**
+     * This method tests that the scheme is matched regardless of case, and surrounding whitespace is ignored.
+     */
+    @Test
+    public void testSchemeCaseAndWhitespace() throws Exception {
+        this.filter("apikey   " + apiKeyDTO.getKeyId() + ":" + apiKeyDTO.getSecret() + " ", HttpServletResponse.SC_OK);
+
+        Assert.assertEquals(SERVICE_NAME, SecurityContextHolder.getContext().getAuthentication().getName());
+    }
+
+    /**
+     * This method tests that requests without an API key are passed on untouched, for other authentication methods.
+     */
+    @Test
+    public void testOtherSchemesPassThrough() throws Exception {
+        Assert.assertNotNull(this.filter(null, HttpServletResponse.SC_OK).getRequest());
+        Assert.assertNotNull(this.filter("Basic dXNlcjpwYXNzd29yZA==", HttpServletResponse.SC_OK).getRequest());
+        Assert.assertNotNull(this.filter("ApiKeyX " + apiKeyDTO.getKeyId() + ":" + apiKeyDTO.getSecret(), HttpServletResponse.SC_OK).getRequest());
+        Assert.assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    /**
+     * This method tests that malformed credentials and wrong secrets are refused without reaching the rest of the
+     * chain.
+     */
+    @Test
+    public void testInvalidCredentialsRefused() throws Exception {
+        String[] headers = {
+                "ApiKey " + apiKeyDTO.getKeyId(),
+                "ApiKey :" + apiKeyDTO.getSecret(),
+                "ApiKey " + apiKeyDTO.getKeyId() + ":",
+                "ApiKey " + apiKeyDTO.getKeyId() + ":" + apiKeyDTO.getSecret() + "x",
+                "ApiKey ak_unknown:" + apiKeyDTO.getSecret(),
+                "ApiKey "
+        };
+
+        for (String header : headers) {
+            Assert.assertNull(header, this.filter(header, HttpServletResponse.SC_UNAUTHORIZED).getRequest());
+            Assert.assertNull(header, SecurityContextHolder.getContext().getAuthentication());
+        }
+    }
+
+    private MockFilterChain filter(String authorization, int expectedStatus) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/services/" + SERVICE_NAME + "/settings");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        if (authorization != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+
+        this.filter.doFilter(request, response, chain);
+
+        Assert.assertEquals(authorization, expectedStatus, response.getStatus());
+
+        return chain;
+    }
+}
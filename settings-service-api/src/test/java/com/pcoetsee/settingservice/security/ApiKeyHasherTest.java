@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Class used for testing the hashing and verification of API key secrets.
+ */
+public class ApiKeyHasherTest {
+
+    private static final String SECRET = "theSecret";
+
+    /**
+     * This method tests that a secret matches its own hash, and that other secrets do not.
+     */
+    @Test
+    public void testMatches() {
+        ApiKeyHasher apiKeyHasher = new ApiKeyHasher("serverSecret");
+        byte[] hash = apiKeyHasher.hash(ApiKeyHasherTest.SECRET);
+
+        Assert.assertTrue(apiKeyHasher.matches(ApiKeyHasherTest.SECRET, hash));
+        Assert.assertFalse(apiKeyHasher.matches("theSecreT", hash));
+        Assert.assertFalse(apiKeyHasher.matches(null, hash));
+        Assert.assertFalse(apiKeyHasher.matches(ApiKeyHasherTest.SECRET, null));
+    }
+
+    /**
+     * This method tests that hashes depend on the server side secret, so a stolen table can not be checked without it.
+     */
+    @Test
+    public void testHashDependsOnServerSecret() {
+        byte[] hash = new ApiKeyHasher("serverSecret").hash(ApiKeyHasherTest.SECRET);
+
+        Assert.assertFalse(new ApiKeyHasher("otherServerSecret").matches(ApiKeyHasherTest.SECRET, hash));
+    }
+
+    /**
+     * This method tests that a missing server side secret is rejected.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBlankServerSecret() {
+        new ApiKeyHasher(" ");
+    }
+}
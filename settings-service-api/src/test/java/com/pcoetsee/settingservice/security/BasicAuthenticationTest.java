@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import com.pcoetsee.settingservice.limiter.CircuitState;
+import com.pcoetsee.settingservice.limiter.DatabaseCircuitBreaker;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+
+/**
+ * Class used for testing how logins with a service name and password are answered when they fail.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:basicauthdb;Mode=MYSQL;DB_CLOSE_ON_EXIT=FALSE",
+        "settings.circuit-breaker.window-size=1",
+        "settings.circuit-breaker.minimum-calls=1",
+        "settings.circuit-breaker.half-open-calls=1",
+        "settings.circuit-breaker.open-ms=" + BasicAuthenticationTest.OPEN_MS
+})
+@AutoConfigureMockMvc
+public class BasicAuthenticationTest {
+
+    /**
+     * How long the circuit stays open in these tests, in milliseconds.
+     */
+    static final long OPEN_MS = 500;
+
+    private static final String SERVICE_NAME = "basicAuthenticationTest";
+    private static final String PASSWORD = "password";
+    private static final String PATH = "/services/" + SERVICE_NAME + "/settings";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    @Autowired
+    private DatabaseCircuitBreaker databaseCircuitBreaker;
+
+    /**
+     * This method creates the service, if an earlier test has not yet.
+     */
+    @Before
+    public void init() {
+        if (this.serviceRepository.findByName(SERVICE_NAME) == null) {
+            ServiceDAO serviceDAO = new ServiceDAO();
+
+            serviceDAO.setName(SERVICE_NAME);
+            serviceDAO.setPassword(this.bCryptPasswordEncoder.encode(PASSWORD));
+            serviceDAO.setRole(Role.READ);
+            serviceDAO.setCreationTime(0L);
+
+            this.serviceRepository.save(serviceDAO);
+        }
+    }
+
+    /**
+     * This method tests that wrong credentials are refused with a challenge to log in again.
+     */
+    @Test
+    public void testWrongPassword() throws Exception {
+        this.mockMvc.perform(MockMvcRequestBuilders.get(PATH).with(SecurityMockMvcRequestPostProcessors.httpBasic(SERVICE_NAME, "wrong")))
+                .andExpect(MockMvcResultMatchers.status().isUnauthorized())
+                .andExpect(MockMvcResultMatchers.header().exists(HttpHeaders.WWW_AUTHENTICATE));
+        this.mockMvc.perform(MockMvcRequestBuilders.get(PATH).with(SecurityMockMvcRequestPostProcessors.httpBasic("noSuchService", PASSWORD)))
+                .andExpect(MockMvcResultMatchers.status().isUnauthorized());
+    }
+
+    /**
+     * This method tests that a login that can not be checked while the database is unavailable is answered with 503
+     * Service Unavailable, not as if the credentials were wrong.
+     */
+    @Test
+    public void testDatabaseUnavailable() throws Exception {
+        this.databaseCircuitBreaker.onResult(0, true);
+
+        Assert.assertEquals(CircuitState.OPEN, this.databaseCircuitBreaker.getState());
+
+        try {
+            this.mockMvc.perform(MockMvcRequestBuilders.get(PATH).with(SecurityMockMvcRequestPostProcessors.httpBasic(SERVICE_NAME, PASSWORD)))
+                    .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                    .andExpect(MockMvcResultMatchers.header().doesNotExist(HttpHeaders.WWW_AUTHENTICATE));
+        } finally {
+            // Closes the circuit again with a successful trial call, for the other tests.
+            Thread.sleep(OPEN_MS + 50);
+            Assert.assertTrue(this.databaseCircuitBreaker.tryAcquire());
+            this.databaseCircuitBreaker.onResult(0, false);
+        }
+
+        Assert.assertEquals(CircuitState.CLOSED, this.databaseCircuitBreaker.getState());
+    }
+}
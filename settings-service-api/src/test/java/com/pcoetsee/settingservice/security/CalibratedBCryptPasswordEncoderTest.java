@@ -0,0 +1,78 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Class used for testing the password encoder that upgrades hashes to its own strength.
+ */
+public class CalibratedBCryptPasswordEncoderTest {
+
+    private static final String PASSWORD = "password";
+
+    /**
+     * This method tests that hashes created with any other strength are flagged for upgrading, in both directions.
+     */
+    @Test
+    public void testUpgradeEncoding() {
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(5, new SimpleMeterRegistry());
+
+        Assert.assertFalse(encoder.upgradeEncoding(encoder.encode(PASSWORD)));
+        Assert.assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode(PASSWORD)));
+        Assert.assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(6).encode(PASSWORD)));
+        Assert.assertFalse(encoder.upgradeEncoding(null));
+        Assert.assertFalse(encoder.upgradeEncoding("not a bcrypt hash"));
+    }
+
+    /**
+     * This method tests that verification times are recorded separately for matches and mismatches.
+     */
+    @Test
+    public void testMatchesIsTimed() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CalibratedBCryptPasswordEncoder encoder = new CalibratedBCryptPasswordEncoder(4, meterRegistry);
+        String hash = encoder.encode(PASSWORD);
+
+        Assert.assertTrue(encoder.matches(PASSWORD, hash));
+        Assert.assertFalse(encoder.matches("wrong", hash));
+        Assert.assertFalse(encoder.matches("wrong", hash));
+
+        Assert.assertEquals(1, meterRegistry.get("settings.security.password.verify").tag("outcome", "matched").timer().count());
+        Assert.assertEquals(2, meterRegistry.get("settings.security.password.verify").tag("outcome", "mismatched").timer().count());
+    }
+
+    /**
+     * This method tests that calibration stays within the configured bounds.
+     */
+    @Test
+    public void testCalibrationBounds() {
+        Assert.assertEquals(4, new BCryptStrengthCalibrator(4, 6).calibrate(0));
+        Assert.assertEquals(6, new BCryptStrengthCalibrator(4, 6).calibrate(60000));
+    }
+}
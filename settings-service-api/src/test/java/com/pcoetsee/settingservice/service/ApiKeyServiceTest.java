@@ -0,0 +1,186 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.service;
+
+import com.pcoetsee.settingservice.dto.ApiKeyDTO;
+import com.pcoetsee.settingservice.dto.ServiceDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.security.ActiveApiKey;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+/**
+ * Class used for testing the creation, rotation, expiry and verification of API keys.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WithMockUser(username = "admin", authorities = "FULL")
+public class ApiKeyServiceTest {
+
+    @Autowired
+    private ApiKeyService apiKeyService;
+
+    @Autowired
+    private ServicesService servicesService;
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    /**
+     * This method tests that several keys of a service can be active at once, each verified with its own secret.
+     */
+    @Test
+    public void testSeveralActiveKeys() throws Exception {
+        String serviceName = this.createService("apiKeysSeveral", Role.READ);
+        ApiKeyDTO first = this.apiKeyService.createApiKey(serviceName);
+        ApiKeyDTO second = this.apiKeyService.createApiKey(serviceName);
+
+        Assert.assertNotEquals(first.getKeyId(), second.getKeyId());
+        Assert.assertEquals(2, this.apiKeyService.getApiKeys(serviceName).size());
+
+        ActiveApiKey firstKey = this.apiKeyService.authenticate(first.getKeyId(), first.getSecret());
+        ActiveApiKey secondKey = this.apiKeyService.authenticate(second.getKeyId(), second.getSecret());
+
+        Assert.assertNotNull(firstKey);
+        Assert.assertNotNull(secondKey);
+        Assert.assertEquals(serviceName, firstKey.getServiceName());
+        Assert.assertEquals(Role.READ, secondKey.getRole());
+        Assert.assertNull(this.apiKeyService.authenticate(first.getKeyId(), second.getSecret()));
+    }
+
+    /**
+     * This method tests that rotating creates a new key and leaves the old keys usable until the grace period ends.
+     */
+    @Test
+    public void testRotateWithGracePeriod() throws Exception {
+        String serviceName = this.createService("apiKeysRotate", Role.READ);
+        ApiKeyDTO old = this.apiKeyService.createApiKey(serviceName);
+        long before = ZonedDateTime.now().toEpochSecond();
+        ApiKeyDTO rotated = this.apiKeyService.rotateApiKeys(serviceName, 3600);
+
+        Assert.assertNotNull(this.apiKeyService.authenticate(rotated.getKeyId(), rotated.getSecret()));
+
+        ActiveApiKey oldKey = this.apiKeyService.authenticate(old.getKeyId(), old.getSecret());
+
+        Assert.assertNotNull(oldKey);
+        Assert.assertNotNull(oldKey.getExpiryTime());
+        Assert.assertTrue(oldKey.getExpiryTime() >= before + 3600);
+        Assert.assertFalse(oldKey.isActiveAt(oldKey.getExpiryTime()));
+
+        List<ApiKeyDTO> keys = this.apiKeyService.getApiKeys(serviceName);
+
+        Assert.assertEquals(2, keys.size());
+
+        for (ApiKeyDTO key : keys) {
+            Assert.assertEquals(key.getKeyId().equals(old.getKeyId()), key.getExpiryTime() != null);
+        }
+    }
+
+    /**
+     * This method tests that a key expired without a grace period is refused straight away.
+     */
+    @Test
+    public void testExpireKey() throws Exception {
+        String serviceName = this.createService("apiKeysExpire", Role.READ);
+        ApiKeyDTO apiKeyDTO = this.apiKeyService.createApiKey(serviceName);
+
+        this.apiKeyService.expireApiKey(serviceName, apiKeyDTO.getKeyId(), 0);
+
+        Assert.assertNull(this.apiKeyService.authenticate(apiKeyDTO.getKeyId(), apiKeyDTO.getSecret()));
+
+        this.apiKeyService.refresh();
+
+        Assert.assertNull(this.apiKeyService.authenticate(apiKeyDTO.getKeyId(), apiKeyDTO.getSecret()));
+    }
+
+    /**
+     * This method tests that a wrong secret, an unknown key and missing credentials are all refused.
+     */
+    @Test
+    public void testWrongSecret() throws Exception {
+        String serviceName = this.createService("apiKeysWrongSecret", Role.READ);
+        ApiKeyDTO apiKeyDTO = this.apiKeyService.createApiKey(serviceName);
+
+        Assert.assertNull(this.apiKeyService.authenticate(apiKeyDTO.getKeyId(), apiKeyDTO.getSecret() + "x"));
+        Assert.assertNull(this.apiKeyService.authenticate("ak_unknown", apiKeyDTO.getSecret()));
+        Assert.assertNull(this.apiKeyService.authenticate(apiKeyDTO.getKeyId(), null));
+        Assert.assertNull(this.apiKeyService.authenticate(null, apiKeyDTO.getSecret()));
+    }
+
+    /**
+     * This method tests that a service may not manage the keys of another service.
+     */
+    @Test(expected = IllegalAccessException.class)
+    @WithMockUser(username = "apiKeysCaller", authorities = "READ")
+    public void testManageOtherServiceKeys() throws Exception {
+        this.apiKeyService.createApiKey(this.createService("apiKeysOther", Role.READ));
+    }
+
+    /**
+     * This method tests that the keys of a service demoted from the FULL role lose that role straight away.
+     */
+    @Test
+    public void testRoleChangeAppliesToKeys() throws Exception {
+        String serviceName = this.createService("apiKeysDemoted", Role.FULL);
+        ApiKeyDTO apiKeyDTO = this.apiKeyService.createApiKey(serviceName);
+
+        Assert.assertEquals(Role.FULL, this.apiKeyService.authenticate(apiKeyDTO.getKeyId(), apiKeyDTO.getSecret()).getRole());
+
+        ServiceDTO serviceDTO = new ServiceDTO();
+
+        serviceDTO.setName(serviceName);
+        serviceDTO.setRole(Role.READ.name());
+        this.servicesService.updateService(null, serviceDTO);
+
+        Assert.assertEquals(Role.READ, this.apiKeyService.authenticate(apiKeyDTO.getKeyId(), apiKeyDTO.getSecret()).getRole());
+    }
+
+    /**
+     * Creates a service for a single test, so keys created by other tests do not count against it.
+     *
+     * @return the name of the service, not null
+     */
+    private String createService(String name, Role role) {
+        ServiceDAO serviceDAO = new ServiceDAO();
+
+        serviceDAO.setName(name);
+        serviceDAO.setPassword("password");
+        serviceDAO.setRole(role);
+        serviceDAO.setCreationTime(0L);
+
+        return this.serviceRepository.save(serviceDAO).getName();
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.service;
+
+import com.pcoetsee.settingservice.audit.AuditTrail;
+import com.pcoetsee.settingservice.dto.ServiceCreationResultDTO;
+import com.pcoetsee.settingservice.dto.ServiceDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.Bulkhead;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Class used for testing creating many services at once, and that creating a single service takes the same roles.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WithMockUser(username = "provisioner", authorities = "CREATE")
+public class ServiceProvisioningServiceTest {
+
+    @Autowired
+    private ServiceProvisioningService serviceProvisioningService;
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private BCryptPasswordEncoder bCryptPasswordEncoder;
+
+    @Autowired
+    private AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private AuditTrail auditTrail;
+
+    @Autowired
+    private ApplicationEventPublisher applicationEventPublisher;
+
+    @Autowired
+    private ServicesService servicesService;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @After
+    public void destroy() {
+        if (this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * This method tests that valid services are created, with their results in the order they were supplied.
+     */
+    @Test
+    public void testCreateServices() throws Exception {
+        List<ServiceCreationResultDTO> results = this.serviceProvisioningService.createServices(Arrays.asList(
+                this.service("provisionFirst", "READ"),
+                this.service("provisionSecond", "CREATE")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.CREATED, ServiceCreationResultDTO.Status.CREATED);
+        Assert.assertEquals("provisionFirst", results.get(0).getService().getName());
+        Assert.assertEquals(Role.CREATE, this.serviceRepository.findByName("provisionSecond").getRole());
+        Assert.assertTrue(this.bCryptPasswordEncoder.matches("password", this.serviceRepository.findByName("provisionFirst").getPassword()));
+    }
+
+    /**
+     * This method tests that a name repeated within the batch is only created once, and the repeat reported.
+     */
+    @Test
+    public void testNameRepeatedInBatch() throws Exception {
+        List<ServiceCreationResultDTO> results = this.serviceProvisioningService.createServices(Arrays.asList(
+                this.service("provisionRepeated", "READ"),
+                this.service("provisionRepeated", "READ")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.CREATED, ServiceCreationResultDTO.Status.DUPLICATE);
+    }
+
+    /**
+     * This method tests that a name already taken is reported, without stopping the rest of the batch.
+     */
+    @Test
+    public void testNameAlreadyTaken() throws Exception {
+        this.serviceProvisioningService.createServices(Collections.singletonList(this.service("provisionTaken", "READ")));
+
+        List<ServiceCreationResultDTO> results = this.serviceProvisioningService.createServices(Arrays.asList(
+                this.service("provisionTaken", "READ"),
+                this.service("provisionNotTaken", "READ")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.DUPLICATE, ServiceCreationResultDTO.Status.CREATED);
+    }
+
+    /**
+     * This method tests that entries without a name or password are reported as invalid.
+     */
+    @Test
+    public void testInvalidEntries() throws Exception {
+        ServiceDTO noPassword = this.service("provisionNoPassword", "READ");
+
+        noPassword.setPassword(null);
+
+        List<ServiceCreationResultDTO> results = this.serviceProvisioningService.createServices(Arrays.asList(
+                this.service(" ", "READ"),
+                noPassword,
+                null
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.INVALID, ServiceCreationResultDTO.Status.INVALID, ServiceCreationResultDTO.Status.INVALID);
+        Assert.assertNull(this.serviceRepository.findByName("provisionNoPassword"));
+    }
+
+    /**
+     * This method tests that a service with only the CREATE role may not create services with the FULL role.
+     */
+    @Test
+    public void testCreateMayNotCreateFull() throws Exception {
+        List<ServiceCreationResultDTO> results = this.serviceProvisioningService.createServices(Arrays.asList(
+                this.service("provisionFullDenied", "FULL"),
+                this.service("provisionReadAllowed", "READ")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.INVALID, ServiceCreationResultDTO.Status.CREATED);
+        Assert.assertNull(this.serviceRepository.findByName("provisionFullDenied"));
+    }
+
+    /**
+     * This method tests that a service with the FULL role may create services with the FULL role.
+     */
+    @Test
+    @WithMockUser(username = "admin", authorities = "FULL")
+    public void testFullMayCreateFull() throws Exception {
+        List<ServiceCreationResultDTO> results = this.serviceProvisioningService.createServices(Collections.singletonList(
+                this.service("provisionFullAllowed", "FULL")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.CREATED);
+        Assert.assertEquals(Role.FULL, this.serviceRepository.findByName("provisionFullAllowed").getRole());
+    }
+
+    /**
+     * This method tests that a service with only the READ role may not create services at all.
+     */
+    @Test(expected = IllegalAccessException.class)
+    @WithMockUser(username = "reader", authorities = "READ")
+    public void testReadMayNotCreate() throws Exception {
+        this.serviceProvisioningService.createServices(Collections.singletonList(this.service("provisionReadDenied", "READ")));
+    }
+
+    /**
+     * This method tests that a single service is created with the same roles as a batch, so the CREATE role is needed,
+     * and only the FULL role may create services with the FULL role.
+     */
+    @Test
+    public void testCreateSingleService() throws Exception {
+        Assert.assertEquals("provisionSingle", this.servicesService.createService(this.service("provisionSingle", "READ")).getName());
+
+        try {
+            this.servicesService.createService(this.service("provisionSingleFullDenied", "FULL"));
+            Assert.fail("A service with only the CREATE role created a service with the FULL role");
+        } catch (IllegalAccessException e) {
+            Assert.assertNull(this.serviceRepository.findByName("provisionSingleFullDenied"));
+        }
+    }
+
+    /**
+     * This method tests that a service with only the READ role may not create a single service either.
+     */
+    @Test(expected = IllegalAccessException.class)
+    @WithMockUser(username = "reader", authorities = "READ")
+    public void testReadMayNotCreateSingle() throws Exception {
+        this.servicesService.createService(this.service("provisionSingleReadDenied", "READ"));
+    }
+
+    /**
+     * This method tests that entries whose password could not be handed to the hashing executor fail on their own,
+     * and give their slot on the hashing bulkhead back.
+     */
+    @Test
+    public void testHashingRejected() throws Exception {
+        AtomicBoolean rejectNext = new AtomicBoolean(true);
+        Bulkhead bulkhead = this.bulkhead(new ThreadPoolTaskExecutor() {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                if (rejectNext.getAndSet(false)) {
+                    throw new RejectedExecutionException();
+                }
+
+                return super.submit(task);
+            }
+        });
+
+        List<ServiceCreationResultDTO> results = this.provisioning(bulkhead, 60000).createServices(Arrays.asList(
+                this.service("provisionRejected", "READ"),
+                this.service("provisionAfterRejected", "READ")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.FAILED, ServiceCreationResultDTO.Status.CREATED);
+        Assert.assertNull(this.serviceRepository.findByName("provisionRejected"));
+        Assert.assertEquals(0.0, bulkhead.getSaturation(), 0.0);
+    }
+
+    /**
+     * This method tests that entries the hashing bulkhead has no room for fail, and are not created.
+     */
+    @Test
+    public void testHashingBulkheadFull() throws Exception {
+        Bulkhead bulkhead = this.bulkhead(new ThreadPoolTaskExecutor());
+
+        // Tasks returned by submit are only started by Spring MVC, so they keep their slots for the whole test.
+        bulkhead.submit(() -> true);
+        bulkhead.submit(() -> true);
+
+        List<ServiceCreationResultDTO> results = this.provisioning(bulkhead, 60000).createServices(Collections.singletonList(this.service("provisionBulkheadFull", "READ")));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.FAILED);
+        Assert.assertNull(this.serviceRepository.findByName("provisionBulkheadFull"));
+    }
+
+    /**
+     * This method tests that entries whose password is not hashed in time fail, are not created, and give their slot
+     * on the hashing bulkhead back.
+     */
+    @Test
+    public void testHashingTimeout() throws Exception {
+        Bulkhead bulkhead = this.bulkhead(new ThreadPoolTaskExecutor() {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                // Tasks are accepted but never run, so hashing never finishes.
+                return new CompletableFuture<>();
+            }
+        });
+
+        List<ServiceCreationResultDTO> results = this.provisioning(bulkhead, 50).createServices(Collections.singletonList(this.service("provisionTimeout", "READ")));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.FAILED);
+        Assert.assertNull(this.serviceRepository.findByName("provisionTimeout"));
+        Assert.assertEquals(0.0, bulkhead.getSaturation(), 0.0);
+    }
+
+    /**
+     * This method tests that when the batch insert fails, here because another request took one of the names after it
+     * was checked, none of the services in the batch are created.
+     */
+    @Test
+    public void testBatchInsertAllOrNothing() throws Exception {
+        AtomicBoolean first = new AtomicBoolean(true);
+        Bulkhead bulkhead = this.bulkhead(new ThreadPoolTaskExecutor() {
+            @Override
+            public <T> Future<T> submit(Callable<T> task) {
+                if (first.getAndSet(false)) {
+                    ServiceDAO serviceDAO = new ServiceDAO();
+
+                    serviceDAO.setName("provisionRaced");
+                    serviceDAO.setPassword("password");
+                    serviceDAO.setRole(Role.READ);
+                    ServiceProvisioningServiceTest.this.serviceRepository.save(serviceDAO);
+                }
+
+                return super.submit(task);
+            }
+        });
+
+        List<ServiceCreationResultDTO> results = this.provisioning(bulkhead, 60000).createServices(Arrays.asList(
+                this.service("provisionRaced", "READ"),
+                this.service("provisionRolledBack", "READ")
+        ));
+
+        this.assertStatuses(results, ServiceCreationResultDTO.Status.FAILED, ServiceCreationResultDTO.Status.FAILED);
+        Assert.assertNull(this.serviceRepository.findByName("provisionRolledBack"));
+    }
+
+    /**
+     * Wraps the supplied executor, with two threads and no queue, in a hashing bulkhead that is shut down after the
+     * test.
+     */
+    private Bulkhead bulkhead(ThreadPoolTaskExecutor executor) {
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        this.executor = executor;
+
+        return new Bulkhead("testHashing", executor, 60000, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Creates a provisioning service that hashes passwords on the supplied bulkhead, with the supplied timeout.
+     */
+    private ServiceProvisioningService provisioning(Bulkhead bulkhead, long hashingTimeoutMillis) {
+        return new ServiceProvisioningService(
+                this.serviceRepository,
+                this.bCryptPasswordEncoder,
+                this.adaptiveConcurrencyLimiter,
+                this.jdbcTemplate,
+                this.transactionManager,
+                bulkhead,
+                this.auditTrail,
+                this.applicationEventPublisher,
+                null,
+                500,
+                hashingTimeoutMillis
+        );
+    }
+
+    private void assertStatuses(List<ServiceCreationResultDTO> results, ServiceCreationResultDTO.Status... statuses) {
+        Assert.assertEquals(statuses.length, results.size());
+
+        for (int i = 0; i < statuses.length; i++) {
+            Assert.assertEquals(results.get(i).toString(), statuses[i], results.get(i).getStatus());
+        }
+    }
+
+    private ServiceDTO service(String name, String role) {
+        ServiceDTO serviceDTO = new ServiceDTO();
+
+        serviceDTO.setName(name);
+        serviceDTO.setPassword("password");
+        serviceDTO.setRole(role);
+
+        return serviceDTO;
+    }
+}
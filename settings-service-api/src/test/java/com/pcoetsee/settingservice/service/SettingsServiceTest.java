@@ -0,0 +1,580 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.service;
+
+import com.pcoetsee.settingservice.analytics.UsageAnalytics;
+import com.pcoetsee.settingservice.archive.ArchiveProperties;
+import com.pcoetsee.settingservice.archive.SettingsArchiveJob;
+import com.pcoetsee.settingservice.blob.BlobProperties;
+import com.pcoetsee.settingservice.blob.BlobReference;
+import com.pcoetsee.settingservice.blob.SettingBlobStore;
+import com.pcoetsee.settingservice.dto.ArchivedSettingDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetResultDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.dto.SettingUpsertResultDTO;
+import com.pcoetsee.settingservice.exception.IllegalAccessException;
+import com.pcoetsee.settingservice.exception.NoResultsException;
+import com.pcoetsee.settingservice.exception.ServiceDoesNotExistException;
+import com.pcoetsee.settingservice.exception.ValueTooLargeException;
+import com.pcoetsee.settingservice.exception.VersionConflictException;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.snapshot.EncodedSnapshot;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class used for testing reading and writing settings through the service layer.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+@WithMockUser(username = SettingsServiceTest.SERVICE_NAME, authorities = "READ")
+public class SettingsServiceTest {
+
+    /**
+     * Name of the service the test settings belong to, also the name of the authenticated service.
+     */
+    static final String SERVICE_NAME = "settingsServiceTest";
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private SettingsArchiveJob settingsArchiveJob;
+
+    @Autowired
+    private ArchiveProperties archiveProperties;
+
+    @Autowired
+    private SettingBlobStore settingBlobStore;
+
+    @Autowired
+    private BlobProperties blobProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UsageAnalytics usageAnalytics;
+
+    /**
+     * This method creates the service the settings belong to, if an earlier test has not created it yet.
+     */
+    @Before
+    public void init() {
+        if (this.serviceRepository.findByName(SERVICE_NAME) == null) {
+            ServiceDAO serviceDAO = new ServiceDAO();
+
+            serviceDAO.setName(SERVICE_NAME);
+            serviceDAO.setPassword("password");
+            serviceDAO.setRole(Role.READ);
+            serviceDAO.setCreationTime(0L);
+
+            this.serviceRepository.save(serviceDAO);
+        }
+    }
+
+    /**
+     * This method tests that a batch upsert reports created and updated settings separately, and stores the values.
+     */
+    @Test
+    public void testUpsertSettings() throws Exception {
+        SettingUpsertResultDTO first = this.settingsService.upsertSettings(SERVICE_NAME, Arrays.asList(
+                this.setting("upsertFirst", "1", false),
+                this.setting("upsertSecond", "2", false)
+        ));
+
+        Assert.assertEquals(new SettingUpsertResultDTO(2, 0), first);
+
+        SettingUpsertResultDTO second = this.settingsService.upsertSettings(SERVICE_NAME, Arrays.asList(
+                this.setting("upsertSecond", "changed", false),
+                this.setting("upsertThird", "secret", true)
+        ));
+
+        Assert.assertEquals(new SettingUpsertResultDTO(1, 1), second);
+        Assert.assertEquals("1", this.settingsService.getSetting(SERVICE_NAME, "upsertFirst").getValue());
+        Assert.assertEquals("changed", this.settingsService.getSetting(SERVICE_NAME, "upsertSecond").getValue());
+
+        SettingDTO secret = this.settingsService.getSetting(SERVICE_NAME, "upsertThird");
+
+        Assert.assertTrue(secret.isSecret());
+        Assert.assertEquals("secret", secret.getValue());
+    }
+
+    /**
+     * This method tests that a batch naming the same setting twice is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testUpsertDuplicateNames() throws Exception {
+        this.settingsService.upsertSettings(SERVICE_NAME, Arrays.asList(
+                this.setting("duplicate", "1", false),
+                this.setting("duplicate", "2", false)
+        ));
+    }
+
+    /**
+     * This method tests that settings can not be written for a service that does not exist.
+     */
+    @Test(expected = ServiceDoesNotExistException.class)
+    @WithMockUser(username = "admin", authorities = "FULL")
+    public void testUpsertMissingService() throws Exception {
+        this.settingsService.upsertSettings("missingService", Collections.singletonList(this.setting("name", "value", false)));
+    }
+
+    /**
+     * This method tests that a service can not read the settings of another service.
+     */
+    @Test(expected = IllegalAccessException.class)
+    @WithMockUser(username = "otherService", authorities = "READ")
+    public void testReadOtherService() throws Exception {
+        this.settingsService.getSetting(SERVICE_NAME, "upsertFirst");
+    }
+
+    /**
+     * This method tests that a missing setting is reported as such.
+     */
+    @Test(expected = NoResultsException.class)
+    public void testGetMissingSetting() throws Exception {
+        this.settingsService.getSetting(SERVICE_NAME, "missing");
+    }
+
+    /**
+     * This method tests that only reads that found a setting are counted as usage.
+     */
+    @Test
+    public void testOnlyFoundReadsCounted() throws Exception {
+        this.settingsService.upsertSettings(SERVICE_NAME, Collections.singletonList(this.setting("countedRead", "1", false)));
+        long before = this.usageAnalytics.getHotKeys(3600, 1).getTotalReads();
+
+        try {
+            this.settingsService.getSetting(SERVICE_NAME, "uncountedRead");
+            Assert.fail("A missing setting was found");
+        } catch (NoResultsException e) {
+            Assert.assertEquals(before, this.usageAnalytics.getHotKeys(3600, 1).getTotalReads());
+        }
+
+        this.settingsService.getSetting(SERVICE_NAME, "countedRead");
+
+        Assert.assertEquals(before + 1, this.usageAnalytics.getHotKeys(3600, 1).getTotalReads());
+    }
+
+    /**
+     * This method tests that an update carrying the current version succeeds and bumps the version, and that an update
+     * carrying an outdated version is rejected.
+     */
+    @Test
+    public void testCompareAndSet() throws Exception {
+        SettingDTO created = this.settingsService.saveSetting(SERVICE_NAME, this.setting("casSetting", "1", false));
+
+        SettingDTO update = this.setting("casSetting", "2", false);
+        update.setVersion(created.getVersion());
+
+        SettingDTO updated = this.settingsService.saveSetting(SERVICE_NAME, update);
+
+        Assert.assertEquals("2", updated.getValue());
+        Assert.assertEquals(created.getVersion() + 1, (long) updated.getVersion());
+
+        SettingDTO stale = this.setting("casSetting", "3", false);
+        stale.setVersion(created.getVersion());
+
+        try {
+            this.settingsService.saveSetting(SERVICE_NAME, stale);
+            Assert.fail("Update based on an outdated version should have been rejected");
+        } catch (VersionConflictException e) {
+            Assert.assertEquals("2", this.settingsService.getSetting(SERVICE_NAME, "casSetting").getValue());
+        }
+    }
+
+    /**
+     * This method tests that an update expecting a setting that does not exist is rejected.
+     */
+    @Test(expected = VersionConflictException.class)
+    public void testCompareAndSetMissingSetting() throws Exception {
+        SettingDTO settingDTO = this.setting("casMissing", "1", false);
+        settingDTO.setVersion(0L);
+
+        this.settingsService.saveSetting(SERVICE_NAME, settingDTO);
+    }
+
+    /**
+     * This method tests that a change set creates, updates and deletes settings together as a single new revision.
+     */
+    @Test
+    public void testApplyChangeSet() throws Exception {
+        SettingChangeSetResultDTO first = this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(null,
+                this.change("changeSetFirst", "1", false),
+                this.change("changeSetSecond", "2", false)
+        ));
+
+        Assert.assertEquals(2, first.getCreated());
+
+        SettingChangeSetResultDTO second = this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(first.getRevision(),
+                this.change("changeSetFirst", null, true),
+                this.change("changeSetSecond", "changed", false),
+                this.change("changeSetThird", "3", false)
+        ));
+
+        Assert.assertEquals(new SettingChangeSetResultDTO(first.getRevision() + 1, 1, 1, 1), second);
+        Assert.assertEquals("changed", this.settingsService.getSetting(SERVICE_NAME, "changeSetSecond").getValue());
+        Assert.assertEquals("3", this.settingsService.getSetting(SERVICE_NAME, "changeSetThird").getValue());
+
+        try {
+            this.settingsService.getSetting(SERVICE_NAME, "changeSetFirst");
+            Assert.fail("Deleted setting should not be found");
+        } catch (NoResultsException e) {
+            // Expected, the setting was deleted.
+        }
+    }
+
+    /**
+     * This method tests that a change set is rolled back entirely when one of its changes conflicts, or when the
+     * settings are no longer at the expected revision.
+     */
+    @Test
+    public void testApplyChangeSetConflict() throws Exception {
+        SettingChangeSetResultDTO created = this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(null,
+                this.change("conflictFirst", "1", false)
+        ));
+
+        SettingChangeDTO stale = this.change("conflictFirst", "2", false);
+        stale.setVersion(5L);
+
+        try {
+            this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(null, this.change("conflictSecond", "2", false), stale));
+            Assert.fail("Change based on an outdated version should have been rejected");
+        } catch (VersionConflictException e) {
+            Assert.assertEquals("1", this.settingsService.getSetting(SERVICE_NAME, "conflictFirst").getValue());
+        }
+
+        try {
+            this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(created.getRevision() - 1, this.change("conflictSecond", "2", false)));
+            Assert.fail("Change set based on an outdated revision should have been rejected");
+        } catch (VersionConflictException e) {
+            // Expected, the revision has moved on.
+        }
+
+        try {
+            this.settingsService.getSetting(SERVICE_NAME, "conflictSecond");
+            Assert.fail("Setting of a rejected change set should not be found");
+        } catch (NoResultsException e) {
+            // Expected, the change sets were rolled back.
+        }
+
+        SettingChangeSetResultDTO next = this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(created.getRevision(),
+                this.change("conflictSecond", "2", false)
+        ));
+
+        Assert.assertEquals(created.getRevision() + 1, next.getRevision());
+    }
+
+    /**
+     * This method tests that the encoded settings of a service are reused while its revision is unchanged, and encoded
+     * again once a write has moved the revision on.
+     */
+    @Test
+    public void testSettingsSnapshot() throws Exception {
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("snapshotSetting", "1", false));
+
+        EncodedSnapshot first = this.settingsService.getSettingsSnapshot(SERVICE_NAME);
+
+        Assert.assertSame(first, this.settingsService.getSettingsSnapshot(SERVICE_NAME));
+        Assert.assertTrue(new String(first.getJson(), StandardCharsets.UTF_8).contains("\"snapshotSetting\""));
+
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("snapshotSetting", "changed", false));
+
+        EncodedSnapshot second = this.settingsService.getSettingsSnapshot(SERVICE_NAME);
+
+        Assert.assertEquals(first.getRevision() + 1, second.getRevision());
+        Assert.assertNotEquals(first.getETag(), second.getETag());
+        Assert.assertTrue(new String(second.getJson(), StandardCharsets.UTF_8).contains("\"changed\""));
+    }
+
+    /**
+     * This method tests that a setting unread for longer than the stale period is moved to the archive, while recently
+     * read settings stay, and that it can be restored with its value and a new version.
+     */
+    @Test
+    public void testArchiveAndRestore() throws Exception {
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("archiveStale", "old", false));
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("archiveFresh", "new", false));
+        this.jdbcTemplate.update("UPDATE `settings` SET `date_last_used` = DATE '2000-01-01' WHERE `name` = 'archiveStale'");
+
+        long version = this.settingsService.getSetting(SERVICE_NAME, "archiveStale").getVersion();
+
+        this.archiveProperties.setEnabled(true);
+        this.archiveProperties.setPauseMs(0);
+
+        try {
+            this.settingsArchiveJob.archive();
+        } finally {
+            this.archiveProperties.setEnabled(false);
+            this.archiveProperties.setPauseMs(200);
+        }
+
+        List<ArchivedSettingDTO> archived = this.settingsService.getArchivedSettings(SERVICE_NAME);
+
+        Assert.assertEquals(1, archived.size());
+        Assert.assertEquals("archiveStale", archived.get(0).getName());
+        Assert.assertEquals("new", this.settingsService.getSetting(SERVICE_NAME, "archiveFresh").getValue());
+
+        try {
+            this.settingsService.getSetting(SERVICE_NAME, "archiveStale");
+            Assert.fail("An archived setting should not be served.");
+        } catch (NoResultsException e) {
+            // Expected.
+        }
+
+        SettingDTO restored = this.settingsService.restoreSetting(SERVICE_NAME, "archiveStale");
+
+        Assert.assertEquals("old", restored.getValue());
+        Assert.assertEquals(version + 1, (long) restored.getVersion());
+        Assert.assertEquals("old", this.settingsService.getSetting(SERVICE_NAME, "archiveStale").getValue());
+    }
+
+    /**
+     * This method tests that restoring a setting that is not archived is reported as missing, without bumping the
+     * revision of the service.
+     */
+    @Test
+    public void testRestoreMissingSetting() throws Exception {
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("restoreMissingRevision", "1", false));
+
+        Long serviceId = this.serviceRepository.findByName(SERVICE_NAME).getId();
+        Long revision = this.jdbcTemplate.queryForObject("SELECT `revision` FROM `service_revisions` WHERE `service_id` = ?", Long.class, serviceId);
+
+        try {
+            this.settingsService.restoreSetting(SERVICE_NAME, "neverArchived");
+            Assert.fail("A setting that was never archived was restored");
+        } catch (NoResultsException e) {
+            Assert.assertEquals(revision, this.jdbcTemplate.queryForObject("SELECT `revision` FROM `service_revisions` WHERE `service_id` = ?", Long.class, serviceId));
+        }
+    }
+
+    /**
+     * This method tests that references to other settings are resolved, and resolved again once a setting they depend
+     * on changes.
+     */
+    @Test
+    public void testTemplatedSettings() throws Exception {
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("templateHost", "db1", false));
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("templatePort", "3306", false));
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("templateAddress", "${templateHost}:${templatePort}", false));
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("templateUrl", "jdbc:mysql://${templateAddress}/app", false));
+
+        SettingDTO url = this.settingsService.getSetting(SERVICE_NAME, "templateUrl");
+
+        Assert.assertEquals("jdbc:mysql://${templateAddress}/app", url.getValue());
+        Assert.assertEquals("jdbc:mysql://db1:3306/app", url.getResolvedValue());
+        Assert.assertNull(this.settingsService.getSetting(SERVICE_NAME, "templateHost").getResolvedValue());
+
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("templateHost", "db2", false));
+
+        Assert.assertEquals("jdbc:mysql://db2:3306/app", this.settingsService.getSetting(SERVICE_NAME, "templateUrl").getResolvedValue());
+        Assert.assertTrue(new String(this.settingsService.getSettingsSnapshot(SERVICE_NAME).getJson(), StandardCharsets.UTF_8)
+                .contains("\"resolvedValue\":\"jdbc:mysql://db2:3306/app\""));
+    }
+
+    /**
+     * This method tests that a write making settings reference each other in a cycle is refused, and leaves the
+     * settings unchanged.
+     */
+    @Test
+    public void testTemplateCycleRefused() throws Exception {
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("cycleFirst", "${cycleSecond}", false));
+        this.settingsService.saveSetting(SERVICE_NAME, this.setting("cycleSecond", "${cycleThird}", false));
+
+        try {
+            this.settingsService.saveSetting(SERVICE_NAME, this.setting("cycleThird", "${cycleFirst}", false));
+            Assert.fail("A cycle of references should be refused.");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        try {
+            this.settingsService.getSetting(SERVICE_NAME, "cycleThird");
+            Assert.fail("A refused setting should not be stored.");
+        } catch (NoResultsException e) {
+            // Expected.
+        }
+
+        this.settingsService.applyChangeSet(SERVICE_NAME, this.changeSet(null, this.change("cycleThird", "end", false)));
+
+        Assert.assertEquals("end", this.settingsService.getSetting(SERVICE_NAME, "cycleFirst").getResolvedValue());
+    }
+
+    /**
+     * This method tests that a large value is stored in chunks, streamed back as stored and decompressed, and that its
+     * chunks are swept once a plain value replaces it.
+     */
+    @Test
+    public void testBlobSetting() throws Exception {
+        // Random bytes do not compress, so the value spans several chunks.
+        byte[] value = new byte[this.blobProperties.getChunkBytes() * 2 + 1000];
+
+        new Random(42).nextBytes(value);
+
+        String sha256 = this.hex(MessageDigest.getInstance("SHA-256").digest(value));
+        SettingDTO saved = this.settingsService.saveBlobSetting(SERVICE_NAME, "blob", new ByteArrayInputStream(value));
+
+        Assert.assertEquals("", saved.getValue());
+        Assert.assertEquals(Long.valueOf(value.length), saved.getBlobSize());
+        Assert.assertEquals(sha256, saved.getBlobSha256());
+        Assert.assertEquals(sha256, this.settingsService.getSetting(SERVICE_NAME, "blob").getBlobSha256());
+        Assert.assertTrue(this.blobChunks(sha256) > 2);
+
+        BlobReference blobReference = this.settingsService.getBlobSetting(SERVICE_NAME, "blob");
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+
+        this.settingBlobStore.copyTo(blobReference, false, plain);
+        this.settingBlobStore.copyTo(blobReference, true, compressed);
+
+        Assert.assertArrayEquals(value, plain.toByteArray());
+        Assert.assertArrayEquals(value, this.readAll(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+
+        SettingDTO replaced = this.settingsService.saveSetting(SERVICE_NAME, this.setting("blob", "small", false));
+
+        Assert.assertNull(replaced.getBlobSize());
+        Assert.assertNull(replaced.getBlobSha256());
+
+        try {
+            this.settingsService.getBlobSetting(SERVICE_NAME, "blob");
+            Assert.fail("A plain value should not be served as a large value.");
+        } catch (NoResultsException e) {
+            // Expected.
+        }
+
+        long sweepGraceMs = this.blobProperties.getSweepGraceMs();
+
+        try {
+            this.blobProperties.setSweepGraceMs(-1000);
+            this.settingBlobStore.sweep();
+        } finally {
+            this.blobProperties.setSweepGraceMs(sweepGraceMs);
+        }
+
+        Assert.assertEquals(0, this.blobChunks(sha256));
+    }
+
+    /**
+     * This method tests that a value larger than the maximum is refused, and leaves no chunks behind.
+     */
+    @Test
+    public void testBlobTooLarge() throws Exception {
+        long maxBytes = this.blobProperties.getMaxBytes();
+
+        try {
+            this.blobProperties.setMaxBytes(100);
+            this.settingsService.saveBlobSetting(SERVICE_NAME, "tooLarge", new ByteArrayInputStream(new byte[101]));
+            Assert.fail("A value larger than the maximum should be refused.");
+        } catch (ValueTooLargeException e) {
+            // Expected.
+        } finally {
+            this.blobProperties.setMaxBytes(maxBytes);
+        }
+
+        Assert.assertEquals(Integer.valueOf(0), this.jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM `setting_blobs` WHERE `sha256` LIKE 'upload-%'", Integer.class));
+    }
+
+    private int blobChunks(String sha256) {
+        return this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM `setting_blobs` WHERE `sha256` = ?", Integer.class, sha256);
+    }
+
+    private byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+
+        for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    private String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+
+        return hex.toString();
+    }
+
+    private SettingChangeSetDTO changeSet(Long expectedRevision, SettingChangeDTO... changes) {
+        SettingChangeSetDTO settingChangeSetDTO = new SettingChangeSetDTO();
+
+        settingChangeSetDTO.setExpectedRevision(expectedRevision);
+        settingChangeSetDTO.setChanges(Arrays.asList(changes));
+
+        return settingChangeSetDTO;
+    }
+
+    private SettingChangeDTO change(String name, String value, boolean delete) {
+        SettingChangeDTO settingChangeDTO = new SettingChangeDTO();
+
+        settingChangeDTO.setName(name);
+        settingChangeDTO.setValue(value);
+        settingChangeDTO.setDelete(delete);
+
+        return settingChangeDTO;
+    }
+
+    private SettingDTO setting(String name, String value, boolean secret) {
+        SettingDTO settingDTO = new SettingDTO();
+
+        settingDTO.setName(name);
+        settingDTO.setValue(value);
+        settingDTO.setSecret(secret);
+
+        return settingDTO;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class used for testing the placement of services on shards.
+ */
+public class ConsistentHashRingTest {
+
+    private static final int KEYS = 10000;
+
+    /**
+     * This method tests that keys are spread roughly evenly over the shards.
+     */
+    @Test
+    public void testKeysAreSpreadEvenly() {
+        ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.getShard(String.valueOf(i)), 1, Integer::sum);
+        }
+
+        Assert.assertEquals(3, counts.size());
+
+        for (int count : counts.values()) {
+            Assert.assertTrue("Uneven spread " + counts, count > KEYS * 0.25 && count < KEYS * 0.42);
+        }
+    }
+
+    /**
+     * This method tests that adding a shard only moves keys onto the new shard, and only about its share of them.
+     */
+    @Test
+    public void testAddingShardOnlyMovesKeysToNewShard() {
+        ConsistentHashRing before = new ConsistentHashRing(Arrays.asList("a", "b", "c"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(Arrays.asList("a", "b", "c", "d"), 128);
+        int moved = 0;
+
+        for (int i = 0; i < KEYS; i++) {
+            String key = String.valueOf(i);
+            String shard = after.getShard(key);
+
+            if (!shard.equals(before.getShard(key))) {
+                Assert.assertEquals("d", shard);
+                moved++;
+            }
+        }
+
+        Assert.assertTrue("Moved " + moved + " keys", moved > KEYS * 0.15 && moved < KEYS * 0.35);
+    }
+
+    /**
+     * This method tests that a ring needs at least one shard.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyRing() {
+        new ConsistentHashRing(Arrays.asList(), 128);
+    }
+}
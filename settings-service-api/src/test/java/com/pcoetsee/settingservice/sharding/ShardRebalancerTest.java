@@ -0,0 +1,265 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.sharding;
+
+import com.pcoetsee.settingservice.exception.ServiceMigratingException;
+import com.pcoetsee.settingservice.limiter.AdaptiveConcurrencyLimiter;
+import com.pcoetsee.settingservice.limiter.CircuitBreakerProperties;
+import com.pcoetsee.settingservice.limiter.DatabaseCircuitBreaker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.api.Trigger;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class used for testing moving the settings of a service between shards, using a separate H2 database per shard.
+ */
+public class ShardRebalancerTest {
+
+    private static final Long SERVICE_ID = 1L;
+    private static final int SETTINGS = 5;
+
+    /**
+     * More chunks than are copied per batch, so a large value is copied in more than one batch.
+     */
+    private static final int BLOB_CHUNKS = 6;
+
+    private Map<String, DataSource> dataSources;
+    private ShardDirectory shardDirectory;
+    private ShardRebalancer shardRebalancer;
+
+    @Before
+    public void init() {
+        this.dataSources = new LinkedHashMap<>();
+
+        for (String shard : new String[]{"primary", "second", "third"}) {
+            DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:shard-" + shard + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+
+            new JdbcTemplate(dataSource).execute("CREATE TABLE `settings` (" +
+                    "`id` BIGINT AUTO_INCREMENT PRIMARY KEY, `service_id` BIGINT NOT NULL, `name` VARCHAR(256) NOT NULL, " +
+                    "`value` VARCHAR(4096) NOT NULL, `date_last_used` DATE, `secret` TINYINT(1) NOT NULL DEFAULT FALSE, " +
+                    "`key_version` INT, `version` BIGINT NOT NULL DEFAULT 0, `blob_size` BIGINT, `blob_sha256` CHAR(64), " +
+                    "UNIQUE KEY (`service_id`, `name`))");
+            new JdbcTemplate(dataSource).execute("CREATE TABLE `settings_archive` (" +
+                    "`id` BIGINT AUTO_INCREMENT PRIMARY KEY, `service_id` BIGINT NOT NULL, `name` VARCHAR(256) NOT NULL, " +
+                    "`value` VARCHAR(4096) NOT NULL, `date_last_used` DATE, `secret` TINYINT(1) NOT NULL DEFAULT FALSE, " +
+                    "`key_version` INT, `version` BIGINT NOT NULL DEFAULT 0, `blob_size` BIGINT, `blob_sha256` CHAR(64), " +
+                    "`date_archived` DATE NOT NULL, UNIQUE KEY (`service_id`, `name`))");
+            new JdbcTemplate(dataSource).execute("CREATE TABLE `setting_blobs` (" +
+                    "`id` BIGINT AUTO_INCREMENT PRIMARY KEY, `service_id` BIGINT NOT NULL, `sha256` VARCHAR(64) NOT NULL, " +
+                    "`seq` INT NOT NULL, `data` MEDIUMBLOB NOT NULL, `creation_time` BIGINT NOT NULL, UNIQUE KEY (`service_id`, `sha256`, `seq`))");
+            new JdbcTemplate(dataSource).execute("CREATE TABLE `service_revisions` (" +
+                    "`service_id` BIGINT PRIMARY KEY, `revision` BIGINT NOT NULL)");
+            this.dataSources.put(shard, dataSource);
+        }
+
+        new JdbcTemplate(this.dataSources.get("primary")).execute("CREATE TABLE `shard_directory` (" +
+                "`service_id` BIGINT PRIMARY KEY, `shard` VARCHAR(64) NOT NULL, `target_shard` VARCHAR(64), `state` VARCHAR(16) NOT NULL)");
+
+        ShardingProperties shardingProperties = new ShardingProperties();
+
+        shardingProperties.setEnabled(true);
+        shardingProperties.setRebalanceBatchSize(2);
+        shardingProperties.setRefreshIntervalMs(0);
+
+        ShardDataSources shardDataSources = new ShardDataSources("primary", this.dataSources);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        this.shardDirectory = new ShardDirectory(shardingProperties, shardDataSources);
+        this.shardDirectory.refresh();
+        this.shardRebalancer = new ShardRebalancer(
+                this.shardDirectory,
+                shardDataSources,
+                shardingProperties,
+                null,
+                new AdaptiveConcurrencyLimiter(20, 4, 200, 0.9, 250, new DatabaseCircuitBreaker(new CircuitBreakerProperties(), meterRegistry), meterRegistry),
+                null
+        );
+
+        JdbcTemplate home = this.jdbc(this.shardDirectory.getRingShard(SERVICE_ID));
+
+        for (int i = 0; i < SETTINGS; i++) {
+            home.update("INSERT INTO `settings` (`service_id`, `name`, `value`) VALUES (?, ?, ?)", SERVICE_ID, "name" + i, "value" + i);
+        }
+
+        home.update("INSERT INTO `service_revisions` (`service_id`, `revision`) VALUES (?, ?)", SERVICE_ID, SETTINGS);
+        home.update("INSERT INTO `settings_archive` (`service_id`, `name`, `value`, `date_archived`) VALUES (?, ?, ?, CURRENT_DATE)", SERVICE_ID, "archived", "old");
+
+        for (int seq = 0; seq < BLOB_CHUNKS; seq++) {
+            home.update("INSERT INTO `setting_blobs` (`service_id`, `sha256`, `seq`, `data`, `creation_time`) VALUES (?, ?, ?, ?, 0)",
+                    SERVICE_ID, "hash", seq, new byte[]{(byte) seq});
+        }
+
+        // Another service on the same shard, which must not be moved.
+        home.update("INSERT INTO `settings` (`service_id`, `name`, `value`) VALUES (?, ?, ?)", 2L, "name0", "other");
+    }
+
+    @After
+    public void destroy() {
+        for (DataSource dataSource : this.dataSources.values()) {
+            new JdbcTemplate(dataSource).execute("DROP ALL OBJECTS");
+        }
+    }
+
+    /**
+     * This method tests that a service can be moved to another shard and back, and that the directory follows it.
+     */
+    @Test
+    public void testMoveServiceAndBack() {
+        String home = this.shardDirectory.getRingShard(SERVICE_ID);
+        String target = this.otherShard(home);
+
+        Assert.assertEquals(SETTINGS, this.shardRebalancer.moveService(SERVICE_ID, target));
+        Assert.assertEquals(target, this.shardDirectory.resolve(SERVICE_ID));
+        Assert.assertEquals(target, this.shardDirectory.resolveForWrite(SERVICE_ID));
+        Assert.assertEquals(SETTINGS, this.count(target, SERVICE_ID));
+        Assert.assertEquals(0, this.count(home, SERVICE_ID));
+        Assert.assertEquals(1, this.count(home, 2L));
+        Assert.assertEquals("value3", this.jdbc(target).queryForObject(
+                "SELECT `value` FROM `settings` WHERE `service_id` = ? AND `name` = ?", String.class, SERVICE_ID, "name3"));
+        Assert.assertEquals(Long.valueOf(SETTINGS), this.jdbc(target).queryForObject(
+                "SELECT `revision` FROM `service_revisions` WHERE `service_id` = ?", Long.class, SERVICE_ID));
+        Assert.assertEquals(Integer.valueOf(0), this.jdbc(home).queryForObject("SELECT COUNT(*) FROM `service_revisions`", Integer.class));
+        Assert.assertEquals("old", this.jdbc(target).queryForObject(
+                "SELECT `value` FROM `settings_archive` WHERE `service_id` = ? AND `name` = ?", String.class, SERVICE_ID, "archived"));
+        Assert.assertEquals(Integer.valueOf(0), this.jdbc(home).queryForObject("SELECT COUNT(*) FROM `settings_archive`", Integer.class));
+        Assert.assertEquals(Integer.valueOf(BLOB_CHUNKS), this.jdbc(target).queryForObject(
+                "SELECT COUNT(*) FROM `setting_blobs` WHERE `service_id` = ? AND `sha256` = ?", Integer.class, SERVICE_ID, "hash"));
+        Assert.assertEquals(Integer.valueOf(0), this.jdbc(home).queryForObject("SELECT COUNT(*) FROM `setting_blobs`", Integer.class));
+
+        Assert.assertEquals(SETTINGS, this.shardRebalancer.moveService(SERVICE_ID, home));
+        Assert.assertEquals(home, this.shardDirectory.resolve(SERVICE_ID));
+        Assert.assertEquals(0, this.count(target, SERVICE_ID));
+        Assert.assertEquals(Integer.valueOf(0), this.jdbc("primary").queryForObject("SELECT COUNT(*) FROM `shard_directory`", Integer.class));
+    }
+
+    /**
+     * This method tests that a move is abandoned, and the service left where it was, when its settings change on the
+     * source shard while they are being copied.
+     */
+    @Test
+    public void testMoveAbandonedOnConcurrentWrite() {
+        String home = this.shardDirectory.getRingShard(SERVICE_ID);
+        String target = this.otherShard(home);
+
+        WriteOnSourceTrigger.source = this.dataSources.get(home);
+        this.jdbc(target).execute("CREATE TRIGGER `write_on_source` AFTER INSERT ON `settings` FOR EACH ROW CALL \""
+                + WriteOnSourceTrigger.class.getName() + "\"");
+
+        try {
+            this.shardRebalancer.moveService(SERVICE_ID, target);
+            Assert.fail("A move went ahead although the settings changed while they were copied");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(home, this.shardDirectory.resolveForWrite(SERVICE_ID));
+            Assert.assertEquals(SETTINGS, this.count(home, SERVICE_ID));
+            Assert.assertEquals(0, this.count(target, SERVICE_ID));
+            Assert.assertEquals("changed", this.jdbc(home).queryForObject(
+                    "SELECT `value` FROM `settings` WHERE `service_id` = ? AND `name` = ?", String.class, SERVICE_ID, "name0"));
+        } finally {
+            WriteOnSourceTrigger.source = null;
+        }
+    }
+
+    /**
+     * This method tests that moving a service to the shard it already lives on does nothing.
+     */
+    @Test
+    public void testMoveToSameShard() {
+        Assert.assertEquals(0, this.shardRebalancer.moveService(SERVICE_ID, this.shardDirectory.getRingShard(SERVICE_ID)));
+    }
+
+    /**
+     * This method tests that writes are refused while a service is being moved.
+     */
+    @Test(expected = ServiceMigratingException.class)
+    public void testWritesRefusedWhileMigrating() {
+        String home = this.shardDirectory.getRingShard(SERVICE_ID);
+
+        this.shardDirectory.beginMigration(SERVICE_ID, home, this.otherShard(home));
+
+        Assert.assertEquals(home, this.shardDirectory.resolve(SERVICE_ID));
+        this.shardDirectory.resolveForWrite(SERVICE_ID);
+    }
+
+    /**
+     * This method tests that moving to an unknown shard is refused before anything is changed.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoveToUnknownShard() {
+        this.shardRebalancer.moveService(SERVICE_ID, "missing");
+    }
+
+    private String otherShard(String shard) {
+        return this.dataSources.keySet().stream().filter(name -> !name.equals(shard)).findFirst().orElseThrow(IllegalStateException::new);
+    }
+
+    private JdbcTemplate jdbc(String shard) {
+        return new JdbcTemplate(this.dataSources.get(shard));
+    }
+
+    private int count(String shard, Long serviceId) {
+        Integer count = this.jdbc(shard).queryForObject("SELECT COUNT(*) FROM `settings` WHERE `service_id` = ?", Integer.class, serviceId);
+
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Changes a setting on the source shard whenever a setting is copied to the target shard, the way a write that
+     * passed the directory check just before the move began would.
+     */
+    public static class WriteOnSourceTrigger implements Trigger {
+
+        static volatile DataSource source;
+
+        @Override
+        public void init(Connection connection, String schemaName, String triggerName, String tableName, boolean before, int type) {
+        }
+
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) {
+            JdbcTemplate sourceJdbc = new JdbcTemplate(source);
+
+            sourceJdbc.update("UPDATE `settings` SET `value` = 'changed' WHERE `service_id` = ? AND `name` = ?", SERVICE_ID, "name0");
+            sourceJdbc.update("UPDATE `service_revisions` SET `revision` = `revision` + 1 WHERE `service_id` = ?", SERVICE_ID);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void remove() {
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.snapshot;
+
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.limiter.CircuitBreakerProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class used for testing the last-known-good copies of settings served while the database can not be reached.
+ */
+public class LastKnownGoodStoreTest {
+
+    private LastKnownGoodStore store;
+    private MockHttpServletResponse response;
+
+    @Before
+    public void init() {
+        CircuitBreakerProperties properties = new CircuitBreakerProperties();
+
+        properties.setLastKnownGoodMaxSettings(4);
+        this.store = new LastKnownGoodStore(properties, new SimpleMeterRegistry());
+        this.response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest(), this.response));
+    }
+
+    @After
+    public void cleanUp() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    /**
+     * This method tests that a complete copy answers for all settings ordered by name and marks the response as stale.
+     */
+    @Test
+    public void testServeComplete() {
+        this.store.capture("service", 1L, Arrays.asList(this.setting("b"), this.setting("a")), null);
+
+        List<SettingDTO> settings = this.store.serveSettings("service");
+
+        Assert.assertEquals("a", settings.get(0).getName());
+        Assert.assertEquals("b", settings.get(1).getName());
+        Assert.assertEquals("true", this.response.getHeader(LastKnownGoodStore.STALE_HEADER));
+        Assert.assertEquals("0", this.response.getHeader(HttpHeaders.AGE));
+    }
+
+    /**
+     * This method tests that settings read one at a time only answer for themselves, and that a setting found missing
+     * is no longer served.
+     */
+    @Test
+    public void testServePartial() {
+        this.store.captureSetting("service", 1L, this.setting("a"));
+
+        Assert.assertNull(this.store.serveSettings("service"));
+        Assert.assertNull(this.response.getHeader(LastKnownGoodStore.STALE_HEADER));
+        Assert.assertEquals("a", this.store.serveSetting("service", "a").getName());
+
+        this.store.forgetSetting("service", "a");
+
+        Assert.assertNull(this.store.serveSetting("service", "a"));
+        Assert.assertEquals(0, this.store.getSettingCount());
+    }
+
+    /**
+     * This method tests that the copies read longest ago are dropped once too many settings are held.
+     */
+    @Test
+    public void testEviction() throws Exception {
+        this.store.capture("old", 1L, Arrays.asList(this.setting("a"), this.setting("b")), null);
+        Thread.sleep(5);
+        this.store.capture("newer", 2L, Arrays.asList(this.setting("a"), this.setting("b")), null);
+        Thread.sleep(5);
+        this.store.capture("newest", 3L, Arrays.asList(this.setting("a"), this.setting("b")), null);
+
+        Assert.assertNull(this.store.serveSettings("old"));
+        Assert.assertNotNull(this.store.serveSettings("newer"));
+        Assert.assertNotNull(this.store.serveSettings("newest"));
+        Assert.assertEquals(4, this.store.getSettingCount());
+    }
+
+    private SettingDTO setting(String name) {
+        SettingDTO settingDTO = new SettingDTO();
+
+        settingDTO.setName(name);
+        settingDTO.setValue("value");
+
+        return settingDTO;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.snapshot;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.event.SettingsChangedEvent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Class used for testing the cache of encoded settings snapshots.
+ */
+public class SnapshotResponseCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    /**
+     * This method tests that a snapshot is only served for the revision it was encoded at.
+     */
+    @Test
+    public void testRevisionMatch() {
+        SnapshotResponseCache cache = new SnapshotResponseCache(this.objectMapper, 1 << 20, 1024, new SimpleMeterRegistry());
+        EncodedSnapshot snapshot = cache.put(cache.encode(1L, 3, this.settings(1)));
+
+        Assert.assertSame(snapshot, cache.get(1L, 3));
+        Assert.assertNull(cache.get(1L, 2));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertNull(cache.get(1L, 4));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(0, cache.getBytes());
+    }
+
+    /**
+     * This method tests that a snapshot of an older revision does not replace a newer one, and that a newer revision
+     * announced by an event drops the cached snapshot.
+     */
+    @Test
+    public void testOlderRevisionIgnored() {
+        SnapshotResponseCache cache = new SnapshotResponseCache(this.objectMapper, 1 << 20, 1024, new SimpleMeterRegistry());
+        EncodedSnapshot newer = cache.put(cache.encode(1L, 5, this.settings(1)));
+
+        cache.put(cache.encode(1L, 4, this.settings(2)));
+        Assert.assertSame(newer, cache.get(1L, 5));
+
+        cache.onSettingsChanged(new SettingsChangedEvent(1L, "service", 5, Collections.singleton("name0")));
+        Assert.assertSame(newer, cache.get(1L, 5));
+
+        cache.onSettingsChanged(new SettingsChangedEvent(1L, "service", 6, Collections.singleton("name0")));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * This method tests that only bodies above the threshold get a compressed copy, and that it holds the same JSON.
+     */
+    @Test
+    public void testGzip() throws IOException {
+        SnapshotResponseCache cache = new SnapshotResponseCache(this.objectMapper, 1 << 20, 1024, new SimpleMeterRegistry());
+        EncodedSnapshot small = cache.encode(1L, 1, this.settings(1));
+        EncodedSnapshot large = cache.encode(2L, 1, this.settings(200));
+
+        Assert.assertNull(small.getGzip());
+        Assert.assertNotNull(large.getGzip());
+        Assert.assertTrue(large.getGzip().length < large.getJson().length);
+        Assert.assertArrayEquals(large.getJson(), SnapshotResponseCacheTest.gunzip(large.getGzip()));
+        Assert.assertEquals(this.settings(200).size(), this.objectMapper.readTree(large.getJson()).size());
+    }
+
+    /**
+     * This method tests that the least recently used snapshots are dropped to stay within the size limit.
+     */
+    @Test
+    public void testEviction() {
+        EncodedSnapshot probe = new SnapshotResponseCache(this.objectMapper, 1 << 20, Integer.MAX_VALUE, new SimpleMeterRegistry())
+                .encode(1L, 1, this.settings(10));
+        SnapshotResponseCache cache = new SnapshotResponseCache(this.objectMapper, probe.size() * 2, Integer.MAX_VALUE, new SimpleMeterRegistry());
+
+        cache.put(cache.encode(1L, 1, this.settings(10)));
+        cache.put(cache.encode(2L, 1, this.settings(10)));
+        Assert.assertNotNull(cache.get(1L, 1));
+
+        cache.put(cache.encode(3L, 1, this.settings(10)));
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertNotNull(cache.get(1L, 1));
+        Assert.assertNull(cache.get(2L, 1));
+        Assert.assertTrue(cache.getBytes() <= probe.size() * 2);
+    }
+
+    private List<SettingDTO> settings(int count) {
+        List<SettingDTO> settings = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            SettingDTO settingDTO = new SettingDTO();
+
+            settingDTO.setName("name" + i);
+            settingDTO.setValue("value" + i);
+            settingDTO.setVersion(0L);
+            settings.add(settingDTO);
+        }
+
+        return settings;
+    }
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+
+            for (int read; (read = in.read(buffer)) > 0; ) {
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.source;
+
+import com.pcoetsee.settingservice.client.SettingsSource;
+import com.pcoetsee.settingservice.client.SettingsSourceException;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+import com.pcoetsee.settingservice.persistence.dao.Role;
+import com.pcoetsee.settingservice.persistence.dao.ServiceDAO;
+import com.pcoetsee.settingservice.persistence.repository.ServiceRepository;
+import com.pcoetsee.settingservice.service.ServicesService;
+import com.pcoetsee.settingservice.service.SettingsService;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+
+/**
+ * Class used for testing reading and writing settings in-process, without HTTP.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class EmbeddedSettingsSourceTest {
+
+    private static final String SERVICE_NAME = "embeddedSourceTest";
+
+    @Autowired
+    private ServiceRepository serviceRepository;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private ServicesService servicesService;
+
+    private SettingsSource settingsSource;
+
+    @Before
+    public void init() {
+        if (this.serviceRepository.findByName(SERVICE_NAME) == null) {
+            ServiceDAO serviceDAO = new ServiceDAO();
+
+            serviceDAO.setName(SERVICE_NAME);
+            serviceDAO.setPassword("password");
+            serviceDAO.setRole(Role.READ);
+            serviceDAO.setCreationTime(0L);
+
+            this.serviceRepository.save(serviceDAO);
+        }
+
+        this.settingsSource = new EmbeddedSettingsSource(this.settingsService, this.servicesService, SERVICE_NAME);
+    }
+
+    /**
+     * This method tests that settings written through the source can be read back, and that the caller's own
+     * authentication is left alone.
+     */
+    @Test
+    public void testSaveAndGet() {
+        Assert.assertNull(this.settingsSource.getSetting(SERVICE_NAME, "embeddedSetting"));
+
+        SettingDTO settingDTO = new SettingDTO();
+        settingDTO.setName("embeddedSetting");
+        settingDTO.setValue("value");
+
+        this.settingsSource.saveSetting(SERVICE_NAME, settingDTO);
+
+        Assert.assertEquals("value", this.settingsSource.getSetting(SERVICE_NAME, "embeddedSetting").getValue());
+
+        List<SettingDTO> settings = this.settingsSource.getAllSettings(SERVICE_NAME);
+
+        Assert.assertTrue(settings.stream().anyMatch(setting -> "embeddedSetting".equals(setting.getName())));
+        Assert.assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    /**
+     * This method tests that failures carry the HTTP status the service would have answered with.
+     */
+    @Test
+    public void testAccessDenied() {
+        try {
+            this.settingsSource.getSetting("otherService", "name");
+            Assert.fail("Reading the settings of another service should have been refused");
+        } catch (SettingsSourceException e) {
+            Assert.assertEquals(403, e.getStatus());
+        }
+    }
+}
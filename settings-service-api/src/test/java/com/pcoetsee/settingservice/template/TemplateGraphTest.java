@@ -0,0 +1,107 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.template;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Class used for testing the resolving of references between settings.
+ */
+public class TemplateGraphTest {
+
+    /**
+     * This method tests that references are found in order, and that escaped and unclosed references are not.
+     */
+    @Test
+    public void testReferences() {
+        Assert.assertEquals(new LinkedHashSet<>(Arrays.asList("host", "port")), SettingTemplate.references("${host}:${port}/${host}"));
+        Assert.assertEquals(Collections.emptySet(), SettingTemplate.references("$${literal} ${unclosed"));
+        Assert.assertEquals("${literal}", SettingTemplate.render("$${literal}", name -> "wrong"));
+        Assert.assertEquals("a-${missing}", SettingTemplate.render("${a}-${missing}", name -> name.equals("a") ? "a" : null));
+    }
+
+    /**
+     * This method tests that a change drops the resolved values of the settings depending on it, including settings
+     * referencing a setting that did not exist yet.
+     */
+    @Test
+    public void testResolveAndInvalidate() {
+        Map<String, String> values = new HashMap<>();
+
+        values.put("host", "db1");
+        values.put("address", "${host}:${port}");
+        values.put("url", "mysql://${address}");
+        values.put("other", "${unrelated}");
+
+        TemplateGraph graph = new TemplateGraph(1, values);
+
+        Assert.assertEquals("mysql://db1:${port}", graph.resolve("url"));
+        Assert.assertEquals("${unrelated}", graph.resolve("other"));
+
+        Assert.assertEquals(2, graph.put("port", "3306"));
+        Assert.assertEquals("mysql://db1:3306", graph.resolve("url"));
+
+        Assert.assertEquals(2, graph.put("host", "db2"));
+        Assert.assertEquals("mysql://db2:3306", graph.resolve("url"));
+
+        Assert.assertEquals(2, graph.remove("host"));
+        Assert.assertEquals("mysql://${host}:3306", graph.resolve("url"));
+    }
+
+    /**
+     * This method tests that settings in a cycle are left unresolved instead of recursing forever.
+     */
+    @Test
+    public void testCycle() {
+        Map<String, String> values = new HashMap<>();
+
+        values.put("a", "${b}");
+        values.put("b", "${a}");
+
+        TemplateGraph graph = new TemplateGraph(1, values);
+
+        Assert.assertEquals("${a}", graph.resolve("a"));
+
+        Map<String, Set<String>> references = new HashMap<>();
+
+        references.put("a", Collections.singleton("b"));
+        references.put("b", Collections.singleton("c"));
+        references.put("c", Collections.singleton("a"));
+
+        Assert.assertEquals(Arrays.asList("a", "b", "c", "a"), TemplateGraph.findCycle(references, Collections.singleton("a")));
+
+        references.put("c", Collections.emptySet());
+
+        Assert.assertNull(TemplateGraph.findCycle(references, Collections.singleton("a")));
+    }
+}
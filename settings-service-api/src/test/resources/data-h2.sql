@@ -27,7 +27,7 @@ VALUES ('1', 'testingpassword', FALSE, UNIX_TIMESTAMP()),
        ('2', 'testingAdminpassword', true, UNIX_TIMESTAMP())
 ;
 
-INSERT INTO `settings_service`.`settings` (`service_id`, `name`, `value`, `date_last_used`)
+INSERT IGNORE INTO `settings_service`.`settings` (`service_id`, `name`, `value`, `date_last_used`)
 VALUES (1, 'testsetting', 'testvalue', NULL),
        (2, 'testseeting', 'testvalue2', DATE(UNIX_TIMESTAMP()))
 ;
\ No newline at end of file
@@ -27,6 +27,12 @@ SET MODE MYSQL;
 CREATE SCHEMA IF NOT EXISTS `settings_service`
 ;
 
+/*
+ * Tables only reached through JDBC are created in the default schema, where the unqualified queries of the application
+ * look for them, and where Hibernate creates the tables it maps. Their foreign keys are left out, so Hibernate can still
+ * drop and recreate the tables they would refer to.
+ */
+
 CREATE TABLE IF NOT EXISTS `settings_service`.`services`
 (
     `id`            BIGINT(20)    NOT NULL AUTO_INCREMENT,
@@ -34,6 +40,7 @@ CREATE TABLE IF NOT EXISTS `settings_service`.`services`
     `password`      VARCHAR(2048) NOT NULL,
     `admin`         TINYINT(1)    NOT NULL DEFAULT FALSE,
     `creation_time` BIGINT(20)    NOT NULL,
+    `version`       BIGINT(20)    NOT NULL DEFAULT 0,
 
     CONSTRAINT `pk_services_id` PRIMARY KEY (`id`),
     INDEX `idx_services_name` (`name`)
@@ -48,10 +55,108 @@ CREATE TABLE IF NOT EXISTS `settings_service`.`settings`
     `name`           VARCHAR(256)  NOT NULL,
     `value`          VARCHAR(4096) NOT NULL,
     `date_last_used` DATE,
+    `secret`         TINYINT(1)    NOT NULL DEFAULT FALSE,
+    `key_version`    INT,
+    `version`        BIGINT(20)    NOT NULL DEFAULT 0,
+    `blob_size`      BIGINT(20),
+    `blob_sha256`    CHAR(64),
 
     CONSTRAINT `pk_settings_id` PRIMARY KEY (`id`),
     CONSTRAINT `fk_settings_service_id_service_id` FOREIGN KEY (`service_id`) REFERENCES `services` (`id`),
-    CONSTRAINT `uk_service_id_setting_name` UNIQUE KEY (`service_id`, `name`)
+    CONSTRAINT `uk_service_id_setting_name` UNIQUE KEY (`service_id`, `name`),
+    INDEX `idx_settings_secret_key_version` (`secret`, `key_version`),
+    INDEX `idx_settings_date_last_used` (`date_last_used`),
+    INDEX `idx_settings_service_id_blob_sha256` (`service_id`, `blob_sha256`)
 )
     Engine = InnoDB
-;
\ No newline at end of file
+;
+
+CREATE TABLE IF NOT EXISTS `settings_archive`
+(
+    `id`             BIGINT(20)    NOT NULL AUTO_INCREMENT,
+    `service_id`     BIGINT(20)    NOT NULL,
+    `name`           VARCHAR(256)  NOT NULL,
+    `value`          VARCHAR(4096) NOT NULL,
+    `date_last_used` DATE,
+    `secret`         TINYINT(1)    NOT NULL DEFAULT FALSE,
+    `key_version`    INT,
+    `version`        BIGINT(20)    NOT NULL DEFAULT 0,
+    `blob_size`      BIGINT(20),
+    `blob_sha256`    CHAR(64),
+    `date_archived`  DATE          NOT NULL,
+
+    CONSTRAINT `pk_settings_archive_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_settings_archive_service_id_name` UNIQUE KEY (`service_id`, `name`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `setting_blobs`
+(
+    `id`            BIGINT(20)  NOT NULL AUTO_INCREMENT,
+    `service_id`    BIGINT(20)  NOT NULL,
+    `sha256`        VARCHAR(64) NOT NULL,
+    `seq`           INT         NOT NULL,
+    `data`          MEDIUMBLOB  NOT NULL,
+    `creation_time` BIGINT(20)  NOT NULL,
+
+    CONSTRAINT `pk_setting_blobs_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_setting_blobs_service_id_sha256_seq` UNIQUE KEY (`service_id`, `sha256`, `seq`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`api_keys`
+(
+    `id`            BIGINT(20)   NOT NULL AUTO_INCREMENT,
+    `service_id`    BIGINT(20)   NOT NULL,
+    `key_id`        VARCHAR(64)  NOT NULL,
+    `secret_hash`   VARCHAR(128) NOT NULL,
+    `creation_time` BIGINT(20)   NOT NULL,
+    `expiry_time`   BIGINT(20),
+
+    CONSTRAINT `pk_api_keys_id` PRIMARY KEY (`id`),
+    CONSTRAINT `fk_api_keys_service_id_service_id` FOREIGN KEY (`service_id`) REFERENCES `services` (`id`),
+    CONSTRAINT `uk_api_keys_key_id` UNIQUE KEY (`key_id`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `shard_directory`
+(
+    `service_id`   BIGINT(20)  NOT NULL,
+    `shard`        VARCHAR(64) NOT NULL,
+    `target_shard` VARCHAR(64),
+    `state`        VARCHAR(16) NOT NULL,
+
+    CONSTRAINT `pk_shard_directory_service_id` PRIMARY KEY (`service_id`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `service_revisions`
+(
+    `service_id` BIGINT(20) NOT NULL,
+    `revision`   BIGINT(20) NOT NULL,
+
+    CONSTRAINT `pk_service_revisions_service_id` PRIMARY KEY (`service_id`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `audit_log`
+(
+    `id`           BIGINT(20)    NOT NULL AUTO_INCREMENT,
+    `time`         BIGINT(20)    NOT NULL,
+    `actor`        VARCHAR(256),
+    `action`       VARCHAR(16)   NOT NULL,
+    `entity_type`  VARCHAR(32)   NOT NULL,
+    `service_name` VARCHAR(256)  NOT NULL,
+    `entity_name`  VARCHAR(256),
+    `detail`       VARCHAR(1024),
+
+    CONSTRAINT `pk_audit_log_id` PRIMARY KEY (`id`),
+    INDEX `idx_audit_log_service_name_time` (`service_name`, `time`)
+)
+    Engine = InnoDB
+;
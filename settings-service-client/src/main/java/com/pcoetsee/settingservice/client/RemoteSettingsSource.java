@@ -0,0 +1,202 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pcoetsee.settingservice.client.transport.HttpTransport;
+import com.pcoetsee.settingservice.client.transport.TransportRequest;
+import com.pcoetsee.settingservice.client.transport.TransportResponse;
+import com.pcoetsee.settingservice.client.transport.UrlConnectionTransport;
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetResultDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link SettingsSource} that talks to a Settings Service running in another process, over HTTP.
+ * <p>
+ * By default only the JDK and Jackson are used, so the client does not pull an HTTP library into the applications
+ * using it. Supply a {@link com.pcoetsee.settingservice.client.transport.PooledHttpTransport} to spread requests over
+ * several nodes.
+ */
+public class RemoteSettingsSource implements SettingsSource {
+
+    /**
+     * The number of settings fetched per request when fetching all settings of a service.
+     */
+    private static final int PAGE_SIZE = 500;
+
+    private final HttpTransport transport;
+    private final String authorization;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param baseUrl              the URL the Settings Service is reached at, not null
+     * @param authorization        the value of the Authorization header, see {@link #basicAuthorization(String, String)}
+     *                             and {@link #apiKeyAuthorization(String, String)}, not null
+     * @param objectMapper         the mapper used to read and write JSON, must be able to handle java.time types, not
+     *                             null
+     * @param connectTimeoutMillis how long to wait for a connection, 0 waits forever
+     * @param readTimeoutMillis    how long to wait for a response, 0 waits forever
+     */
+    public RemoteSettingsSource(String baseUrl, String authorization, ObjectMapper objectMapper, int connectTimeoutMillis, int readTimeoutMillis) {
+        this(new UrlConnectionTransport(baseUrl, connectTimeoutMillis, readTimeoutMillis), authorization, objectMapper);
+    }
+
+    /**
+     * @param transport     the transport requests are sent over, not null
+     * @param authorization the value of the Authorization header, see {@link #basicAuthorization(String, String)} and
+     *                      {@link #apiKeyAuthorization(String, String)}, not null
+     * @param objectMapper  the mapper used to read and write JSON, must be able to handle java.time types, not null
+     */
+    public RemoteSettingsSource(HttpTransport transport, String authorization, ObjectMapper objectMapper) {
+        this.transport = transport;
+        this.authorization = authorization;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * @return the Authorization header value for authenticating with a service name and password
+     */
+    public static String basicAuthorization(String serviceName, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((serviceName + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the Authorization header value for authenticating with an API key
+     */
+    public static String apiKeyAuthorization(String keyId, String secret) {
+        return "ApiKey " + keyId + ":" + secret;
+    }
+
+    @Override
+    public SettingDTO getSetting(String serviceName, String name) throws SettingsSourceException {
+        TransportResponse response = this.send("GET", this.settingsPath(serviceName) + "/" + RemoteSettingsSource.encode(name), null);
+
+        return response.getStatus() == HttpURLConnection.HTTP_NOT_FOUND ? null : this.read(response, SettingDTO.class);
+    }
+
+    @Override
+    public List<SettingDTO> getAllSettings(String serviceName) throws SettingsSourceException {
+        List<SettingDTO> settings = new ArrayList<>();
+
+        for (int page = 0; ; page++) {
+            TransportResponse response = this.send("GET", this.settingsPath(serviceName) + "?size=" + PAGE_SIZE + "&page=" + page, null);
+
+            if (response.getStatus() == HttpURLConnection.HTTP_NOT_FOUND) {
+                return settings;
+            }
+
+            JsonNode body = this.read(response, JsonNode.class);
+
+            for (JsonNode setting : body.path("content")) {
+                settings.add(this.objectMapper.convertValue(setting, SettingDTO.class));
+            }
+
+            if (body.path("last").asBoolean(true)) {
+                return settings;
+            }
+        }
+    }
+
+    @Override
+    public SettingDTO saveSetting(String serviceName, SettingDTO settingDTO) throws SettingsSourceException {
+        if (settingDTO == null || settingDTO.getName() == null) {
+            throw new IllegalArgumentException("No valid setting supplied, a name is required.");
+        }
+
+        return this.read(
+                this.send("PUT", this.settingsPath(serviceName) + "/" + RemoteSettingsSource.encode(settingDTO.getName()), settingDTO),
+                SettingDTO.class
+        );
+    }
+
+    @Override
+    public SettingChangeSetResultDTO applyChangeSet(String serviceName, SettingChangeSetDTO settingChangeSetDTO) throws SettingsSourceException {
+        return this.read(this.send("POST", this.settingsPath(serviceName) + "/change-sets", settingChangeSetDTO), SettingChangeSetResultDTO.class);
+    }
+
+    private String settingsPath(String serviceName) {
+        return "/services/" + RemoteSettingsSource.encode(serviceName) + "/settings";
+    }
+
+    private TransportResponse send(String method, String path, Object body) throws SettingsSourceException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        byte[] content = null;
+
+        headers.put("Authorization", this.authorization);
+        headers.put("Accept", "application/json");
+
+        if (body != null) {
+            headers.put("Content-Type", "application/json");
+
+            try {
+                content = this.objectMapper.writeValueAsBytes(body);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Could not write the request to the settings service", e);
+            }
+        }
+
+        return this.transport.send(new TransportRequest(method, path, headers, content));
+    }
+
+    private <T> T read(TransportResponse response, Class<T> type) throws SettingsSourceException {
+        if (response.getStatus() >= 400) {
+            throw new SettingsSourceException(response.getStatus(), "Settings service answered " + response.getStatus() + ": " + new String(response.getBody(), StandardCharsets.UTF_8));
+        }
+
+        try {
+            return this.objectMapper.readValue(response.getBody(), type);
+        } catch (IOException e) {
+            throw new SettingsSourceException(response.getStatus(), "Could not read the response of the settings service", e);
+        }
+    }
+
+    /**
+     * Encodes a path segment. URLEncoder encodes for forms, where a space becomes a plus sign, so that is undone.
+     */
+    private static String encode(String segment) {
+        if (segment == null || segment.trim().isEmpty()) {
+            throw new IllegalArgumentException("Blank service or setting name supplied.");
+        }
+
+        try {
+            return URLEncoder.encode(segment, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
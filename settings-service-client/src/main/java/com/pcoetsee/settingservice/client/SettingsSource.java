@@ -0,0 +1,81 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client;
+
+import com.pcoetsee.settingservice.dto.SettingChangeSetDTO;
+import com.pcoetsee.settingservice.dto.SettingChangeSetResultDTO;
+import com.pcoetsee.settingservice.dto.SettingDTO;
+
+import java.util.List;
+
+/**
+ * Reads and writes the settings of a service, regardless of whether the Settings Service runs in another process or in
+ * the same one.
+ * <p>
+ * Applications should depend on this interface only, so they can switch between {@link RemoteSettingsSource} and the
+ * embedded implementation offered by the Settings Service API through configuration alone.
+ */
+public interface SettingsSource {
+
+    /**
+     * Fetches a single setting.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param name        the name of the setting, blank or null causes exception
+     * @return the setting, null if it does not exist
+     * @throws SettingsSourceException when the setting can not be fetched
+     */
+    SettingDTO getSetting(String serviceName, String name) throws SettingsSourceException;
+
+    /**
+     * Fetches all settings of a service.
+     *
+     * @param serviceName the name of the service the settings belong to, blank or null causes exception
+     * @return the settings, empty if the service has none, not null
+     * @throws SettingsSourceException when the settings can not be fetched
+     */
+    List<SettingDTO> getAllSettings(String serviceName) throws SettingsSourceException;
+
+    /**
+     * Creates a setting, or updates it if it already exists. If the setting carries a version, it is only stored if
+     * the existing setting is still at that version.
+     *
+     * @param serviceName the name of the service the setting belongs to, blank or null causes exception
+     * @param settingDTO  the setting to store, must contain a name and a value, null causes exception
+     * @return the stored setting, not null
+     * @throws SettingsSourceException when the setting can not be stored, with status 409 on a version conflict
+     */
+    SettingDTO saveSetting(String serviceName, SettingDTO settingDTO) throws SettingsSourceException;
+
+    /**
+     * Applies several changes to the settings of a service together, as a single new revision.
+     *
+     * @param serviceName         the name of the service the settings belong to, blank or null causes exception
+     * @param settingChangeSetDTO the changes to apply, null or empty causes exception
+     * @return the new revision and the number of settings created, updated and deleted, not null
+     * @throws SettingsSourceException when the changes can not be applied, with status 409 on a conflict
+     */
+    SettingChangeSetResultDTO applyChangeSet(String serviceName, SettingChangeSetDTO settingChangeSetDTO) throws SettingsSourceException;
+}
@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client.transport;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latencies and calculates percentiles over them.
+ * <p>
+ * Sorting the window for every request would cost more than the requests it is meant to speed up, so a percentile is
+ * only recalculated after a twentieth of the window has been replaced.
+ */
+class LatencyWindow {
+
+    /**
+     * Percentiles over fewer samples than this are too noisy to act on.
+     */
+    static final int MIN_SAMPLES = 20;
+
+    private final long[] samples;
+    private final int recalculateEvery;
+    private int next;
+    private int size;
+    private int sinceCalculated;
+    private double calculatedPercentile = Double.NaN;
+    private long calculatedValue = -1;
+
+    /**
+     * @param capacity the number of latencies kept, at least {@link #MIN_SAMPLES}
+     */
+    LatencyWindow(int capacity) {
+        if (capacity < MIN_SAMPLES) {
+            throw new IllegalArgumentException("The latency window must hold at least " + MIN_SAMPLES + " samples");
+        }
+
+        this.samples = new long[capacity];
+        this.recalculateEvery = Math.max(1, capacity / 20);
+    }
+
+    /**
+     * @param latencyNanos the latency of a request that completed
+     */
+    synchronized void record(long latencyNanos) {
+        this.samples[this.next] = latencyNanos;
+        this.next = (this.next + 1) % this.samples.length;
+        this.size = Math.min(this.size + 1, this.samples.length);
+        this.sinceCalculated++;
+    }
+
+    /**
+     * @param percentile the percentile to calculate, between 0 and 1
+     * @return the latency in nanoseconds below which the supplied share of the recorded latencies fall, -1 if fewer than
+     * {@link #MIN_SAMPLES} latencies have been recorded
+     */
+    synchronized long percentile(double percentile) {
+        if (this.size < MIN_SAMPLES) {
+            return -1;
+        }
+
+        if (this.calculatedValue < 0 || this.calculatedPercentile != percentile || this.sinceCalculated >= this.recalculateEvery) {
+            long[] sorted = Arrays.copyOf(this.samples, this.size);
+            Arrays.sort(sorted);
+
+            this.calculatedValue = sorted[Math.min(this.size - 1, (int) Math.ceil(percentile * this.size) - 1)];
+            this.calculatedPercentile = percentile;
+            this.sinceCalculated = 0;
+        }
+
+        return this.calculatedValue;
+    }
+}
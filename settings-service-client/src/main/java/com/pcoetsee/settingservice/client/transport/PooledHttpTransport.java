@@ -0,0 +1,438 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client.transport;
+
+import com.pcoetsee.settingservice.client.SettingsSourceException;
+import org.apache.hc.client5.http.ConnectTimeoutException;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.Closeable;
+import java.net.ConnectException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link HttpTransport} over several nodes of the Settings Service, built on the Apache HttpClient 5 async client.
+ * <p>
+ * Connections are pooled per node. Over TLS the client offers HTTP/2 through ALPN, and a node that accepts it carries
+ * concurrent requests over one multiplexed connection; plain http and nodes without HTTP/2 use pooled HTTP/1.1
+ * keep-alive connections.
+ * <p>
+ * Every request goes to the node with the lowest expected wait, the moving average of its latency multiplied by the
+ * number of requests it is already busy with. A node that fails is only used after all others until its back off has
+ * passed.
+ * <p>
+ * Reads are safe to send twice. When a read has not been answered after the p95 latency of recent requests, it is
+ * hedged: sent to the next best node as well, and whichever answer arrives first is used while the other is cancelled.
+ * A read that fails or gets a server error is retried on the next node. Writes are only sent to another node when the
+ * first could not be connected to, since they may otherwise have been applied already.
+ */
+public class PooledHttpTransport implements HttpTransport, Closeable {
+
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    private final List<Node> nodes;
+    private final PooledHttpTransportOptions options;
+    private final LatencyWindow latencyWindow;
+    private final CloseableHttpAsyncClient client;
+    private final ScheduledExecutorService hedgeScheduler;
+    private final AtomicInteger hedgesSent = new AtomicInteger();
+
+    /**
+     * Creates the transport and starts its client, {@link #close()} must be called when it is no longer used.
+     *
+     * @param baseUrls the URLs the nodes of the Settings Service are reached at, in order of preference, empty causes
+     *                 exception
+     * @param options  the options of the transport, not null
+     */
+    public PooledHttpTransport(List<String> baseUrls, PooledHttpTransportOptions options) {
+        if (baseUrls == null || baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one settings service URL is required.");
+        }
+
+        if (options.getLatencyDecay() <= 0 || options.getLatencyDecay() > 1) {
+            throw new IllegalArgumentException("The latency decay must be more than 0 and at most 1.");
+        }
+
+        List<Node> nodes = new ArrayList<>();
+
+        for (String baseUrl : baseUrls) {
+            nodes.add(new Node(baseUrl.trim().endsWith("/") ? baseUrl.trim().substring(0, baseUrl.trim().length() - 1) : baseUrl.trim()));
+        }
+
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.options = options;
+        this.latencyWindow = new LatencyWindow(options.getLatencyWindow());
+
+        this.client = HttpAsyncClients.custom()
+                .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                .setConnectionManager(PoolingAsyncClientConnectionManagerBuilder.create()
+                        .setMaxConnPerRoute(options.getMaxConnectionsPerNode())
+                        .setMaxConnTotal(options.getMaxConnectionsTotal())
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(options.getConnectTimeoutMillis()))
+                        .setResponseTimeout(Timeout.ofMilliseconds(options.getResponseTimeoutMillis()))
+                        .build())
+                .build();
+        this.client.start();
+
+        this.hedgeScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "settings-transport-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws SettingsSourceException {
+        List<Node> ranked = this.rank();
+
+        return request.isIdempotent() ? this.sendRead(request, ranked) : this.sendWrite(request, ranked);
+    }
+
+    /**
+     * @return the number of requests that were hedged so far
+     */
+    public int getHedgesSent() {
+        return this.hedgesSent.get();
+    }
+
+    @Override
+    public void close() {
+        this.hedgeScheduler.shutdownNow();
+        this.client.close(CloseMode.GRACEFUL);
+    }
+
+    /**
+     * @return the nodes in the order they should be tried for the next request
+     */
+    List<Node> rank() {
+        long now = System.nanoTime();
+        List<Node> ranked = new ArrayList<>(this.nodes);
+
+        // The sort is stable, so nodes that are equally good keep their configured order.
+        ranked.sort(Comparator.comparing((Node node) -> node.isBackingOff(now)).thenComparingDouble(Node::score));
+
+        return ranked;
+    }
+
+    /**
+     * @return the delay after which an unanswered read is hedged, in milliseconds
+     */
+    long hedgeDelayMillis() {
+        long p95 = this.latencyWindow.percentile(HEDGE_PERCENTILE);
+
+        if (p95 < 0) {
+            return this.options.getHedgeDefaultDelayMillis();
+        }
+
+        return Math.max(this.options.getHedgeMinDelayMillis(), TimeUnit.NANOSECONDS.toMillis(p95));
+    }
+
+    private TransportResponse sendRead(TransportRequest request, List<Node> ranked) throws SettingsSourceException {
+        ReadAttempts attempts = new ReadAttempts(request, ranked);
+        ScheduledFuture<?> hedge = null;
+
+        attempts.startNext();
+
+        if (this.options.isHedgingEnabled() && ranked.size() > 1) {
+            hedge = this.hedgeScheduler.schedule(() -> {
+                if (!attempts.result.isDone() && attempts.startNext()) {
+                    this.hedgesSent.incrementAndGet();
+                }
+            }, this.hedgeDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        try {
+            return attempts.result.get();
+        } catch (ExecutionException e) {
+            throw new SettingsSourceException(0, "Could not reach any settings service node", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SettingsSourceException(0, "Interrupted while waiting for the settings service", e);
+        } finally {
+            if (hedge != null) {
+                hedge.cancel(false);
+            }
+
+            attempts.cancelAll();
+        }
+    }
+
+    private TransportResponse sendWrite(TransportRequest request, List<Node> ranked) throws SettingsSourceException {
+        Throwable lastFailure = null;
+
+        for (Node node : ranked) {
+            CompletableFuture<SimpleHttpResponse> response = new CompletableFuture<>();
+            long start = System.nanoTime();
+
+            node.inFlight.incrementAndGet();
+            this.client.execute(this.createRequest(node, request), new FutureCallback<SimpleHttpResponse>() {
+                @Override
+                public void completed(SimpleHttpResponse result) {
+                    response.complete(result);
+                }
+
+                @Override
+                public void failed(Exception ex) {
+                    response.completeExceptionally(ex);
+                }
+
+                @Override
+                public void cancelled() {
+                    response.cancel(false);
+                }
+            });
+
+            try {
+                SimpleHttpResponse result = response.get();
+
+                if (result.getCode() >= 500) {
+                    node.recordFailure(this.options.getFailureBackoffMillis());
+                } else {
+                    this.recordSuccess(node, System.nanoTime() - start);
+                }
+
+                return PooledHttpTransport.toTransportResponse(result);
+            } catch (ExecutionException e) {
+                lastFailure = e.getCause();
+                node.recordFailure(this.options.getFailureBackoffMillis());
+
+                if (!PooledHttpTransport.isConnectFailure(lastFailure)) {
+                    throw new SettingsSourceException(0, "The settings service node at " + node.baseUrl + " failed, the request may or may not have been applied", lastFailure);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SettingsSourceException(0, "Interrupted while waiting for the settings service", e);
+            } finally {
+                node.inFlight.decrementAndGet();
+            }
+        }
+
+        throw new SettingsSourceException(0, "Could not connect to any settings service node", lastFailure);
+    }
+
+    private SimpleHttpRequest createRequest(Node node, TransportRequest request) {
+        SimpleHttpRequest httpRequest = new SimpleHttpRequest(request.getMethod(), URI.create(node.baseUrl + request.getPath()));
+        String contentType = null;
+
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            if (HttpHeaders.CONTENT_TYPE.equalsIgnoreCase(header.getKey())) {
+                contentType = header.getValue();
+            } else {
+                httpRequest.setHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        if (request.getBody() != null) {
+            httpRequest.setBody(request.getBody(), contentType == null ? ContentType.APPLICATION_OCTET_STREAM : ContentType.parse(contentType));
+        }
+
+        return httpRequest;
+    }
+
+    private void recordSuccess(Node node, long latencyNanos) {
+        node.recordLatency(latencyNanos, this.options.getLatencyDecay());
+        this.latencyWindow.record(latencyNanos);
+    }
+
+    private static boolean isConnectFailure(Throwable failure) {
+        return failure instanceof ConnectException || failure instanceof ConnectTimeoutException;
+    }
+
+    private static TransportResponse toTransportResponse(SimpleHttpResponse response) {
+        byte[] body = response.getBodyBytes();
+
+        return new TransportResponse(response.getCode(), body == null ? new byte[0] : body);
+    }
+
+    /**
+     * The attempts made for a single read. The first answer that is not a server error completes the result; when
+     * every node has failed the result is the last server error, or the last failure if no node answered at all.
+     */
+    private final class ReadAttempts {
+        private final TransportRequest request;
+        private final List<Node> ranked;
+        private final CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        private final List<Future<SimpleHttpResponse>> started = new ArrayList<>();
+        private int next;
+        private int outstanding;
+        private TransportResponse lastServerError;
+
+        private ReadAttempts(TransportRequest request, List<Node> ranked) {
+            this.request = request;
+            this.ranked = ranked;
+        }
+
+        /**
+         * @return true if a request was sent, false if every node has been tried or the read is already answered
+         */
+        private synchronized boolean startNext() {
+            if (this.next >= this.ranked.size() || this.result.isDone()) {
+                return false;
+            }
+
+            Node node = this.ranked.get(this.next++);
+            long start = System.nanoTime();
+
+            this.outstanding++;
+            node.inFlight.incrementAndGet();
+
+            this.started.add(PooledHttpTransport.this.client.execute(
+                    PooledHttpTransport.this.createRequest(node, this.request),
+                    new FutureCallback<SimpleHttpResponse>() {
+                        @Override
+                        public void completed(SimpleHttpResponse response) {
+                            node.inFlight.decrementAndGet();
+
+                            if (response.getCode() >= 500) {
+                                node.recordFailure(PooledHttpTransport.this.options.getFailureBackoffMillis());
+                                ReadAttempts.this.failed(PooledHttpTransport.toTransportResponse(response), null);
+                            } else {
+                                PooledHttpTransport.this.recordSuccess(node, System.nanoTime() - start);
+                                ReadAttempts.this.result.complete(PooledHttpTransport.toTransportResponse(response));
+                            }
+                        }
+
+                        @Override
+                        public void failed(Exception ex) {
+                            node.inFlight.decrementAndGet();
+                            node.recordFailure(PooledHttpTransport.this.options.getFailureBackoffMillis());
+                            ReadAttempts.this.failed(null, ex);
+                        }
+
+                        @Override
+                        public void cancelled() {
+                            // Only losing hedges are cancelled, that is no reflection on the node.
+                            node.inFlight.decrementAndGet();
+                        }
+                    }
+            ));
+
+            return true;
+        }
+
+        private synchronized void failed(TransportResponse serverError, Exception failure) {
+            this.outstanding--;
+
+            if (serverError != null) {
+                this.lastServerError = serverError;
+            }
+
+            if (this.startNext() || this.outstanding > 0) {
+                return;
+            }
+
+            if (this.lastServerError != null) {
+                this.result.complete(this.lastServerError);
+            } else {
+                this.result.completeExceptionally(failure);
+            }
+        }
+
+        private synchronized void cancelAll() {
+            for (Future<SimpleHttpResponse> future : this.started) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * A node of the Settings Service and what is known about how well it is answering.
+     */
+    static final class Node {
+        private final String baseUrl;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile double averageLatencyNanos;
+        private volatile long backOffUntilNanos;
+        private volatile boolean backingOff;
+
+        private Node(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * @return the expected wait for a request sent to this node, 0 for a node that has not answered yet so every
+         * node is measured early on
+         */
+        double score() {
+            return this.averageLatencyNanos * (this.inFlight.get() + 1);
+        }
+
+        boolean isBackingOff(long now) {
+            return this.backingOff && now - this.backOffUntilNanos < 0;
+        }
+
+        private synchronized void recordLatency(long latencyNanos, double decay) {
+            this.averageLatencyNanos = this.averageLatencyNanos == 0
+                    ? latencyNanos
+                    : decay * latencyNanos + (1 - decay) * this.averageLatencyNanos;
+            this.backingOff = false;
+        }
+
+        private void recordFailure(long backOffMillis) {
+            this.backOffUntilNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backOffMillis);
+            this.backingOff = true;
+        }
+
+        @Override
+        public String toString() {
+            return "Node{" +
+                    "baseUrl='" + baseUrl + '\'' +
+                    ", inFlight=" + inFlight +
+                    ", averageLatencyNanos=" + averageLatencyNanos +
+                    ", backingOff=" + backingOff +
+                    '}';
+        }
+    }
+}
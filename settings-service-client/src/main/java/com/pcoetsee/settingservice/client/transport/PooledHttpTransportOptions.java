@@ -0,0 +1,178 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client.transport;
+
+/**
+ * The options of a {@link PooledHttpTransport}. The defaults suit a handful of nodes in the same data centre.
+ */
+public class PooledHttpTransportOptions {
+
+    /**
+     * The most connections kept open to a single node. With HTTP/2 a single connection carries many requests at once.
+     */
+    private int maxConnectionsPerNode = 20;
+
+    /**
+     * The most connections kept open to all nodes together.
+     */
+    private int maxConnectionsTotal = 100;
+
+    /**
+     * How long to wait for a connection to a node, in milliseconds.
+     */
+    private int connectTimeoutMillis = 2000;
+
+    /**
+     * How long to wait for a node to answer once the request was sent, in milliseconds.
+     */
+    private int responseTimeoutMillis = 5000;
+
+    /**
+     * Whether a read that has not been answered after the hedge delay is also sent to the next best node, taking
+     * whichever answer arrives first.
+     */
+    private boolean hedgingEnabled = true;
+
+    /**
+     * The shortest hedge delay in milliseconds, so that a very fast p95 does not double the load.
+     */
+    private long hedgeMinDelayMillis = 5;
+
+    /**
+     * The hedge delay in milliseconds used until enough latencies have been recorded to know the p95.
+     */
+    private long hedgeDefaultDelayMillis = 50;
+
+    /**
+     * How long a node that failed is only used after all other nodes, in milliseconds.
+     */
+    private long failureBackoffMillis = 5000;
+
+    /**
+     * The weight of the latest latency in the moving average kept per node, between 0 exclusive and 1 inclusive.
+     */
+    private double latencyDecay = 0.2;
+
+    /**
+     * The number of recent latencies the p95 is calculated over.
+     */
+    private int latencyWindow = 1000;
+
+    public int getMaxConnectionsPerNode() {
+        return maxConnectionsPerNode;
+    }
+
+    public void setMaxConnectionsPerNode(int maxConnectionsPerNode) {
+        this.maxConnectionsPerNode = maxConnectionsPerNode;
+    }
+
+    public int getMaxConnectionsTotal() {
+        return maxConnectionsTotal;
+    }
+
+    public void setMaxConnectionsTotal(int maxConnectionsTotal) {
+        this.maxConnectionsTotal = maxConnectionsTotal;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return connectTimeoutMillis;
+    }
+
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getResponseTimeoutMillis() {
+        return responseTimeoutMillis;
+    }
+
+    public void setResponseTimeoutMillis(int responseTimeoutMillis) {
+        this.responseTimeoutMillis = responseTimeoutMillis;
+    }
+
+    public boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+
+    public void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    public long getHedgeMinDelayMillis() {
+        return hedgeMinDelayMillis;
+    }
+
+    public void setHedgeMinDelayMillis(long hedgeMinDelayMillis) {
+        this.hedgeMinDelayMillis = hedgeMinDelayMillis;
+    }
+
+    public long getHedgeDefaultDelayMillis() {
+        return hedgeDefaultDelayMillis;
+    }
+
+    public void setHedgeDefaultDelayMillis(long hedgeDefaultDelayMillis) {
+        this.hedgeDefaultDelayMillis = hedgeDefaultDelayMillis;
+    }
+
+    public long getFailureBackoffMillis() {
+        return failureBackoffMillis;
+    }
+
+    public void setFailureBackoffMillis(long failureBackoffMillis) {
+        this.failureBackoffMillis = failureBackoffMillis;
+    }
+
+    public double getLatencyDecay() {
+        return latencyDecay;
+    }
+
+    public void setLatencyDecay(double latencyDecay) {
+        this.latencyDecay = latencyDecay;
+    }
+
+    public int getLatencyWindow() {
+        return latencyWindow;
+    }
+
+    public void setLatencyWindow(int latencyWindow) {
+        this.latencyWindow = latencyWindow;
+    }
+
+    @Override
+    public String toString() {
+        return "PooledHttpTransportOptions{" +
+                "maxConnectionsPerNode=" + maxConnectionsPerNode +
+                ", maxConnectionsTotal=" + maxConnectionsTotal +
+                ", connectTimeoutMillis=" + connectTimeoutMillis +
+                ", responseTimeoutMillis=" + responseTimeoutMillis +
+                ", hedgingEnabled=" + hedgingEnabled +
+                ", hedgeMinDelayMillis=" + hedgeMinDelayMillis +
+                ", hedgeDefaultDelayMillis=" + hedgeDefaultDelayMillis +
+                ", failureBackoffMillis=" + failureBackoffMillis +
+                ", latencyDecay=" + latencyDecay +
+                ", latencyWindow=" + latencyWindow +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client.transport;
+
+import com.pcoetsee.settingservice.client.SettingsSourceException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * An {@link HttpTransport} to a single node, using only the JDK. The JDK keeps idle connections alive and reuses them,
+ * but speaks HTTP/1.1 only; use {@link PooledHttpTransport} for several nodes or HTTP/2.
+ */
+public class UrlConnectionTransport implements HttpTransport {
+
+    private final String baseUrl;
+    private final int connectTimeoutMillis;
+    private final int readTimeoutMillis;
+
+    /**
+     * @param baseUrl              the URL the Settings Service is reached at, not null
+     * @param connectTimeoutMillis how long to wait for a connection, 0 waits forever
+     * @param readTimeoutMillis    how long to wait for a response, 0 waits forever
+     */
+    public UrlConnectionTransport(String baseUrl, int connectTimeoutMillis, int readTimeoutMillis) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public TransportResponse send(TransportRequest request) throws SettingsSourceException {
+        HttpURLConnection connection = null;
+
+        try {
+            connection = (HttpURLConnection) new URL(this.baseUrl + request.getPath()).openConnection();
+            connection.setRequestMethod(request.getMethod());
+            connection.setConnectTimeout(this.connectTimeoutMillis);
+            connection.setReadTimeout(this.readTimeoutMillis);
+
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            if (request.getBody() != null) {
+                connection.setDoOutput(true);
+
+                try (OutputStream outputStream = connection.getOutputStream()) {
+                    outputStream.write(request.getBody());
+                }
+            }
+
+            int status = connection.getResponseCode();
+            InputStream inputStream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+
+            return new TransportResponse(status, UrlConnectionTransport.readFully(inputStream));
+        } catch (IOException e) {
+            throw new SettingsSourceException(0, "Could not reach the settings service at " + this.baseUrl, e);
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return new byte[0];
+        }
+
+        try (InputStream in = inputStream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+
+            return out.toByteArray();
+        }
+    }
+}
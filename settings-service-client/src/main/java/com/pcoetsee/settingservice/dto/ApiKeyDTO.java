@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Data transfer object for sending information regarding API keys from one place to another.
+ */
+public class ApiKeyDTO {
+
+    /**
+     * The public identifier of the key.
+     */
+    private String keyId;
+
+    /**
+     * The secret for the key, only ever returned once, when the key is created.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String secret;
+
+    /**
+     * The date and time this key was created.
+     */
+    private ZonedDateTime creationTime;
+
+    /**
+     * The date and time after which this key may no longer be used, null if the key does not expire.
+     */
+    private ZonedDateTime expiryTime;
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(String keyId) {
+        this.keyId = keyId;
+    }
+
+    public String getSecret() {
+        return secret;
+    }
+
+    public void setSecret(String secret) {
+        this.secret = secret;
+    }
+
+    public ZonedDateTime getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(ZonedDateTime creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public ZonedDateTime getExpiryTime() {
+        return expiryTime;
+    }
+
+    public void setExpiryTime(ZonedDateTime expiryTime) {
+        this.expiryTime = expiryTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ApiKeyDTO)) return false;
+
+        ApiKeyDTO that = (ApiKeyDTO) o;
+
+        if (getKeyId() != null ? !getKeyId().equals(that.getKeyId()) : that.getKeyId() != null) return false;
+        if (getSecret() != null ? !getSecret().equals(that.getSecret()) : that.getSecret() != null) return false;
+        if (getCreationTime() != null ? !getCreationTime().equals(that.getCreationTime()) : that.getCreationTime() != null)
+            return false;
+        return getExpiryTime() != null ? getExpiryTime().equals(that.getExpiryTime()) : that.getExpiryTime() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getKeyId() != null ? getKeyId().hashCode() : 0;
+        result = 31 * result + (getSecret() != null ? getSecret().hashCode() : 0);
+        result = 31 * result + (getCreationTime() != null ? getCreationTime().hashCode() : 0);
+        result = 31 * result + (getExpiryTime() != null ? getExpiryTime().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ApiKeyDTO{" +
+                "keyId='" + keyId + '\'' +
+                ", creationTime=" + creationTime +
+                ", expiryTime=" + expiryTime +
+                '}';
+    }
+}
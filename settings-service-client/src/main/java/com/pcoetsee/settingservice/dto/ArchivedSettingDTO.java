@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Data transfer object describing a setting that was moved to the archive because it went unused. The value is left
+ * out; restore the setting to read it.
+ */
+public class ArchivedSettingDTO {
+
+    /**
+     * The name of the setting.
+     */
+    private String name;
+
+    /**
+     * The date this setting was last requested before it was archived.
+     */
+    private ZonedDateTime dateLastUsed;
+
+    /**
+     * The date this setting was moved to the archive.
+     */
+    private ZonedDateTime dateArchived;
+
+    /**
+     * Indicates whether the value is a secret.
+     */
+    private boolean secret;
+
+    /**
+     * The version of the record when it was archived.
+     */
+    private Long version;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public ZonedDateTime getDateLastUsed() {
+        return dateLastUsed;
+    }
+
+    public void setDateLastUsed(ZonedDateTime dateLastUsed) {
+        this.dateLastUsed = dateLastUsed;
+    }
+
+    public ZonedDateTime getDateArchived() {
+        return dateArchived;
+    }
+
+    public void setDateArchived(ZonedDateTime dateArchived) {
+        this.dateArchived = dateArchived;
+    }
+
+    public boolean isSecret() {
+        return secret;
+    }
+
+    public void setSecret(boolean secret) {
+        this.secret = secret;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ArchivedSettingDTO)) return false;
+
+        ArchivedSettingDTO that = (ArchivedSettingDTO) o;
+
+        if (isSecret() != that.isSecret()) return false;
+        if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
+        if (getDateLastUsed() != null ? !getDateLastUsed().equals(that.getDateLastUsed()) : that.getDateLastUsed() != null) return false;
+        if (getDateArchived() != null ? !getDateArchived().equals(that.getDateArchived()) : that.getDateArchived() != null) return false;
+        return getVersion() != null ? getVersion().equals(that.getVersion()) : that.getVersion() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getName() != null ? getName().hashCode() : 0;
+        result = 31 * result + (getDateLastUsed() != null ? getDateLastUsed().hashCode() : 0);
+        result = 31 * result + (getDateArchived() != null ? getDateArchived().hashCode() : 0);
+        result = 31 * result + (isSecret() ? 1 : 0);
+        result = 31 * result + (getVersion() != null ? getVersion().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchivedSettingDTO{" +
+                "name='" + name + '\'' +
+                ", dateLastUsed=" + dateLastUsed +
+                ", dateArchived=" + dateArchived +
+                ", secret=" + secret +
+                ", version=" + version +
+                '}';
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+/**
+ * Data transfer object describing a service, or a setting of a service, that is read often.
+ */
+public class HotKeyDTO {
+
+    /**
+     * The name of the service that was read.
+     */
+    private String serviceName;
+
+    /**
+     * The name of the setting that was read, null when all settings of the service were read at once, or when the
+     * reads of the service as a whole are described.
+     */
+    private String settingName;
+
+    /**
+     * The estimated number of reads. Never less than the actual number, and only more when keys share counters.
+     */
+    private long reads;
+
+    public HotKeyDTO() {
+    }
+
+    public HotKeyDTO(String serviceName, String settingName, long reads) {
+        this.serviceName = serviceName;
+        this.settingName = settingName;
+        this.reads = reads;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getSettingName() {
+        return settingName;
+    }
+
+    public void setSettingName(String settingName) {
+        this.settingName = settingName;
+    }
+
+    public long getReads() {
+        return reads;
+    }
+
+    public void setReads(long reads) {
+        this.reads = reads;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HotKeyDTO)) return false;
+
+        HotKeyDTO that = (HotKeyDTO) o;
+
+        if (getReads() != that.getReads()) return false;
+        if (getServiceName() != null ? !getServiceName().equals(that.getServiceName()) : that.getServiceName() != null)
+            return false;
+        return getSettingName() != null ? getSettingName().equals(that.getSettingName()) : that.getSettingName() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getServiceName() != null ? getServiceName().hashCode() : 0;
+        result = 31 * result + (getSettingName() != null ? getSettingName().hashCode() : 0);
+        result = 31 * result + (int) (getReads() ^ (getReads() >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKeyDTO{" +
+                "serviceName='" + serviceName + '\'' +
+                ", settingName='" + settingName + '\'' +
+                ", reads=" + reads +
+                '}';
+    }
+}
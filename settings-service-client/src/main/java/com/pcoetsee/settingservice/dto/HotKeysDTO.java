@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.util.List;
+
+/**
+ * Data transfer object describing the most read services and settings over a window of time.
+ */
+public class HotKeysDTO {
+
+    /**
+     * The length of the window, in seconds. The window ends now, and starts on a bucket boundary, so it may cover up
+     * to one bucket less than asked for.
+     */
+    private long windowSeconds;
+
+    /**
+     * The number of reads counted in the window, exact.
+     */
+    private long totalReads;
+
+    /**
+     * The most read settings, most read first. All settings of a service read at once count as one key without a
+     * setting name.
+     */
+    private List<HotKeyDTO> settings;
+
+    /**
+     * The most read services, most read first.
+     */
+    private List<HotKeyDTO> services;
+
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(long windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public long getTotalReads() {
+        return totalReads;
+    }
+
+    public void setTotalReads(long totalReads) {
+        this.totalReads = totalReads;
+    }
+
+    public List<HotKeyDTO> getSettings() {
+        return settings;
+    }
+
+    public void setSettings(List<HotKeyDTO> settings) {
+        this.settings = settings;
+    }
+
+    public List<HotKeyDTO> getServices() {
+        return services;
+    }
+
+    public void setServices(List<HotKeyDTO> services) {
+        this.services = services;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HotKeysDTO)) return false;
+
+        HotKeysDTO that = (HotKeysDTO) o;
+
+        if (getWindowSeconds() != that.getWindowSeconds()) return false;
+        if (getTotalReads() != that.getTotalReads()) return false;
+        if (getSettings() != null ? !getSettings().equals(that.getSettings()) : that.getSettings() != null)
+            return false;
+        return getServices() != null ? getServices().equals(that.getServices()) : that.getServices() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (getWindowSeconds() ^ (getWindowSeconds() >>> 32));
+        result = 31 * result + (int) (getTotalReads() ^ (getTotalReads() >>> 32));
+        result = 31 * result + (getSettings() != null ? getSettings().hashCode() : 0);
+        result = 31 * result + (getServices() != null ? getServices().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HotKeysDTO{" +
+                "windowSeconds=" + windowSeconds +
+                ", totalReads=" + totalReads +
+                ", settings=" + settings +
+                ", services=" + services +
+                '}';
+    }
+}
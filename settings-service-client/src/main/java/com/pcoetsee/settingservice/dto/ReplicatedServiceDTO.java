@@ -0,0 +1,148 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+/**
+ * Data transfer object carrying a service from a primary node to its followers, including the hash of its password so
+ * followers can authenticate the service.
+ */
+public class ReplicatedServiceDTO {
+
+    /**
+     * The ID of the service on the primary node.
+     */
+    private Long id;
+
+    /**
+     * The name of the service.
+     */
+    private String name;
+
+    /**
+     * The hash of the password of the service, never the password itself.
+     */
+    private String password;
+
+    /**
+     * The role of the service.
+     */
+    private String role;
+
+    /**
+     * The time the service was created, in seconds since the epoch.
+     */
+    private Long creationTime;
+
+    /**
+     * The version of the service record.
+     */
+    private long version;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public Long getCreationTime() {
+        return creationTime;
+    }
+
+    public void setCreationTime(Long creationTime) {
+        this.creationTime = creationTime;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplicatedServiceDTO)) return false;
+
+        ReplicatedServiceDTO that = (ReplicatedServiceDTO) o;
+
+        if (getId() != null ? !getId().equals(that.getId()) : that.getId() != null) return false;
+        if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
+        if (getPassword() != null ? !getPassword().equals(that.getPassword()) : that.getPassword() != null) return false;
+        if (getRole() != null ? !getRole().equals(that.getRole()) : that.getRole() != null) return false;
+        if (getCreationTime() != null ? !getCreationTime().equals(that.getCreationTime()) : that.getCreationTime() != null) return false;
+        return getVersion() == that.getVersion();
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getId() != null ? getId().hashCode() : 0;
+        result = 31 * result + (getName() != null ? getName().hashCode() : 0);
+        result = 31 * result + (getPassword() != null ? getPassword().hashCode() : 0);
+        result = 31 * result + (getRole() != null ? getRole().hashCode() : 0);
+        result = 31 * result + (getCreationTime() != null ? getCreationTime().hashCode() : 0);
+        result = 31 * result + (int) (getVersion() ^ (getVersion() >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicatedServiceDTO{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", password='" + (password == null ? null : "******") + '\'' +
+                ", role='" + role + '\'' +
+                ", creationTime=" + creationTime +
+                ", version=" + version +
+                '}';
+    }
+}
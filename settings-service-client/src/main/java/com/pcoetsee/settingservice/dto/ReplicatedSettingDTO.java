@@ -0,0 +1,166 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Data transfer object carrying a setting from a primary node to its followers. Secret values are carried encrypted,
+ * followers decrypt them with their own copy of the keys.
+ */
+public class ReplicatedSettingDTO {
+
+    /**
+     * The ID of the service the setting belongs to.
+     */
+    private Long serviceId;
+
+    /**
+     * The name of the setting.
+     */
+    private String name;
+
+    /**
+     * The value of the setting, encrypted if it is a secret.
+     */
+    private String value;
+
+    /**
+     * Indicates whether the value is a secret.
+     */
+    private boolean secret;
+
+    /**
+     * The version of the key a secret value was encrypted with, null if the value is not a secret.
+     */
+    private Integer keyVersion;
+
+    /**
+     * The version of the setting record.
+     */
+    private long version;
+
+    /**
+     * The date this setting was last requested.
+     */
+    private ZonedDateTime dateLastUsed;
+
+    public Long getServiceId() {
+        return serviceId;
+    }
+
+    public void setServiceId(Long serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public boolean isSecret() {
+        return secret;
+    }
+
+    public void setSecret(boolean secret) {
+        this.secret = secret;
+    }
+
+    public Integer getKeyVersion() {
+        return keyVersion;
+    }
+
+    public void setKeyVersion(Integer keyVersion) {
+        this.keyVersion = keyVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public ZonedDateTime getDateLastUsed() {
+        return dateLastUsed;
+    }
+
+    public void setDateLastUsed(ZonedDateTime dateLastUsed) {
+        this.dateLastUsed = dateLastUsed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplicatedSettingDTO)) return false;
+
+        ReplicatedSettingDTO that = (ReplicatedSettingDTO) o;
+
+        if (getServiceId() != null ? !getServiceId().equals(that.getServiceId()) : that.getServiceId() != null) return false;
+        if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
+        if (getValue() != null ? !getValue().equals(that.getValue()) : that.getValue() != null) return false;
+        if (isSecret() != that.isSecret()) return false;
+        if (getKeyVersion() != null ? !getKeyVersion().equals(that.getKeyVersion()) : that.getKeyVersion() != null) return false;
+        if (getVersion() != that.getVersion()) return false;
+        return getDateLastUsed() != null ? getDateLastUsed().equals(that.getDateLastUsed()) : that.getDateLastUsed() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getServiceId() != null ? getServiceId().hashCode() : 0;
+        result = 31 * result + (getName() != null ? getName().hashCode() : 0);
+        result = 31 * result + (getValue() != null ? getValue().hashCode() : 0);
+        result = 31 * result + (isSecret() ? 1 : 0);
+        result = 31 * result + (getKeyVersion() != null ? getKeyVersion().hashCode() : 0);
+        result = 31 * result + (int) (getVersion() ^ (getVersion() >>> 32));
+        result = 31 * result + (getDateLastUsed() != null ? getDateLastUsed().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicatedSettingDTO{" +
+                "serviceId=" + serviceId +
+                ", name='" + name + '\'' +
+                ", value='" + (secret ? "******" : value) + '\'' +
+                ", secret=" + secret +
+                ", keyVersion=" + keyVersion +
+                ", version=" + version +
+                ", dateLastUsed=" + dateLastUsed +
+                '}';
+    }
+}
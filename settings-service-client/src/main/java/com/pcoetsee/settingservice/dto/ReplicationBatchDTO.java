@@ -0,0 +1,134 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.util.List;
+
+/**
+ * Data transfer object containing the entries of the change stream of a primary node that follow a given entry.
+ */
+public class ReplicationBatchDTO {
+
+    /**
+     * Identifies the change stream of the primary node, which starts over whenever the primary restarts.
+     */
+    private String streamId;
+
+    /**
+     * The last entry recorded by the primary node when the batch was put together.
+     */
+    private long headSequence;
+
+    /**
+     * The time the batch was put together, in milliseconds since the epoch.
+     */
+    private long timestamp;
+
+    /**
+     * Indicates that the requested entries are no longer held by the primary node, or belong to another stream, so the
+     * follower has to load a new snapshot.
+     */
+    private boolean resyncRequired;
+
+    /**
+     * The entries following the requested one, in order, empty if there were none before the wait ran out.
+     */
+    private List<ReplicationChangeDTO> changes;
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(String streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getHeadSequence() {
+        return headSequence;
+    }
+
+    public void setHeadSequence(long headSequence) {
+        this.headSequence = headSequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public void setResyncRequired(boolean resyncRequired) {
+        this.resyncRequired = resyncRequired;
+    }
+
+    public List<ReplicationChangeDTO> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<ReplicationChangeDTO> changes) {
+        this.changes = changes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplicationBatchDTO)) return false;
+
+        ReplicationBatchDTO that = (ReplicationBatchDTO) o;
+
+        if (getStreamId() != null ? !getStreamId().equals(that.getStreamId()) : that.getStreamId() != null) return false;
+        if (getHeadSequence() != that.getHeadSequence()) return false;
+        if (getTimestamp() != that.getTimestamp()) return false;
+        if (isResyncRequired() != that.isResyncRequired()) return false;
+        return getChanges() != null ? getChanges().equals(that.getChanges()) : that.getChanges() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getStreamId() != null ? getStreamId().hashCode() : 0;
+        result = 31 * result + (int) (getHeadSequence() ^ (getHeadSequence() >>> 32));
+        result = 31 * result + (int) (getTimestamp() ^ (getTimestamp() >>> 32));
+        result = 31 * result + (isResyncRequired() ? 1 : 0);
+        result = 31 * result + (getChanges() != null ? getChanges().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationBatchDTO{" +
+                "streamId='" + streamId + '\'' +
+                ", headSequence=" + headSequence +
+                ", timestamp=" + timestamp +
+                ", resyncRequired=" + resyncRequired +
+                ", changes=" + changes +
+                '}';
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.util.List;
+
+/**
+ * Data transfer object describing one entry in the change stream of a primary node. An entry carries the current
+ * state of whatever changed, so applying it more than once, or applying it on top of a snapshot that already
+ * contains it, is harmless.
+ * <p>
+ * An entry either carries a service, or the settings of a single service that were written and deleted.
+ */
+public class ReplicationChangeDTO {
+
+    /**
+     * The position of the entry in the change stream, entries are numbered from 1 without gaps.
+     */
+    private long sequence;
+
+    /**
+     * The time the primary node recorded the entry, in milliseconds since the epoch.
+     */
+    private long timestamp;
+
+    /**
+     * The service that was created or updated, null if the entry is about settings.
+     */
+    private ReplicatedServiceDTO service;
+
+    /**
+     * The ID of the service whose settings changed, null if the entry is about a service.
+     */
+    private Long serviceId;
+
+    /**
+     * The revision of the settings of the service after the change.
+     */
+    private long revision;
+
+    /**
+     * The settings that were created or updated, with their current values.
+     */
+    private List<ReplicatedSettingDTO> settings;
+
+    /**
+     * The names of the settings that were deleted.
+     */
+    private List<String> deletedSettings;
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public ReplicatedServiceDTO getService() {
+        return service;
+    }
+
+    public void setService(ReplicatedServiceDTO service) {
+        this.service = service;
+    }
+
+    public Long getServiceId() {
+        return serviceId;
+    }
+
+    public void setServiceId(Long serviceId) {
+        this.serviceId = serviceId;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public List<ReplicatedSettingDTO> getSettings() {
+        return settings;
+    }
+
+    public void setSettings(List<ReplicatedSettingDTO> settings) {
+        this.settings = settings;
+    }
+
+    public List<String> getDeletedSettings() {
+        return deletedSettings;
+    }
+
+    public void setDeletedSettings(List<String> deletedSettings) {
+        this.deletedSettings = deletedSettings;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplicationChangeDTO)) return false;
+
+        ReplicationChangeDTO that = (ReplicationChangeDTO) o;
+
+        if (getSequence() != that.getSequence()) return false;
+        if (getTimestamp() != that.getTimestamp()) return false;
+        if (getService() != null ? !getService().equals(that.getService()) : that.getService() != null) return false;
+        if (getServiceId() != null ? !getServiceId().equals(that.getServiceId()) : that.getServiceId() != null) return false;
+        if (getRevision() != that.getRevision()) return false;
+        if (getSettings() != null ? !getSettings().equals(that.getSettings()) : that.getSettings() != null) return false;
+        return getDeletedSettings() != null ? getDeletedSettings().equals(that.getDeletedSettings()) : that.getDeletedSettings() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (getSequence() ^ (getSequence() >>> 32));
+        result = 31 * result + (int) (getTimestamp() ^ (getTimestamp() >>> 32));
+        result = 31 * result + (getService() != null ? getService().hashCode() : 0);
+        result = 31 * result + (getServiceId() != null ? getServiceId().hashCode() : 0);
+        result = 31 * result + (int) (getRevision() ^ (getRevision() >>> 32));
+        result = 31 * result + (getSettings() != null ? getSettings().hashCode() : 0);
+        result = 31 * result + (getDeletedSettings() != null ? getDeletedSettings().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationChangeDTO{" +
+                "sequence=" + sequence +
+                ", timestamp=" + timestamp +
+                ", service=" + service +
+                ", serviceId=" + serviceId +
+                ", revision=" + revision +
+                ", settings=" + settings +
+                ", deletedSettings=" + deletedSettings +
+                '}';
+    }
+}
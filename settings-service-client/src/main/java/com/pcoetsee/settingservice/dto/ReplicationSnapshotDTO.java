@@ -0,0 +1,152 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Data transfer object containing every service and setting of a primary node, which a follower loads before it
+ * starts following the change stream.
+ */
+public class ReplicationSnapshotDTO {
+
+    /**
+     * Identifies the change stream of the primary node, which starts over whenever the primary restarts.
+     */
+    private String streamId;
+
+    /**
+     * The last entry of the change stream recorded before the snapshot was read. The snapshot contains at least every
+     * change up to this entry, so a follower continues from here.
+     */
+    private long sequence;
+
+    /**
+     * The time the snapshot was started, in milliseconds since the epoch.
+     */
+    private long timestamp;
+
+    /**
+     * Every service.
+     */
+    private List<ReplicatedServiceDTO> services;
+
+    /**
+     * Every setting of every service.
+     */
+    private List<ReplicatedSettingDTO> settings;
+
+    /**
+     * The revision of the settings of every service that has one, by service ID.
+     */
+    private Map<Long, Long> revisions;
+
+    public String getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(String streamId) {
+        this.streamId = streamId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public List<ReplicatedServiceDTO> getServices() {
+        return services;
+    }
+
+    public void setServices(List<ReplicatedServiceDTO> services) {
+        this.services = services;
+    }
+
+    public List<ReplicatedSettingDTO> getSettings() {
+        return settings;
+    }
+
+    public void setSettings(List<ReplicatedSettingDTO> settings) {
+        this.settings = settings;
+    }
+
+    public Map<Long, Long> getRevisions() {
+        return revisions;
+    }
+
+    public void setRevisions(Map<Long, Long> revisions) {
+        this.revisions = revisions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplicationSnapshotDTO)) return false;
+
+        ReplicationSnapshotDTO that = (ReplicationSnapshotDTO) o;
+
+        if (getStreamId() != null ? !getStreamId().equals(that.getStreamId()) : that.getStreamId() != null) return false;
+        if (getSequence() != that.getSequence()) return false;
+        if (getTimestamp() != that.getTimestamp()) return false;
+        if (getServices() != null ? !getServices().equals(that.getServices()) : that.getServices() != null) return false;
+        if (getSettings() != null ? !getSettings().equals(that.getSettings()) : that.getSettings() != null) return false;
+        return getRevisions() != null ? getRevisions().equals(that.getRevisions()) : that.getRevisions() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getStreamId() != null ? getStreamId().hashCode() : 0;
+        result = 31 * result + (int) (getSequence() ^ (getSequence() >>> 32));
+        result = 31 * result + (int) (getTimestamp() ^ (getTimestamp() >>> 32));
+        result = 31 * result + (getServices() != null ? getServices().hashCode() : 0);
+        result = 31 * result + (getSettings() != null ? getSettings().hashCode() : 0);
+        result = 31 * result + (getRevisions() != null ? getRevisions().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationSnapshotDTO{" +
+                "streamId='" + streamId + '\'' +
+                ", sequence=" + sequence +
+                ", timestamp=" + timestamp +
+                ", services=" + services +
+                ", settings=" + settings +
+                ", revisions=" + revisions +
+                '}';
+    }
+}
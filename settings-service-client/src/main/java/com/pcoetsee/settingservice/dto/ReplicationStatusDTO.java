@@ -0,0 +1,215 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Data transfer object describing how far a follower node is behind its primary node.
+ */
+public class ReplicationStatusDTO {
+
+    /**
+     * What the follower is doing: SYNCING while loading a snapshot, STREAMING while following the change stream, or
+     * DISCONNECTED while the primary node can not be reached.
+     */
+    private String state;
+
+    /**
+     * The last entry of the change stream the follower has applied.
+     */
+    private long appliedSequence;
+
+    /**
+     * The last entry the primary node had recorded when it was last heard from.
+     */
+    private long primarySequence;
+
+    /**
+     * The number of entries recorded on the primary node that the follower has not applied yet.
+     */
+    private long lagChanges;
+
+    /**
+     * How long ago, in milliseconds, the follower was last known to be up to date with the primary node. 0 while it is
+     * following the change stream and has applied everything.
+     */
+    private long lagMillis;
+
+    /**
+     * The time, in milliseconds, between the primary node recording the last applied entry and the follower applying it.
+     */
+    private long lastChangeDelayMillis;
+
+    /**
+     * The number of snapshots the follower has loaded.
+     */
+    private int resyncs;
+
+    /**
+     * The number of services held by the follower.
+     */
+    private int services;
+
+    /**
+     * The number of settings held by the follower.
+     */
+    private int settings;
+
+    /**
+     * The last time the primary node answered, null if it never has.
+     */
+    private ZonedDateTime lastContact;
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    public void setAppliedSequence(long appliedSequence) {
+        this.appliedSequence = appliedSequence;
+    }
+
+    public long getPrimarySequence() {
+        return primarySequence;
+    }
+
+    public void setPrimarySequence(long primarySequence) {
+        this.primarySequence = primarySequence;
+    }
+
+    public long getLagChanges() {
+        return lagChanges;
+    }
+
+    public void setLagChanges(long lagChanges) {
+        this.lagChanges = lagChanges;
+    }
+
+    public long getLagMillis() {
+        return lagMillis;
+    }
+
+    public void setLagMillis(long lagMillis) {
+        this.lagMillis = lagMillis;
+    }
+
+    public long getLastChangeDelayMillis() {
+        return lastChangeDelayMillis;
+    }
+
+    public void setLastChangeDelayMillis(long lastChangeDelayMillis) {
+        this.lastChangeDelayMillis = lastChangeDelayMillis;
+    }
+
+    public int getResyncs() {
+        return resyncs;
+    }
+
+    public void setResyncs(int resyncs) {
+        this.resyncs = resyncs;
+    }
+
+    public int getServices() {
+        return services;
+    }
+
+    public void setServices(int services) {
+        this.services = services;
+    }
+
+    public int getSettings() {
+        return settings;
+    }
+
+    public void setSettings(int settings) {
+        this.settings = settings;
+    }
+
+    public ZonedDateTime getLastContact() {
+        return lastContact;
+    }
+
+    public void setLastContact(ZonedDateTime lastContact) {
+        this.lastContact = lastContact;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ReplicationStatusDTO)) return false;
+
+        ReplicationStatusDTO that = (ReplicationStatusDTO) o;
+
+        if (getState() != null ? !getState().equals(that.getState()) : that.getState() != null) return false;
+        if (getAppliedSequence() != that.getAppliedSequence()) return false;
+        if (getPrimarySequence() != that.getPrimarySequence()) return false;
+        if (getLagChanges() != that.getLagChanges()) return false;
+        if (getLagMillis() != that.getLagMillis()) return false;
+        if (getLastChangeDelayMillis() != that.getLastChangeDelayMillis()) return false;
+        if (getResyncs() != that.getResyncs()) return false;
+        if (getServices() != that.getServices()) return false;
+        if (getSettings() != that.getSettings()) return false;
+        return getLastContact() != null ? getLastContact().equals(that.getLastContact()) : that.getLastContact() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getState() != null ? getState().hashCode() : 0;
+        result = 31 * result + (int) (getAppliedSequence() ^ (getAppliedSequence() >>> 32));
+        result = 31 * result + (int) (getPrimarySequence() ^ (getPrimarySequence() >>> 32));
+        result = 31 * result + (int) (getLagChanges() ^ (getLagChanges() >>> 32));
+        result = 31 * result + (int) (getLagMillis() ^ (getLagMillis() >>> 32));
+        result = 31 * result + (int) (getLastChangeDelayMillis() ^ (getLastChangeDelayMillis() >>> 32));
+        result = 31 * result + getResyncs();
+        result = 31 * result + getServices();
+        result = 31 * result + getSettings();
+        result = 31 * result + (getLastContact() != null ? getLastContact().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ReplicationStatusDTO{" +
+                "state='" + state + '\'' +
+                ", appliedSequence=" + appliedSequence +
+                ", primarySequence=" + primarySequence +
+                ", lagChanges=" + lagChanges +
+                ", lagMillis=" + lagMillis +
+                ", lastChangeDelayMillis=" + lastChangeDelayMillis +
+                ", resyncs=" + resyncs +
+                ", services=" + services +
+                ", settings=" + settings +
+                ", lastContact=" + lastContact +
+                '}';
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Data transfer object describing the outcome of creating a single service as part of a batch.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ServiceCreationResultDTO {
+
+    /**
+     * The possible outcomes of creating a service.
+     */
+    public enum Status {
+        CREATED,
+        DUPLICATE,
+        INVALID,
+        FAILED
+    }
+
+    /**
+     * The name of the service, as supplied in the request.
+     */
+    private String name;
+
+    /**
+     * The outcome of creating the service.
+     */
+    private Status status;
+
+    /**
+     * A description of why the service was not created, null if it was created.
+     */
+    private String message;
+
+    /**
+     * The created service, null if it was not created.
+     */
+    private ServiceDTO service;
+
+    public ServiceCreationResultDTO() {
+    }
+
+    public ServiceCreationResultDTO(String name, Status status, String message) {
+        this.name = name;
+        this.status = status;
+        this.message = message;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+
+    public ServiceDTO getService() {
+        return service;
+    }
+
+    public void setService(ServiceDTO service) {
+        this.service = service;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ServiceCreationResultDTO)) return false;
+
+        ServiceCreationResultDTO that = (ServiceCreationResultDTO) o;
+
+        if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
+        if (getStatus() != that.getStatus()) return false;
+        if (getMessage() != null ? !getMessage().equals(that.getMessage()) : that.getMessage() != null) return false;
+        return getService() != null ? getService().equals(that.getService()) : that.getService() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getName() != null ? getName().hashCode() : 0;
+        result = 31 * result + (getStatus() != null ? getStatus().hashCode() : 0);
+        result = 31 * result + (getMessage() != null ? getMessage().hashCode() : 0);
+        result = 31 * result + (getService() != null ? getService().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceCreationResultDTO{" +
+                "name='" + name + '\'' +
+                ", status=" + status +
+                ", message='" + message + '\'' +
+                ", service=" + service +
+                '}';
+    }
+}
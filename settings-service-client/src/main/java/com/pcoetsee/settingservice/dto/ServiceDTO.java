@@ -56,6 +56,12 @@ public class ServiceDTO {
      */
     private ZonedDateTime creationTime;
 
+    /**
+     * The version of the record. When sent with an update, the update only succeeds if the record is still at this
+     * version. Null updates regardless of version.
+     */
+    private Long version;
+
     public String getName() {
         return name;
     }
@@ -88,6 +94,14 @@ public class ServiceDTO {
         this.creationTime = creationTime;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -99,6 +113,7 @@ public class ServiceDTO {
         if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
         if (getPassword() != null ? !getPassword().equals(that.getPassword()) : that.getPassword() != null)
             return false;
+        if (getVersion() != null ? !getVersion().equals(that.getVersion()) : that.getVersion() != null) return false;
         return getCreationTime() != null ? getCreationTime().equals(that.getCreationTime()) : that.getCreationTime() == null;
     }
 
@@ -108,6 +123,7 @@ public class ServiceDTO {
         result = 31 * result + (getPassword() != null ? getPassword().hashCode() : 0);
         result = 31 * result + (getRole().hashCode());
         result = 31 * result + (getCreationTime() != null ? getCreationTime().hashCode() : 0);
+        result = 31 * result + (getVersion() != null ? getVersion().hashCode() : 0);
         return result;
     }
 
@@ -118,6 +134,7 @@ public class ServiceDTO {
                 ", password='" + password + '\'' +
                 ", role=" + role +
                 ", creationTime=" + creationTime +
+                ", version=" + version +
                 '}';
     }
 }
@@ -0,0 +1,131 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+/**
+ * Data transfer object describing a single edit in a {@link SettingChangeSetDTO}.
+ */
+public class SettingChangeDTO {
+
+    /**
+     * The name of the setting to create, update or delete.
+     */
+    private String name;
+
+    /**
+     * The new value of the setting, ignored when the setting is deleted.
+     */
+    private String value;
+
+    /**
+     * Indicates whether the new value is a secret, which the server stores encrypted.
+     */
+    private boolean secret;
+
+    /**
+     * Indicates that the setting should be deleted instead of written.
+     */
+    private boolean delete;
+
+    /**
+     * The version the setting is expected to be at, null applies the edit regardless of version.
+     */
+    private Long version;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public boolean isSecret() {
+        return secret;
+    }
+
+    public void setSecret(boolean secret) {
+        this.secret = secret;
+    }
+
+    public boolean isDelete() {
+        return delete;
+    }
+
+    public void setDelete(boolean delete) {
+        this.delete = delete;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingChangeDTO)) return false;
+
+        SettingChangeDTO that = (SettingChangeDTO) o;
+
+        if (isSecret() != that.isSecret()) return false;
+        if (isDelete() != that.isDelete()) return false;
+        if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
+        if (getValue() != null ? !getValue().equals(that.getValue()) : that.getValue() != null) return false;
+        return getVersion() != null ? getVersion().equals(that.getVersion()) : that.getVersion() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getName() != null ? getName().hashCode() : 0;
+        result = 31 * result + (getValue() != null ? getValue().hashCode() : 0);
+        result = 31 * result + (isSecret() ? 1 : 0);
+        result = 31 * result + (isDelete() ? 1 : 0);
+        result = 31 * result + (getVersion() != null ? getVersion().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingChangeDTO{" +
+                "name='" + name + '\'' +
+                ", value='" + (secret ? "******" : value) + '\'' +
+                ", secret=" + secret +
+                ", delete=" + delete +
+                ", version=" + version +
+                '}';
+    }
+}
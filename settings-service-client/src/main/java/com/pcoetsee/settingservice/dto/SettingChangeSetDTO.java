@@ -0,0 +1,88 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Data transfer object describing edits to several settings of a service that must be applied together, or not at
+ * all.
+ */
+public class SettingChangeSetDTO {
+
+    /**
+     * The revision the settings of the service are expected to be at, null applies the changes regardless of revision.
+     */
+    private Long expectedRevision;
+
+    /**
+     * The edits to apply.
+     */
+    private List<SettingChangeDTO> changes = new ArrayList<>();
+
+    public Long getExpectedRevision() {
+        return expectedRevision;
+    }
+
+    public void setExpectedRevision(Long expectedRevision) {
+        this.expectedRevision = expectedRevision;
+    }
+
+    public List<SettingChangeDTO> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<SettingChangeDTO> changes) {
+        this.changes = changes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingChangeSetDTO)) return false;
+
+        SettingChangeSetDTO that = (SettingChangeSetDTO) o;
+
+        if (getExpectedRevision() != null ? !getExpectedRevision().equals(that.getExpectedRevision()) : that.getExpectedRevision() != null)
+            return false;
+        return getChanges() != null ? getChanges().equals(that.getChanges()) : that.getChanges() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getExpectedRevision() != null ? getExpectedRevision().hashCode() : 0;
+        result = 31 * result + (getChanges() != null ? getChanges().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingChangeSetDTO{" +
+                "expectedRevision=" + expectedRevision +
+                ", changes=" + changes +
+                '}';
+    }
+}
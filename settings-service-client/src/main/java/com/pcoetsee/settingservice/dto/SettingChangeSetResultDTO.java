@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+/**
+ * Data transfer object describing the outcome of applying a {@link SettingChangeSetDTO}.
+ */
+public class SettingChangeSetResultDTO {
+
+    /**
+     * The revision of the settings of the service after the changes were applied.
+     */
+    private long revision;
+
+    /**
+     * The number of settings created.
+     */
+    private int created;
+
+    /**
+     * The number of settings updated.
+     */
+    private int updated;
+
+    /**
+     * The number of settings deleted.
+     */
+    private int deleted;
+
+    public SettingChangeSetResultDTO() {
+    }
+
+    public SettingChangeSetResultDTO(long revision, int created, int updated, int deleted) {
+        this.revision = revision;
+        this.created = created;
+        this.updated = updated;
+        this.deleted = deleted;
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        this.revision = revision;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public void setCreated(int created) {
+        this.created = created;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public void setDeleted(int deleted) {
+        this.deleted = deleted;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingChangeSetResultDTO)) return false;
+
+        SettingChangeSetResultDTO that = (SettingChangeSetResultDTO) o;
+
+        if (getRevision() != that.getRevision()) return false;
+        if (getCreated() != that.getCreated()) return false;
+        if (getUpdated() != that.getUpdated()) return false;
+        return getDeleted() == that.getDeleted();
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (getRevision() ^ (getRevision() >>> 32));
+        result = 31 * result + getCreated();
+        result = 31 * result + getUpdated();
+        result = 31 * result + getDeleted();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingChangeSetResultDTO{" +
+                "revision=" + revision +
+                ", created=" + created +
+                ", updated=" + updated +
+                ", deleted=" + deleted +
+                '}';
+    }
+}
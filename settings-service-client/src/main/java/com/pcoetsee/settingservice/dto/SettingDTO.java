@@ -0,0 +1,191 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.time.ZonedDateTime;
+
+/**
+ * Data transfer object for sending information regarding settings from one place to another.
+ */
+public class SettingDTO {
+
+    /**
+     * The name of the setting.
+     */
+    private String name;
+
+    /**
+     * The value of the setting.
+     */
+    private String value;
+
+    /**
+     * The value with every `${name}` reference to another setting of the same service replaced by the value of that
+     * setting. Only set by the server, and only when the value references other settings.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String resolvedValue;
+
+    /**
+     * The date this setting was last requested.
+     */
+    private ZonedDateTime dateLastUsed;
+
+    /**
+     * Indicates whether the value is a secret, which the server stores encrypted.
+     */
+    private boolean secret;
+
+    /**
+     * The version of the record. When sent with an update, the update only succeeds if the record is still at this
+     * version. Null updates regardless of version.
+     */
+    private Long version;
+
+    /**
+     * The size in bytes of a large value, which is not sent along with the setting but fetched from
+     * `/services/{serviceName}/settings/{name}/blob`. Only set by the server, and only for large values, whose value is
+     * then empty.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long blobSize;
+
+    /**
+     * The SHA-256 of a large value, in hex, also sent as the ETag of the value. Only set by the server, and only for
+     * large values.
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String blobSha256;
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public void setValue(String value) {
+        this.value = value;
+    }
+
+    public String getResolvedValue() {
+        return resolvedValue;
+    }
+
+    public void setResolvedValue(String resolvedValue) {
+        this.resolvedValue = resolvedValue;
+    }
+
+    public ZonedDateTime getDateLastUsed() {
+        return dateLastUsed;
+    }
+
+    public void setDateLastUsed(ZonedDateTime dateLastUsed) {
+        this.dateLastUsed = dateLastUsed;
+    }
+
+    public boolean isSecret() {
+        return secret;
+    }
+
+    public void setSecret(boolean secret) {
+        this.secret = secret;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getBlobSize() {
+        return blobSize;
+    }
+
+    public void setBlobSize(Long blobSize) {
+        this.blobSize = blobSize;
+    }
+
+    public String getBlobSha256() {
+        return blobSha256;
+    }
+
+    public void setBlobSha256(String blobSha256) {
+        this.blobSha256 = blobSha256;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingDTO)) return false;
+
+        SettingDTO that = (SettingDTO) o;
+
+        if (getName() != null ? !getName().equals(that.getName()) : that.getName() != null) return false;
+        if (getValue() != null ? !getValue().equals(that.getValue()) : that.getValue() != null) return false;
+        if (getResolvedValue() != null ? !getResolvedValue().equals(that.getResolvedValue()) : that.getResolvedValue() != null) return false;
+        if (isSecret() != that.isSecret()) return false;
+        if (getVersion() != null ? !getVersion().equals(that.getVersion()) : that.getVersion() != null) return false;
+        if (getBlobSize() != null ? !getBlobSize().equals(that.getBlobSize()) : that.getBlobSize() != null) return false;
+        if (getBlobSha256() != null ? !getBlobSha256().equals(that.getBlobSha256()) : that.getBlobSha256() != null) return false;
+        return getDateLastUsed() != null ? getDateLastUsed().equals(that.getDateLastUsed()) : that.getDateLastUsed() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getName() != null ? getName().hashCode() : 0;
+        result = 31 * result + (getValue() != null ? getValue().hashCode() : 0);
+        result = 31 * result + (getResolvedValue() != null ? getResolvedValue().hashCode() : 0);
+        result = 31 * result + (getDateLastUsed() != null ? getDateLastUsed().hashCode() : 0);
+        result = 31 * result + (isSecret() ? 1 : 0);
+        result = 31 * result + (getVersion() != null ? getVersion().hashCode() : 0);
+        result = 31 * result + (getBlobSize() != null ? getBlobSize().hashCode() : 0);
+        result = 31 * result + (getBlobSha256() != null ? getBlobSha256().hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingDTO{" +
+                "name='" + name + '\'' +
+                ", value='" + (secret ? "******" : value) + '\'' +
+                ", resolvedValue='" + resolvedValue + '\'' +
+                ", dateLastUsed=" + dateLastUsed +
+                ", secret=" + secret +
+                ", version=" + version +
+                ", blobSize=" + blobSize +
+                ", blobSha256='" + blobSha256 + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+/**
+ * Data transfer object describing a setting that matched a search.
+ */
+public class SettingSearchResultDTO {
+
+    /**
+     * The name of the service the setting belongs to.
+     */
+    private String serviceName;
+
+    /**
+     * The name of the setting.
+     */
+    private String name;
+
+    /**
+     * Indicates whether the value is a secret, in which case only the name was searched.
+     */
+    private boolean secret;
+
+    public SettingSearchResultDTO() {
+    }
+
+    public SettingSearchResultDTO(String serviceName, String name, boolean secret) {
+        this.serviceName = serviceName;
+        this.name = name;
+        this.secret = secret;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public void setServiceName(String serviceName) {
+        this.serviceName = serviceName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public boolean isSecret() {
+        return secret;
+    }
+
+    public void setSecret(boolean secret) {
+        this.secret = secret;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingSearchResultDTO)) return false;
+
+        SettingSearchResultDTO that = (SettingSearchResultDTO) o;
+
+        if (isSecret() != that.isSecret()) return false;
+        if (getServiceName() != null ? !getServiceName().equals(that.getServiceName()) : that.getServiceName() != null)
+            return false;
+        return getName() != null ? getName().equals(that.getName()) : that.getName() == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getServiceName() != null ? getServiceName().hashCode() : 0;
+        result = 31 * result + (getName() != null ? getName().hashCode() : 0);
+        result = 31 * result + (isSecret() ? 1 : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingSearchResultDTO{" +
+                "serviceName='" + serviceName + '\'' +
+                ", name='" + name + '\'' +
+                ", secret=" + secret +
+                '}';
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.dto;
+
+/**
+ * Data transfer object describing the outcome of creating or updating a batch of settings.
+ */
+public class SettingUpsertResultDTO {
+
+    /**
+     * The number of settings that did not exist yet and were created.
+     */
+    private int created;
+
+    /**
+     * The number of settings that already existed and were updated.
+     */
+    private int updated;
+
+    public SettingUpsertResultDTO() {
+    }
+
+    public SettingUpsertResultDTO(int created, int updated) {
+        this.created = created;
+        this.updated = updated;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public void setCreated(int created) {
+        this.created = created;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public void setUpdated(int updated) {
+        this.updated = updated;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingUpsertResultDTO)) return false;
+
+        SettingUpsertResultDTO that = (SettingUpsertResultDTO) o;
+
+        if (getCreated() != that.getCreated()) return false;
+        return getUpdated() == that.getUpdated();
+    }
+
+    @Override
+    public int hashCode() {
+        int result = getCreated();
+        result = 31 * result + getUpdated();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "SettingUpsertResultDTO{" +
+                "created=" + created +
+                ", updated=" + updated +
+                '}';
+    }
+}
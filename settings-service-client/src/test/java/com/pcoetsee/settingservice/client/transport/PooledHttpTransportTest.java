@@ -0,0 +1,237 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.pcoetsee.settingservice.client.transport;
+
+import com.pcoetsee.settingservice.client.SettingsSourceException;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class used for testing the pooled transport against several embedded servers, some of which answer slowly.
+ */
+public class PooledHttpTransportTest {
+
+    private final List<Node> servers = new ArrayList<>();
+    private PooledHttpTransport transport;
+
+    @After
+    public void tearDown() {
+        if (this.transport != null) {
+            this.transport.close();
+        }
+
+        for (Node server : this.servers) {
+            server.server.stop(0);
+        }
+    }
+
+    /**
+     * This method tests that once the nodes have been measured, reads go to the fast node and not the slow one.
+     */
+    @Test
+    public void testAvoidsSlowNode() {
+        Node slow = this.start("slow", 100, 200);
+        Node fast = this.start("fast", 0, 200);
+        PooledHttpTransportOptions options = new PooledHttpTransportOptions();
+        options.setHedgingEnabled(false);
+        this.transport = new PooledHttpTransport(Arrays.asList(slow.url, fast.url), options);
+
+        for (int i = 0; i < 40; i++) {
+            Assert.assertEquals(200, this.transport.send(PooledHttpTransportTest.get()).getStatus());
+        }
+
+        Assert.assertTrue("slow node was used " + slow.hits + " times", slow.hits.get() <= 2);
+        Assert.assertTrue("fast node was used " + fast.hits + " times", fast.hits.get() >= 38);
+    }
+
+    /**
+     * This method tests that a read the first node is slow to answer is hedged to the next node, and that the hedge
+     * answers it.
+     */
+    @Test
+    public void testHedgesSlowRead() {
+        Node slow = this.start("slow", 2000, 200);
+        Node fast = this.start("fast", 0, 200);
+        PooledHttpTransportOptions options = new PooledHttpTransportOptions();
+        options.setHedgeDefaultDelayMillis(20);
+        this.transport = new PooledHttpTransport(Arrays.asList(slow.url, fast.url), options);
+
+        long start = System.nanoTime();
+        TransportResponse response = this.transport.send(PooledHttpTransportTest.get());
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        Assert.assertEquals("fast", new String(response.getBody(), StandardCharsets.UTF_8));
+        Assert.assertTrue("the hedged read took " + millis + "ms", millis < 1000);
+        Assert.assertEquals(1, this.transport.getHedgesSent());
+        Assert.assertEquals(1, slow.hits.get());
+    }
+
+    /**
+     * This method tests that the hedge delay follows the p95 of recorded latencies once there are enough of them.
+     */
+    @Test
+    public void testHedgeDelayFollowsLatency() {
+        Node node = this.start("node", 30, 200);
+        PooledHttpTransportOptions options = new PooledHttpTransportOptions();
+        options.setHedgeDefaultDelayMillis(500);
+        this.transport = new PooledHttpTransport(Collections.singletonList(node.url), options);
+
+        Assert.assertEquals(500, this.transport.hedgeDelayMillis());
+
+        for (int i = 0; i < LatencyWindow.MIN_SAMPLES; i++) {
+            this.transport.send(PooledHttpTransportTest.get());
+        }
+
+        long delay = this.transport.hedgeDelayMillis();
+        Assert.assertTrue("hedge delay was " + delay + "ms", delay >= 30 && delay < 500);
+    }
+
+    /**
+     * This method tests that reads and writes fail over from a node that refuses connections, and that the node is
+     * tried last afterwards.
+     */
+    @Test
+    public void testFailsOverFromDownNode() {
+        Node down = this.start("down", 0, 200);
+        Node up = this.start("up", 0, 200);
+        down.server.stop(0);
+        PooledHttpTransportOptions options = new PooledHttpTransportOptions();
+        options.setHedgingEnabled(false);
+        this.transport = new PooledHttpTransport(Arrays.asList(down.url, up.url), options);
+
+        Assert.assertEquals("up", new String(this.transport.send(PooledHttpTransportTest.get()).getBody(), StandardCharsets.UTF_8));
+        Assert.assertEquals(up.url, this.transport.rank().get(0).getBaseUrl());
+        Assert.assertEquals(down.url, this.transport.rank().get(1).getBaseUrl());
+
+        this.transport.close();
+        this.transport = new PooledHttpTransport(Arrays.asList(down.url, up.url), options);
+
+        Assert.assertEquals(200, this.transport.send(PooledHttpTransportTest.post()).getStatus());
+        Assert.assertEquals(2, up.hits.get());
+    }
+
+    /**
+     * This method tests that a read answered with a server error is retried on the next node, while a write is not.
+     */
+    @Test
+    public void testRetriesOnlyReadsOnServerError() {
+        Node failing = this.start("failing", 0, 503);
+        Node healthy = this.start("healthy", 0, 200);
+        PooledHttpTransportOptions options = new PooledHttpTransportOptions();
+        options.setHedgingEnabled(false);
+        options.setFailureBackoffMillis(0);
+        this.transport = new PooledHttpTransport(Arrays.asList(failing.url, healthy.url), options);
+
+        Assert.assertEquals(200, this.transport.send(PooledHttpTransportTest.get()).getStatus());
+        Assert.assertEquals(1, failing.hits.get());
+        Assert.assertEquals(1, healthy.hits.get());
+
+        Assert.assertEquals(503, this.transport.send(PooledHttpTransportTest.post()).getStatus());
+        Assert.assertEquals(2, failing.hits.get());
+        Assert.assertEquals(1, healthy.hits.get());
+    }
+
+    /**
+     * This method tests that an exception is thrown when no node can be reached.
+     */
+    @Test(expected = SettingsSourceException.class)
+    public void testNoNodeReachable() {
+        Node down = this.start("down", 0, 200);
+        down.server.stop(0);
+        this.transport = new PooledHttpTransport(Collections.singletonList(down.url), new PooledHttpTransportOptions());
+
+        this.transport.send(PooledHttpTransportTest.get());
+    }
+
+    private static TransportRequest get() {
+        return new TransportRequest("GET", "/services/test/settings/a", Collections.singletonMap("Accept", "application/json"), null);
+    }
+
+    private static TransportRequest post() {
+        return new TransportRequest(
+                "POST",
+                "/services/test/settings/change-sets",
+                Collections.singletonMap("Content-Type", "application/json"),
+                "{}".getBytes(StandardCharsets.UTF_8)
+        );
+    }
+
+    private Node start(String name, long delayMillis, int status) {
+        try {
+            Node node = new Node(HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0));
+
+            node.server.createContext("/", exchange -> {
+                node.hits.incrementAndGet();
+
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                byte[] body = name.getBytes(StandardCharsets.UTF_8);
+                exchange.getRequestBody().close();
+                exchange.sendResponseHeaders(status, body.length);
+
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                } catch (IOException e) {
+                    // The client cancelled the request, as it does with a hedge that lost.
+                }
+            });
+            node.server.setExecutor(Executors.newCachedThreadPool());
+            node.server.start();
+            this.servers.add(node);
+
+            return node;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Node {
+        private final HttpServer server;
+        private final String url;
+        private final AtomicInteger hits = new AtomicInteger();
+
+        private Node(HttpServer server) {
+            this.server = server;
+            this.url = "http://127.0.0.1:" + server.getAddress().getPort();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`api_keys`
+(
+    `id`            BIGINT(20)   NOT NULL AUTO_INCREMENT,
+    `service_id`    BIGINT(20)   NOT NULL,
+    `key_id`        VARCHAR(64)  NOT NULL,
+    `secret_hash`   VARCHAR(128) NOT NULL,
+    `creation_time` BIGINT(20)   NOT NULL,
+    `expiry_time`   BIGINT(20),
+
+    CONSTRAINT `pk_api_keys_id` PRIMARY KEY (`id`),
+    CONSTRAINT `fk_api_keys_service_id_service_id` FOREIGN KEY (`service_id`) REFERENCES `services` (`id`),
+    CONSTRAINT `uk_api_keys_key_id` UNIQUE KEY (`key_id`)
+)
+    Engine = InnoDB
+;
@@ -0,0 +1,37 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+-- Run on the primary database. Holds the services whose settings do not live on the shard the hash ring picks.
+CREATE TABLE IF NOT EXISTS `settings_service`.`shard_directory`
+(
+    `service_id`   BIGINT(20)  NOT NULL,
+    `shard`        VARCHAR(64) NOT NULL,
+    `target_shard` VARCHAR(64),
+    `state`        VARCHAR(16) NOT NULL,
+
+    CONSTRAINT `pk_shard_directory_service_id` PRIMARY KEY (`service_id`),
+    CONSTRAINT `fk_shard_directory_service_id_service_id` FOREIGN KEY (`service_id`) REFERENCES `services` (`id`)
+)
+    Engine = InnoDB
+;
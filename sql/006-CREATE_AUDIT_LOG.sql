@@ -0,0 +1,42 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+-- Run on the primary database. Written in batches by a background thread, so there are no foreign keys to slow it
+-- down, and records outlive the services they describe.
+CREATE TABLE IF NOT EXISTS `settings_service`.`audit_log`
+(
+    `id`           BIGINT(20)    NOT NULL AUTO_INCREMENT,
+    `time`         BIGINT(20)    NOT NULL,
+    `actor`        VARCHAR(256),
+    `action`       VARCHAR(16)   NOT NULL,
+    `entity_type`  VARCHAR(32)   NOT NULL,
+    `service_name` VARCHAR(256)  NOT NULL,
+    `entity_name`  VARCHAR(256),
+    `detail`       VARCHAR(1024),
+
+    CONSTRAINT `pk_audit_log_id` PRIMARY KEY (`id`),
+    INDEX `idx_audit_log_service_name_time` (`service_name`, `time`)
+)
+    Engine = InnoDB
+;
@@ -0,0 +1,47 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+-- Also run on every additional settings shard. Settings nobody has read for a long time are moved here, next to the
+-- settings they came from, so the `settings` table only holds settings in use.
+ALTER TABLE `settings_service`.`settings`
+    ADD INDEX `idx_settings_date_last_used` (`date_last_used`)
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`settings_archive`
+(
+    `id`             BIGINT(20)    NOT NULL AUTO_INCREMENT,
+    `service_id`     BIGINT(20)    NOT NULL,
+    `name`           VARCHAR(256)  NOT NULL,
+    `value`          VARCHAR(4096) NOT NULL,
+    `date_last_used` DATE,
+    `secret`         TINYINT(1)    NOT NULL DEFAULT FALSE,
+    `key_version`    INT,
+    `version`        BIGINT(20)    NOT NULL DEFAULT 0,
+    `date_archived`  DATE          NOT NULL,
+
+    CONSTRAINT `pk_settings_archive_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_settings_archive_service_id_name` UNIQUE KEY (`service_id`, `name`)
+)
+    Engine = InnoDB
+;
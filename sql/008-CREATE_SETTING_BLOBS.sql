@@ -0,0 +1,51 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+-- Also run on every additional settings shard. Values too large for `settings`.`value` are stored gzip compressed in
+-- chunks, addressed by the SHA-256 of the uncompressed value, so the setting itself only holds the size and the hash.
+ALTER TABLE `settings_service`.`settings`
+    ADD COLUMN `blob_size`   BIGINT(20),
+    ADD COLUMN `blob_sha256` CHAR(64),
+    ADD INDEX `idx_settings_service_id_blob_sha256` (`service_id`, `blob_sha256`)
+;
+
+ALTER TABLE `settings_service`.`settings_archive`
+    ADD COLUMN `blob_size`   BIGINT(20),
+    ADD COLUMN `blob_sha256` CHAR(64)
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`setting_blobs`
+(
+    `id`            BIGINT(20)  NOT NULL AUTO_INCREMENT,
+    `service_id`    BIGINT(20)  NOT NULL,
+    `sha256`        VARCHAR(64) NOT NULL,
+    `seq`           INT         NOT NULL,
+    `data`          MEDIUMBLOB  NOT NULL,
+    `creation_time` BIGINT(20)  NOT NULL,
+
+    CONSTRAINT `pk_setting_blobs_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_setting_blobs_service_id_sha256_seq` UNIQUE KEY (`service_id`, `sha256`, `seq`)
+)
+    Engine = InnoDB
+;
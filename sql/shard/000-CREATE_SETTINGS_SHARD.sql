@@ -0,0 +1,96 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2021 PS Coetsee
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+-- Run on every additional settings shard. Shards only hold settings; the services they belong to live on the
+-- primary database, so there is no foreign key on `service_id`. Keep in step with changes to the primary `settings`
+-- table.
+CREATE SCHEMA IF NOT EXISTS `settings_service`
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`settings`
+(
+    `id`             BIGINT(20)    NOT NULL AUTO_INCREMENT,
+    `service_id`     BIGINT(20)    NOT NULL,
+    `name`           VARCHAR(256)  NOT NULL,
+    `value`          VARCHAR(4096) NOT NULL,
+    `date_last_used` DATE,
+    `secret`         TINYINT(1)    NOT NULL DEFAULT FALSE,
+    `key_version`    INT,
+    `version`        BIGINT(20)    NOT NULL DEFAULT 0,
+    `blob_size`      BIGINT(20),
+    `blob_sha256`    CHAR(64),
+
+    CONSTRAINT `pk_settings_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_service_id_setting_name` UNIQUE KEY (`service_id`, `name`),
+    INDEX `idx_settings_secret_key_version` (`secret`, `key_version`),
+    INDEX `idx_settings_date_last_used` (`date_last_used`),
+    INDEX `idx_settings_service_id_blob_sha256` (`service_id`, `blob_sha256`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`settings_archive`
+(
+    `id`             BIGINT(20)    NOT NULL AUTO_INCREMENT,
+    `service_id`     BIGINT(20)    NOT NULL,
+    `name`           VARCHAR(256)  NOT NULL,
+    `value`          VARCHAR(4096) NOT NULL,
+    `date_last_used` DATE,
+    `secret`         TINYINT(1)    NOT NULL DEFAULT FALSE,
+    `key_version`    INT,
+    `version`        BIGINT(20)    NOT NULL DEFAULT 0,
+    `blob_size`      BIGINT(20),
+    `blob_sha256`    CHAR(64),
+    `date_archived`  DATE          NOT NULL,
+
+    CONSTRAINT `pk_settings_archive_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_settings_archive_service_id_name` UNIQUE KEY (`service_id`, `name`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`setting_blobs`
+(
+    `id`            BIGINT(20)  NOT NULL AUTO_INCREMENT,
+    `service_id`    BIGINT(20)  NOT NULL,
+    `sha256`        VARCHAR(64) NOT NULL,
+    `seq`           INT         NOT NULL,
+    `data`          MEDIUMBLOB  NOT NULL,
+    `creation_time` BIGINT(20)  NOT NULL,
+
+    CONSTRAINT `pk_setting_blobs_id` PRIMARY KEY (`id`),
+    CONSTRAINT `uk_setting_blobs_service_id_sha256_seq` UNIQUE KEY (`service_id`, `sha256`, `seq`)
+)
+    Engine = InnoDB
+;
+
+CREATE TABLE IF NOT EXISTS `settings_service`.`service_revisions`
+(
+    `service_id` BIGINT(20) NOT NULL,
+    `revision`   BIGINT(20) NOT NULL,
+
+    CONSTRAINT `pk_service_revisions_service_id` PRIMARY KEY (`service_id`)
+)
+    Engine = InnoDB
+;